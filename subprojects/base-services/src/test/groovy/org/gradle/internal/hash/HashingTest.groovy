@@ -109,6 +109,41 @@ class HashingTest extends Specification {
         hashStrings(["abc", "de"]) != hashStrings(["ab", "cde"])
     }
 
+    def 'murmur3 produces the same hashes as Guava'() {
+        def bytes = new byte[length]
+        new Random(length).nextBytes(bytes)
+
+        when:
+        def hasher = Hashing.murmur3().newPrimitiveHasher()
+        // Feed the input in chunks which don't line up with the blocks of the hash function
+        for (int offset = 0; offset < length; offset += 7) {
+            hasher.putBytes(bytes, offset, Math.min(7, length - offset))
+        }
+
+        then:
+        hasher.hash().toString() == com.google.common.hash.Hashing.murmur3_128().hashBytes(bytes).toString()
+        Hashing.murmur3().hashBytes(bytes).toString() == com.google.common.hash.Hashing.murmur3_128().hashBytes(bytes).toString()
+
+        where:
+        length << [0, 1, 8, 9, 15, 16, 17, 31, 32, 1000]
+    }
+
+    def 'murmur3 hashes primitives in little endian byte order'() {
+        def hasher = Hashing.murmur3().newPrimitiveHasher()
+        def guavaHasher = com.google.common.hash.Hashing.murmur3_128().newHasher()
+
+        when:
+        hasher.putInt(123)
+        hasher.putLong(-42L)
+        hasher.putString("abc")
+        guavaHasher.putInt(123)
+        guavaHasher.putLong(-42L)
+        guavaHasher.putBytes("abc".getBytes("UTF-8"))
+
+        then:
+        hasher.hash().toString() == guavaHasher.hash().toString()
+    }
+
     def hashStrings(List<String> strings) {
         def hasher = Hashing.newHasher()
         strings.each { hasher.putString(it) }
@@ -20,9 +20,11 @@ import org.gradle.caching.internal.CacheableEntity;
 import org.gradle.caching.internal.origin.OriginMetadata;
 import org.gradle.caching.internal.origin.OriginReader;
 import org.gradle.caching.internal.origin.OriginWriter;
+import org.gradle.caching.local.internal.BuildCacheBlobStore;
 import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
 import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -43,7 +45,20 @@ public interface BuildCacheEntryPacker {
         }
     }
 
-    UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException;
+    /**
+     * Unpacks an entry which contains the contents of its files.
+     */
+    default UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
+        return unpack(entity, input, readOrigin, null);
+    }
+
+    /**
+     * Unpacks an entry, resolving the blobs referred to by a manifest in the given blob store.
+     *
+     * The blob store must only be given for entries which have been produced by the local build cache owning the blob store.
+     * When no blob store is given, entries referring to blobs are rejected.
+     */
+    UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin, @Nullable BuildCacheBlobStore blobStore) throws IOException;
 
     class UnpackResult {
         private final OriginMetadata originMetadata;
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.gradle.caching.BuildCacheException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression applied to build cache entries.
+ *
+ * Gzip compressed entries are written without any additional header, so they stay readable by all Gradle versions.
+ * Entries using any other compression start with a format marker.
+ * Unpacking detects the compression of the entry, so a cache can contain entries with different compressions.
+ */
+public enum BuildCacheEntryCompression {
+    /**
+     * Gzip with the default compression level.
+     */
+    GZIP("gzip", -1) {
+        @Override
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new GZIPOutputStream(output, BUFFER_SIZE);
+        }
+
+        @Override
+        InputStream decompressContent(InputStream input) throws IOException {
+            return new GZIPInputStream(input, BUFFER_SIZE);
+        }
+    },
+    /**
+     * Gzip with the fastest compression level, trading a slightly larger entry for a much faster pack.
+     */
+    GZIP_FAST("gzip-fast", -1) {
+        @Override
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new GZIPOutputStream(output, BUFFER_SIZE) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+        }
+
+        @Override
+        InputStream decompressContent(InputStream input) throws IOException {
+            return new GZIPInputStream(input, BUFFER_SIZE);
+        }
+    },
+    /**
+     * No compression, for caches where disk space is cheaper than the time spent compressing.
+     */
+    NONE("none", 0) {
+        @Override
+        public OutputStream compress(OutputStream output) throws IOException {
+            writeMarker(output);
+            return output;
+        }
+
+        @Override
+        InputStream decompressContent(InputStream input) {
+            return new BufferedInputStream(input, BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * The system property to select the compression of the entries in the local build cache.
+     * Entries are packed with this compression.
+     */
+    public static final String LOCAL_COMPRESSION_PROPERTY = "org.gradle.unsafe.build-cache.local-compression";
+
+    /**
+     * The system property to select the compression of the entries stored in the remote build cache.
+     * Entries are recompressed before they are stored when this is different from the local compression.
+     */
+    public static final String REMOTE_COMPRESSION_PROPERTY = "org.gradle.unsafe.build-cache.remote-compression";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final byte[] MARKER = {'G', 'R', 'B', 'C'};
+
+    private final String displayName;
+    private final int markerId;
+
+    BuildCacheEntryCompression(String displayName, int markerId) {
+        this.displayName = displayName;
+        this.markerId = markerId;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Returns a stream which compresses the data written to it into the given stream. Closing the returned stream closes the given stream.
+     */
+    public abstract OutputStream compress(OutputStream output) throws IOException;
+
+    /**
+     * Returns a stream which decompresses the content following the format marker.
+     */
+    abstract InputStream decompressContent(InputStream input) throws IOException;
+
+    void writeMarker(OutputStream output) throws IOException {
+        output.write(MARKER);
+        output.write(markerId);
+    }
+
+    /**
+     * Returns a stream which decompresses the given entry, detecting the compression that was used to write it.
+     */
+    public static InputStream decompress(InputStream input) throws IOException {
+        PushbackInputStream pushbackInput = new PushbackInputStream(input, 2);
+        int first = pushbackInput.read();
+        int second = pushbackInput.read();
+        if (first == (GZIP_MAGIC & 0xff) && second == (GZIP_MAGIC >> 8)) {
+            pushbackInput.unread(second);
+            pushbackInput.unread(first);
+            return GZIP.decompressContent(pushbackInput);
+        }
+        if (first != MARKER[0] || second != MARKER[1]) {
+            throw new BuildCacheException("Build cache entry uses an unknown format");
+        }
+        for (int i = 2; i < MARKER.length; i++) {
+            if (pushbackInput.read() != MARKER[i]) {
+                throw new BuildCacheException("Build cache entry uses an unknown format");
+            }
+        }
+        int markerId = pushbackInput.read();
+        for (BuildCacheEntryCompression compression : values()) {
+            if (compression.markerId >= 0 && compression.markerId == markerId) {
+                return compression.decompressContent(pushbackInput);
+            }
+        }
+        throw new BuildCacheException("Build cache entry uses an unknown compression: " + markerId);
+    }
+
+    public static BuildCacheEntryCompression forDisplayName(String displayName) {
+        for (BuildCacheEntryCompression compression : values()) {
+            if (compression.displayName.equals(displayName)) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException("Unknown build cache entry compression '" + displayName + "'.");
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import com.google.common.io.ByteStreams;
+import org.gradle.caching.internal.controller.BuildCacheEntryTranscoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * Recompresses build cache entries with the given compression.
+ *
+ * Segmented entries are copied as they are, since each of their segments is compressed separately.
+ */
+public class CompressionBuildCacheEntryTranscoder implements BuildCacheEntryTranscoder {
+    private final BuildCacheEntryCompression compression;
+
+    public CompressionBuildCacheEntryTranscoder(BuildCacheEntryCompression compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    public void transcode(InputStream input, OutputStream output) throws IOException {
+        PushbackInputStream pushbackInput = SegmentedBuildCacheEntryPacker.withHeaderPushback(input);
+        if (SegmentedBuildCacheEntryPacker.isSegmented(pushbackInput)) {
+            try (OutputStream segmentedOutput = output) {
+                ByteStreams.copy(pushbackInput, segmentedOutput);
+            }
+            return;
+        }
+        try (InputStream decompressedInput = BuildCacheEntryCompression.decompress(pushbackInput);
+             OutputStream compressedOutput = compression.compress(output)) {
+            ByteStreams.copy(decompressedInput, compressedOutput);
+        }
+    }
+}
@@ -0,0 +1,786 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.caching.internal.packaging.impl;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.Futures;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.gradle.api.GradleException;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.caching.internal.CacheableEntity;
+import org.gradle.caching.internal.origin.OriginMetadata;
+import org.gradle.caching.internal.origin.OriginReader;
+import org.gradle.caching.internal.origin.OriginWriter;
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.caching.local.internal.BuildCacheBlobStore;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.file.TreeType;
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.MerkleDirectorySnapshotBuilder;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+
+import static org.gradle.caching.internal.packaging.impl.PackerDirectoryUtil.ensureDirectoryForTree;
+import static org.gradle.caching.internal.packaging.impl.TarBuildCacheEntryPacker.METADATA_PATH;
+import static org.gradle.caching.internal.packaging.impl.TarBuildCacheEntryPacker.TREE_PATH;
+
+/**
+ * Packs build cache entries as a sequence of independently compressed TAR segments, so the segments can be packed and unpacked in parallel.
+ *
+ * Each output tree is split into segments of at most {@value #MAX_SEGMENT_ENTRIES} entries or {@value #MAX_SEGMENT_SIZE} bytes of content.
+ * The segments contain the same TAR entries as a sequential entry, in the same order, so the packed entry does not depend on the scheduling of the workers.
+ * The segments are followed by an index, which lists the tree, the number of TAR entries, the offset and the length of each segment.
+ *
+ * Segments are framed as a sequence of length-prefixed chunks, so an entry can be unpacked while it is being read.
+ * Segments larger than {@value #MAX_BUFFERED_SEGMENT_SIZE} bytes, which usually contain a single large file, are packed and unpacked on the calling thread without buffering them.
+ *
+ * Entries without the header of the segmented format are packed and unpacked by the delegate.
+ */
+public class SegmentedBuildCacheEntryPacker implements BuildCacheEntryPacker, Stoppable {
+    /**
+     * When {@code true}, new entries are packed in segments.
+     * Segmented entries can be unpacked regardless of the property.
+     */
+    public static final String SEGMENTED_ENTRIES_PROPERTY = "org.gradle.unsafe.build-cache.segmented-entries";
+
+    private static final byte[] HEADER = {'G', 'R', 'B', 'S', 1};
+    private static final int SEGMENT_FRAME = 1;
+    private static final int INDEX_FRAME = 2;
+    private static final String METADATA_SEGMENT = "";
+
+    private static final int MAX_SEGMENT_ENTRIES = 1000;
+    private static final long MAX_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_BUFFERED_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int TAR_BLOCK_SIZE = 512;
+
+    private interface RootType {
+        int NONE = 0;
+        int DIRECTORY = 1;
+        int FILE = 2;
+        int MISSING = 3;
+    }
+
+    private final BuildCacheEntryPacker delegate;
+    private final TarBuildCacheEntryPacker tarPacker;
+    private final BuildCacheEntryCompression compression;
+    private final StringInterner stringInterner;
+    private final ManagedExecutor executor;
+    private final int parallelism;
+    private final boolean segmented;
+
+    public SegmentedBuildCacheEntryPacker(BuildCacheEntryPacker delegate, TarBuildCacheEntryPacker tarPacker, BuildCacheEntryCompression compression, StringInterner stringInterner, ManagedExecutor executor, int parallelism, boolean segmented) {
+        this.delegate = delegate;
+        this.tarPacker = tarPacker;
+        this.compression = compression;
+        this.stringInterner = stringInterner;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.segmented = segmented;
+    }
+
+    /**
+     * Returns whether the given entry is a segmented entry, without consuming any of it.
+     */
+    public static boolean isSegmented(PushbackInputStream input) throws IOException {
+        byte[] header = new byte[HEADER.length];
+        int read = ByteStreams.read(input, header, 0, header.length);
+        input.unread(header, 0, read);
+        return read == header.length && Arrays.equals(header, HEADER);
+    }
+
+    /**
+     * Returns a stream which allows {@link #isSegmented(PushbackInputStream)} to be called on the given entry.
+     */
+    public static PushbackInputStream withHeaderPushback(InputStream input) {
+        return new PushbackInputStream(input, HEADER.length);
+    }
+
+    @Override
+    public PackResult pack(CacheableEntity entity, Map<String, CurrentFileCollectionFingerprint> fingerprints, OutputStream output, OriginWriter writeOrigin) throws IOException {
+        if (!segmented) {
+            return delegate.pack(entity, fingerprints, output, writeOrigin);
+        }
+        List<Segment> segments = collectSegments(entity, fingerprints);
+        long entries = 1;
+        for (Segment segment : segments) {
+            entries += segment.entries.size();
+        }
+
+        CountingOutputStream countingOutput = new CountingOutputStream(new BufferedOutputStream(output, CHUNK_SIZE));
+        List<IndexEntry> index = new ArrayList<IndexEntry>(segments.size() + 1);
+        Deque<PendingSegment> pendingSegments = new ArrayDeque<PendingSegment>();
+        try (DataOutputStream dataOutput = new DataOutputStream(countingOutput)) {
+            dataOutput.write(HEADER);
+            index.add(writeSegment(METADATA_SEGMENT, RootType.NONE, 1, packMetadata(writeOrigin), dataOutput, countingOutput));
+            for (Segment segment : segments) {
+                if (segment.size > MAX_BUFFERED_SEGMENT_SIZE) {
+                    while (!pendingSegments.isEmpty()) {
+                        index.add(writePendingSegment(pendingSegments.removeFirst(), dataOutput, countingOutput));
+                    }
+                    index.add(writeStreamedSegment(segment, dataOutput, countingOutput));
+                } else {
+                    pendingSegments.addLast(new PendingSegment(segment, executor.submit(() -> packSegment(segment))));
+                    if (pendingSegments.size() > 2 * parallelism) {
+                        index.add(writePendingSegment(pendingSegments.removeFirst(), dataOutput, countingOutput));
+                    }
+                }
+            }
+            while (!pendingSegments.isEmpty()) {
+                index.add(writePendingSegment(pendingSegments.removeFirst(), dataOutput, countingOutput));
+            }
+            writeIndex(index, dataOutput);
+        } finally {
+            for (PendingSegment pendingSegment : pendingSegments) {
+                pendingSegment.packed.cancel(false);
+            }
+        }
+        return new PackResult(entries);
+    }
+
+    private List<Segment> collectSegments(CacheableEntity entity, Map<String, CurrentFileCollectionFingerprint> fingerprints) {
+        List<Segment> segments = new ArrayList<Segment>();
+        entity.visitOutputTrees((treeName, type, root) -> {
+            CurrentFileCollectionFingerprint fingerprint = fingerprints.get(treeName);
+            try {
+                tarPacker.packTree(treeName, type, fingerprint, new SegmentingTreeEntryWriter(treeName, segments));
+            } catch (Exception ex) {
+                throw new GradleException(String.format("Could not pack tree '%s': %s", treeName, ex.getMessage()), ex);
+            }
+        });
+        return segments;
+    }
+
+    private byte[] packMetadata(OriginWriter writeOrigin) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOutput = createTarOutput(output)) {
+            TarBuildCacheEntryPacker.packMetadata(writeOrigin, tarOutput);
+        }
+        return output.toByteArray();
+    }
+
+    private byte[] packSegment(Segment segment) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        packSegment(segment, output);
+        return output.toByteArray();
+    }
+
+    private void packSegment(Segment segment, OutputStream output) throws IOException {
+        try (TarArchiveOutputStream tarOutput = createTarOutput(output)) {
+            TarBuildCacheEntryPacker.TarTreeEntryWriter writer = new TarBuildCacheEntryPacker.TarTreeEntryWriter(tarOutput);
+            for (TreeEntry entry : segment.entries) {
+                entry.writeTo(writer);
+            }
+        }
+    }
+
+    private TarArchiveOutputStream createTarOutput(OutputStream output) throws IOException {
+        TarArchiveOutputStream tarOutput = new TarArchiveOutputStream(compression.compress(output), TAR_BLOCK_SIZE, "utf-8");
+        TarBuildCacheEntryPacker.configure(tarOutput);
+        return tarOutput;
+    }
+
+    private static IndexEntry writePendingSegment(PendingSegment pendingSegment, DataOutputStream dataOutput, CountingOutputStream countingOutput) throws IOException {
+        byte[] packed;
+        try {
+            packed = pendingSegment.packed.get();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } catch (ExecutionException e) {
+            throw UncheckedException.throwAsUncheckedException(e.getCause());
+        }
+        Segment segment = pendingSegment.segment;
+        return writeSegment(segment.treeName, segment.rootType, segment.entries.size(), packed, dataOutput, countingOutput);
+    }
+
+    private static IndexEntry writeSegment(String treeName, int rootType, int entries, byte[] packed, DataOutputStream dataOutput, CountingOutputStream countingOutput) throws IOException {
+        long offset = countingOutput.getCount();
+        writeSegmentHeader(treeName, rootType, dataOutput);
+        dataOutput.writeInt(packed.length);
+        dataOutput.write(packed);
+        dataOutput.writeInt(0);
+        return new IndexEntry(treeName, entries, offset, countingOutput.getCount() - offset);
+    }
+
+    private IndexEntry writeStreamedSegment(Segment segment, DataOutputStream dataOutput, CountingOutputStream countingOutput) throws IOException {
+        long offset = countingOutput.getCount();
+        writeSegmentHeader(segment.treeName, segment.rootType, dataOutput);
+        packSegment(segment, new ChunkedOutputStream(dataOutput));
+        return new IndexEntry(segment.treeName, segment.entries.size(), offset, countingOutput.getCount() - offset);
+    }
+
+    private static void writeSegmentHeader(String treeName, int rootType, DataOutputStream dataOutput) throws IOException {
+        dataOutput.writeByte(SEGMENT_FRAME);
+        dataOutput.writeUTF(treeName);
+        dataOutput.writeByte(rootType);
+    }
+
+    private static void writeIndex(List<IndexEntry> index, DataOutputStream dataOutput) throws IOException {
+        dataOutput.writeByte(INDEX_FRAME);
+        dataOutput.writeInt(index.size());
+        for (IndexEntry entry : index) {
+            dataOutput.writeUTF(entry.treeName);
+            dataOutput.writeInt(entry.entries);
+            dataOutput.writeLong(entry.offset);
+            dataOutput.writeLong(entry.length);
+        }
+    }
+
+    @Override
+    public UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin, @Nullable BuildCacheBlobStore blobStore) throws IOException {
+        PushbackInputStream pushbackInput = withHeaderPushback(input);
+        if (!isSegmented(pushbackInput)) {
+            return delegate.unpack(entity, pushbackInput, readOrigin, blobStore);
+        }
+        ByteStreams.skipFully(pushbackInput, HEADER.length);
+
+        ImmutableMap.Builder<String, OutputTree> treesBuilder = ImmutableMap.builder();
+        entity.visitOutputTrees((name, type, root) -> treesBuilder.put(name, new OutputTree(name, type, root)));
+        ImmutableMap<String, OutputTree> treesByName = treesBuilder.build();
+
+        CountingInputStream countingInput = new CountingInputStream(new BufferedInputStream(pushbackInput, CHUNK_SIZE));
+        DataInputStream dataInput = new DataInputStream(countingInput);
+        List<IndexEntry> segments = new ArrayList<IndexEntry>();
+        List<Future<SegmentResult>> results = new ArrayList<Future<SegmentResult>>();
+        Deque<Future<SegmentResult>> unpackingSegments = new ArrayDeque<Future<SegmentResult>>();
+        OriginMetadata originMetadata = null;
+        List<IndexEntry> index;
+        try {
+            while (true) {
+                long offset = HEADER.length + countingInput.getCount();
+                int frame = dataInput.read();
+                if (frame == INDEX_FRAME) {
+                    index = readIndex(dataInput);
+                    break;
+                }
+                if (frame != SEGMENT_FRAME) {
+                    throw new IllegalStateException("Cached entry format error, invalid segment: " + frame);
+                }
+                String treeName = dataInput.readUTF();
+                int rootType = dataInput.readByte();
+                InputStream segmentInput = new ChunkedInputStream(dataInput);
+                if (treeName.equals(METADATA_SEGMENT)) {
+                    originMetadata = unpackMetadata(segmentInput, readOrigin);
+                    results.add(null);
+                } else {
+                    OutputTree tree = treesByName.get(treeName);
+                    if (tree == null) {
+                        throw new IllegalStateException(String.format("No tree '%s' registered", treeName));
+                    }
+                    prepareTree(tree, rootType);
+                    Future<SegmentResult> result = scheduleSegment(tree, segmentInput);
+                    results.add(result);
+                    unpackingSegments.addLast(result);
+                    if (unpackingSegments.size() > 2 * parallelism) {
+                        // Limit the number of segments buffered in memory, as when packing
+                        waitFor(Collections.singletonList(unpackingSegments.removeFirst()));
+                    }
+                }
+                segmentInput.close();
+                segments.add(new IndexEntry(treeName, -1, offset, HEADER.length + countingInput.getCount() - offset));
+            }
+        } finally {
+            // Don't return while segments are still being unpacked
+            waitFor(results);
+        }
+
+        if (originMetadata == null) {
+            throw new IllegalStateException("Cached result format error, no origin metadata was found.");
+        }
+        return createResult(index, segments, results, treesByName, originMetadata);
+    }
+
+    private static OriginMetadata unpackMetadata(InputStream segmentInput, OriginReader readOrigin) throws IOException {
+        OriginMetadata originMetadata = null;
+        try (TarArchiveInputStream tarInput = new TarArchiveInputStream(BuildCacheEntryCompression.decompress(segmentInput), "utf-8")) {
+            TarArchiveEntry tarEntry;
+            while ((tarEntry = tarInput.getNextTarEntry()) != null) {
+                if (!tarEntry.getName().equals(METADATA_PATH)) {
+                    throw new IllegalStateException("Cached entry format error, invalid contents: " + tarEntry.getName());
+                }
+                originMetadata = readOrigin.execute(new CloseShieldInputStream(tarInput));
+            }
+        }
+        return originMetadata;
+    }
+
+    private static void prepareTree(OutputTree tree, int rootType) throws IOException {
+        switch (rootType) {
+            case RootType.NONE:
+                break;
+            case RootType.MISSING:
+                TarBuildCacheEntryPacker.unpackMissingFile(tree.root);
+                break;
+            case RootType.DIRECTORY:
+                if (tree.type != TreeType.DIRECTORY) {
+                    throw new IllegalStateException("Should be a file: " + tree.name);
+                }
+                ensureDirectoryForTree(tree.type, tree.root);
+                break;
+            case RootType.FILE:
+                if (tree.type != TreeType.FILE) {
+                    throw new IllegalStateException("Should be a directory: " + tree.name);
+                }
+                ensureDirectoryForTree(tree.type, tree.root);
+                break;
+            default:
+                throw new IllegalStateException("Cached entry format error, invalid tree root: " + rootType);
+        }
+    }
+
+    /**
+     * Unpacks the segment in the background when it is small enough to be buffered, and on the calling thread otherwise.
+     */
+    private Future<SegmentResult> scheduleSegment(OutputTree tree, InputStream segmentInput) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long buffered = ByteStreams.copy(ByteStreams.limit(segmentInput, MAX_BUFFERED_SEGMENT_SIZE + 1), buffer);
+        if (buffered <= MAX_BUFFERED_SEGMENT_SIZE) {
+            byte[] packed = buffer.toByteArray();
+            return executor.submit(() -> unpackSegment(tree, new ByteArrayInputStream(packed)));
+        }
+        SegmentResult result = unpackSegment(tree, new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), segmentInput));
+        return Futures.immediateFuture(result);
+    }
+
+    private SegmentResult unpackSegment(OutputTree tree, InputStream segmentInput) throws IOException {
+        SegmentResult result = new SegmentResult();
+        try (TarArchiveInputStream tarInput = new TarArchiveInputStream(BuildCacheEntryCompression.decompress(segmentInput), "utf-8")) {
+            TarArchiveEntry tarEntry;
+            while ((tarEntry = tarInput.getNextTarEntry()) != null) {
+                result.tarEntries++;
+                String path = tarEntry.getName();
+                Matcher matcher = TREE_PATH.matcher(path);
+                if (!matcher.matches()) {
+                    throw new IllegalStateException("Cached entry format error, invalid contents: " + path);
+                }
+                if (!TarBuildCacheEntryPacker.unescape(matcher.group(2)).equals(tree.name)) {
+                    throw new IllegalStateException(String.format("Cached entry format error, %s is not part of tree '%s'", path, tree.name));
+                }
+                if (matcher.group(1) != null) {
+                    // Missing trees have been removed before unpacking the segment
+                    continue;
+                }
+                boolean isDir = tarEntry.isDirectory();
+                String childPath = matcher.group(3);
+                File file;
+                if (Strings.isNullOrEmpty(childPath)) {
+                    if (isDir != (tree.type == TreeType.DIRECTORY)) {
+                        throw new IllegalStateException((isDir ? "Should be a file: " : "Should be a directory: ") + tree.name);
+                    }
+                    file = tree.root;
+                } else {
+                    file = new File(tree.root, childPath);
+                }
+                if (isDir) {
+                    FileUtils.forceMkdir(file);
+                    tarPacker.chmodUnpackedFile(tarEntry, file);
+                    result.entries.add(new UnpackedEntry(path, file, null));
+                } else {
+                    // The parent directory may be part of a segment which is being unpacked concurrently
+                    FileUtils.forceMkdir(file.getParentFile());
+                    // Segmented entries are never manifests, so they always contain the contents of their files
+                    RegularFileSnapshot snapshot = tarPacker.unpackFile(tarInput, tarEntry, file, file.getName(), null);
+                    result.entries.add(new UnpackedEntry(path, file, snapshot));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void waitFor(List<Future<SegmentResult>> results) {
+        for (Future<SegmentResult> result : results) {
+            if (result == null) {
+                continue;
+            }
+            try {
+                result.get();
+            } catch (Exception e) {
+                // Reported when the results are collected
+            }
+        }
+    }
+
+    private UnpackResult createResult(List<IndexEntry> index, List<IndexEntry> segments, List<Future<SegmentResult>> results, Map<String, OutputTree> treesByName, OriginMetadata originMetadata) {
+        long entries = 1;
+        Map<String, List<UnpackedEntry>> entriesByTree = new LinkedHashMap<String, List<UnpackedEntry>>();
+        if (index.size() != segments.size()) {
+            throw new IllegalStateException("Cached entry format error, the index does not match the segments.");
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            IndexEntry indexEntry = index.get(i);
+            IndexEntry segment = segments.get(i);
+            Future<SegmentResult> resultFuture = results.get(i);
+            int tarEntries = resultFuture == null ? 1 : getResult(resultFuture).tarEntries;
+            if (!indexEntry.treeName.equals(segment.treeName) || indexEntry.entries != tarEntries || indexEntry.offset != segment.offset || indexEntry.length != segment.length) {
+                throw new IllegalStateException("Cached entry format error, the index does not match the segments.");
+            }
+            if (resultFuture != null) {
+                SegmentResult result = getResult(resultFuture);
+                entries += result.tarEntries;
+                List<UnpackedEntry> treeEntries = entriesByTree.get(segment.treeName);
+                if (treeEntries == null) {
+                    treeEntries = new ArrayList<UnpackedEntry>();
+                    entriesByTree.put(segment.treeName, treeEntries);
+                }
+                treeEntries.addAll(result.entries);
+            }
+        }
+        Map<String, FileSystemLocationSnapshot> snapshots = new HashMap<String, FileSystemLocationSnapshot>();
+        for (Map.Entry<String, List<UnpackedEntry>> treeEntries : entriesByTree.entrySet()) {
+            if (!treeEntries.getValue().isEmpty()) {
+                snapshots.put(treeEntries.getKey(), snapshot(treesByName.get(treeEntries.getKey()), treeEntries.getValue()));
+            }
+        }
+        return new UnpackResult(originMetadata, entries, snapshots);
+    }
+
+    private static SegmentResult getResult(Future<SegmentResult> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } catch (ExecutionException e) {
+            throw UncheckedException.throwAsUncheckedException(e.getCause());
+        }
+    }
+
+    /**
+     * Builds the snapshot of a tree from the entries of its segments, in the same way as the sequential unpacking does.
+     */
+    private FileSystemLocationSnapshot snapshot(OutputTree tree, List<UnpackedEntry> entries) {
+        UnpackedEntry rootEntry = entries.get(0);
+        if (rootEntry.snapshot != null) {
+            return rootEntry.snapshot;
+        }
+        RelativePathParser parser = new RelativePathParser();
+        parser.rootPath(rootEntry.path);
+
+        MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.noSortingRequired();
+        builder.preVisitDirectory(stringInterner.intern(tree.root.getAbsolutePath()), stringInterner.intern(tree.root.getName()));
+        for (UnpackedEntry entry : entries.subList(1, entries.size())) {
+            boolean isDir = entry.snapshot == null;
+            int directoriesLeft = parser.nextPath(entry.path, isDir);
+            for (int i = 0; i < directoriesLeft; i++) {
+                builder.postVisitDirectory();
+            }
+            if (isDir) {
+                builder.preVisitDirectory(stringInterner.intern(entry.file.getAbsolutePath()), stringInterner.intern(parser.getName()));
+            } else {
+                builder.visit(entry.snapshot);
+            }
+        }
+        for (int i = 0; i < parser.getDepth(); i++) {
+            builder.postVisitDirectory();
+        }
+        return builder.getResult();
+    }
+
+    private static List<IndexEntry> readIndex(DataInputStream dataInput) throws IOException {
+        int count = dataInput.readInt();
+        List<IndexEntry> index = new ArrayList<IndexEntry>(count);
+        for (int i = 0; i < count; i++) {
+            index.add(new IndexEntry(dataInput.readUTF(), dataInput.readInt(), dataInput.readLong(), dataInput.readLong()));
+        }
+        return index;
+    }
+
+    @Override
+    public void stop() {
+        executor.stop();
+    }
+
+    /**
+     * Splits the entries of a tree into segments.
+     */
+    private static class SegmentingTreeEntryWriter implements TarBuildCacheEntryPacker.TreeEntryWriter {
+        private final String treeName;
+        private final List<Segment> segments;
+        private Segment current;
+
+        SegmentingTreeEntryWriter(String treeName, List<Segment> segments) {
+            this.treeName = treeName;
+            this.segments = segments;
+        }
+
+        @Override
+        public void writeDirectory(String path, int mode) {
+            add(new TreeEntry(TreeEntry.DIRECTORY, path, mode, null), RootType.DIRECTORY, 0);
+        }
+
+        @Override
+        public void writeFile(File file, String path, int mode) {
+            add(new TreeEntry(TreeEntry.FILE, path, mode, file), RootType.FILE, file.length());
+        }
+
+        @Override
+        public void writeMissing(String path) {
+            add(new TreeEntry(TreeEntry.MISSING, path, 0, null), RootType.MISSING, 0);
+        }
+
+        private void add(TreeEntry entry, int rootType, long size) {
+            if (current == null) {
+                current = new Segment(treeName, rootType);
+                segments.add(current);
+            } else if (current.entries.size() >= MAX_SEGMENT_ENTRIES || (current.size > 0 && current.size + size > MAX_SEGMENT_SIZE)) {
+                current = new Segment(treeName, RootType.NONE);
+                segments.add(current);
+            }
+            current.entries.add(entry);
+            current.size += size;
+        }
+    }
+
+    private static class TreeEntry {
+        static final int DIRECTORY = 0;
+        static final int FILE = 1;
+        static final int MISSING = 2;
+
+        private final int type;
+        private final String path;
+        private final int mode;
+        private final File file;
+
+        TreeEntry(int type, String path, int mode, @Nullable File file) {
+            this.type = type;
+            this.path = path;
+            this.mode = mode;
+            this.file = file;
+        }
+
+        void writeTo(TarBuildCacheEntryPacker.TreeEntryWriter writer) throws IOException {
+            switch (type) {
+                case DIRECTORY:
+                    writer.writeDirectory(path, mode);
+                    break;
+                case FILE:
+                    writer.writeFile(file, path, mode);
+                    break;
+                case MISSING:
+                    writer.writeMissing(path);
+                    break;
+                default:
+                    throw new AssertionError();
+            }
+        }
+    }
+
+    private static class Segment {
+        private final String treeName;
+        private final int rootType;
+        private final List<TreeEntry> entries = new ArrayList<TreeEntry>();
+        private long size;
+
+        Segment(String treeName, int rootType) {
+            this.treeName = treeName;
+            this.rootType = rootType;
+        }
+    }
+
+    private static class PendingSegment {
+        private final Segment segment;
+        private final Future<byte[]> packed;
+
+        PendingSegment(Segment segment, Future<byte[]> packed) {
+            this.segment = segment;
+            this.packed = packed;
+        }
+    }
+
+    private static class IndexEntry {
+        private final String treeName;
+        private final int entries;
+        private final long offset;
+        private final long length;
+
+        IndexEntry(String treeName, int entries, long offset, long length) {
+            this.treeName = treeName;
+            this.entries = entries;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static class OutputTree {
+        private final String name;
+        private final TreeType type;
+        private final File root;
+
+        OutputTree(String name, TreeType type, File root) {
+            this.name = name;
+            this.type = type;
+            this.root = root;
+        }
+    }
+
+    private static class UnpackedEntry {
+        private final String path;
+        private final File file;
+        private final RegularFileSnapshot snapshot;
+
+        UnpackedEntry(String path, File file, @Nullable RegularFileSnapshot snapshot) {
+            this.path = path;
+            this.file = file;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private static class SegmentResult {
+        private final List<UnpackedEntry> entries = new ArrayList<UnpackedEntry>();
+        private int tarEntries;
+    }
+
+    /**
+     * Writes the data as length-prefixed chunks, terminated by an empty chunk when closed. Does not close the underlying stream.
+     */
+    private static class ChunkedOutputStream extends OutputStream {
+        private final DataOutputStream output;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+
+        ChunkedOutputStream(DataOutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    writeChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void writeChunk() throws IOException {
+            output.writeInt(count);
+            output.write(buffer, 0, count);
+            count = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (count > 0) {
+                writeChunk();
+            }
+            output.writeInt(0);
+        }
+    }
+
+    /**
+     * Reads the data of a segment written by {@link ChunkedOutputStream}. Does not close the underlying stream.
+     */
+    private static class ChunkedInputStream extends InputStream {
+        private final DataInputStream input;
+        private int remaining;
+        private boolean finished;
+
+        ChunkedInputStream(DataInputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            remaining--;
+            return input.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int read = input.read(b, off, Math.min(len, remaining));
+            if (read < 0) {
+                throw new IllegalStateException("Cached entry format error, segment is incomplete.");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        private boolean nextChunk() throws IOException {
+            while (remaining == 0 && !finished) {
+                remaining = input.readInt();
+                if (remaining < 0) {
+                    throw new IllegalStateException("Cached entry format error, invalid chunk length: " + remaining);
+                }
+                finished = remaining == 0;
+            }
+            return remaining > 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Skip the rest of the segment, so the next segment can be read
+            ByteStreams.exhaust(this);
+        }
+    }
+}
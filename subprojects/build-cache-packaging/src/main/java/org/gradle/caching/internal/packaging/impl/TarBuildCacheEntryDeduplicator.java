@@ -0,0 +1,208 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.caching.internal.packaging.impl;
+
+import com.google.common.io.ByteStreams;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.gradle.api.Action;
+import org.gradle.caching.local.internal.BuildCacheBlobStore;
+import org.gradle.caching.local.internal.BuildCacheEntryDeduplicator;
+import org.gradle.internal.hash.StreamHasher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Splits the TAR entries written by {@link TarBuildCacheEntryPacker} into a manifest and blobs.
+ *
+ * The manifest is an uncompressed TAR file with the same entries as the original one.
+ * Regular files in the output trees are stored as empty TAR entries, with a PAX header containing the hash of their content.
+ * The blobs are addressed by the same hash that is used for the output snapshots, and are looked up in the blob store of the cache holding the manifest,
+ * so the manifests don't depend on the location of the cache.
+ */
+public class TarBuildCacheEntryDeduplicator implements BuildCacheEntryDeduplicator {
+    static final String BLOB_HASH_HEADER = "GRADLE.hash";
+
+    private static final String TREE_PREFIX = "tree-";
+    private static final int IN_MEMORY_BLOB_LIMIT = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] MANIFEST_HEADER = manifestHeader();
+
+    private final StreamHasher streamHasher;
+
+    public TarBuildCacheEntryDeduplicator(StreamHasher streamHasher) {
+        this.streamHasher = streamHasher;
+    }
+
+    @Override
+    public void deduplicate(File entry, OutputStream manifest, BuildCacheBlobStore blobStore) throws IOException {
+        try (TarArchiveInputStream tarInput = new TarArchiveInputStream(BuildCacheEntryCompression.decompress(new FileInputStream(entry)), "utf-8");
+             TarArchiveOutputStream tarOutput = createOutput(manifest)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            TarArchiveEntry tarEntry;
+            while ((tarEntry = tarInput.getNextTarEntry()) != null) {
+                if (tarEntry.isFile() && tarEntry.getSize() > 0 && tarEntry.getName().startsWith(TREE_PREFIX)) {
+                    String hash;
+                    if (tarEntry.getSize() <= IN_MEMORY_BLOB_LIMIT) {
+                        content.reset();
+                        ByteStreams.copy(tarInput, content);
+                        byte[] bytes = content.toByteArray();
+                        hash = streamHasher.hash(new ByteArrayInputStream(bytes)).toString();
+                        blobStore.store(hash, bytes);
+                    } else {
+                        File tempBlob = blobStore.createTempBlob();
+                        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(tempBlob), BUFFER_SIZE)) {
+                            hash = streamHasher.hashCopy(tarInput, output).toString();
+                        }
+                        blobStore.store(hash, tempBlob);
+                    }
+                    TarArchiveEntry manifestEntry = copyOf(tarEntry, 0);
+                    manifestEntry.addPaxHeader(BLOB_HASH_HEADER, hash);
+                    tarOutput.putArchiveEntry(manifestEntry);
+                } else {
+                    tarOutput.putArchiveEntry(copyOf(tarEntry, tarEntry.getSize()));
+                    ByteStreams.copy(tarInput, tarOutput);
+                }
+                tarOutput.closeArchiveEntry();
+            }
+        }
+    }
+
+    @Override
+    public boolean hasManifestFormat(File file) throws IOException {
+        try (TarArchiveInputStream tarInput = openManifest(file)) {
+            return tarInput != null;
+        }
+    }
+
+    @Override
+    public boolean isManifest(File file) throws IOException {
+        try (TarArchiveInputStream tarInput = openManifest(file)) {
+            if (tarInput == null) {
+                return false;
+            }
+            TarArchiveEntry tarEntry;
+            while ((tarEntry = tarInput.getNextTarEntry()) != null) {
+                if (tarEntry.getExtraPaxHeader(BLOB_HASH_HEADER) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public void restore(File manifest, OutputStream entry, BuildCacheBlobStore blobStore) throws IOException {
+        try (TarArchiveInputStream tarInput = openManifest(manifest);
+             TarArchiveOutputStream tarOutput = createOutput(entry)) {
+            if (tarInput == null) {
+                throw new IllegalStateException("Not a build cache manifest: " + manifest);
+            }
+            TarArchiveEntry tarEntry;
+            while ((tarEntry = tarInput.getNextTarEntry()) != null) {
+                String hash = tarEntry.getExtraPaxHeader(BLOB_HASH_HEADER);
+                if (hash != null) {
+                    File blob = blobStore.getBlobFile(hash);
+                    tarOutput.putArchiveEntry(copyOf(tarEntry, blob.length()));
+                    try (InputStream blobInput = new FileInputStream(blob)) {
+                        ByteStreams.copy(blobInput, tarOutput);
+                    }
+                } else {
+                    tarOutput.putArchiveEntry(copyOf(tarEntry, tarEntry.getSize()));
+                    ByteStreams.copy(tarInput, tarOutput);
+                }
+                tarOutput.closeArchiveEntry();
+            }
+        }
+    }
+
+    @Override
+    public void visitReferencedBlobs(File file, Action<? super String> visitor) throws IOException {
+        try (TarArchiveInputStream tarInput = openManifest(file)) {
+            if (tarInput == null) {
+                return;
+            }
+            TarArchiveEntry tarEntry;
+            while ((tarEntry = tarInput.getNextTarEntry()) != null) {
+                String hash = tarEntry.getExtraPaxHeader(BLOB_HASH_HEADER);
+                if (hash != null) {
+                    visitor.execute(hash);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the given file as a manifest, or returns {@code null} when it is a compressed entry, which cannot be a manifest.
+     */
+    private static TarArchiveInputStream openManifest(File file) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            byte[] header = new byte[MANIFEST_HEADER.length];
+            int read = ByteStreams.read(input, header, 0, header.length);
+            if (read == header.length && Arrays.equals(header, MANIFEST_HEADER)) {
+                return new TarArchiveInputStream(input, "utf-8");
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        input.close();
+        return null;
+    }
+
+    /**
+     * Copies the entry instead of modifying it, as the input stream still uses it to find the next entry.
+     */
+    private static TarArchiveEntry copyOf(TarArchiveEntry entry, long size) {
+        TarArchiveEntry copy = new TarArchiveEntry(entry.getName(), true);
+        copy.setMode(entry.getMode());
+        copy.setModTime(entry.getModTime());
+        copy.setSize(size);
+        return copy;
+    }
+
+    private static TarArchiveOutputStream createOutput(OutputStream output) throws IOException {
+        TarArchiveOutputStream tarOutput = new TarArchiveOutputStream(BuildCacheEntryCompression.NONE.compress(new BufferedOutputStream(output, BUFFER_SIZE)), "utf-8");
+        tarOutput.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tarOutput.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        tarOutput.setAddPaxHeadersForNonAsciiNames(true);
+        return tarOutput;
+    }
+
+    private static byte[] manifestHeader() {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try {
+            BuildCacheEntryCompression.NONE.writeMarker(header);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return header.toByteArray();
+    }
+}
@@ -32,6 +32,7 @@ import org.gradle.caching.internal.origin.OriginMetadata;
 import org.gradle.caching.internal.origin.OriginReader;
 import org.gradle.caching.internal.origin.OriginWriter;
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.caching.local.internal.BuildCacheBlobStore;
 import org.gradle.internal.IoActions;
 import org.gradle.internal.MutableLong;
 import org.gradle.internal.file.FileType;
@@ -80,8 +81,8 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
         int PERM_MASK           = 07777;
     }
 
-    private static final String METADATA_PATH = "METADATA";
-    private static final Pattern TREE_PATH = Pattern.compile("(missing-)?tree-([^/]+)(?:/(.*))?");
+    static final String METADATA_PATH = "METADATA";
+    static final Pattern TREE_PATH = Pattern.compile("(missing-)?tree-([^/]+)(?:/(.*))?");
     private static final int BUFFER_SIZE = 64 * 1024;
     private static final ThreadLocal<byte[]> COPY_BUFFERS = new ThreadLocal<byte[]>() {
         @Override
@@ -109,16 +110,20 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
             bufferedOutput = new BufferedOutputStream(output);
         }
         try (TarArchiveOutputStream tarOutput = new TarArchiveOutputStream(bufferedOutput, "utf-8")) {
-            tarOutput.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
-            tarOutput.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
-            tarOutput.setAddPaxHeadersForNonAsciiNames(true);
+            configure(tarOutput);
             packMetadata(writeOrigin, tarOutput);
             long entryCount = pack(entity, fingerprints, tarOutput);
             return new PackResult(entryCount + 1);
         }
     }
 
-    private void packMetadata(OriginWriter writeMetadata, TarArchiveOutputStream tarOutput) throws IOException {
+    static void configure(TarArchiveOutputStream tarOutput) {
+        tarOutput.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tarOutput.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        tarOutput.setAddPaxHeadersForNonAsciiNames(true);
+    }
+
+    static void packMetadata(OriginWriter writeMetadata, TarArchiveOutputStream tarOutput) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         writeMetadata.execute(baos);
         createTarEntry(METADATA_PATH, baos.size(), UnixPermissions.FILE_FLAG | UnixPermissions.DEFAULT_FILE_PERM, tarOutput);
@@ -131,7 +136,7 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
         entity.visitOutputTrees((treeName, type, root) -> {
             CurrentFileCollectionFingerprint fingerprint = fingerprints.get(treeName);
             try {
-                entries.increment(packTree(treeName, type, fingerprint, tarOutput));
+                entries.increment(packTree(treeName, type, fingerprint, new TarTreeEntryWriter(tarOutput)));
             } catch (Exception ex) {
                 throw new GradleException(String.format("Could not pack tree '%s': %s", treeName, ex.getMessage()), ex);
             }
@@ -139,8 +144,13 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
         return entries.get();
     }
 
-    private long packTree(String name, TreeType type, CurrentFileCollectionFingerprint fingerprint, TarArchiveOutputStream tarOutput) {
-        PackingVisitor packingVisitor = new PackingVisitor(tarOutput, name, type, fileSystem);
+    /**
+     * Visits the entries of the given output tree in the order they are packed.
+     *
+     * @return the number of entries
+     */
+    long packTree(String name, TreeType type, CurrentFileCollectionFingerprint fingerprint, TreeEntryWriter writer) {
+        PackingVisitor packingVisitor = new PackingVisitor(writer, name, type, fileSystem);
         fingerprint.accept(packingVisitor);
         return packingVisitor.finish();
     }
@@ -153,13 +163,13 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
     }
 
     @Override
-    public UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
+    public UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin, @Nullable BuildCacheBlobStore blobStore) throws IOException {
         try (TarArchiveInputStream tarInput = new TarArchiveInputStream(input)) {
-            return unpack(entity, tarInput, readOrigin);
+            return unpack(entity, tarInput, readOrigin, blobStore);
         }
     }
 
-    private UnpackResult unpack(CacheableEntity entity, TarArchiveInputStream tarInput, OriginReader readOriginAction) throws IOException {
+    private UnpackResult unpack(CacheableEntity entity, TarArchiveInputStream tarInput, OriginReader readOriginAction, @Nullable BuildCacheBlobStore blobStore) throws IOException {
         ImmutableMap.Builder<String, CacheableTree> treesBuilder = ImmutableMap.builder();
         entity.visitOutputTrees((name, type, root) -> {
             treesBuilder.put(name, new CacheableTree(type, root));
@@ -195,7 +205,7 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
 
                 boolean missing = matcher.group(1) != null;
                 String childPath = matcher.group(3);
-                tarEntry = unpackTree(treeName, tree.getType(), tree.getRoot(), tarInput, tarEntry, childPath, missing, snapshots, entries);
+                tarEntry = unpackTree(treeName, tree.getType(), tree.getRoot(), tarInput, tarEntry, childPath, missing, snapshots, entries, blobStore);
             }
         }
         if (originMetadata == null) {
@@ -224,7 +234,7 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
     }
 
     @Nullable
-    private TarArchiveEntry unpackTree(String treeName, TreeType treeType, File treeRoot, TarArchiveInputStream input, TarArchiveEntry rootEntry, String childPath, boolean missing, Map<String, FileSystemLocationSnapshot> snapshots, MutableLong entries) throws IOException {
+    private TarArchiveEntry unpackTree(String treeName, TreeType treeType, File treeRoot, TarArchiveInputStream input, TarArchiveEntry rootEntry, String childPath, boolean missing, Map<String, FileSystemLocationSnapshot> snapshots, MutableLong entries, @Nullable BuildCacheBlobStore blobStore) throws IOException {
         boolean isDirEntry = rootEntry.isDirectory();
         boolean root = Strings.isNullOrEmpty(childPath);
         if (!root) {
@@ -241,7 +251,7 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
             if (isDirEntry) {
                 throw new IllegalStateException("Should be a file: " + treeName);
             }
-            RegularFileSnapshot fileSnapshot = unpackFile(input, rootEntry, treeRoot, treeRoot.getName());
+            RegularFileSnapshot fileSnapshot = unpackFile(input, rootEntry, treeRoot, treeRoot.getName(), blobStore);
             snapshots.put(treeName, fileSnapshot);
             return input.getNextTarEntry();
         }
@@ -251,10 +261,10 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
         }
         chmodUnpackedFile(rootEntry, treeRoot);
 
-        return unpackDirectoryTree(input, rootEntry, snapshots, entries, treeRoot, treeName);
+        return unpackDirectoryTree(input, rootEntry, snapshots, entries, treeRoot, treeName, blobStore);
     }
 
-    private void unpackMissingFile(File treeRoot) throws IOException {
+    static void unpackMissingFile(File treeRoot) throws IOException {
         if (!makeDirectory(treeRoot.getParentFile())) {
             // Make sure tree is removed if it exists already
             if (treeRoot.exists()) {
@@ -263,11 +273,26 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
         }
     }
 
-    private RegularFileSnapshot unpackFile(TarArchiveInputStream input, TarArchiveEntry entry, File file, String fileName) throws IOException {
+    /**
+     * Unpacks a regular file. Files referring to a blob are only accepted when a blob store is given.
+     */
+    RegularFileSnapshot unpackFile(TarArchiveInputStream input, TarArchiveEntry entry, File file, String fileName, @Nullable BuildCacheBlobStore blobStore) throws IOException {
+        String blobHash = entry.getExtraPaxHeader(TarBuildCacheEntryDeduplicator.BLOB_HASH_HEADER);
+        File blob = null;
+        if (blobHash != null) {
+            if (blobStore == null) {
+                throw new IllegalStateException(String.format("Cached entry format error, %s refers to a blob, which is only supported for entries of the local build cache", entry.getName()));
+            }
+            blob = blobStore.getBlobFile(blobHash);
+        }
         OutputStream output = new FileOutputStream(file);
         HashCode hash;
         try {
-            hash = streamHasher.hashCopy(input, output);
+            if (blob == null) {
+                hash = streamHasher.hashCopy(input, output);
+            } else {
+                hash = copyBlob(blob, blobHash, output);
+            }
             chmodUnpackedFile(entry, file);
         } finally {
             IoActions.closeQuietly(output);
@@ -277,8 +302,23 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
         return new RegularFileSnapshot(internedAbsolutePath, internedFileName, hash, file.lastModified());
     }
 
+    /**
+     * Copies the content of a file in an entry from a content-addressed cache.
+     * The blob is copied rather than linked, as tasks may modify their outputs in place, which would modify the blob as well.
+     */
+    private HashCode copyBlob(File blob, String expectedHash, OutputStream output) throws IOException {
+        HashCode hash;
+        try (InputStream blobInput = new FileInputStream(blob)) {
+            hash = streamHasher.hashCopy(blobInput, output);
+        }
+        if (!hash.toString().equals(expectedHash)) {
+            throw new IllegalStateException(String.format("Cached entry format error, blob %s has been modified", blob));
+        }
+        return hash;
+    }
+
     @Nullable
-    private TarArchiveEntry unpackDirectoryTree(TarArchiveInputStream input, TarArchiveEntry rootEntry, Map<String, FileSystemLocationSnapshot> snapshots, MutableLong entries, File treeRoot, String treeName) throws IOException {
+    private TarArchiveEntry unpackDirectoryTree(TarArchiveInputStream input, TarArchiveEntry rootEntry, Map<String, FileSystemLocationSnapshot> snapshots, MutableLong entries, File treeRoot, String treeName, @Nullable BuildCacheBlobStore blobStore) throws IOException {
         RelativePathParser parser = new RelativePathParser();
         parser.rootPath(rootEntry.getName());
 
@@ -308,7 +348,7 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
                 String internedDirName = stringInterner.intern(parser.getName());
                 builder.preVisitDirectory(internedAbsolutePath, internedDirName);
             } else {
-                RegularFileSnapshot fileSnapshot = unpackFile(input, entry, file, parser.getName());
+                RegularFileSnapshot fileSnapshot = unpackFile(input, entry, file, parser.getName(), blobStore);
                 builder.visit(fileSnapshot);
             }
         }
@@ -321,7 +361,7 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
         return entry;
     }
 
-    private void chmodUnpackedFile(TarArchiveEntry entry, File file) {
+    void chmodUnpackedFile(TarArchiveEntry entry, File file) {
         fileSystem.chmod(file, entry.getMode() & UnixPermissions.PERM_MASK);
     }
 
@@ -333,7 +373,7 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
         }
     }
 
-    private static String unescape(String name) {
+    static String unescape(String name) {
         try {
             return URLDecoder.decode(name, "utf-8");
         } catch (UnsupportedEncodingException e) {
@@ -341,9 +381,52 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
         }
     }
 
+    /**
+     * Receives the entries of an output tree in the order they are packed.
+     */
+    interface TreeEntryWriter {
+        void writeDirectory(String path, int mode) throws IOException;
+
+        void writeFile(File file, String path, int mode) throws IOException;
+
+        void writeMissing(String path) throws IOException;
+    }
+
+    static class TarTreeEntryWriter implements TreeEntryWriter {
+        private final TarArchiveOutputStream tarOutput;
+
+        TarTreeEntryWriter(TarArchiveOutputStream tarOutput) {
+            this.tarOutput = tarOutput;
+        }
+
+        @Override
+        public void writeDirectory(String path, int mode) throws IOException {
+            createTarEntry(path + "/", 0, UnixPermissions.DIR_FLAG | mode, tarOutput);
+            tarOutput.closeArchiveEntry();
+        }
+
+        @Override
+        public void writeFile(File file, String path, int mode) throws IOException {
+            createTarEntry(path, file.length(), UnixPermissions.FILE_FLAG | mode, tarOutput);
+            FileInputStream input = new FileInputStream(file);
+            try {
+                IOUtils.copyLarge(input, tarOutput, COPY_BUFFERS.get());
+            } finally {
+                IoActions.closeQuietly(input);
+            }
+            tarOutput.closeArchiveEntry();
+        }
+
+        @Override
+        public void writeMissing(String path) throws IOException {
+            createTarEntry("missing-" + path, 0, UnixPermissions.FILE_FLAG | UnixPermissions.DEFAULT_FILE_PERM, tarOutput);
+            tarOutput.closeArchiveEntry();
+        }
+    }
+
     private static class PackingVisitor implements FileSystemSnapshotVisitor {
         private final RelativePathStringTracker relativePathStringTracker;
-        private final TarArchiveOutputStream tarOutput;
+        private final TreeEntryWriter writer;
         private final String treePath;
         private final String treeRoot;
         private final FileSystem fileSystem;
@@ -351,8 +434,8 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
 
         private long entries;
 
-        public PackingVisitor(TarArchiveOutputStream tarOutput, String treeName, TreeType type, FileSystem fileSystem) {
-            this.tarOutput = tarOutput;
+        public PackingVisitor(TreeEntryWriter writer, String treeName, TreeType type, FileSystem fileSystem) {
+            this.writer = writer;
             this.treePath = "tree-" + escape(treeName);
             this.treeRoot = treePath + "/";
             this.type = type;
@@ -367,7 +450,7 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
             assertCorrectType(root, directorySnapshot);
             String targetPath = getTargetPath(root);
             int mode = root ? UnixPermissions.DEFAULT_DIR_PERM : fileSystem.getUnixMode(new File(directorySnapshot.getAbsolutePath()));
-            storeDirectoryEntry(targetPath, mode, tarOutput);
+            storeDirectoryEntry(targetPath, mode);
             entries++;
             return true;
         }
@@ -378,12 +461,12 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
             relativePathStringTracker.enter(fileSnapshot);
             String targetPath = getTargetPath(root);
             if (fileSnapshot.getType() == FileType.Missing) {
-                storeMissingTree(targetPath, tarOutput);
+                storeMissingTree(targetPath);
             } else {
                 assertCorrectType(root, fileSnapshot);
                 File file = new File(fileSnapshot.getAbsolutePath());
                 int mode = fileSystem.getUnixMode(file);
-                storeFileEntry(file, targetPath, file.length(), mode, tarOutput);
+                storeFileEntry(file, targetPath, mode);
             }
             relativePathStringTracker.leave();
             entries++;
@@ -396,7 +479,7 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
 
         public long finish() {
             if (entries == 0) {
-                storeMissingTree(treePath, tarOutput);
+                storeMissingTree(treePath);
                 entries++;
             }
             return entries;
@@ -429,33 +512,24 @@ public class TarBuildCacheEntryPacker implements BuildCacheEntryPacker {
             return treeRoot + relativePath;
         }
 
-        private void storeMissingTree(String treePath, TarArchiveOutputStream tarOutput) {
+        private void storeMissingTree(String treePath) {
             try {
-                createTarEntry("missing-" + treePath, 0, UnixPermissions.FILE_FLAG | UnixPermissions.DEFAULT_FILE_PERM, tarOutput);
-                tarOutput.closeArchiveEntry();
+                writer.writeMissing(treePath);
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
         }
-        private void storeDirectoryEntry(String path, int mode, TarArchiveOutputStream tarOutput) {
+        private void storeDirectoryEntry(String path, int mode) {
             try {
-                createTarEntry(path + "/", 0, UnixPermissions.DIR_FLAG | mode, tarOutput);
-                tarOutput.closeArchiveEntry();
+                writer.writeDirectory(path, mode);
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
         }
 
-        private void storeFileEntry(File inputFile, String path, long size, int mode, TarArchiveOutputStream tarOutput) {
+        private void storeFileEntry(File inputFile, String path, int mode) {
             try {
-                createTarEntry(path, size, UnixPermissions.FILE_FLAG | mode, tarOutput);
-                FileInputStream input = new FileInputStream(inputFile);
-                try {
-                    IOUtils.copyLarge(input, tarOutput, COPY_BUFFERS.get());
-                } finally {
-                    IoActions.closeQuietly(input);
-                }
-                tarOutput.closeArchiveEntry();
+                writer.writeFile(inputFile, path, mode);
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
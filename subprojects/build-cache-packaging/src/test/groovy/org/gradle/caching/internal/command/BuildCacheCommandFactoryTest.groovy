@@ -80,7 +80,7 @@ class BuildCacheCommandFactoryTest extends Specification {
         1 * originFactory.createReader(entity) >> originReader
 
         then:
-        1 * packer.unpack(entity, input, originReader) >> new BuildCacheEntryPacker.UnpackResult(originMetadata, 123L, fileSnapshots)
+        1 * packer.unpack(entity, input, originReader, null) >> new BuildCacheEntryPacker.UnpackResult(originMetadata, 123L, fileSnapshots)
 
         then:
         1 * fileSystemMirror.putMetadata(outputDir.absolutePath, DefaultFileMetadata.directory())
@@ -118,7 +118,7 @@ class BuildCacheCommandFactoryTest extends Specification {
         1 * originFactory.createReader(entity) >> originReader
 
         then:
-        1 * packer.unpack(entity, input, originReader) >> {
+        1 * packer.unpack(entity, input, originReader, null) >> {
             outputFile << "partially extracted output fil..."
             throw new RuntimeException("unpacking error")
         }
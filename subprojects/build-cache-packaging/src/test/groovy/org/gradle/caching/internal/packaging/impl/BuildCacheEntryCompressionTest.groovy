@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl
+
+import org.gradle.caching.BuildCacheException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.zip.GZIPOutputStream
+
+class BuildCacheEntryCompressionTest extends Specification {
+    def content = ("build cache entry " * 1000).bytes
+
+    @Unroll
+    def "can read entry compressed with #compression"() {
+        expect:
+        decompress(compress(compression, content)) == content
+
+        where:
+        compression << BuildCacheEntryCompression.values()
+    }
+
+    def "can read gzip entry without format marker"() {
+        def output = new ByteArrayOutputStream()
+        new GZIPOutputStream(output).withStream { it.write(content) }
+
+        expect:
+        decompress(output.toByteArray()) == content
+    }
+
+    def "gzip entries have no format marker"() {
+        expect:
+        isGzip(compress(compression, content))
+
+        where:
+        compression << [BuildCacheEntryCompression.GZIP, BuildCacheEntryCompression.GZIP_FAST]
+    }
+
+    def "fails for entry with unknown format"() {
+        when:
+        decompress("some tar".bytes)
+
+        then:
+        def e = thrown(BuildCacheException)
+        e.message == "Build cache entry uses an unknown format"
+    }
+
+    def "fails for entry with unknown compression"() {
+        def entry = new ByteArrayOutputStream()
+        entry.write("GRBC".bytes)
+        entry.write(42)
+
+        when:
+        decompress(entry.toByteArray())
+
+        then:
+        def e = thrown(BuildCacheException)
+        e.message == "Build cache entry uses an unknown compression: 42"
+    }
+
+    def "can find compression by display name"() {
+        expect:
+        BuildCacheEntryCompression.forDisplayName("gzip-fast") == BuildCacheEntryCompression.GZIP_FAST
+
+        when:
+        BuildCacheEntryCompression.forDisplayName("lzma")
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unknown build cache entry compression 'lzma'."
+    }
+
+    def "transcodes entry to other compression"() {
+        def transcoder = new CompressionBuildCacheEntryTranscoder(BuildCacheEntryCompression.GZIP)
+        def output = new ByteArrayOutputStream()
+
+        when:
+        transcoder.transcode(new ByteArrayInputStream(compress(BuildCacheEntryCompression.NONE, content)), output)
+
+        then:
+        isGzip(output.toByteArray())
+        decompress(output.toByteArray()) == content
+    }
+
+    private static byte[] compress(BuildCacheEntryCompression compression, byte[] content) {
+        def output = new ByteArrayOutputStream()
+        compression.compress(output).withStream { it.write(content) }
+        output.toByteArray()
+    }
+
+    private static boolean isGzip(byte[] entry) {
+        entry[0] == (byte) 0x1f && entry[1] == (byte) 0x8b
+    }
+
+    private static byte[] decompress(byte[] entry) {
+        BuildCacheEntryCompression.decompress(new ByteArrayInputStream(entry)).bytes
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.caching.internal.packaging.impl
+
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.caching.internal.CacheableEntity
+import org.gradle.caching.internal.origin.OriginMetadata
+import org.gradle.caching.internal.origin.OriginReader
+import org.gradle.caching.internal.origin.OriginWriter
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.concurrent.ManagedExecutor
+import org.gradle.internal.file.TreeType
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint
+import org.gradle.internal.fingerprint.impl.AbsolutePathFingerprintingStrategy
+import org.gradle.internal.fingerprint.impl.DefaultCurrentFileCollectionFingerprint
+import org.gradle.internal.hash.DefaultStreamHasher
+import org.gradle.internal.hash.TestFileHasher
+import org.gradle.internal.id.UniqueId
+import org.gradle.internal.snapshot.WellKnownFileLocations
+import org.gradle.internal.snapshot.impl.DefaultFileSystemMirror
+import org.gradle.internal.snapshot.impl.DefaultFileSystemSnapshotter
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.testing.internal.util.Specification
+import org.junit.Rule
+
+import java.util.concurrent.Callable
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.gradle.internal.file.TreeType.DIRECTORY
+import static org.gradle.internal.file.TreeType.FILE
+
+@CleanupTestDirectory
+class SegmentedBuildCacheEntryPackerTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def originMetadata = new OriginMetadata(UniqueId.generate(), 10)
+    def writeOrigin = Stub(OriginWriter)
+    def readOrigin = Stub(OriginReader) {
+        execute(_) >> originMetadata
+    }
+
+    def fileSystem = TestFiles.fileSystem()
+    def stringInterner = new StringInterner()
+    def tarPacker = new TarBuildCacheEntryPacker(fileSystem, new DefaultStreamHasher(), stringInterner)
+    def sequentialPacker = new CompressingBuildCacheEntryPacker(tarPacker, BuildCacheEntryCompression.GZIP)
+    def executorFactory = new DefaultExecutorFactory()
+    def snapshotter = new DefaultFileSystemSnapshotter(new TestFileHasher(), stringInterner, fileSystem, new DefaultFileSystemMirror(Stub(WellKnownFileLocations)))
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def "can pack and unpack entry in segments"() {
+        def sourceDir = temporaryFolder.file("source-dir").createDir()
+        def sourceFile = temporaryFolder.file("source-file") << "single file"
+        1200.times { index ->
+            sourceDir.file("dir-${index % 7}/sub-${index % 3}/file-${index}.txt") << "content ${index}"
+        }
+        sourceDir.file("large.bin").bytes = new byte[5 * 1024 * 1024]
+        sourceDir.file("empty").createDir()
+        def packer = segmentedPacker(true)
+        def output = new ByteArrayOutputStream()
+
+        when:
+        def packResult = packer.pack(entity(
+            tree("dir", DIRECTORY, sourceDir),
+            tree("file", FILE, sourceFile),
+            tree("missing", FILE, temporaryFolder.file("source-missing"))
+        ), fingerprints(dir: sourceDir, file: sourceFile, missing: temporaryFolder.file("source-missing")), output, writeOrigin)
+
+        then:
+        SegmentedBuildCacheEntryPacker.isSegmented(SegmentedBuildCacheEntryPacker.withHeaderPushback(new ByteArrayInputStream(output.toByteArray())))
+
+        when:
+        def targetDir = temporaryFolder.file("target-dir")
+        def targetFile = temporaryFolder.file("target-file")
+        def targetMissing = temporaryFolder.file("target-missing") << "stale"
+        def result = packer.unpack(entity(
+            tree("dir", DIRECTORY, targetDir),
+            tree("file", FILE, targetFile),
+            tree("missing", FILE, targetMissing)
+        ), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        result.originMetadata == originMetadata
+        result.entries == packResult.entries
+        !targetMissing.exists()
+        targetFile.text == "single file"
+        targetDir.file("dir-3/sub-1/file-1000.txt").text == "content 1000"
+        targetDir.file("large.bin").length() == 5 * 1024 * 1024
+        targetDir.file("empty").directory
+        result.snapshots.keySet() == ["dir", "file"] as Set
+        result.snapshots["dir"].hash == snapshotter.snapshot(targetDir).hash
+        result.snapshots["file"].hash == snapshotter.snapshot(targetFile).hash
+
+        cleanup:
+        packer.stop()
+    }
+
+    def "unpacks the same entry as the sequential packer"() {
+        def sourceDir = temporaryFolder.file("source").createDir()
+        50.times { index ->
+            sourceDir.file("sub-${index % 5}/file-${index}.txt") << "content ${index}"
+        }
+        def sequentialOutput = new ByteArrayOutputStream()
+        def segmentedOutput = new ByteArrayOutputStream()
+        sequentialPacker.pack(entity(tree("dir", DIRECTORY, sourceDir)), fingerprints(dir: sourceDir), sequentialOutput, writeOrigin)
+        segmentedPacker(true).pack(entity(tree("dir", DIRECTORY, sourceDir)), fingerprints(dir: sourceDir), segmentedOutput, writeOrigin)
+
+        when:
+        def sequentialResult = sequentialPacker.unpack(entity(tree("dir", DIRECTORY, temporaryFolder.file("sequential"))), new ByteArrayInputStream(sequentialOutput.toByteArray()), readOrigin)
+        def segmentedResult = segmentedPacker(true).unpack(entity(tree("dir", DIRECTORY, temporaryFolder.file("segmented"))), new ByteArrayInputStream(segmentedOutput.toByteArray()), readOrigin)
+
+        then:
+        segmentedResult.entries == sequentialResult.entries
+        segmentedResult.snapshots["dir"].hash == sequentialResult.snapshots["dir"].hash
+    }
+
+    def "limits the number of segments unpacked in the background"() {
+        def sources = (0..<10).collect { index -> temporaryFolder.file("source-${index}") << "content ${index}" }
+        def output = new ByteArrayOutputStream()
+        segmentedPacker(true).pack(entity(*sources.withIndex().collect { source, index -> tree("file-${index}", FILE, source) }), fingerprints(sources.withIndex().collectEntries { source, index -> [("file-${index}".toString()): source] }), output, writeOrigin)
+
+        def delegate = executorFactory.create("test", 1)
+        def unfinished = new AtomicInteger()
+        def maxUnfinished = new AtomicInteger()
+        def executor = [
+            submit: { task ->
+                maxUnfinished.accumulateAndGet(unfinished.incrementAndGet(), Math.&max)
+                delegate.submit({
+                    try {
+                        Thread.sleep(20)
+                        return (task as Callable).call()
+                    } finally {
+                        unfinished.decrementAndGet()
+                    }
+                } as Callable)
+            },
+            stop: { delegate.stop() }
+        ] as ManagedExecutor
+        def packer = new SegmentedBuildCacheEntryPacker(sequentialPacker, tarPacker, BuildCacheEntryCompression.GZIP, stringInterner, executor, 1, true)
+        def targets = (0..<10).collect { index -> temporaryFolder.file("target-${index}") }
+
+        when:
+        packer.unpack(entity(*targets.withIndex().collect { target, index -> tree("file-${index}", FILE, target) }), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        targets.withIndex().every { target, index -> target.text == "content ${index}" }
+        maxUnfinished.get() <= 3
+    }
+
+    def "delegates entries which are not segmented"() {
+        def sourceFile = temporaryFolder.file("source") << "output"
+        def targetFile = temporaryFolder.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        segmentedPacker(false).pack(entity(tree("file", FILE, sourceFile)), fingerprints(file: sourceFile), output, writeOrigin)
+
+        then:
+        !SegmentedBuildCacheEntryPacker.isSegmented(SegmentedBuildCacheEntryPacker.withHeaderPushback(new ByteArrayInputStream(output.toByteArray())))
+
+        when:
+        segmentedPacker(true).unpack(entity(tree("file", FILE, targetFile)), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        targetFile.text == "output"
+    }
+
+    def "fails to unpack truncated entry"() {
+        def sourceFile = temporaryFolder.file("source") << "output"
+        def output = new ByteArrayOutputStream()
+        def packer = segmentedPacker(true)
+        packer.pack(entity(tree("file", FILE, sourceFile)), fingerprints(file: sourceFile), output, writeOrigin)
+        def bytes = output.toByteArray()
+
+        when:
+        packer.unpack(entity(tree("file", FILE, temporaryFolder.file("target"))), new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 8)), readOrigin)
+
+        then:
+        thrown(EOFException)
+    }
+
+    def "transcoder leaves segmented entries unchanged"() {
+        def sourceFile = temporaryFolder.file("source") << "output"
+        def output = new ByteArrayOutputStream()
+        segmentedPacker(true).pack(entity(tree("file", FILE, sourceFile)), fingerprints(file: sourceFile), output, writeOrigin)
+        def transcoded = new ByteArrayOutputStream()
+
+        when:
+        new CompressionBuildCacheEntryTranscoder(BuildCacheEntryCompression.NONE).transcode(new ByteArrayInputStream(output.toByteArray()), transcoded)
+
+        then:
+        transcoded.toByteArray() == output.toByteArray()
+    }
+
+    private SegmentedBuildCacheEntryPacker segmentedPacker(boolean segmented) {
+        new SegmentedBuildCacheEntryPacker(sequentialPacker, tarPacker, BuildCacheEntryCompression.GZIP, stringInterner, executorFactory.create("test", 4), 4, segmented)
+    }
+
+    private Map<String, CurrentFileCollectionFingerprint> fingerprints(Map<String, File> roots) {
+        roots.collectEntries { name, root ->
+            [(name): DefaultCurrentFileCollectionFingerprint.from([snapshotter.snapshot(root)], AbsolutePathFingerprintingStrategy.IGNORE_MISSING)]
+        }
+    }
+
+    private static List tree(String name, TreeType type, File root) {
+        [name, type, root]
+    }
+
+    private CacheableEntity entity(List... trees) {
+        Stub(CacheableEntity) {
+            visitOutputTrees(_) >> { CacheableEntity.CacheableTreeVisitor visitor ->
+                trees.each { visitor.visitOutputTree(it[0] as String, it[1] as TreeType, it[2] as File) }
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.gradle.caching.internal.CacheableEntity
 import org.gradle.caching.internal.TestCacheableTree
 import org.gradle.caching.internal.origin.OriginReader
 import org.gradle.caching.internal.origin.OriginWriter
+import org.gradle.caching.local.internal.BuildCacheBlobStore
 import org.gradle.internal.file.TreeType
 import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint
 import org.gradle.internal.fingerprint.FingerprintingStrategy
@@ -324,6 +325,102 @@ class TarBuildCacheEntryPackerTest extends Specification {
         0 * _
     }
 
+    def "can unpack entry split into manifest and blobs"() {
+        def sourceOutputDir = temporaryFolder.file("source").createDir()
+        sourceOutputDir.file("data.txt") << "output"
+        sourceOutputDir.file("copy.txt") << "output"
+        def targetOutputDir = temporaryFolder.file("target").createDir()
+        def restoredOutputDir = temporaryFolder.file("restored").createDir()
+        def entry = temporaryFolder.file("entry")
+        def manifest = temporaryFolder.file("manifest")
+        def restored = temporaryFolder.file("restored-entry")
+        def blobStore = new BuildCacheBlobStore(temporaryFolder.file("blobs"))
+        def deduplicator = new TarBuildCacheEntryDeduplicator(streamHasher)
+        def referencedBlobs = [] as Set
+
+        when:
+        entry.withOutputStream { pack BuildCacheEntryCompression.NONE.compress(it), prop(DIRECTORY, sourceOutputDir) }
+        manifest.withOutputStream { deduplicator.deduplicate(entry, it, blobStore) }
+        deduplicator.visitReferencedBlobs(manifest) { referencedBlobs << it }
+        manifest.withInputStream { packer.unpack(entity(prop(DIRECTORY, targetOutputDir)), BuildCacheEntryCompression.decompress(it), readOrigin, blobStore) }
+
+        then:
+        deduplicator.isManifest(manifest)
+        !deduplicator.isManifest(entry)
+        referencedBlobs.size() == 1
+        blobStore.getBlobFile(referencedBlobs.first()).text == "output"
+        targetOutputDir.file("data.txt").text == "output"
+        targetOutputDir.file("copy.txt").text == "output"
+
+        when:
+        restored.withOutputStream { deduplicator.restore(manifest, it, blobStore) }
+        restored.withInputStream { unpack BuildCacheEntryCompression.decompress(it), prop(DIRECTORY, restoredOutputDir) }
+
+        then:
+        !deduplicator.isManifest(restored)
+        restoredOutputDir.file("data.txt").text == "output"
+        restoredOutputDir.file("copy.txt").text == "output"
+    }
+
+    def "fails to unpack entry when blob has been modified"() {
+        def sourceOutputFile = temporaryFolder.file("source.txt")
+        sourceOutputFile << "output"
+        def entry = temporaryFolder.file("entry")
+        def manifest = temporaryFolder.file("manifest")
+        def blobStore = new BuildCacheBlobStore(temporaryFolder.file("blobs"))
+        def deduplicator = new TarBuildCacheEntryDeduplicator(streamHasher)
+        entry.withOutputStream { pack BuildCacheEntryCompression.NONE.compress(it), prop(FILE, sourceOutputFile) }
+        manifest.withOutputStream { deduplicator.deduplicate(entry, it, blobStore) }
+        def blob = blobStore.blobsDir.listFiles()[0].listFiles()[0]
+        blob.text = "modified"
+
+        when:
+        manifest.withInputStream { packer.unpack(entity(prop(FILE, temporaryFolder.file("target.txt"))), BuildCacheEntryCompression.decompress(it), readOrigin, blobStore) }
+
+        then:
+        def e = thrown(IllegalStateException)
+        e.message == "Cached entry format error, blob ${blob} has been modified"
+    }
+
+    def "does not resolve blobs without a blob store"() {
+        def sourceOutputFile = temporaryFolder.file("source.txt")
+        sourceOutputFile << "output"
+        def entry = temporaryFolder.file("entry")
+        def manifest = temporaryFolder.file("manifest")
+        def blobStore = new BuildCacheBlobStore(temporaryFolder.file("blobs"))
+        def deduplicator = new TarBuildCacheEntryDeduplicator(streamHasher)
+        entry.withOutputStream { pack BuildCacheEntryCompression.NONE.compress(it), prop(FILE, sourceOutputFile) }
+        manifest.withOutputStream { deduplicator.deduplicate(entry, it, blobStore) }
+
+        when:
+        manifest.withInputStream { unpack BuildCacheEntryCompression.decompress(it), prop(FILE, temporaryFolder.file("target.txt")) }
+
+        then:
+        def e = thrown(IllegalStateException)
+        e.message == "Cached entry format error, tree-test refers to a blob, which is only supported for entries of the local build cache"
+    }
+
+    def "manifests refer to blobs by hash only"() {
+        def sourceOutputFile = temporaryFolder.file("source.txt")
+        sourceOutputFile << "output"
+        def entry = temporaryFolder.file("entry")
+        def manifest = temporaryFolder.file("manifest")
+        def blobStore = new BuildCacheBlobStore(temporaryFolder.file("blobs"))
+        def movedBlobStore = new BuildCacheBlobStore(temporaryFolder.file("moved/blobs"))
+        def deduplicator = new TarBuildCacheEntryDeduplicator(streamHasher)
+        entry.withOutputStream { pack BuildCacheEntryCompression.NONE.compress(it), prop(FILE, sourceOutputFile) }
+        manifest.withOutputStream { deduplicator.deduplicate(entry, it, blobStore) }
+        def targetFile = temporaryFolder.file("target.txt")
+
+        when:
+        blobStore.blobsDir.renameTo(movedBlobStore.blobsDir.parentFile.createDir().file("blobs"))
+        manifest.withInputStream { packer.unpack(entity(prop(FILE, targetFile)), BuildCacheEntryCompression.decompress(it), readOrigin, movedBlobStore) }
+
+        then:
+        !manifest.text.contains(blobStore.blobsDir.absolutePath)
+        targetFile.text == "output"
+    }
+
     def pack(OutputStream output, OriginWriter writeOrigin = this.writeOrigin, TreeDefinition... treeDefs) {
         Map<String, CurrentFileCollectionFingerprint> fingerprints = treeDefs.collectEntries { treeDef ->
             return [(treeDef.tree.name): treeDef.fingerprint()]
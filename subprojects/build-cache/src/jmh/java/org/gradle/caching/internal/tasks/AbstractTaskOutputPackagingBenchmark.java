@@ -35,6 +35,7 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.zip.Deflater;
 
 @Fork(1)
 @Warmup(iterations = 3)
@@ -55,6 +56,9 @@ public abstract class AbstractTaskOutputPackagingBenchmark {
         .put("tar.small", new AntTarPacker(2))
         .put("tar.large", new AntTarPacker(64))
         .put("tar.gz", new GzipPacker(new AntTarPacker(4)))
+        .put("tar.gz.fast", new GzipPacker(new AntTarPacker(4), Deflater.BEST_SPEED))
+        .put("tar.gz.segmented", new SegmentedGzipTarPacker(16, 4, Runtime.getRuntime().availableProcessors()))
+        .put("tar.gz.segmented.serial", new SegmentedGzipTarPacker(16, 4, 1))
         .put("zip", new ZipPacker(4))
         .build();
 
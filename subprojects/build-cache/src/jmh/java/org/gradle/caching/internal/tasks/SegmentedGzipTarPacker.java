@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.caching.internal.tasks;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Packs the inputs as a sequence of independently gzipped TAR segments, which are packed and unpacked in parallel.
+ */
+public class SegmentedGzipTarPacker implements Packer {
+    private final int entriesPerSegment;
+    private final int bufferSizeInKBytes;
+    private final ExecutorService executor;
+
+    public SegmentedGzipTarPacker(int entriesPerSegment, int bufferSizeInKBytes, int threads) {
+        this.entriesPerSegment = entriesPerSegment;
+        this.bufferSizeInKBytes = bufferSizeInKBytes;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("segmented-packer-%d").build());
+    }
+
+    @Override
+    public void pack(List<DataSource> inputs, DataTarget output) throws IOException {
+        List<Future<byte[]>> segments = new ArrayList<Future<byte[]>>();
+        for (final List<DataSource> segmentInputs : Lists.partition(inputs, entriesPerSegment)) {
+            segments.add(executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    final ByteArrayOutputStream segment = new ByteArrayOutputStream();
+                    new GzipPacker(new CommonsTarPacker(bufferSizeInKBytes)).pack(segmentInputs, new InMemoryTarget(segment));
+                    return segment.toByteArray();
+                }
+            }));
+        }
+        DataOutputStream dataOutput = new DataOutputStream(output.openOutput());
+        try {
+            for (Future<byte[]> segment : segments) {
+                byte[] bytes = get(segment);
+                dataOutput.writeInt(bytes.length);
+                dataOutput.write(bytes);
+            }
+            dataOutput.writeInt(-1);
+        } finally {
+            dataOutput.close();
+        }
+    }
+
+    @Override
+    public void unpack(DataSource input, final DataTargetFactory targetFactory) throws IOException {
+        List<Future<?>> segments = new ArrayList<Future<?>>();
+        DataInputStream dataInput = new DataInputStream(input.openInput());
+        try {
+            int length;
+            while ((length = dataInput.readInt()) >= 0) {
+                final byte[] bytes = new byte[length];
+                dataInput.readFully(bytes);
+                segments.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        new GzipPacker(new CommonsTarPacker(bufferSizeInKBytes)).unpack(new InMemorySource(bytes), targetFactory);
+                        return null;
+                    }
+                }));
+            }
+        } finally {
+            dataInput.close();
+        }
+        for (Future<?> segment : segments) {
+            get(segment);
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static class InMemoryTarget implements DataTarget {
+        private final ByteArrayOutputStream output;
+
+        public InMemoryTarget(ByteArrayOutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public String getName() {
+            return "segment";
+        }
+
+        @Override
+        public OutputStream openOutput() {
+            return output;
+        }
+
+        @Override
+        public DataSource toSource() {
+            return new InMemorySource(output.toByteArray());
+        }
+    }
+
+    private static class InMemorySource implements DataSource {
+        private final byte[] bytes;
+
+        public InMemorySource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String getName() {
+            return "segment";
+        }
+
+        @Override
+        public InputStream openInput() {
+            return new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public long getLength() {
+            return bytes.length;
+        }
+    }
+}
@@ -19,7 +19,7 @@ package org.gradle.caching.internal.tasks;
 import org.openjdk.jmh.annotations.Param;
 
 public class TaskOutputPackagingTarBenchmark extends AbstractTaskOutputPackagingBenchmark {
-    @Param({"tar", "tar.commons", "tar.jtar"})
+    @Param({"tar", "tar.commons", "tar.jtar", "tar.gz", "tar.gz.segmented.serial", "tar.gz.segmented"})
     String packer;
 
     @Param({"direct", "buffered"})
@@ -29,6 +29,7 @@ import org.gradle.caching.internal.FinalizeBuildCacheConfigurationBuildOperation
 import org.gradle.caching.internal.controller.service.BuildCacheServiceRole;
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration;
 import org.gradle.internal.Cast;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
@@ -56,6 +57,24 @@ public final class BuildCacheControllerFactory {
         ONLINE, OFFLINE
     }
 
+    /**
+     * Stores entries in the remote build cache in the background when set to {@code true}.
+     */
+    public static final String ASYNC_REMOTE_STORE_PROPERTY = "org.gradle.unsafe.build-cache.async-remote-store";
+
+    public enum RemoteStoreMode {
+        BLOCKING, ASYNC
+    }
+
+    /**
+     * Unpacks entries from the remote build cache while they are being downloaded when set to {@code true}.
+     */
+    public static final String STREAMING_REMOTE_LOAD_PROPERTY = "org.gradle.unsafe.build-cache.streaming-remote-load";
+
+    public enum RemoteLoadMode {
+        BUFFERED, STREAMING
+    }
+
     public static BuildCacheController create(
         final BuildOperationExecutor buildOperationExecutor,
         final Path buildIdentityPath,
@@ -63,9 +82,13 @@ public final class BuildCacheControllerFactory {
         final BuildCacheConfigurationInternal buildCacheConfiguration,
         final BuildCacheMode buildCacheState,
         final RemoteAccessMode remoteAccessMode,
+        final RemoteStoreMode remoteStoreMode,
+        final RemoteLoadMode remoteLoadMode,
+        @Nullable final BuildCacheEntryTranscoder remoteTranscoder,
         final boolean logStackTraces,
         final boolean emitDebugLogging,
-        final Instantiator instantiator
+        final Instantiator instantiator,
+        final ExecutorFactory executorFactory
     ) {
         return buildOperationExecutor.call(new CallableBuildOperation<BuildCacheController>() {
             @Override
@@ -115,6 +138,10 @@ public final class BuildCacheControllerFactory {
                         config,
                         buildOperationExecutor,
                         gradleUserHomeDir,
+                        remoteStoreMode,
+                        remoteLoadMode,
+                        remoteTranscoder,
+                        executorFactory,
                         logStackTraces,
                         emitDebugLogging
                     );
@@ -17,7 +17,9 @@
 package org.gradle.caching.internal.controller;
 
 import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.local.internal.BuildCacheBlobStore;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -32,6 +34,15 @@ public interface BuildCacheLoadCommand<T> {
      */
     Result<T> load(InputStream inputStream) throws IOException;
 
+    /**
+     * Like {@link #load(InputStream)}, but resolves the blobs referred to by the artifact in the given blob store.
+     *
+     * The blob store is only given for artifacts produced by the local build cache owning it.
+     */
+    default Result<T> load(InputStream inputStream, @Nullable BuildCacheBlobStore blobStore) throws IOException {
+        return load(inputStream);
+    }
+
     interface Result<T> {
 
         /**
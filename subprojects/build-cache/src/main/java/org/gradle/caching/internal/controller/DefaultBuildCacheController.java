@@ -26,6 +26,7 @@ import org.gradle.caching.internal.controller.operations.PackOperationDetails;
 import org.gradle.caching.internal.controller.operations.PackOperationResult;
 import org.gradle.caching.internal.controller.operations.UnpackOperationDetails;
 import org.gradle.caching.internal.controller.operations.UnpackOperationResult;
+import org.gradle.caching.internal.controller.service.AsyncStoreBuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.BaseBuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.BuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.BuildCacheServiceRole;
@@ -37,21 +38,25 @@ import org.gradle.caching.internal.controller.service.NullBuildCacheServiceHandl
 import org.gradle.caching.internal.controller.service.NullLocalBuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.OpFiringBuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.StoreTarget;
+import org.gradle.caching.local.internal.BuildCacheBlobStore;
 import org.gradle.caching.local.internal.BuildCacheTempFileStore;
 import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.operations.RunnableBuildOperation;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Optional;
 
 public class DefaultBuildCacheController implements BuildCacheController {
@@ -68,6 +73,8 @@ public class DefaultBuildCacheController implements BuildCacheController {
     private final BuildCacheTempFileStore tmp;
     private final BuildOperationExecutor buildOperationExecutor;
     private final boolean emitDebugLogging;
+    private final BuildCacheControllerFactory.RemoteLoadMode remoteLoadMode;
+    private final BuildCacheEntryTranscoder remoteTranscoder;
 
     private boolean closed;
 
@@ -75,11 +82,17 @@ public class DefaultBuildCacheController implements BuildCacheController {
         BuildCacheServicesConfiguration config,
         BuildOperationExecutor buildOperationExecutor,
         File gradleUserHomeDir,
+        BuildCacheControllerFactory.RemoteStoreMode remoteStoreMode,
+        BuildCacheControllerFactory.RemoteLoadMode remoteLoadMode,
+        @Nullable BuildCacheEntryTranscoder remoteTranscoder,
+        ExecutorFactory executorFactory,
         boolean logStackTraces,
         boolean emitDebugLogging
     ) {
         this.buildOperationExecutor = buildOperationExecutor;
         this.emitDebugLogging = emitDebugLogging;
+        this.remoteLoadMode = remoteLoadMode;
+        this.remoteTranscoder = remoteTranscoder;
 
         if (config.local instanceof LocalBuildCacheService) {
             LocalBuildCacheService castLocal = (LocalBuildCacheService) config.local;
@@ -92,7 +105,20 @@ public class DefaultBuildCacheController implements BuildCacheController {
             this.tmp = new DefaultBuildCacheTempFileStore(new File(gradleUserHomeDir, "build-cache-tmp"));
         }
 
-        this.remote = toHandle(config.remote, config.remotePush, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces);
+        if (config.remote != null && remoteStoreMode == BuildCacheControllerFactory.RemoteStoreMode.ASYNC) {
+            this.remote = new AsyncStoreBuildCacheServiceHandle(
+                config.remote, config.remotePush, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces,
+                executorFactory,
+                new File(gradleUserHomeDir, "build-cache-tmp"),
+                AsyncStoreBuildCacheServiceHandle.DEFAULT_MAX_CONCURRENT_UPLOADS,
+                AsyncStoreBuildCacheServiceHandle.DEFAULT_MAX_PENDING_UPLOADS,
+                AsyncStoreBuildCacheServiceHandle.DEFAULT_MAX_ATTEMPTS,
+                AsyncStoreBuildCacheServiceHandle.DEFAULT_RETRY_DELAY_MILLIS,
+                AsyncStoreBuildCacheServiceHandle.DEFAULT_DRAIN_TIMEOUT_MILLIS
+            );
+        } else {
+            this.remote = toHandle(config.remote, config.remotePush, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces);
+        }
     }
 
     @Override
@@ -111,7 +137,13 @@ public class DefaultBuildCacheController implements BuildCacheController {
 
         if (local.canLoad()) {
             try {
-                local.load(command.getKey(), unpack);
+                local.load(command.getKey(), new Action<File>() {
+                    @Override
+                    public void execute(File file) {
+                        // Only entries of the local build cache may refer to its blobs
+                        unpack.execute(file, local.getBlobStore(file));
+                    }
+                });
             } catch (Exception e) {
                 throw new GradleException("Build cache entry " + command.getKey().getHashCode() + " from local build cache is invalid", e);
             }
@@ -125,28 +157,40 @@ public class DefaultBuildCacheController implements BuildCacheController {
             tmp.withTempFile(command.getKey(), new Action<File>() {
                 @Override
                 public void execute(File file) {
-                    LoadTarget loadTarget = new LoadTarget(file);
+                    LoadTarget loadTarget = null;
                     BuildCacheServiceRole loadedRole = null;
                     if (legacyLocal.canLoad()) {
                         loadedRole = BuildCacheServiceRole.LOCAL;
+                        loadTarget = new LoadTarget(file);
                         legacyLocal.load(command.getKey(), loadTarget);
                     }
 
-                    if (remote.canLoad() && !loadTarget.isLoaded()) {
+                    if (remote.canLoad() && (loadTarget == null || !loadTarget.isLoaded())) {
                         loadedRole = BuildCacheServiceRole.REMOTE;
+                        loadTarget = remoteLoadTarget(file, unpack);
                         remote.load(command.getKey(), loadTarget);
                     }
 
+                    @SuppressWarnings("ConstantConditions") String roleDisplayName = loadedRole.getDisplayName();
                     if (loadTarget.isLoaded()) {
                         try {
-                            unpack.execute(file);
+                            if (loadTarget.isStreamingStarted()) {
+                                Exception streamingFailure = loadTarget.getStreamingFailure();
+                                if (streamingFailure != null) {
+                                    throw streamingFailure;
+                                }
+                            } else {
+                                unpack.execute(file);
+                            }
                         } catch (Exception e) {
-                            @SuppressWarnings("ConstantConditions") String roleDisplayName = loadedRole.getDisplayName();
                             throw new GradleException("Build cache entry " + command.getKey().getHashCode() + " from " + roleDisplayName + " build cache is invalid", e);
                         }
                         if (local.canStore()) {
                             local.store(command.getKey(), file);
                         }
+                    } else if (loadTarget.isStreamingStarted()) {
+                        // Some outputs may have been unpacked already, so we can't treat this as a cache miss
+                        throw new GradleException("Build cache entry " + command.getKey().getHashCode() + " from " + roleDisplayName + " build cache could not be loaded completely");
                     }
                 }
             });
@@ -160,6 +204,19 @@ public class DefaultBuildCacheController implements BuildCacheController {
         }
     }
 
+    private LoadTarget remoteLoadTarget(File file, final Unpack<?> unpack) {
+        if (remoteLoadMode == BuildCacheControllerFactory.RemoteLoadMode.STREAMING) {
+            return new LoadTarget(file, new Action<InputStream>() {
+                @Override
+                public void execute(InputStream input) {
+                    // The size of the archive is only known once it has been downloaded completely
+                    unpack.unpack(input, -1);
+                }
+            });
+        }
+        return new LoadTarget(file);
+    }
+
     private class Unpack<T> implements Action<File> {
         private final BuildCacheLoadCommand<T> command;
 
@@ -170,12 +227,28 @@ public class DefaultBuildCacheController implements BuildCacheController {
         }
 
         @Override
-        public void execute(final File file) {
+        public void execute(File file) {
+            execute(file, null);
+        }
+
+        private void execute(File file, @Nullable BuildCacheBlobStore blobStore) {
+            try (InputStream input = new FileInputStream(file)) {
+                unpack(input, file.length(), blobStore);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void unpack(InputStream input, long archiveSize) {
+            unpack(input, archiveSize, null);
+        }
+
+        private void unpack(final InputStream input, final long archiveSize, @Nullable final BuildCacheBlobStore blobStore) {
             buildOperationExecutor.run(new RunnableBuildOperation() {
                 @Override
                 public void run(BuildOperationContext context) {
-                    try (InputStream input = new FileInputStream(file)) {
-                        result = command.load(input);
+                    try {
+                        result = blobStore == null ? command.load(input) : command.load(input, blobStore);
                     } catch (IOException e) {
                         throw new UncheckedIOException(e);
                     }
@@ -187,7 +260,7 @@ public class DefaultBuildCacheController implements BuildCacheController {
                 @Override
                 public BuildOperationDescriptor.Builder description() {
                     return BuildOperationDescriptor.displayName("Unpack build cache entry " + command.getKey().getHashCode())
-                        .details(new UnpackOperationDetails(command.getKey(), file.length()))
+                        .details(new UnpackOperationDetails(command.getKey(), archiveSize))
                         .progressDisplayName("Unpacking build cache entry");
                 }
             });
@@ -214,7 +287,7 @@ public class DefaultBuildCacheController implements BuildCacheController {
                 }
 
                 if (remote.canStore()) {
-                    remote.store(key, new StoreTarget(file));
+                    storeRemote(key, file);
                 }
 
                 if (local.canStore()) {
@@ -224,6 +297,24 @@ public class DefaultBuildCacheController implements BuildCacheController {
         });
     }
 
+    private void storeRemote(final BuildCacheKey key, final File file) {
+        if (remoteTranscoder == null) {
+            remote.store(key, new StoreTarget(file));
+            return;
+        }
+        tmp.withTempFile(key, new Action<File>() {
+            @Override
+            public void execute(File remoteFile) {
+                try (InputStream input = new FileInputStream(file); OutputStream output = new FileOutputStream(remoteFile)) {
+                    remoteTranscoder.transcode(input, output);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                remote.store(key, new StoreTarget(remoteFile));
+            }
+        });
+    }
+
     private class Pack implements Action<File> {
 
         private final BuildCacheStoreCommand command;
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service;
+
+import com.google.common.collect.Sets;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores entries in the remote build cache on background threads, so that the worker storing an entry does not wait for the upload.
+ *
+ * Each upload works on its own copy of the entry, as the original is moved into the local build cache or deleted once the store returns.
+ * At most {@code maxPendingUploads} entries are queued or being uploaded. When the limit is reached, the entry is uploaded by the calling thread instead,
+ * which slows down the producers of entries until the uploader catches up.
+ * Failed uploads are retried, where each attempt is a separate store build operation. When the last attempt fails, the remote build cache is disabled.
+ * When closed, the pending uploads are given a limited time to complete. Uploads which don't complete in time are abandoned.
+ */
+public class AsyncStoreBuildCacheServiceHandle extends OpFiringBuildCacheServiceHandle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncStoreBuildCacheServiceHandle.class);
+
+    public static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 4;
+    public static final int DEFAULT_MAX_PENDING_UPLOADS = 32;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 500;
+    public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ManagedExecutor executor;
+    private final File tempDir;
+    private final Semaphore pendingUploads;
+    private final Set<File> pendingFiles = Sets.newConcurrentHashSet();
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+    private final long drainTimeoutMillis;
+
+    public AsyncStoreBuildCacheServiceHandle(
+        BuildCacheService service,
+        boolean push,
+        BuildCacheServiceRole role,
+        BuildOperationExecutor buildOperationExecutor,
+        boolean logStackTraces,
+        ExecutorFactory executorFactory,
+        File tempDir,
+        int maxConcurrentUploads,
+        int maxPendingUploads,
+        int maxAttempts,
+        long retryDelayMillis,
+        long drainTimeoutMillis
+    ) {
+        super(service, push, role, buildOperationExecutor, logStackTraces);
+        this.executor = executorFactory.create("Upload to " + role.getDisplayName() + " build cache", maxConcurrentUploads);
+        this.tempDir = tempDir;
+        this.pendingUploads = new Semaphore(maxPendingUploads);
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMillis = retryDelayMillis;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    @Override
+    protected void storeInner(final String description, final BuildCacheKey key, StoreTarget storeTarget) {
+        if (!pendingUploads.tryAcquire()) {
+            LOGGER.debug("Too many pending uploads to {} build cache, storing entry {} on the calling thread", role.getDisplayName(), key.getDisplayName());
+            storeWithRetries(description, key, storeTarget.getFile());
+            return;
+        }
+        final File file;
+        try {
+            file = copyToTempFile(key, storeTarget.getFile());
+        } catch (RuntimeException e) {
+            pendingUploads.release();
+            throw e;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (canStore()) {
+                            storeWithRetries(description, key, file);
+                        }
+                    } catch (Exception e) {
+                        failure("store", "in", key, e);
+                    } finally {
+                        pendingFiles.remove(file);
+                        GFileUtils.deleteQuietly(file);
+                        pendingUploads.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            pendingFiles.remove(file);
+            GFileUtils.deleteQuietly(file);
+            pendingUploads.release();
+            throw e;
+        }
+    }
+
+    private void storeWithRetries(String description, BuildCacheKey key, File file) {
+        int attempt = 1;
+        while (true) {
+            try {
+                super.storeInner(description, key, new StoreTarget(file));
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                LOGGER.info("Could not store entry {} in {} build cache (attempt {} of {}), retrying: {}", key.getDisplayName(), role.getDisplayName(), attempt, maxAttempts, e.getMessage());
+                try {
+                    Thread.sleep(retryDelayMillis * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                attempt++;
+            }
+        }
+    }
+
+    private File copyToTempFile(BuildCacheKey key, File source) {
+        File file;
+        try {
+            GFileUtils.mkdirs(tempDir);
+            file = File.createTempFile(key.getHashCode() + "-", ".upload", tempDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pendingFiles.add(file);
+        try {
+            GFileUtils.copyFile(source, file);
+        } catch (RuntimeException e) {
+            pendingFiles.remove(file);
+            GFileUtils.deleteQuietly(file);
+            throw e;
+        }
+        return file;
+    }
+
+    @Override
+    public void close() {
+        try {
+            executor.stop(Math.max(1, (int) drainTimeoutMillis), TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            LOGGER.warn("Abandoned {} uploads to {} build cache which did not complete within {} seconds at the end of the build.", pendingFiles.size(), role.getDisplayName(), TimeUnit.MILLISECONDS.toSeconds(drainTimeoutMillis));
+        } finally {
+            for (File file : pendingFiles) {
+                GFileUtils.deleteQuietly(file);
+            }
+            pendingFiles.clear();
+            super.close();
+        }
+    }
+}
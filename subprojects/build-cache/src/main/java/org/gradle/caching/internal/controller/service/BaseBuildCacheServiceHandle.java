@@ -34,7 +34,7 @@ public class BaseBuildCacheServiceHandle implements BuildCacheServiceHandle {
     private final boolean pushEnabled;
     private final boolean logStackTraces;
 
-    private boolean disabled;
+    private volatile boolean disabled;
 
     public BaseBuildCacheServiceHandle(BuildCacheService service, boolean push, BuildCacheServiceRole role, boolean logStackTraces) {
         this.role = role;
@@ -93,7 +93,7 @@ public class BaseBuildCacheServiceHandle implements BuildCacheServiceHandle {
         service.store(key, storeTarget);
     }
 
-    private void failure(String verb, String preposition, BuildCacheKey key, Throwable e) {
+    protected void failure(String verb, String preposition, BuildCacheKey key, Throwable e) {
         disabled = true;
 
         String description = "Could not " + verb + " entry " + key.getDisplayName() + " " + preposition + " " + role.getDisplayName() + " build cache";
@@ -18,6 +18,7 @@ package org.gradle.caching.internal.controller.service;
 
 import org.gradle.api.Action;
 import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.local.internal.BuildCacheBlobStore;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
 
 import javax.annotation.Nullable;
@@ -49,6 +50,12 @@ public class DefaultLocalBuildCacheServiceHandle implements LocalBuildCacheServi
         service.loadLocally(key, reader);
     }
 
+    @Nullable
+    @Override
+    public BuildCacheBlobStore getBlobStore(File loadedFile) {
+        return service.getBlobStore(loadedFile);
+    }
+
     @Override
     public boolean canStore() {
         return pushEnabled;
@@ -16,21 +16,45 @@
 
 package org.gradle.caching.internal.controller.service;
 
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closer;
 import com.google.common.io.Files;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.gradle.api.Action;
 import org.gradle.caching.BuildCacheEntryReader;
 
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 public class LoadTarget implements BuildCacheEntryReader {
 
     private final File file;
+    private final Action<? super InputStream> streamingReader;
     private boolean loaded;
+    private boolean streamingStarted;
+    private Exception streamingFailure;
 
     public LoadTarget(File file) {
+        this(file, null);
+    }
+
+    /**
+     * Creates a target which passes the entry to the given reader while it is being written to the file.
+     *
+     * The reader sees the entry as it arrives from the service, so it can consume the entry before the download has completed.
+     * Failures of the reader do not fail the load, they are available via {@link #getStreamingFailure()} afterwards.
+     * If reading from the service fails, the failure is propagated to the service, like it would be without a streaming reader.
+     */
+    public LoadTarget(File file, @Nullable Action<? super InputStream> streamingReader) {
         this.file = file;
+        this.streamingReader = streamingReader;
     }
 
     @Override
@@ -41,7 +65,11 @@ public class LoadTarget implements BuildCacheEntryReader {
             if (loaded) {
                 throw new IllegalStateException("Build cache entry has already been read");
             }
-            Files.asByteSink(file).writeFrom(input);
+            if (streamingReader == null) {
+                Files.asByteSink(file).writeFrom(input);
+            } else {
+                readWhileWriting(input);
+            }
             loaded = true;
         } catch (Exception e) {
             throw closer.rethrow(e);
@@ -50,6 +78,26 @@ public class LoadTarget implements BuildCacheEntryReader {
         }
     }
 
+    private void readWhileWriting(InputStream input) throws IOException {
+        SourceInputStream source = new SourceInputStream(input);
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+            InputStream tee = new TeeInputStream(source, output);
+            streamingStarted = true;
+            try {
+                streamingReader.execute(new CloseShieldInputStream(tee));
+            } catch (Exception e) {
+                if (source.failure != null) {
+                    throw source.failure;
+                }
+                // The entry is broken, there is no point in downloading the rest of it
+                streamingFailure = e;
+                return;
+            }
+            // Write the remainder of the entry that the reader did not consume, e.g. the end of archive marker
+            ByteStreams.exhaust(tee);
+        }
+    }
+
     public boolean isLoaded() {
         return loaded;
     }
@@ -62,4 +110,30 @@ public class LoadTarget implements BuildCacheEntryReader {
         }
     }
 
+    /**
+     * Whether the streaming reader has started to consume the entry, even if the load did not complete.
+     */
+    public boolean isStreamingStarted() {
+        return streamingStarted;
+    }
+
+    @Nullable
+    public Exception getStreamingFailure() {
+        return streamingFailure;
+    }
+
+    private static class SourceInputStream extends ProxyInputStream {
+        private IOException failure;
+
+        SourceInputStream(InputStream delegate) {
+            super(delegate);
+        }
+
+        @Override
+        protected void handleIOException(IOException e) throws IOException {
+            failure = e;
+            throw e;
+        }
+    }
+
 }
@@ -19,6 +19,7 @@ package org.gradle.caching.internal.controller.service;
 import com.google.common.annotations.VisibleForTesting;
 import org.gradle.api.Action;
 import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.local.internal.BuildCacheBlobStore;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
 
 import javax.annotation.Nullable;
@@ -36,6 +37,12 @@ public interface LocalBuildCacheServiceHandle extends Closeable {
     // TODO: what if this errors?
     void load(BuildCacheKey key, Action<? super File> reader);
 
+    /**
+     * Returns the blob store to resolve the blobs referred to by a file handed to the {@code reader} of {@link #load(BuildCacheKey, Action)}.
+     */
+    @Nullable
+    BuildCacheBlobStore getBlobStore(File loadedFile);
+
     boolean canStore();
 
     // TODO: what if this errors?
@@ -18,6 +18,7 @@ package org.gradle.caching.internal.controller.service;
 
 import org.gradle.api.Action;
 import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.local.internal.BuildCacheBlobStore;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
 
 import javax.annotation.Nullable;
@@ -46,6 +47,12 @@ public class NullLocalBuildCacheServiceHandle implements LocalBuildCacheServiceH
         throw new UnsupportedOperationException();
     }
 
+    @Nullable
+    @Override
+    public BuildCacheBlobStore getBlobStore(File loadedFile) {
+        return null;
+    }
+
     @Override
     public boolean canStore() {
         return false;
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.caching.local.internal;
+
+import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.CleanupProgressMonitor;
+import org.gradle.util.GFileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Stores the contents of the files in the entries of a content-addressed local build cache.
+ *
+ * Each blob is stored once, in a file named by the hash of its content.
+ * Callers need to hold the lock of the owning cache while adding and removing blobs.
+ */
+public class BuildCacheBlobStore {
+    private static final String TEMP_BLOB_PREFIX = "blob-";
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{2,}");
+
+    private final File blobsDir;
+
+    public BuildCacheBlobStore(File blobsDir) {
+        this.blobsDir = blobsDir;
+    }
+
+    public File getBlobsDir() {
+        return blobsDir;
+    }
+
+    /**
+     * Returns the file for the blob with the given hash, which may not exist.
+     *
+     * @throws IllegalArgumentException when the given string is not a hash
+     */
+    public File getBlobFile(String hash) {
+        if (!HASH_PATTERN.matcher(hash).matches()) {
+            throw new IllegalArgumentException(String.format("Invalid blob hash '%s'.", hash));
+        }
+        return new File(new File(blobsDir, hash.substring(0, 2)), hash);
+    }
+
+    public boolean contains(String hash) {
+        return getBlobFile(hash).isFile();
+    }
+
+    /**
+     * Creates a temporary file in the blob store which can later be added to the store via {@link #store(String, File)}.
+     * Temporary files which are never stored are removed by {@link #deleteUnreferenced(Set, CleanupProgressMonitor)}.
+     */
+    public File createTempBlob() {
+        GFileUtils.mkdirs(blobsDir);
+        try {
+            return File.createTempFile(TEMP_BLOB_PREFIX, BuildCacheTempFileStore.PARTIAL_FILE_SUFFIX, blobsDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Moves the given file into the store, unless a blob with the same hash is already stored.
+     */
+    public File store(String hash, File tempBlob) {
+        File blobFile = getBlobFile(hash);
+        if (blobFile.isFile()) {
+            GFileUtils.deleteQuietly(tempBlob);
+            return blobFile;
+        }
+        GFileUtils.mkdirs(blobFile.getParentFile());
+        if (!tempBlob.renameTo(blobFile)) {
+            GFileUtils.deleteQuietly(tempBlob);
+            if (!blobFile.isFile()) {
+                throw new UncheckedIOException(String.format("Could not move blob to %s.", blobFile));
+            }
+        }
+        return blobFile;
+    }
+
+    /**
+     * Writes the given content to the store, unless a blob with the same hash is already stored.
+     */
+    public File store(String hash, byte[] content) {
+        File blobFile = getBlobFile(hash);
+        if (blobFile.isFile()) {
+            return blobFile;
+        }
+        File tempBlob = createTempBlob();
+        try {
+            OutputStream output = new FileOutputStream(tempBlob);
+            try {
+                output.write(content);
+            } finally {
+                output.close();
+            }
+        } catch (IOException e) {
+            GFileUtils.deleteQuietly(tempBlob);
+            throw new UncheckedIOException(e);
+        }
+        return store(hash, tempBlob);
+    }
+
+    /**
+     * Deletes all blobs which are not in the given set of referenced hashes, together with left-over temporary files.
+     *
+     * @return the number of deleted files
+     */
+    public int deleteUnreferenced(Set<String> referencedHashes, CleanupProgressMonitor progressMonitor) {
+        int deleted = 0;
+        File[] prefixDirs = blobsDir.listFiles();
+        if (prefixDirs == null) {
+            return 0;
+        }
+        for (File prefixDir : prefixDirs) {
+            File[] blobs = prefixDir.listFiles();
+            if (blobs == null) {
+                // A temporary file, or something we did not put there
+                if (shouldDelete(prefixDir, referencedHashes, progressMonitor) && GFileUtils.deleteQuietly(prefixDir)) {
+                    deleted++;
+                }
+                continue;
+            }
+            for (File blob : blobs) {
+                if (shouldDelete(blob, referencedHashes, progressMonitor) && GFileUtils.deleteQuietly(blob)) {
+                    deleted++;
+                }
+            }
+            String[] remaining = prefixDir.list();
+            if (remaining != null && remaining.length == 0 && prefixDir.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private static boolean shouldDelete(File file, Set<String> referencedHashes, CleanupProgressMonitor progressMonitor) {
+        if (referencedHashes.contains(file.getName())) {
+            progressMonitor.incrementSkipped();
+            return false;
+        }
+        progressMonitor.incrementDeleted();
+        return true;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.caching.local.internal;
+
+import org.gradle.api.Action;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Splits build cache entries into a manifest and the blobs in a {@link BuildCacheBlobStore}.
+ *
+ * A manifest can be unpacked like a regular entry, but refers to the blobs instead of containing the file contents.
+ */
+public interface BuildCacheEntryDeduplicator {
+
+    /**
+     * Moves the contents of the files in the given entry to the blob store, and writes a manifest referring to the blobs to the given output.
+     */
+    void deduplicate(File entry, OutputStream manifest, BuildCacheBlobStore blobStore) throws IOException;
+
+    /**
+     * Returns whether the given file has the format of a manifest, without checking whether it refers to any blobs.
+     */
+    boolean hasManifestFormat(File file) throws IOException;
+
+    /**
+     * Returns whether the given file is a manifest which refers to blobs.
+     */
+    boolean isManifest(File file) throws IOException;
+
+    /**
+     * Writes a regular entry with the contents of the blobs in the given store referred to by the given manifest.
+     */
+    void restore(File manifest, OutputStream entry, BuildCacheBlobStore blobStore) throws IOException;
+
+    /**
+     * Visits the hashes of the blobs referred to by the given file. Does nothing when the file is not a manifest.
+     */
+    void visitReferencedBlobs(File file, Action<? super String> visitor) throws IOException;
+}
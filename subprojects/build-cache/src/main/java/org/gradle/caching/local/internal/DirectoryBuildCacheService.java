@@ -30,30 +30,53 @@ import org.gradle.internal.resource.local.FileAccessTracker;
 import org.gradle.internal.resource.local.LocallyAvailableResource;
 import org.gradle.internal.resource.local.PathKeyFileStore;
 import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class DirectoryBuildCacheService implements LocalBuildCacheService, BuildCacheService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryBuildCacheService.class);
 
     private final PathKeyFileStore fileStore;
     private final PersistentCache persistentCache;
     private final BuildCacheTempFileStore tempFileStore;
     private final FileAccessTracker fileAccessTracker;
     private final String failedFileSuffix;
+    @Nullable
+    private final BuildCacheEntryDeduplicator deduplicator;
+    @Nullable
+    private final BuildCacheBlobStore blobStore;
+    private final boolean deduplicate;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix) {
+        this(fileStore, persistentCache, tempFileStore, fileAccessTracker, failedFileSuffix, null, null, false);
+    }
+
+    /**
+     * Creates a service which can store and load entries split into a manifest and blobs.
+     *
+     * Manifests are always loaded correctly, while new entries are only split when {@code deduplicate} is {@code true}.
+     */
+    public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix,
+                                      @Nullable BuildCacheEntryDeduplicator deduplicator, @Nullable BuildCacheBlobStore blobStore, boolean deduplicate) {
         this.fileStore = fileStore;
         this.persistentCache = persistentCache;
         this.tempFileStore = tempFileStore;
         this.fileAccessTracker = fileAccessTracker;
         this.failedFileSuffix = failedFileSuffix;
+        this.deduplicator = deduplicator;
+        this.blobStore = blobStore;
+        this.deduplicate = deduplicate && deduplicator != null && blobStore != null;
     }
 
     private static class LoadAction implements Action<File> {
@@ -81,10 +104,54 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
         }
     }
 
+    /**
+     * Hands a regular entry to the delegate, restoring it first when the stored file is a manifest.
+     */
+    private class RestoringLoadAction implements Action<File> {
+        private final BuildCacheKey key;
+        private final BuildCacheEntryDeduplicator deduplicator;
+        private final Action<? super File> delegate;
+
+        private RestoringLoadAction(BuildCacheKey key, BuildCacheEntryDeduplicator deduplicator, Action<? super File> delegate) {
+            this.key = key;
+            this.deduplicator = deduplicator;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(@Nonnull final File file) {
+            try {
+                if (!deduplicator.isManifest(file)) {
+                    delegate.execute(file);
+                    return;
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            tempFileStore.withTempFile(key, new Action<File>() {
+                @Override
+                public void execute(@Nonnull File entry) {
+                    try {
+                        OutputStream output = new FileOutputStream(entry);
+                        try {
+                            deduplicator.restore(file, output, blobStore);
+                        } finally {
+                            output.close();
+                        }
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    delegate.execute(entry);
+                }
+            });
+        }
+    }
+
     @Override
     public boolean load(final BuildCacheKey key, final BuildCacheEntryReader reader) throws BuildCacheException {
         LoadAction loadAction = new LoadAction(reader);
-        loadLocally(key, loadAction);
+        // Readers expect a regular entry, as they may hand it to another cache
+        loadLocally(key, deduplicator == null || blobStore == null ? loadAction : new RestoringLoadAction(key, deduplicator, loadAction));
         return loadAction.loaded;
     }
 
@@ -104,6 +171,23 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
         });
     }
 
+    /**
+     * Returns the blob store for manifests. Only this service stores manifests, as {@link #storeLocally(BuildCacheKey, File)} rejects entries referring to blobs.
+     * Compressed entries can't be manifests, so blobs referred to by them are never resolved.
+     */
+    @Nullable
+    @Override
+    public BuildCacheBlobStore getBlobStore(File loadedFile) {
+        if (deduplicator == null || blobStore == null) {
+            return null;
+        }
+        try {
+            return deduplicator.hasManifestFormat(loadedFile) ? blobStore : null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
     private void loadInsideLock(BuildCacheKey key, Action<? super File> reader) {
         LocallyAvailableResource resource = fileStore.get(key.getHashCode());
         if (resource == null) {
@@ -165,7 +249,55 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
         });
     }
 
-    private void storeInsideLock(BuildCacheKey key, File file) {
+    private void storeInsideLock(final BuildCacheKey key, final File file) {
+        if (refersToBlobs(file)) {
+            // Entries from elsewhere, like the remote build cache, must not resolve blobs from this cache
+            throw new IllegalArgumentException(String.format("Build cache entry %s refers to blobs and can't be stored in the local build cache.", key.getDisplayName()));
+        }
+        if (!deduplicate) {
+            moveInsideLock(key, file);
+            return;
+        }
+        tempFileStore.withTempFile(key, new Action<File>() {
+            @Override
+            public void execute(@Nonnull File manifest) {
+                if (deduplicate(file, manifest)) {
+                    moveInsideLock(key, manifest);
+                } else {
+                    moveInsideLock(key, file);
+                }
+            }
+        });
+    }
+
+    private boolean refersToBlobs(File file) {
+        if (deduplicator == null) {
+            return false;
+        }
+        try {
+            return deduplicator.isManifest(file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private boolean deduplicate(File entry, File manifest) {
+        try {
+            OutputStream output = new FileOutputStream(manifest);
+            try {
+                deduplicator.deduplicate(entry, output, blobStore);
+            } finally {
+                output.close();
+            }
+            return true;
+        } catch (Exception e) {
+            // Blobs which have been stored already are deleted by the next cleanup
+            LOGGER.debug("Could not deduplicate build cache entry {}, storing it as is.", entry, e);
+            return false;
+        }
+    }
+
+    private void moveInsideLock(BuildCacheKey key, File file) {
         LocallyAvailableResource resource = fileStore.move(key.getHashCode(), file);
         fileAccessTracker.markAccessed(resource.getFile());
     }
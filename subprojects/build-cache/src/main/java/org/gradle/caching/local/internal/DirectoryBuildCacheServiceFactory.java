@@ -19,9 +19,12 @@ package org.gradle.caching.local.internal;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.cache.CacheBuilder;
 import org.gradle.cache.CacheRepository;
+import org.gradle.cache.CleanupAction;
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.internal.CacheScopeMapping;
 import org.gradle.cache.internal.CleanupActionFactory;
+import org.gradle.cache.internal.CompositeCleanupAction;
+import org.gradle.cache.internal.FilesFinder;
 import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
 import org.gradle.cache.internal.SingleDepthFilesFinder;
 import org.gradle.cache.internal.VersionStrategy;
@@ -36,12 +39,18 @@ import org.gradle.internal.resource.local.SingleDepthFileAccessTracker;
 
 import javax.inject.Inject;
 import java.io.File;
+import java.io.FileFilter;
 
 import static org.gradle.cache.FileLockManager.LockMode.None;
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
 public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFactory<DirectoryBuildCache> {
     public static final String FAILED_READ_SUFFIX = ".failed";
+    /**
+     * When {@code true}, new entries are split into a manifest and blobs which are shared between entries.
+     */
+    public static final String CONTENT_ADDRESSED_PROPERTY = "org.gradle.unsafe.build-cache.content-addressed-local-cache";
+    public static final String BLOBS_DIRECTORY = "blobs";
 
     private static final String BUILD_CACHE_VERSION = "1";
     private static final String BUILD_CACHE_KEY = "build-cache-" + BUILD_CACHE_VERSION;
@@ -54,16 +63,18 @@ public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFacto
     private final DirectoryBuildCacheFileStoreFactory fileStoreFactory;
     private final CleanupActionFactory cleanupActionFactory;
     private final FileAccessTimeJournal fileAccessTimeJournal;
+    private final BuildCacheEntryDeduplicator deduplicator;
 
     @Inject
     public DirectoryBuildCacheServiceFactory(CacheRepository cacheRepository, CacheScopeMapping cacheScopeMapping, PathToFileResolver resolver, DirectoryBuildCacheFileStoreFactory fileStoreFactory,
-                                             CleanupActionFactory cleanupActionFactory, FileAccessTimeJournal fileAccessTimeJournal) {
+                                             CleanupActionFactory cleanupActionFactory, FileAccessTimeJournal fileAccessTimeJournal, BuildCacheEntryDeduplicator deduplicator) {
         this.cacheRepository = cacheRepository;
         this.cacheScopeMapping = cacheScopeMapping;
         this.resolver = resolver;
         this.fileStoreFactory = fileStoreFactory;
         this.cleanupActionFactory = cleanupActionFactory;
         this.fileAccessTimeJournal = fileAccessTimeJournal;
+        this.deduplicator = deduplicator;
     }
 
     @Override
@@ -83,9 +94,16 @@ public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFacto
             config("removeUnusedEntriesAfter", String.valueOf(removeUnusedEntriesAfterDays) + " days");
 
         PathKeyFileStore fileStore = fileStoreFactory.createFileStore(target);
+        BuildCacheBlobStore blobStore = new BuildCacheBlobStore(new File(target, BLOBS_DIRECTORY));
+        // The blobs are cleaned up even when new entries are not split, as they may have been stored by a previous build
+        FilesFinder entriesFinder = new EntriesFinder(new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP), blobStore.getBlobsDir());
+        CleanupAction cleanupAction = CompositeCleanupAction.builder()
+            .add(new LeastRecentlyUsedCacheCleanup(entriesFinder, fileAccessTimeJournal, removeUnusedEntriesAfterDays))
+            .add(new UnreferencedBlobsCleanup(entriesFinder, blobStore, deduplicator))
+            .build();
         PersistentCache persistentCache = cacheRepository
             .cache(target)
-            .withCleanup(cleanupActionFactory.create(new LeastRecentlyUsedCacheCleanup(new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP), fileAccessTimeJournal, removeUnusedEntriesAfterDays)))
+            .withCleanup(cleanupActionFactory.create(cleanupAction))
             .withDisplayName("Build cache")
             .withLockOptions(mode(None))
             .withCrossVersionCache(CacheBuilder.LockTarget.DefaultTarget)
@@ -93,7 +111,9 @@ public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFacto
         BuildCacheTempFileStore tempFileStore = new DefaultBuildCacheTempFileStore(target);
         FileAccessTracker fileAccessTracker = new SingleDepthFileAccessTracker(fileAccessTimeJournal, target, FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
 
-        return new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, FAILED_READ_SUFFIX);
+        boolean deduplicate = Boolean.getBoolean(CONTENT_ADDRESSED_PROPERTY);
+
+        return new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, FAILED_READ_SUFFIX, deduplicator, blobStore, deduplicate);
     }
 
     private static void checkDirectory(File directory) {
@@ -113,4 +133,27 @@ public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFacto
             }
         }
     }
+
+    /**
+     * Finds the entries of the cache, leaving out the blob store.
+     */
+    private static class EntriesFinder implements FilesFinder {
+        private final FilesFinder delegate;
+        private final File blobsDir;
+
+        EntriesFinder(FilesFinder delegate, File blobsDir) {
+            this.delegate = delegate;
+            this.blobsDir = blobsDir;
+        }
+
+        @Override
+        public Iterable<File> find(File baseDir, final FileFilter filter) {
+            return delegate.find(baseDir, new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return !file.equals(blobsDir) && filter.accept(file);
+                }
+            });
+        }
+    }
 }
@@ -19,6 +19,7 @@ package org.gradle.caching.local.internal;
 import org.gradle.api.Action;
 import org.gradle.caching.BuildCacheKey;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.File;
 
@@ -34,6 +35,15 @@ public interface LocalBuildCacheService extends BuildCacheTempFileStore, Closeab
      */
     void loadLocally(BuildCacheKey key, Action<? super File> reader);
 
+    /**
+     * Returns the blob store to resolve the blobs referred to by a file handed to the {@code reader} of {@link #loadLocally(BuildCacheKey, Action)}.
+     * Returns {@code null} when the file needs to contain the contents of its files.
+     */
+    @Nullable
+    default BuildCacheBlobStore getBlobStore(File loadedFile) {
+        return null;
+    }
+
     /**
      * Store the given file in the local file store as a cache artifact.
      */
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.caching.local.internal;
+
+import org.gradle.api.Action;
+import org.gradle.cache.CleanableStore;
+import org.gradle.cache.CleanupAction;
+import org.gradle.cache.CleanupProgressMonitor;
+import org.gradle.cache.internal.FilesFinder;
+import org.gradle.cache.internal.NonReservedFileFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Deletes the blobs of a content-addressed local build cache which are not referred to by any manifest.
+ *
+ * Should run after the entries have been cleaned up, so the blobs of the deleted entries are deleted in the same run.
+ */
+public class UnreferencedBlobsCleanup implements CleanupAction {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UnreferencedBlobsCleanup.class);
+
+    private final FilesFinder entriesFinder;
+    private final BuildCacheBlobStore blobStore;
+    private final BuildCacheEntryDeduplicator deduplicator;
+
+    public UnreferencedBlobsCleanup(FilesFinder entriesFinder, BuildCacheBlobStore blobStore, BuildCacheEntryDeduplicator deduplicator) {
+        this.entriesFinder = entriesFinder;
+        this.blobStore = blobStore;
+        this.deduplicator = deduplicator;
+    }
+
+    @Override
+    public void clean(CleanableStore cleanableStore, CleanupProgressMonitor progressMonitor) {
+        if (!blobStore.getBlobsDir().isDirectory()) {
+            return;
+        }
+        final Set<String> referencedHashes = new HashSet<String>();
+        for (File entry : entriesFinder.find(cleanableStore.getBaseDir(), new NonReservedFileFilter(cleanableStore.getReservedCacheFiles()))) {
+            if (!entry.isFile() || entry.getName().endsWith(BuildCacheTempFileStore.PARTIAL_FILE_SUFFIX)) {
+                continue;
+            }
+            try {
+                deduplicator.visitReferencedBlobs(entry, new Action<String>() {
+                    @Override
+                    public void execute(String hash) {
+                        referencedHashes.add(hash);
+                    }
+                });
+            } catch (IOException e) {
+                // An entry which cannot be read cannot be loaded either, so its blobs don't need to be retained
+                LOGGER.debug("Could not read build cache entry {}.", entry, e);
+            }
+        }
+        int deleted = blobStore.deleteUnreferenced(referencedHashes, progressMonitor);
+        LOGGER.debug("{} cleanup deleted {} unreferenced blobs.", cleanableStore.getDisplayName(), deleted);
+    }
+}
@@ -29,6 +29,7 @@ import org.gradle.caching.configuration.internal.DefaultBuildCacheServiceRegistr
 import org.gradle.caching.internal.FinalizeBuildCacheConfigurationBuildOperationType
 import org.gradle.caching.local.DirectoryBuildCache
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.ExecutorFactory
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.testing.internal.util.Specification
 import org.gradle.util.Path
@@ -37,6 +38,8 @@ import org.gradle.util.TestUtil
 import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.BuildCacheMode.DISABLED
 import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.BuildCacheMode.ENABLED
 import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteAccessMode.ONLINE
+import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteLoadMode.BUFFERED
+import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteStoreMode.BLOCKING
 
 class BuildCacheControllerFactoryTest extends Specification {
 
@@ -63,9 +66,13 @@ class BuildCacheControllerFactoryTest extends Specification {
             config,
             buildCacheEnabled ? ENABLED : DISABLED,
             ONLINE,
+            BLOCKING,
+            BUFFERED,
+            null,
             logStacktraces,
             emitDebugLogging,
-            TestUtil.instantiatorFactory().inject()
+            TestUtil.instantiatorFactory().inject(),
+            Mock(ExecutorFactory)
         )
         assert controllerType.isInstance(controller)
         controllerType.cast(controller)
@@ -17,12 +17,14 @@
 package org.gradle.caching.internal.controller
 
 import org.gradle.api.Action
+import org.gradle.api.GradleException
 import org.gradle.caching.BuildCacheEntryReader
 import org.gradle.caching.BuildCacheEntryWriter
 import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.BuildCacheService
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.testing.internal.util.Specification
@@ -46,6 +48,8 @@ class DefaultBuildCacheControllerTest extends Specification {
     def loadmetadata = Mock(Object)
 
     BuildCacheService legacyLocal = null
+    def remoteLoadMode = BuildCacheControllerFactory.RemoteLoadMode.BUFFERED
+    BuildCacheEntryTranscoder remoteTranscoder = null
 
     def storeCommand = Stub(BuildCacheStoreCommand) {
         getKey() >> key
@@ -80,6 +84,20 @@ class DefaultBuildCacheControllerTest extends Specification {
 
     def operations = new TestBuildOperationExecutor()
 
+    def loadResult() {
+        new BuildCacheLoadCommand.Result() {
+            @Override
+            long getArtifactEntryCount() {
+                return 0
+            }
+
+            @Override
+            Object getMetadata() {
+                return loadmetadata
+            }
+        }
+    }
+
     @Rule
     final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
 
@@ -93,6 +111,10 @@ class DefaultBuildCacheControllerTest extends Specification {
             ),
             operations,
             tmpDir.file("dir"),
+            BuildCacheControllerFactory.RemoteStoreMode.BLOCKING,
+            remoteLoadMode,
+            remoteTranscoder,
+            new DefaultExecutorFactory(),
             false, false
         )
     }
@@ -123,6 +145,46 @@ class DefaultBuildCacheControllerTest extends Specification {
         1 * local.storeLocally(key, _)
     }
 
+    def "stores transcoded entry to remote and packed entry to local"() {
+        given:
+        remoteTranscoder = Stub(BuildCacheEntryTranscoder) {
+            transcode(_, _) >> { InputStream input, OutputStream output ->
+                output.write(input.bytes.reverse())
+            }
+        }
+        def packed = Stub(BuildCacheStoreCommand) {
+            getKey() >> key
+            store(_) >> { OutputStream output ->
+                output.withStream { it.write("pack".bytes) }
+                new BuildCacheStoreCommand.Result() {
+                    @Override
+                    long getArtifactEntryCount() {
+                        return 1
+                    }
+                }
+            }
+        }
+        def tempFiles = 0
+        String storedRemotely = null
+        String storedLocally = null
+
+        when:
+        controller.store(packed)
+
+        then:
+        2 * local.withTempFile(key, _) >> { BuildCacheKey key, Action<File> action ->
+            action.execute(tmpDir.file("file-${++tempFiles}"))
+        }
+        1 * remote.store(key, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            def output = new ByteArrayOutputStream()
+            writer.writeTo(output)
+            storedRemotely = output.toString()
+        }
+        1 * local.storeLocally(key, _) >> { BuildCacheKey key, File file -> storedLocally = file.text }
+        storedRemotely == "kcap"
+        storedLocally == "pack"
+    }
+
     def "does not store to local if local push is disabled"() {
         given:
         localPush = false
@@ -238,6 +300,99 @@ class DefaultBuildCacheControllerTest extends Specification {
         0 * remote.store(key, _)
     }
 
+    def "streaming remote load unpacks entry while reading it and stores it to local"() {
+        given:
+        remoteLoadMode = BuildCacheControllerFactory.RemoteLoadMode.STREAMING
+        String unpacked = null
+        def command = Stub(BuildCacheLoadCommand) {
+            getKey() >> key
+            load(_) >> { InputStream input ->
+                unpacked = new String(input.bytes)
+                loadResult()
+            }
+        }
+        String stored = null
+        1 * local.loadLocally(key, _) // miss
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+
+        when:
+        def result = controller.load(command)
+
+        then:
+        1 * local.storeLocally(key, _) >> { BuildCacheKey key, File file -> stored = file.text }
+        result.get() == loadmetadata
+        unpacked == "foo"
+        stored == "foo"
+        with(operations.log.descriptors.find { it.displayName == "Unpack build cache entry key" }) {
+            details.archiveSize == -1
+        }
+    }
+
+    def "streaming remote load fails for invalid entry without storing it to local"() {
+        given:
+        remoteLoadMode = BuildCacheControllerFactory.RemoteLoadMode.STREAMING
+        def command = Stub(BuildCacheLoadCommand) {
+            getKey() >> key
+            load(_) >> { InputStream input ->
+                throw new IOException("broken")
+            }
+        }
+        1 * local.loadLocally(key, _) // miss
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+
+        when:
+        controller.load(command)
+
+        then:
+        def e = thrown(GradleException)
+        e.message == "Build cache entry key from remote build cache is invalid"
+        0 * local.storeLocally(key, _)
+    }
+
+    def "streaming remote load fails when download fails after unpacking has started"() {
+        given:
+        remoteLoadMode = BuildCacheControllerFactory.RemoteLoadMode.STREAMING
+        def command = Stub(BuildCacheLoadCommand) {
+            getKey() >> key
+            load(_) >> { InputStream input ->
+                input.bytes
+                loadResult()
+            }
+        }
+        def brokenDownload = new InputStream() {
+            @Override
+            int read() throws IOException {
+                throw new IOException("connection reset")
+            }
+        }
+        1 * local.loadLocally(key, _) // miss
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(brokenDownload)
+            true
+        }
+
+        when:
+        def controller = getController()
+        controller.load(command)
+
+        then:
+        def e = thrown(GradleException)
+        e.message == "Build cache entry key from remote build cache could not be loaded completely"
+        0 * local.storeLocally(key, _)
+
+        when:
+        controller.store(storeCommand)
+
+        then:
+        0 * remote.store(key, _)
+    }
+
     def "close only closes once"() {
         when:
         def controller = getController()
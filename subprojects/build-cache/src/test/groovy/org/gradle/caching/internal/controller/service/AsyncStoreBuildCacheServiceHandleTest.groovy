@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service
+
+import org.gradle.caching.BuildCacheEntryWriter
+import org.gradle.caching.BuildCacheException
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.BuildCacheService
+import org.gradle.caching.internal.controller.operations.StoreOperationResult
+import org.gradle.caching.internal.operations.BuildCacheRemoteStoreBuildOperationType
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.testing.internal.util.Specification
+import org.junit.Rule
+import spock.lang.Timeout
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@Timeout(60)
+class AsyncStoreBuildCacheServiceHandleTest extends Specification {
+
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def key = Mock(BuildCacheKey) {
+        getHashCode() >> "key"
+        getDisplayName() >> "key"
+    }
+    def service = Mock(BuildCacheService)
+    def operations = new TestBuildOperationExecutor()
+    def uploadDir = tmpDir.file("uploads")
+    def entry = tmpDir.file("entry") << "content"
+
+    int maxPendingUploads = 2
+    long drainTimeoutMillis = 10000
+
+    AsyncStoreBuildCacheServiceHandle handle
+
+    def cleanup() {
+        handle?.close()
+    }
+
+    def "store returns before the upload completes"() {
+        def releaseUpload = new CountDownLatch(1)
+        def uploaded = new ByteArrayOutputStream()
+        service.store(key, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            releaseUpload.await()
+            writer.writeTo(uploaded)
+        }
+        createHandle()
+
+        when:
+        handle.store(key, new StoreTarget(entry))
+        entry.delete()
+
+        then:
+        uploaded.size() == 0
+
+        when:
+        releaseUpload.countDown()
+        handle.close()
+
+        then:
+        uploaded.toString() == "content"
+        storeOps().size() == 1
+        storeOps()[0].result == StoreOperationResult.STORED
+        uploadDir.list().length == 0
+    }
+
+    def "retries failed uploads"() {
+        createHandle()
+
+        when:
+        handle.store(key, new StoreTarget(entry))
+        handle.close()
+
+        then:
+        1 * service.store(key, _) >> { throw new BuildCacheException("broken") }
+        1 * service.store(key, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer -> writer.writeTo(new ByteArrayOutputStream()) }
+        storeOps().size() == 2
+        storeOps()[0].failure.message == "broken"
+        storeOps()[1].result == StoreOperationResult.STORED
+        handle.canStore()
+    }
+
+    def "disables the cache when all attempts to upload fail"() {
+        createHandle()
+
+        when:
+        handle.store(key, new StoreTarget(entry))
+        handle.close()
+
+        then:
+        3 * service.store(key, _) >> { throw new BuildCacheException("broken") }
+        storeOps().size() == 3
+        storeOps().every { it.failure.message == "broken" }
+        !handle.canStore()
+    }
+
+    def "uploads on the calling thread when too many uploads are pending"() {
+        maxPendingUploads = 1
+        def releaseUpload = new CountDownLatch(1)
+        def testThread = Thread.currentThread()
+        int callerUploads = 0
+        service.store(key, _) >> {
+            if (Thread.currentThread() == testThread) {
+                callerUploads++
+            } else {
+                releaseUpload.await()
+            }
+        }
+        createHandle()
+
+        when:
+        handle.store(key, new StoreTarget(entry))
+        handle.store(key, new StoreTarget(entry))
+
+        then:
+        callerUploads == 1
+
+        when:
+        releaseUpload.countDown()
+        handle.close()
+
+        then:
+        storeOps().size() == 2
+    }
+
+    def "abandons uploads which do not complete when closed"() {
+        drainTimeoutMillis = 100
+        def uploadStarted = new CountDownLatch(1)
+        createHandle()
+
+        when:
+        handle.store(key, new StoreTarget(entry))
+        uploadStarted.await()
+        handle.close()
+
+        then:
+        1 * service.store(key, _) >> {
+            uploadStarted.countDown()
+            Thread.sleep(TimeUnit.MINUTES.toMillis(1))
+        }
+        1 * service.close()
+        uploadDir.list().length == 0
+    }
+
+    private void createHandle() {
+        handle = new AsyncStoreBuildCacheServiceHandle(service, true, BuildCacheServiceRole.REMOTE, operations, false,
+            new DefaultExecutorFactory(), uploadDir, 2, maxPendingUploads, 3, 1, drainTimeoutMillis)
+    }
+
+    private List<TestBuildOperationExecutor.Log.TypedRecord> storeOps() {
+        operations.log.all(BuildCacheRemoteStoreBuildOperationType)
+    }
+}
@@ -132,4 +132,79 @@ class DirectoryBuildCacheServiceTest extends Specification {
         1 * fileAccessTracker.markAccessed(cachedFile)
         loaded
     }
+
+    def "stores manifest and restores entry for readers when deduplicating"() {
+        def deduplicator = Mock(BuildCacheEntryDeduplicator)
+        def blobStore = new BuildCacheBlobStore(new File(cacheDir, "blobs"))
+        def service = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, ".failed", deduplicator, blobStore, true)
+        def originalFile = temporaryFolder.createFile("foo")
+        originalFile.text = "entry"
+
+        when:
+        service.storeLocally(key, originalFile)
+
+        then:
+        1 * deduplicator.deduplicate(originalFile, _, blobStore) >> { File entry, OutputStream manifest, BuildCacheBlobStore blobs -> manifest << "manifest" }
+        new File(cacheDir, hashCode).text == "manifest"
+
+        when:
+        def loaded = service.load(key, new BuildCacheEntryReader() {
+            @Override
+            void readFrom(InputStream input) throws IOException {
+                assert input.text == "entry"
+            }
+        })
+
+        then:
+        1 * deduplicator.isManifest(new File(cacheDir, hashCode)) >> true
+        1 * deduplicator.restore(new File(cacheDir, hashCode), _, blobStore) >> { File manifest, OutputStream entry, BuildCacheBlobStore blobs -> entry << "entry" }
+        loaded
+    }
+
+    def "resolves blobs only for files in the format of a manifest"() {
+        def deduplicator = Mock(BuildCacheEntryDeduplicator)
+        def blobStore = new BuildCacheBlobStore(new File(cacheDir, "blobs"))
+        def service = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, ".failed", deduplicator, blobStore, true)
+        def manifest = temporaryFolder.createFile("manifest")
+        def entry = temporaryFolder.createFile("entry")
+
+        when:
+        def manifestBlobStore = service.getBlobStore(manifest)
+        def entryBlobStore = service.getBlobStore(entry)
+
+        then:
+        1 * deduplicator.hasManifestFormat(manifest) >> true
+        1 * deduplicator.hasManifestFormat(entry) >> false
+        manifestBlobStore == blobStore
+        entryBlobStore == null
+    }
+
+    def "does not store entries referring to blobs"() {
+        def deduplicator = Mock(BuildCacheEntryDeduplicator)
+        def service = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, ".failed", deduplicator, new BuildCacheBlobStore(new File(cacheDir, "blobs")), false)
+        def originalFile = temporaryFolder.createFile("foo")
+
+        when:
+        service.storeLocally(key, originalFile)
+
+        then:
+        1 * deduplicator.isManifest(originalFile) >> true
+        thrown(IllegalArgumentException)
+        !new File(cacheDir, hashCode).exists()
+    }
+
+    def "stores entry as is when it cannot be deduplicated"() {
+        def deduplicator = Mock(BuildCacheEntryDeduplicator)
+        def service = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, ".failed", deduplicator, new BuildCacheBlobStore(new File(cacheDir, "blobs")), true)
+        def originalFile = temporaryFolder.createFile("foo")
+        originalFile.text = "entry"
+
+        when:
+        service.storeLocally(key, originalFile)
+
+        then:
+        1 * deduplicator.deduplicate(originalFile, _, _) >> { throw new IOException("not a tar") }
+        new File(cacheDir, hashCode).text == "entry"
+        cacheDir.listFiles().findAll { it.name.endsWith(BuildCacheTempFileStore.PARTIAL_FILE_SUFFIX) }.empty
+    }
 }
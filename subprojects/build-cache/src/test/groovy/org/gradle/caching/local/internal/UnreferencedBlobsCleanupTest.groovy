@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.caching.local.internal
+
+import org.gradle.api.Action
+import org.gradle.cache.CleanableStore
+import org.gradle.cache.CleanupProgressMonitor
+import org.gradle.cache.internal.FilesFinder
+import org.gradle.cache.internal.SingleDepthFilesFinder
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+@CleanupTestDirectory
+class UnreferencedBlobsCleanupTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def cacheDir = temporaryFolder.createDir("cache")
+    def blobStore = new BuildCacheBlobStore(cacheDir.file("blobs"))
+    def deduplicator = Mock(BuildCacheEntryDeduplicator)
+    def entriesFinder = { File baseDir, FileFilter filter ->
+        new SingleDepthFilesFinder(1).find(baseDir, { File file -> file != blobStore.blobsDir && filter.accept(file) } as FileFilter)
+    } as FilesFinder
+    def cleanableStore = Stub(CleanableStore) {
+        getBaseDir() >> cacheDir
+        getReservedCacheFiles() >> []
+        getDisplayName() >> "Build cache"
+    }
+    def progressMonitor = Mock(CleanupProgressMonitor)
+    def cleanup = new UnreferencedBlobsCleanup(entriesFinder, blobStore, deduplicator)
+
+    def "deletes blobs which are not referenced by any entry"() {
+        def referenced = blobStore.store("aa01", "referenced".bytes)
+        def unreferenced = blobStore.store("bb02", "unreferenced".bytes)
+        def tempBlob = blobStore.createTempBlob()
+        def manifest = cacheDir.file("1234abcd").createFile()
+
+        when:
+        cleanup.clean(cleanableStore, progressMonitor)
+
+        then:
+        1 * deduplicator.visitReferencedBlobs(manifest, _) >> { File file, Action<? super String> visitor -> visitor.execute("aa01") }
+        1 * progressMonitor.incrementSkipped()
+        2 * progressMonitor.incrementDeleted()
+        0 * _
+
+        and:
+        referenced.file
+        !unreferenced.exists()
+        !unreferenced.parentFile.exists()
+        !tempBlob.exists()
+    }
+
+    def "does not read the entries when there are no blobs"() {
+        cacheDir.file("1234abcd").createFile()
+
+        when:
+        cleanup.clean(cleanableStore, progressMonitor)
+
+        then:
+        0 * _
+    }
+}
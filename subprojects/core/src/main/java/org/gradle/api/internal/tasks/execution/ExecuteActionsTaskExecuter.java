@@ -15,10 +15,12 @@
  */
 package org.gradle.api.internal.tasks.execution;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Lists;
 import org.gradle.api.execution.TaskActionListener;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.internal.OverlappingOutputs;
 import org.gradle.api.internal.TaskInternal;
 import org.gradle.api.internal.project.taskfactory.IncrementalInputsTaskAction;
@@ -33,6 +35,7 @@ import org.gradle.api.internal.tasks.TaskStateInternal;
 import org.gradle.api.internal.tasks.properties.CacheableOutputFilePropertySpec;
 import org.gradle.api.internal.tasks.properties.InputFilePropertySpec;
 import org.gradle.api.internal.tasks.properties.OutputFilePropertySpec;
+import org.gradle.api.internal.tasks.properties.TaskProperties;
 import org.gradle.api.tasks.StopActionException;
 import org.gradle.api.tasks.StopExecutionException;
 import org.gradle.api.tasks.TaskExecutionException;
@@ -266,7 +269,22 @@ public class ExecuteActionsTaskExecuter implements TaskExecuter {
 
         @Override
         public Optional<? extends Iterable<String>> getChangingOutputs() {
-            return Optional.empty();
+            TaskProperties taskProperties = context.getTaskProperties();
+            if (!taskProperties.hasDeclaredOutputs()) {
+                // We don't know which locations the task changes
+                return Optional.empty();
+            }
+            ImmutableList.Builder<String> builder = ImmutableList.builder();
+            addAbsolutePaths(taskProperties.getOutputFiles(), builder);
+            addAbsolutePaths(taskProperties.getLocalStateFiles(), builder);
+            addAbsolutePaths(taskProperties.getDestroyableFiles(), builder);
+            return Optional.of(builder.build());
+        }
+
+        private void addAbsolutePaths(FileCollection files, ImmutableList.Builder<String> builder) {
+            for (File file : files) {
+                builder.add(file.getAbsolutePath());
+            }
         }
 
         @Override
@@ -21,9 +21,12 @@ import org.gradle.caching.configuration.internal.BuildCacheServiceRegistration;
 import org.gradle.caching.configuration.internal.DefaultBuildCacheConfiguration;
 import org.gradle.caching.configuration.internal.DefaultBuildCacheServiceRegistration;
 import org.gradle.caching.internal.controller.RootBuildCacheControllerRef;
+import org.gradle.caching.internal.packaging.impl.TarBuildCacheEntryDeduplicator;
 import org.gradle.caching.local.DirectoryBuildCache;
+import org.gradle.caching.local.internal.BuildCacheEntryDeduplicator;
 import org.gradle.caching.local.internal.DirectoryBuildCacheFileStoreFactory;
 import org.gradle.caching.local.internal.DirectoryBuildCacheServiceFactory;
+import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.reflect.Instantiator;
 import org.gradle.internal.resource.local.DefaultPathKeyFileStore;
 import org.gradle.internal.resource.local.PathKeyFileStore;
@@ -67,6 +70,10 @@ public final class BuildCacheServices extends AbstractPluginServiceRegistry {
                 };
             }
 
+            BuildCacheEntryDeduplicator createBuildCacheEntryDeduplicator(StreamHasher streamHasher) {
+                return new TarBuildCacheEntryDeduplicator(streamHasher);
+            }
+
             BuildCacheServiceRegistration createDirectoryBuildCacheServiceRegistration() {
                 return new DefaultBuildCacheServiceRegistration(DirectoryBuildCache.class, DirectoryBuildCacheServiceFactory.class);
             }
@@ -25,15 +25,23 @@ import org.gradle.caching.configuration.internal.BuildCacheConfigurationInternal
 import org.gradle.caching.internal.command.BuildCacheCommandFactory;
 import org.gradle.caching.internal.controller.BuildCacheController;
 import org.gradle.caching.internal.controller.BuildCacheControllerFactory;
+import org.gradle.caching.internal.controller.BuildCacheEntryTranscoder;
 import org.gradle.caching.internal.controller.BuildCacheControllerFactory.BuildCacheMode;
 import org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteAccessMode;
+import org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteLoadMode;
+import org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteStoreMode;
 import org.gradle.caching.internal.controller.RootBuildCacheControllerRef;
 import org.gradle.caching.internal.origin.OriginMetadataFactory;
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
-import org.gradle.caching.internal.packaging.impl.GZipBuildCacheEntryPacker;
+import org.gradle.caching.internal.packaging.impl.BuildCacheEntryCompression;
+import org.gradle.caching.internal.packaging.impl.CompressingBuildCacheEntryPacker;
+import org.gradle.caching.internal.packaging.impl.CompressionBuildCacheEntryTranscoder;
+import org.gradle.caching.internal.packaging.impl.SegmentedBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.TarBuildCacheEntryPacker;
 import org.gradle.initialization.buildsrc.BuildSourceBuilder;
 import org.gradle.internal.SystemProperties;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.nativeplatform.filesystem.FileSystem;
 import org.gradle.internal.operations.BuildOperationExecutor;
@@ -52,13 +60,37 @@ import static org.gradle.caching.internal.controller.BuildCacheControllerFactory
 import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.BuildCacheMode.ENABLED;
 import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteAccessMode.OFFLINE;
 import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteAccessMode.ONLINE;
+import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteLoadMode.BUFFERED;
+import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteLoadMode.STREAMING;
+import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteStoreMode.ASYNC;
+import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteStoreMode.BLOCKING;
 
 public class BuildCacheServices {
 
     private static final Path ROOT_BUILD_SRC_PATH = Path.path(":" + BuildSourceBuilder.BUILD_SRC);
 
-    BuildCacheEntryPacker createResultPacker(FileSystem fileSystem, StreamHasher fileHasher, StringInterner stringInterner) {
-        return new GZipBuildCacheEntryPacker(new TarBuildCacheEntryPacker(fileSystem, fileHasher, stringInterner));
+    BuildCacheEntryPacker createResultPacker(FileSystem fileSystem, StreamHasher fileHasher, StringInterner stringInterner, ExecutorFactory executorFactory, ParallelismConfigurationManager parallelismConfigurationManager) {
+        TarBuildCacheEntryPacker tarPacker = new TarBuildCacheEntryPacker(fileSystem, fileHasher, stringInterner);
+        BuildCacheEntryCompression compression = localCompression();
+        int parallelism = parallelismConfigurationManager.getParallelismConfiguration().getMaxWorkerCount();
+        return new SegmentedBuildCacheEntryPacker(
+            new CompressingBuildCacheEntryPacker(tarPacker, compression),
+            tarPacker,
+            compression,
+            stringInterner,
+            executorFactory.create("Build cache entry packer", parallelism),
+            parallelism,
+            Boolean.getBoolean(SegmentedBuildCacheEntryPacker.SEGMENTED_ENTRIES_PROPERTY)
+        );
+    }
+
+    private static BuildCacheEntryCompression localCompression() {
+        return compression(BuildCacheEntryCompression.LOCAL_COMPRESSION_PROPERTY, BuildCacheEntryCompression.GZIP);
+    }
+
+    private static BuildCacheEntryCompression compression(String property, BuildCacheEntryCompression defaultCompression) {
+        String compression = System.getProperty(property);
+        return compression == null ? defaultCompression : BuildCacheEntryCompression.forDisplayName(compression);
     }
 
     OriginMetadataFactory createOriginMetadataFactory(
@@ -86,10 +118,11 @@ public class BuildCacheServices {
         BuildOperationExecutor buildOperationExecutor,
         InstantiatorFactory instantiatorFactory,
         GradleInternal gradle,
-        RootBuildCacheControllerRef rootControllerRef
+        RootBuildCacheControllerRef rootControllerRef,
+        ExecutorFactory executorFactory
     ) {
         if (isRoot(gradle) || isRootBuildSrc(gradle) || isGradleBuildTaskRoot(rootControllerRef)) {
-            return doCreateBuildCacheController(serviceRegistry, buildCacheConfiguration, buildOperationExecutor, instantiatorFactory, gradle);
+            return doCreateBuildCacheController(serviceRegistry, buildCacheConfiguration, buildOperationExecutor, instantiatorFactory, gradle, executorFactory);
         } else {
             // must be an included build
             return rootControllerRef.getForNonRootBuild();
@@ -113,12 +146,17 @@ public class BuildCacheServices {
         return gradle.getParent() == null;
     }
 
-    private BuildCacheController doCreateBuildCacheController(ServiceRegistry serviceRegistry, BuildCacheConfigurationInternal buildCacheConfiguration, BuildOperationExecutor buildOperationExecutor, InstantiatorFactory instantiatorFactory, GradleInternal gradle) {
+    private BuildCacheController doCreateBuildCacheController(ServiceRegistry serviceRegistry, BuildCacheConfigurationInternal buildCacheConfiguration, BuildOperationExecutor buildOperationExecutor, InstantiatorFactory instantiatorFactory, GradleInternal gradle, ExecutorFactory executorFactory) {
         StartParameter startParameter = gradle.getStartParameter();
         Path buildIdentityPath = gradle.getIdentityPath();
         File gradleUserHomeDir = gradle.getGradleUserHomeDir();
         BuildCacheMode buildCacheMode = startParameter.isBuildCacheEnabled() ? ENABLED : DISABLED;
         RemoteAccessMode remoteAccessMode = startParameter.isOffline() ? OFFLINE : ONLINE;
+        RemoteStoreMode remoteStoreMode = Boolean.getBoolean(BuildCacheControllerFactory.ASYNC_REMOTE_STORE_PROPERTY) ? ASYNC : BLOCKING;
+        RemoteLoadMode remoteLoadMode = Boolean.getBoolean(BuildCacheControllerFactory.STREAMING_REMOTE_LOAD_PROPERTY) ? STREAMING : BUFFERED;
+        BuildCacheEntryCompression localCompression = localCompression();
+        BuildCacheEntryCompression remoteCompression = compression(BuildCacheEntryCompression.REMOTE_COMPRESSION_PROPERTY, localCompression);
+        BuildCacheEntryTranscoder remoteTranscoder = remoteCompression == localCompression ? null : new CompressionBuildCacheEntryTranscoder(remoteCompression);
         boolean logStackTraces = startParameter.getShowStacktrace() != ShowStacktrace.INTERNAL_EXCEPTIONS;
         boolean emitDebugLogging = startParameter.isBuildCacheDebugLogging();
 
@@ -129,9 +167,13 @@ public class BuildCacheServices {
             buildCacheConfiguration,
             buildCacheMode,
             remoteAccessMode,
+            remoteStoreMode,
+            remoteLoadMode,
+            remoteTranscoder,
             logStackTraces,
             emitDebugLogging,
-            instantiatorFactory.inject(serviceRegistry)
+            instantiatorFactory.inject(serviceRegistry),
+            executorFactory
         );
     }
 
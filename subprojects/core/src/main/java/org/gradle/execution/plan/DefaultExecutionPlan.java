@@ -74,6 +74,7 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -81,7 +82,9 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.Consumer;
 
 /**
@@ -91,7 +94,18 @@ import java.util.function.Consumer;
 public class DefaultExecutionPlan implements ExecutionPlan {
     private final Set<TaskNode> entryTasks = new LinkedHashSet<TaskNode>();
     private final NodeMapping nodeMapping = new NodeMapping();
-    private final List<Node> executionQueue = Lists.newLinkedList();
+    private final Set<Node> executionQueue = Sets.newLinkedHashSet();
+    private final Map<Node, Integer> executionQueuePositions = Maps.newIdentityHashMap();
+    /**
+     * The nodes from the execution queue whose dependencies are all complete, in execution queue order.
+     * Nodes are added when their last dependency completes, so selecting the next node does not need to scan the whole execution queue.
+     */
+    private final NavigableSet<Node> readyNodes = new TreeSet<Node>(new Comparator<Node>() {
+        @Override
+        public int compare(Node node1, Node node2) {
+            return executionQueuePositions.get(node1).compareTo(executionQueuePositions.get(node2));
+        }
+    });
     private final Map<Project, ResourceLock> projectLocks = Maps.newHashMap();
     private final FailureCollector failureCollector = new FailureCollector();
     private final TaskNodeFactory taskNodeFactory;
@@ -345,9 +359,15 @@ public class DefaultExecutionPlan implements ExecutionPlan {
             }
         }
         executionQueue.clear();
+        executionQueuePositions.clear();
+        readyNodes.clear();
         Iterables.addAll(executionQueue, nodeMapping);
+        for (Node node : executionQueue) {
+            executionQueuePositions.put(node, executionQueuePositions.size());
+        }
         for (Node node : executionQueue) {
             maybeNodesReady |= node.updateAllDependenciesComplete() && node.isReady();
+            addIfAllDependenciesComplete(node);
         }
         this.dependenciesWhichRequireMonitoring.addAll(dependenciesWhichRequireMonitoring);
     }
@@ -515,6 +535,8 @@ public class DefaultExecutionPlan implements ExecutionPlan {
         entryTasks.clear();
         nodeMapping.clear();
         executionQueue.clear();
+        executionQueuePositions.clear();
+        readyNodes.clear();
         projectLocks.clear();
         failureCollector.clearFailures();
         mutations.clear();
@@ -565,32 +587,53 @@ public class DefaultExecutionPlan implements ExecutionPlan {
         if (!maybeNodesReady) {
             return null;
         }
-        Iterator<Node> iterator = executionQueue.iterator();
+        Iterator<Node> iterator = readyNodes.iterator();
         boolean foundReadyNode = false;
+        Set<Project> unavailableProjects = null;
         while (iterator.hasNext()) {
             Node node = iterator.next();
-            if (node.isReady() && node.allDependenciesComplete()) {
-                foundReadyNode = true;
-                MutationInfo mutations = getResolvedMutationInfo(node);
-
-                // TODO: convert output file checks to a resource lock
-                if (!tryLockProjectFor(node)
-                    || !workerLease.tryLock()
-                    || !canRunWithCurrentlyExecutedNodes(node, mutations)) {
-                    resourceLockState.releaseLocks();
-                    continue;
-                }
+            if (!node.isReady() || !node.allDependenciesComplete()) {
+                // The node has been skipped, or some of its dependencies have been enforced to run. It is added again when it becomes ready
+                iterator.remove();
+                continue;
+            }
+            foundReadyNode = true;
+            Project project = node.getProject();
+            if (unavailableProjects != null && unavailableProjects.contains(project)) {
+                // Another node of the same project could not lock the project
+                continue;
+            }
+            MutationInfo mutations = getResolvedMutationInfo(node);
 
-                if (node.allDependenciesSuccessful()) {
-                    recordNodeStarted(node);
-                    node.startExecution();
-                } else {
-                    node.skipExecution();
-                    updateAllDependenciesCompleteForPredecessors(node);
+            // TODO: convert output file checks to a resource lock
+            if (!tryLockProjectFor(node)) {
+                resourceLockState.releaseLocks();
+                if (unavailableProjects == null) {
+                    unavailableProjects = Sets.newHashSet();
                 }
-                iterator.remove();
-                return node;
+                unavailableProjects.add(project);
+                continue;
             }
+            if (!workerLease.tryLock()) {
+                // No other node can be started either
+                resourceLockState.releaseLocks();
+                break;
+            }
+            if (!canRunWithCurrentlyExecutedNodes(node, mutations)) {
+                resourceLockState.releaseLocks();
+                continue;
+            }
+
+            iterator.remove();
+            executionQueue.remove(node);
+            if (node.allDependenciesSuccessful()) {
+                recordNodeStarted(node);
+                node.startExecution();
+            } else {
+                node.skipExecution();
+                updateAllDependenciesCompleteForPredecessors(node);
+            }
+            return node;
         }
         maybeNodesReady = foundReadyNode;
         return null;
@@ -599,6 +642,13 @@ public class DefaultExecutionPlan implements ExecutionPlan {
     private void updateAllDependenciesCompleteForPredecessors(Node node) {
         for (Node predecessor : node.getAllPredecessors()) {
             maybeNodesReady |= predecessor.updateAllDependenciesComplete() && predecessor.isReady();
+            addIfAllDependenciesComplete(predecessor);
+        }
+    }
+
+    private void addIfAllDependenciesComplete(Node node) {
+        if (node.allDependenciesComplete() && executionQueue.contains(node)) {
+            readyNodes.add(node);
         }
     }
 
@@ -909,7 +959,7 @@ public class DefaultExecutionPlan implements ExecutionPlan {
         }
     }
 
-    private static void enforceFinalizers(Node node) {
+    private void enforceFinalizers(Node node) {
         for (Node finalizerNode : node.getFinalizers()) {
             if (finalizerNode.isRequired() || finalizerNode.isMustNotRun()) {
                 HashSet<Node> enforcedNodes = Sets.newHashSet();
@@ -918,7 +968,7 @@ public class DefaultExecutionPlan implements ExecutionPlan {
         }
     }
 
-    private static void enforceWithDependencies(Node nodeInfo, Set<Node> enforcedNodes) {
+    private void enforceWithDependencies(Node nodeInfo, Set<Node> enforcedNodes) {
         Deque<Node> candidateNodes = new ArrayDeque<Node>();
         candidateNodes.add(nodeInfo);
 
@@ -931,6 +981,7 @@ public class DefaultExecutionPlan implements ExecutionPlan {
 
                 if (node.isMustNotRun() || node.isRequired()) {
                     node.enforceRun();
+                    addIfAllDependenciesComplete(node);
                     // Completed changed from true to false - inform all nodes depending on this one.
                     for (Node predecessor : node.getAllPredecessors()) {
                         predecessor.forceAllDependenciesCompleteUpdate();
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.filewatch;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import org.gradle.api.Action;
+import org.gradle.api.internal.file.FileSystemSubset;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.file.FileMetadataSnapshot;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.FileSystemMirror;
+import org.gradle.internal.snapshot.impl.DefaultFileSystemMirror;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * A {@link FileSystemMirror} which can retain its state between the builds of a daemon.
+ *
+ * Retention is enabled by setting the {@value #RETENTION_PROPERTY} system property to {@code true}.
+ * Each location is watched as soon as it has been snapshotted, and the state is kept for the next build.
+ * File system events then invalidate the state of the changed locations, including changes made later in the same build.
+ * When the watcher loses events, all state is discarded, so the next build scans the file system again.
+ * When the watcher fails, all state is discarded and the locations are watched again when they are next snapshotted.
+ */
+public class WatchingFileSystemMirror implements FileSystemMirror, Stoppable {
+    public static final String RETENTION_PROPERTY = "org.gradle.unsafe.fs-snapshot-retention";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WatchingFileSystemMirror.class);
+
+    private final DefaultFileSystemMirror delegate;
+    private final FileWatcherFactory fileWatcherFactory;
+    private final Set<String> watchedLocations = Sets.newConcurrentHashSet();
+    private final Object watcherLock = new Object();
+    private volatile boolean retentionEnabled;
+    private FileWatcher fileWatcher;
+
+    public WatchingFileSystemMirror(DefaultFileSystemMirror delegate, FileWatcherFactory fileWatcherFactory) {
+        this.delegate = delegate;
+        this.fileWatcherFactory = fileWatcherFactory;
+    }
+
+    @Nullable
+    @Override
+    public FileSystemLocationSnapshot getSnapshot(String absolutePath) {
+        return delegate.getSnapshot(absolutePath);
+    }
+
+    @Override
+    public void putSnapshot(FileSystemLocationSnapshot file) {
+        delegate.putSnapshot(file);
+        recordLocation(file.getAbsolutePath());
+    }
+
+    @Nullable
+    @Override
+    public FileMetadataSnapshot getMetadata(String absolutePath) {
+        return delegate.getMetadata(absolutePath);
+    }
+
+    @Override
+    public void putMetadata(String absolutePath, FileMetadataSnapshot metadata) {
+        delegate.putMetadata(absolutePath, metadata);
+        recordLocation(absolutePath);
+    }
+
+    public void beforeOutputChange() {
+        delegate.beforeOutputChange();
+    }
+
+    public void beforeOutputChange(Iterable<String> affectedOutputPaths) {
+        delegate.beforeOutputChange(affectedOutputPaths);
+    }
+
+    public void afterBuildStarted() {
+        retentionEnabled = Boolean.getBoolean(RETENTION_PROPERTY);
+        if (!retentionEnabled) {
+            // Discard any state retained by a previous build
+            stopWatching();
+            delegate.invalidateAll();
+        }
+    }
+
+    public void beforeBuildFinished() {
+        if (!retentionEnabled) {
+            delegate.beforeBuildFinished();
+        }
+    }
+
+    @Override
+    public void stop() {
+        stopWatching();
+    }
+
+    private void recordLocation(String absolutePath) {
+        if (!retentionEnabled || watchedLocations.contains(absolutePath)) {
+            return;
+        }
+        try {
+            watch(absolutePath);
+        } catch (Exception e) {
+            // Discard outside of the lock, as stopping the watcher waits for its event handling to finish
+            LOGGER.info("Unable to watch the file system for changes, discarding the file system state.", e);
+            stopWatching();
+            delegate.invalidateAll();
+        }
+    }
+
+    private void watch(String absolutePath) throws IOException {
+        synchronized (watcherLock) {
+            if (!watchedLocations.add(absolutePath)) {
+                return;
+            }
+            if (fileWatcher == null) {
+                fileWatcher = fileWatcherFactory.watch(new Action<Throwable>() {
+                    @Override
+                    public void execute(Throwable failure) {
+                        LOGGER.info("Watching the file system failed, discarding the file system state.", failure);
+                        stopWatching();
+                        delegate.invalidateAll();
+                    }
+                }, new FileWatcherListener() {
+                    @Override
+                    public void onChange(FileWatcher watcher, FileWatcherEvent event) {
+                        handleEvent(event);
+                    }
+                });
+            }
+            fileWatcher.watch(FileSystemSubset.builder().add(new File(absolutePath)).build());
+        }
+    }
+
+    private void handleEvent(FileWatcherEvent event) {
+        File file = event.getFile();
+        if (event.getType() == FileWatcherEvent.Type.UNDEFINED || file == null) {
+            // Events have been dropped, e.g. on overflow, so we don't know what changed
+            LOGGER.debug("File system events have been lost, discarding the file system state.");
+            delegate.invalidateAll();
+        } else {
+            delegate.beforeOutputChange(ImmutableList.of(file.getAbsolutePath()));
+        }
+    }
+
+    private void stopWatching() {
+        FileWatcher watcherToStop;
+        synchronized (watcherLock) {
+            watcherToStop = fileWatcher;
+            fileWatcher = null;
+            watchedLocations.clear();
+        }
+        if (watcherToStop != null) {
+            watcherToStop.stop();
+        }
+    }
+}
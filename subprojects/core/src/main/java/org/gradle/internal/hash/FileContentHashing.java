@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Selects the hash function used to hash the content of files.
+ *
+ * The default is MD5. Setting the {@value #HASH_FUNCTION_PROPERTY} system property to {@code murmur3} selects a much faster,
+ * non-cryptographic hash function instead. File hashes are part of the task input fingerprints, so the build cache keys
+ * then differ from the keys calculated by builds using the default hash function. The fast hash function should only be
+ * selected when no remote build cache is shared with builds using the default.
+ */
+public class FileContentHashing {
+    public static final String HASH_FUNCTION_PROPERTY = "org.gradle.internal.file-content-hash";
+
+    private static final String DEFAULT_NAME = "md5";
+    private static final String MURMUR3_NAME = "murmur3";
+
+    private final String name;
+    private final HashFunction hashFunction;
+
+    @VisibleForTesting
+    FileContentHashing(String name, HashFunction hashFunction) {
+        this.name = name;
+        this.hashFunction = hashFunction;
+    }
+
+    public static FileContentHashing fromSystemProperties() {
+        String name = System.getProperty(HASH_FUNCTION_PROPERTY, DEFAULT_NAME);
+        if (name.equals(DEFAULT_NAME)) {
+            return new FileContentHashing(DEFAULT_NAME, Hashing.defaultFunction());
+        }
+        if (name.equals(MURMUR3_NAME)) {
+            return new FileContentHashing(MURMUR3_NAME, Hashing.murmur3());
+        }
+        throw new IllegalArgumentException(String.format("Unknown file content hash function '%s' set via the '%s' system property. Supported values are '%s' and '%s'.", name, HASH_FUNCTION_PROPERTY, DEFAULT_NAME, MURMUR3_NAME));
+    }
+
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Returns the name of a persistent cache holding file hashes, so that hashes created by different hash functions are never mixed.
+     */
+    public String getCacheName(String baseName) {
+        return name.equals(DEFAULT_NAME) ? baseName : baseName + "-" + name;
+    }
+}
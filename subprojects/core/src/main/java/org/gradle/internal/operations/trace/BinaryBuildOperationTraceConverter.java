@@ -0,0 +1,329 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.operations.trace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.gradle.internal.operations.trace.BinaryBuildOperationTraceWriter.DEFINE;
+import static org.gradle.internal.operations.trace.BinaryBuildOperationTraceWriter.FINISH;
+import static org.gradle.internal.operations.trace.BinaryBuildOperationTraceWriter.MAGIC;
+import static org.gradle.internal.operations.trace.BinaryBuildOperationTraceWriter.START;
+import static org.gradle.internal.operations.trace.BinaryBuildOperationTraceWriter.THREAD;
+import static org.gradle.internal.operations.trace.BinaryBuildOperationTraceWriter.VERSION;
+
+/**
+ * Converts a binary build operation trace, as written with `-Dorg.gradle.internal.operations.trace.format=binary`,
+ * to the Chrome trace event format, which can be loaded into chrome://tracing or Perfetto.
+ *
+ * Usage: {@code BinaryBuildOperationTraceConverter «path-base»-trace.bin [«output».json]}
+ *
+ * Operations that finish on the thread they started on are written as complete events.
+ * Operations that finish on another thread are written as a pair of async events, keyed by operation id.
+ * Operations that never finished are written as begin events without a matching end.
+ */
+public class BinaryBuildOperationTraceConverter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Writer writer;
+    private final Map<Integer, ThreadState> threads = new HashMap<Integer, ThreadState>();
+    private final Map<Long, Start> pendingStarts = new HashMap<Long, Start>();
+    private final Map<Long, Finish> pendingFinishes = new HashMap<Long, Finish>();
+    private boolean first = true;
+
+    private BinaryBuildOperationTraceConverter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: BinaryBuildOperationTraceConverter <trace.bin> [<trace.json>]");
+            System.exit(1);
+        }
+        File input = new File(args[0]);
+        File output = args.length == 2 ? new File(args[1]) : new File(input.getPath().replaceFirst("\\.bin$", "") + ".json");
+        convert(input, output);
+    }
+
+    public static void convert(File input, File output) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(input)));
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), UTF_8));
+            try {
+                new BinaryBuildOperationTraceConverter(out).convert(in);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void convert(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a binary build operation trace.");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary build operation trace version " + version + ".");
+        }
+        long startTime = in.readLong();
+
+        writer.write("{\"traceEvents\":[");
+        while (true) {
+            int threadIndex;
+            try {
+                threadIndex = in.readInt();
+            } catch (EOFException e) {
+                break;
+            }
+            byte[] block = new byte[in.readInt()];
+            in.readFully(block);
+            readBlock(threadIndex, ByteBuffer.wrap(block));
+        }
+        for (Start start : pendingStarts.values()) {
+            writeEvent("B", start.name, start.category, start.thread.index, start.time, -1, start.id, start.parentId);
+        }
+        writer.write("\n],\"displayTimeUnit\":\"ms\",\"otherData\":{\"startTime\":");
+        writer.write(Long.toString(startTime));
+        writer.write("}}\n");
+    }
+
+    private void readBlock(int threadIndex, ByteBuffer in) throws IOException {
+        ThreadState thread = threads.get(threadIndex);
+        while (in.hasRemaining()) {
+            byte type = in.get();
+            switch (type) {
+                case THREAD:
+                    long threadId = in.getLong();
+                    String threadName = readString(in);
+                    thread = new ThreadState(threadIndex);
+                    threads.put(threadIndex, thread);
+                    writeThreadName(threadIndex, threadName + " (" + threadId + ")");
+                    break;
+                case DEFINE:
+                    int categoryId = in.getInt();
+                    String category = readString(in);
+                    checkThread(thread, threadIndex).categories.add(categoryId, category);
+                    break;
+                case START:
+                    long id = in.getLong();
+                    long parentId = in.getLong();
+                    long time = in.getLong();
+                    int categoryRef = in.getInt();
+                    String name = readString(in);
+                    ThreadState startThread = checkThread(thread, threadIndex);
+                    started(new Start(id, parentId, time, startThread.categories.get(categoryRef), name, startThread));
+                    break;
+                case FINISH:
+                    long finishId = in.getLong();
+                    long finishTime = in.getLong();
+                    boolean failed = in.get() != 0;
+                    finished(new Finish(finishId, finishTime, failed, checkThread(thread, threadIndex)));
+                    break;
+                default:
+                    throw new IOException("Unexpected record type " + type + " for thread " + threadIndex + ".");
+            }
+        }
+    }
+
+    private void started(Start start) throws IOException {
+        Finish finish = pendingFinishes.remove(start.id);
+        if (finish == null) {
+            pendingStarts.put(start.id, start);
+        } else {
+            write(start, finish);
+        }
+    }
+
+    private void finished(Finish finish) throws IOException {
+        Start start = pendingStarts.remove(finish.id);
+        if (start == null) {
+            pendingFinishes.put(finish.id, finish);
+        } else {
+            write(start, finish);
+        }
+    }
+
+    private void write(Start start, Finish finish) throws IOException {
+        String name = finish.failed ? start.name + " (failed)" : start.name;
+        if (start.thread == finish.thread) {
+            writeEvent("X", name, start.category, start.thread.index, start.time, finish.time - start.time, start.id, start.parentId);
+        } else {
+            writeEvent("b", name, start.category, start.thread.index, start.time, -1, start.id, start.parentId);
+            writeEvent("e", name, start.category, finish.thread.index, finish.time, -1, start.id, start.parentId);
+        }
+    }
+
+    private void writeEvent(String phase, String name, String category, int tid, long time, long duration, long id, long parentId) throws IOException {
+        separator();
+        writer.write("{\"ph\":\"");
+        writer.write(phase);
+        writer.write("\",\"name\":");
+        writeString(name);
+        writer.write(",\"cat\":");
+        writeString(category.isEmpty() ? "operation" : category);
+        writer.write(",\"pid\":1,\"tid\":");
+        writer.write(Integer.toString(tid));
+        writer.write(",\"ts\":");
+        writeMicros(time);
+        if (duration >= 0) {
+            writer.write(",\"dur\":");
+            writeMicros(duration);
+        }
+        if (phase.equals("b") || phase.equals("e")) {
+            writer.write(",\"id\":");
+            writer.write(Long.toString(id));
+        }
+        writer.write(",\"args\":{\"id\":");
+        writer.write(Long.toString(id));
+        if (parentId != 0) {
+            writer.write(",\"parentId\":");
+            writer.write(Long.toString(parentId));
+        }
+        writer.write("}}");
+    }
+
+    private void writeThreadName(int tid, String name) throws IOException {
+        separator();
+        writer.write("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":1,\"tid\":");
+        writer.write(Integer.toString(tid));
+        writer.write(",\"args\":{\"name\":");
+        writeString(name);
+        writer.write("}}");
+    }
+
+    private void separator() throws IOException {
+        if (first) {
+            first = false;
+            writer.write("\n");
+        } else {
+            writer.write(",\n");
+        }
+    }
+
+    private void writeMicros(long nanos) throws IOException {
+        writer.write(Long.toString(nanos / 1000));
+        long fraction = nanos % 1000;
+        if (fraction != 0) {
+            writer.write('.');
+            writer.write(Character.forDigit((int) (fraction / 100), 10));
+            writer.write(Character.forDigit((int) (fraction / 10 % 10), 10));
+            writer.write(Character.forDigit((int) (fraction % 10), 10));
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+
+    private static ThreadState checkThread(ThreadState thread, int threadIndex) throws IOException {
+        if (thread == null) {
+            throw new IOException("Record for unknown thread " + threadIndex + ".");
+        }
+        return thread;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static class ThreadState {
+        final int index;
+        final List<String> categories = new ArrayList<String>();
+
+        ThreadState(int index) {
+            this.index = index;
+        }
+    }
+
+    private static class Start {
+        final long id;
+        final long parentId;
+        final long time;
+        final String category;
+        final String name;
+        final ThreadState thread;
+
+        Start(long id, long parentId, long time, String category, String name, ThreadState thread) {
+            this.id = id;
+            this.parentId = parentId;
+            this.time = time;
+            this.category = category;
+            this.name = name;
+            this.thread = thread;
+        }
+    }
+
+    private static class Finish {
+        final long id;
+        final long time;
+        final boolean failed;
+        final ThreadState thread;
+
+        Finish(long id, long time, boolean failed, ThreadState thread) {
+            this.id = id;
+            this.time = time;
+            this.failed = failed;
+            this.thread = thread;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.operations.trace;
+
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationListener;
+import org.gradle.internal.operations.OperationFinishEvent;
+import org.gradle.internal.operations.OperationIdentifier;
+import org.gradle.internal.operations.OperationProgressEvent;
+import org.gradle.internal.operations.OperationStartEvent;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the build operation stream as compact binary records, for tracing builds with negligible overhead.
+ *
+ * Each thread appends fixed-layout records to its own buffer, without contention with other threads.
+ * A buffer is written to the file as a single block when it fills up, when the operations started by its thread have finished, or when the trace is stopped.
+ * A thread gives up its buffer when its operations have finished, and takes a buffer again when it starts the next operation.
+ * A bounded number of the released buffers are kept for reuse, so idle and dead threads don't hold on to buffers.
+ * Only the identity, parent, timing, type of details and display name of each operation is recorded.
+ * Details, results and progress events are not recorded.
+ *
+ * The file starts with a header (magic, version, wall clock time of the start of the trace in milliseconds),
+ * followed by blocks of (thread index, length, records).
+ * The records of a thread appear in the order they were written, but blocks from different threads are interleaved arbitrarily.
+ * See {@link BinaryBuildOperationTraceConverter} for a reader.
+ */
+class BinaryBuildOperationTraceWriter implements BuildOperationListener, Stoppable {
+
+    static final int MAGIC = 0x47424f54;
+    static final int VERSION = 1;
+
+    static final byte THREAD = 1;
+    static final byte DEFINE = 2;
+    static final byte START = 3;
+    static final byte FINISH = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final DataOutputStream output;
+    private final long startNanos;
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final Queue<ThreadBuffer> buffers = new ConcurrentLinkedQueue<ThreadBuffer>();
+    private final Queue<byte[]> freeBuffers = new ArrayBlockingQueue<byte[]>(Math.max(1, Runtime.getRuntime().availableProcessors()));
+    private final ThreadLocal<ThreadBuffer> currentBuffer = new ThreadLocal<ThreadBuffer>() {
+        @Override
+        protected ThreadBuffer initialValue() {
+            ThreadBuffer buffer = new ThreadBuffer(threadCounter.incrementAndGet(), Thread.currentThread());
+            buffers.add(buffer);
+            return buffer;
+        }
+    };
+    private volatile boolean stopped;
+
+    BinaryBuildOperationTraceWriter(File file) {
+        try {
+            this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(System.currentTimeMillis());
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void started(BuildOperationDescriptor buildOperation, OperationStartEvent startEvent) {
+        long time = System.nanoTime() - startNanos;
+        Object details = buildOperation.getDetails();
+        OperationIdentifier parentId = buildOperation.getParentId();
+        currentBuffer.get().start(
+            buildOperation.getId().getId(),
+            parentId == null ? 0 : parentId.getId(),
+            time,
+            details == null ? "" : details.getClass().getName(),
+            buildOperation.getDisplayName()
+        );
+    }
+
+    @Override
+    public void progress(OperationIdentifier operationIdentifier, OperationProgressEvent progressEvent) {
+    }
+
+    @Override
+    public void finished(BuildOperationDescriptor buildOperation, OperationFinishEvent finishEvent) {
+        long time = System.nanoTime() - startNanos;
+        currentBuffer.get().finish(buildOperation.getId().getId(), time, finishEvent.getFailure() != null);
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        try {
+            for (ThreadBuffer buffer : buffers) {
+                buffer.flush();
+            }
+            synchronized (output) {
+                output.close();
+            }
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    private void writeBlock(int threadIndex, byte[] bytes, int length) {
+        try {
+            synchronized (output) {
+                output.writeInt(threadIndex);
+                output.writeInt(length);
+                output.write(bytes, 0, length);
+            }
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    private byte[] acquireBuffer(int length) {
+        if (length <= BUFFER_SIZE) {
+            byte[] bytes = freeBuffers.poll();
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        return new byte[Math.max(length, BUFFER_SIZE)];
+    }
+
+    private void releaseBuffer(byte[] bytes) {
+        if (bytes.length == BUFFER_SIZE) {
+            // Discarded when enough buffers are kept already
+            freeBuffers.offer(bytes);
+        }
+    }
+
+    /**
+     * Buffer owned by a single thread. Only contended when the trace is stopped.
+     */
+    private final class ThreadBuffer {
+        private final int index;
+        private final Map<String, Integer> categories = new HashMap<String, Integer>();
+        // Null while the thread has no running operations
+        private byte[] bytes;
+        private int position;
+        private int runningOperations;
+
+        ThreadBuffer(int index, Thread thread) {
+            this.index = index;
+            byte[] name = thread.getName().getBytes(UTF_8);
+            reserve(13 + name.length);
+            putByte(THREAD);
+            putLong(thread.getId());
+            putBytes(name);
+        }
+
+        synchronized void start(long id, long parentId, long time, String category, String displayName) {
+            if (stopped) {
+                return;
+            }
+            Integer categoryId = categories.get(category);
+            if (categoryId == null) {
+                categoryId = categories.size();
+                categories.put(category, categoryId);
+                byte[] name = category.getBytes(UTF_8);
+                reserve(9 + name.length);
+                putByte(DEFINE);
+                putInt(categoryId);
+                putBytes(name);
+            }
+            byte[] name = displayName.getBytes(UTF_8);
+            reserve(33 + name.length);
+            putByte(START);
+            putLong(id);
+            putLong(parentId);
+            putLong(time);
+            putInt(categoryId);
+            putBytes(name);
+            runningOperations++;
+        }
+
+        synchronized void finish(long id, long time, boolean failed) {
+            if (stopped) {
+                return;
+            }
+            reserve(18);
+            putByte(FINISH);
+            putLong(id);
+            putLong(time);
+            putByte(failed ? (byte) 1 : (byte) 0);
+            // An operation may finish on another thread than the one which started it
+            if (--runningOperations <= 0) {
+                runningOperations = 0;
+                release();
+            }
+        }
+
+        synchronized void flush() {
+            if (position > 0) {
+                writeBlock(index, bytes, position);
+                position = 0;
+            }
+        }
+
+        private void release() {
+            flush();
+            releaseBuffer(bytes);
+            bytes = null;
+        }
+
+        private void reserve(int length) {
+            if (bytes == null) {
+                bytes = acquireBuffer(length);
+            } else if (position + length > bytes.length) {
+                flush();
+                if (length > bytes.length) {
+                    releaseBuffer(bytes);
+                    bytes = new byte[length];
+                }
+            }
+        }
+
+        private void putByte(byte value) {
+            bytes[position++] = value;
+        }
+
+        private void putInt(int value) {
+            bytes[position++] = (byte) (value >>> 24);
+            bytes[position++] = (byte) (value >>> 16);
+            bytes[position++] = (byte) (value >>> 8);
+            bytes[position++] = (byte) value;
+        }
+
+        private void putLong(long value) {
+            putInt((int) (value >>> 32));
+            putInt((int) value);
+        }
+
+        private void putBytes(byte[] value) {
+            putInt(value.length);
+            System.arraycopy(value, 0, bytes, position, value.length);
+            position += value.length;
+        }
+    }
+}
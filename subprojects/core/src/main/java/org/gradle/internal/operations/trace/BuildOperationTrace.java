@@ -82,6 +82,10 @@ import static org.gradle.internal.Cast.uncheckedCast;
  * The «path-base» param is optional.
  * If invoked as `-Dorg.gradle.internal.operations.trace`, a base value of "operations" will be used.
  *
+ * For tracing the performance of every build, `-Dorg.gradle.internal.operations.trace.format=binary` can be used in addition.
+ * Instead of the files above, a single compact «path-base»-trace.bin file is written, containing only the structure and timing of operations.
+ * It can be converted for viewing in chrome://tracing or Perfetto with {@link BinaryBuildOperationTraceConverter}.
+ *
  * The “trace” produced here is different to the trace produced by Gradle Profiler.
  * There, the focus is analyzing the performance profile.
  * Here, the focus is debugging/developing the information structure of build operations.
@@ -91,12 +95,15 @@ import static org.gradle.internal.Cast.uncheckedCast;
 public class BuildOperationTrace implements Stoppable {
 
     public static final String SYSPROP = "org.gradle.internal.operations.trace";
+    public static final String FORMAT_SYSPROP = "org.gradle.internal.operations.trace.format";
+    public static final String BINARY_FORMAT = "binary";
 
     private static final byte[] NEWLINE = "\n".getBytes();
     private static final byte[] INDENT = "    ".getBytes();
 
     private final String basePath;
     private final OutputStream logOutputStream;
+    private final BinaryBuildOperationTraceWriter binaryWriter;
 
     private final BuildOperationListenerManager buildOperationListenerManager;
     private final ListenerManager listenerManager;
@@ -108,17 +115,25 @@ public class BuildOperationTrace implements Stoppable {
         this.listenerManager = listenerManager;
 
         Map<String, String> sysProps = startParameter.getSystemPropertiesArgs();
-        String basePath = sysProps.get(SYSPROP);
-        if (basePath == null) {
-            basePath = System.getProperty(SYSPROP);
-        }
+        String basePath = property(sysProps, SYSPROP);
 
         this.basePath = basePath;
         if (this.basePath == null || basePath.equals(Boolean.FALSE.toString())) {
             this.logOutputStream = null;
+            this.binaryWriter = null;
+            return;
+        }
+
+        if (BINARY_FORMAT.equals(property(sysProps, FORMAT_SYSPROP))) {
+            File traceFile = file(basePath, "-trace.bin");
+            GFileUtils.mkdirs(traceFile.getParentFile());
+            this.logOutputStream = null;
+            this.binaryWriter = new BinaryBuildOperationTraceWriter(traceFile);
+            buildOperationListenerManager.addListener(binaryWriter);
             return;
         }
 
+        this.binaryWriter = null;
         try {
             File logFile = logFile(basePath);
             GFileUtils.mkdirs(logFile.getParentFile());
@@ -137,8 +152,19 @@ public class BuildOperationTrace implements Stoppable {
         listenerManager.addListener(listener);
     }
 
+    private static String property(Map<String, String> sysProps, String name) {
+        String value = sysProps.get(name);
+        return value == null ? System.getProperty(name) : value;
+    }
+
     @Override
     public void stop() {
+        if (binaryWriter != null) {
+            buildOperationListenerManager.removeListener(binaryWriter);
+            binaryWriter.stop();
+            return;
+        }
+
         buildOperationListenerManager.removeListener(listener);
         listenerManager.removeListener(listener);
 
@@ -64,15 +64,14 @@ import org.gradle.internal.execution.history.changes.ExecutionStateChangeDetecto
 import org.gradle.internal.filewatch.DefaultFileWatcherFactory;
 import org.gradle.internal.filewatch.FileWatcherFactory;
 import org.gradle.internal.hash.DefaultStreamHasher;
+import org.gradle.internal.hash.FileContentHashing;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.instantiation.DefaultInstantiatorFactory;
 import org.gradle.internal.instantiation.InjectAnnotationHandler;
 import org.gradle.internal.instantiation.InstantiatorFactory;
 import org.gradle.internal.logging.LoggingManagerInternal;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
-import org.gradle.internal.operations.BuildOperationListenerManager;
 import org.gradle.internal.operations.CurrentBuildOperationRef;
-import org.gradle.internal.operations.DefaultBuildOperationListenerManager;
 import org.gradle.internal.reflect.Instantiator;
 import org.gradle.internal.remote.MessagingServer;
 import org.gradle.internal.remote.services.MessagingServices;
@@ -143,10 +142,6 @@ public class GlobalScopeServices extends WorkerSharedGlobalScopeServices {
         return CurrentBuildOperationRef.instance();
     }
 
-    BuildOperationListenerManager createBuildOperationService() {
-        return new DefaultBuildOperationListenerManager();
-    }
-
     TemporaryFileProvider createTemporaryFileProvider() {
         return new TmpDirTemporaryFileProvider();
     }
@@ -290,8 +285,12 @@ public class GlobalScopeServices extends WorkerSharedGlobalScopeServices {
         return loggingManagerFactory.create();
     }
 
-    StreamHasher createStreamHasher() {
-        return new DefaultStreamHasher();
+    FileContentHashing createFileContentHashing() {
+        return FileContentHashing.fromSystemProperties();
+    }
+
+    StreamHasher createStreamHasher(FileContentHashing fileContentHashing) {
+        return new DefaultStreamHasher(fileContentHashing.getHashFunction());
     }
 
     ExecutionStateChangeDetector createExecutionStateChangeDetector() {
@@ -25,6 +25,7 @@ import org.gradle.api.internal.classpath.DefaultPluginModuleRegistry;
 import org.gradle.api.internal.classpath.ModuleRegistry;
 import org.gradle.api.internal.classpath.PluginModuleRegistry;
 import org.gradle.cache.FileLockManager;
+import org.gradle.cache.internal.BuildOperationCacheWriteBatchListener;
 import org.gradle.cache.internal.CacheFactory;
 import org.gradle.cache.internal.CrossBuildInMemoryCacheFactory;
 import org.gradle.cache.internal.DefaultCacheFactory;
@@ -44,7 +45,9 @@ import org.gradle.internal.logging.progress.DefaultProgressLoggerFactory;
 import org.gradle.internal.logging.progress.ProgressLoggerFactory;
 import org.gradle.internal.logging.services.ProgressLoggingBridge;
 import org.gradle.internal.operations.BuildOperationIdFactory;
+import org.gradle.internal.operations.BuildOperationListenerManager;
 import org.gradle.internal.operations.DefaultBuildOperationIdFactory;
+import org.gradle.internal.operations.DefaultBuildOperationListenerManager;
 import org.gradle.internal.reflect.DirectInstantiator;
 import org.gradle.internal.time.Clock;
 import org.gradle.internal.time.Time;
@@ -80,8 +83,10 @@ public class WorkerSharedGlobalScopeServices extends BasicGlobalScopeServices {
         return new DefaultPluginModuleRegistry(moduleRegistry);
     }
 
-    protected CacheFactory createCacheFactory(FileLockManager fileLockManager, ExecutorFactory executorFactory, ProgressLoggerFactory progressLoggerFactory) {
-        return new DefaultCacheFactory(fileLockManager, executorFactory, progressLoggerFactory);
+    protected CacheFactory createCacheFactory(FileLockManager fileLockManager, ExecutorFactory executorFactory, ProgressLoggerFactory progressLoggerFactory, BuildOperationListenerManager buildOperationListenerManager, BuildOperationIdFactory buildOperationIdFactory) {
+        BuildOperationCacheWriteBatchListener writeBatchListener = new BuildOperationCacheWriteBatchListener(buildOperationListenerManager.getBroadcaster(), buildOperationIdFactory);
+        buildOperationListenerManager.addListener(writeBatchListener);
+        return new DefaultCacheFactory(fileLockManager, executorFactory, progressLoggerFactory, writeBatchListener);
     }
 
     ClassLoaderRegistry createClassLoaderRegistry(ClassPathRegistry classPathRegistry, LegacyTypesSupport legacyTypesSupport) {
@@ -97,6 +102,10 @@ public class WorkerSharedGlobalScopeServices extends BasicGlobalScopeServices {
         return new DefaultLegacyTypesSupport();
     }
 
+    BuildOperationListenerManager createBuildOperationService() {
+        return new DefaultBuildOperationListenerManager();
+    }
+
     BuildOperationIdFactory createBuildOperationIdProvider() {
         return new DefaultBuildOperationIdFactory();
     }
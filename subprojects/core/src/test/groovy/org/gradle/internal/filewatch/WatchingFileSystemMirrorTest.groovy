@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.filewatch
+
+import org.gradle.api.Action
+import org.gradle.api.internal.file.FileSystemSubset
+import org.gradle.internal.snapshot.RegularFileSnapshot
+import org.gradle.internal.snapshot.WellKnownFileLocations
+import org.gradle.internal.snapshot.impl.DefaultFileSystemMirror
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
+import spock.lang.Specification
+
+class WatchingFileSystemMirrorTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties()
+
+    def fileWatcher = Mock(FileWatcher)
+    def fileWatcherFactory = Mock(FileWatcherFactory)
+    def mirror = new WatchingFileSystemMirror(new DefaultFileSystemMirror(Stub(WellKnownFileLocations)), fileWatcherFactory)
+
+    def "discards state at the end of the build when retention is disabled"() {
+        def snapshot = fileSnapshot("a")
+
+        when:
+        mirror.afterBuildStarted()
+        mirror.putSnapshot(snapshot)
+
+        then:
+        mirror.getSnapshot(snapshot.absolutePath) == snapshot
+
+        when:
+        mirror.beforeBuildFinished()
+
+        then:
+        mirror.getSnapshot(snapshot.absolutePath) == null
+        0 * fileWatcherFactory._
+    }
+
+    def "retains watched state between builds and invalidates changed locations"() {
+        System.setProperty(WatchingFileSystemMirror.RETENTION_PROPERTY, "true")
+        def changed = fileSnapshot("changed")
+        def unchanged = fileSnapshot("unchanged")
+        FileWatcherListener listener = null
+        List<FileSystemSubset> watched = []
+
+        when:
+        mirror.afterBuildStarted()
+        mirror.putSnapshot(changed)
+        mirror.putSnapshot(unchanged)
+        mirror.beforeBuildFinished()
+
+        then:
+        1 * fileWatcherFactory.watch(_, _) >> { Action<? super Throwable> onError, FileWatcherListener l ->
+            listener = l
+            return fileWatcher
+        }
+        2 * fileWatcher.watch(_) >> { FileSystemSubset subset -> watched << subset }
+        watched.any { it.contains(new File(changed.absolutePath)) }
+        watched.any { it.contains(new File(unchanged.absolutePath)) }
+        mirror.getSnapshot(changed.absolutePath) == changed
+        mirror.getSnapshot(unchanged.absolutePath) == unchanged
+
+        when:
+        listener.onChange(fileWatcher, FileWatcherEvent.modify(new File(changed.absolutePath)))
+
+        then:
+        mirror.getSnapshot(changed.absolutePath) == null
+        mirror.getSnapshot(unchanged.absolutePath) == unchanged
+
+        when:
+        mirror.afterBuildStarted()
+        mirror.putSnapshot(changed)
+        mirror.beforeBuildFinished()
+
+        then:
+        0 * fileWatcherFactory._
+        0 * fileWatcher._
+    }
+
+    def "invalidates locations which change later in the same build"() {
+        System.setProperty(WatchingFileSystemMirror.RETENTION_PROPERTY, "true")
+        def snapshot = fileSnapshot("a")
+        FileWatcherListener listener = null
+
+        when:
+        mirror.afterBuildStarted()
+        mirror.putSnapshot(snapshot)
+
+        then:
+        1 * fileWatcherFactory.watch(_, _) >> { Action<? super Throwable> onError, FileWatcherListener l ->
+            listener = l
+            return fileWatcher
+        }
+        1 * fileWatcher.watch({ it.contains(new File(snapshot.absolutePath)) })
+
+        when:
+        def file = new TestFile(snapshot.absolutePath)
+        file.text = "changed"
+        listener.onChange(fileWatcher, FileWatcherEvent.modify(file))
+        mirror.beforeBuildFinished()
+
+        then:
+        mirror.getSnapshot(snapshot.absolutePath) == null
+    }
+
+    def "discards all state when events are lost"() {
+        System.setProperty(WatchingFileSystemMirror.RETENTION_PROPERTY, "true")
+        def snapshot = fileSnapshot("a")
+        FileWatcherListener listener = null
+
+        given:
+        fileWatcherFactory.watch(_, _) >> { Action<? super Throwable> onError, FileWatcherListener l ->
+            listener = l
+            return fileWatcher
+        }
+        mirror.afterBuildStarted()
+        mirror.putSnapshot(snapshot)
+        mirror.beforeBuildFinished()
+
+        when:
+        listener.onChange(fileWatcher, FileWatcherEvent.undefined())
+
+        then:
+        mirror.getSnapshot(snapshot.absolutePath) == null
+    }
+
+    def "discards all state and stops watching when the watcher fails"() {
+        System.setProperty(WatchingFileSystemMirror.RETENTION_PROPERTY, "true")
+        def snapshot = fileSnapshot("a")
+        Action<? super Throwable> errorHandler = null
+
+        given:
+        fileWatcherFactory.watch(_, _) >> { Action<? super Throwable> onError, FileWatcherListener l ->
+            errorHandler = onError
+            return fileWatcher
+        }
+        mirror.afterBuildStarted()
+        mirror.putSnapshot(snapshot)
+        mirror.beforeBuildFinished()
+
+        when:
+        errorHandler.execute(new RuntimeException("broken"))
+
+        then:
+        1 * fileWatcher.stop()
+        mirror.getSnapshot(snapshot.absolutePath) == null
+    }
+
+    def "discards all state when locations cannot be watched"() {
+        System.setProperty(WatchingFileSystemMirror.RETENTION_PROPERTY, "true")
+        def snapshot = fileSnapshot("a")
+
+        when:
+        mirror.afterBuildStarted()
+        mirror.putSnapshot(snapshot)
+
+        then:
+        1 * fileWatcherFactory.watch(_, _) >> fileWatcher
+        1 * fileWatcher.watch(_) >> { throw new IOException("too many watches") }
+        1 * fileWatcher.stop()
+        mirror.getSnapshot(snapshot.absolutePath) == null
+    }
+
+    private RegularFileSnapshot fileSnapshot(String name) {
+        def file = tmpDir.createFile(name)
+        return new RegularFileSnapshot(file.absolutePath, name, TestFile.md5(file), 0)
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash
+
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
+import spock.lang.Specification
+
+class FileContentHashingTest extends Specification {
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties()
+
+    def "uses the default hash function and cache names by default"() {
+        when:
+        def hashing = FileContentHashing.fromSystemProperties()
+
+        then:
+        hashing.hashFunction == Hashing.defaultFunction()
+        hashing.getCacheName("fileHashes") == "fileHashes"
+    }
+
+    def "can select murmur3 for file content"() {
+        System.setProperty(FileContentHashing.HASH_FUNCTION_PROPERTY, "murmur3")
+
+        when:
+        def hashing = FileContentHashing.fromSystemProperties()
+
+        then:
+        hashing.hashFunction == Hashing.murmur3()
+        hashing.getCacheName("fileHashes") == "fileHashes-murmur3"
+    }
+
+    def "stream hasher uses the selected hash function"() {
+        def content = "some content".bytes
+
+        expect:
+        new DefaultStreamHasher(Hashing.murmur3()).hash(new ByteArrayInputStream(content)) != new DefaultStreamHasher().hash(new ByteArrayInputStream(content))
+        new DefaultStreamHasher(Hashing.md5()).hash(new ByteArrayInputStream(content)) == new DefaultStreamHasher().hash(new ByteArrayInputStream(content))
+    }
+
+    def "fails for unknown hash function"() {
+        System.setProperty(FileContentHashing.HASH_FUNCTION_PROPERTY, "crc32")
+
+        when:
+        FileContentHashing.fromSystemProperties()
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unknown file content hash function 'crc32' set via the 'org.gradle.internal.file-content-hash' system property. Supported values are 'md5' and 'murmur3'."
+    }
+}
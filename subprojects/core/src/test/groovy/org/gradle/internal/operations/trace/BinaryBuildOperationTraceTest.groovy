@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.operations.trace
+
+import groovy.json.JsonSlurper
+import org.gradle.internal.operations.BuildOperationDescriptor
+import org.gradle.internal.operations.OperationFinishEvent
+import org.gradle.internal.operations.OperationIdentifier
+import org.gradle.internal.operations.OperationStartEvent
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class BinaryBuildOperationTraceTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temp = new TestNameTestDirectoryProvider()
+    def traceFile = temp.file("trace.bin")
+    def jsonFile = temp.file("trace.json")
+
+    def "converts parent and child operations to complete events"() {
+        def writer = new BinaryBuildOperationTraceWriter(traceFile)
+        def parent = descriptor(1, null, "Parent", "details")
+        def child = descriptor(2, 1, "Child \"quoted\"", 12)
+
+        when:
+        writer.started(parent, new OperationStartEvent(0))
+        writer.started(child, new OperationStartEvent(0))
+        Thread.sleep(2)
+        writer.finished(child, new OperationFinishEvent(0, 0, null, null))
+        writer.finished(parent, new OperationFinishEvent(0, 0, new RuntimeException(), null))
+        writer.stop()
+        def events = convert()
+
+        then:
+        def thread = events.find { it.ph == "M" }
+        thread.name == "thread_name"
+        thread.args.name == "${Thread.currentThread().name} (${Thread.currentThread().id})".toString()
+
+        def parentEvent = events.find { it.ph == "X" && it.args.id == 1 }
+        parentEvent.name == "Parent (failed)"
+        parentEvent.cat == String.name
+        parentEvent.tid == thread.tid
+        parentEvent.args.parentId == null
+
+        def childEvent = events.find { it.ph == "X" && it.args.id == 2 }
+        childEvent.name == 'Child "quoted"'
+        childEvent.cat == Integer.name
+        childEvent.tid == thread.tid
+        childEvent.args.parentId == 1
+
+        and:
+        childEvent.ts >= parentEvent.ts
+        childEvent.dur >= 2000
+        childEvent.ts + childEvent.dur <= parentEvent.ts + parentEvent.dur
+    }
+
+    def "converts operations which finish on another thread and operations which do not finish"() {
+        def writer = new BinaryBuildOperationTraceWriter(traceFile)
+        def operation = descriptor(1, null, "Operation", null)
+        def unfinished = descriptor(2, 1, "Unfinished", null)
+
+        when:
+        writer.started(operation, new OperationStartEvent(0))
+        writer.started(unfinished, new OperationStartEvent(0))
+        def thread = new Thread({
+            writer.finished(operation, new OperationFinishEvent(0, 0, null, null))
+        }, "other")
+        thread.start()
+        thread.join()
+        writer.stop()
+        def events = convert()
+
+        then:
+        def threads = events.findAll { it.ph == "M" }
+        threads*.args*.name as Set == ["${Thread.currentThread().name} (${Thread.currentThread().id})".toString(), "other (${thread.id})".toString()] as Set
+
+        def begin = events.find { it.ph == "b" }
+        def end = events.find { it.ph == "e" }
+        begin.id == 1
+        end.id == 1
+        begin.cat == "operation"
+        begin.tid != end.tid
+        end.ts >= begin.ts
+
+        def unfinishedEvent = events.find { it.ph == "B" }
+        unfinishedEvent.name == "Unfinished"
+        unfinishedEvent.args.parentId == 1
+        unfinishedEvent.dur == null
+    }
+
+    def "releases the buffers of threads whose operations have finished"() {
+        def writer = new BinaryBuildOperationTraceWriter(traceFile)
+        def threads = (1..10).collect { id ->
+            new Thread({
+                def operation = descriptor(id, null, "Operation ${id}", null)
+                writer.started(operation, new OperationStartEvent(0))
+                writer.finished(operation, new OperationFinishEvent(0, 0, null, null))
+            }, "thread-${id}")
+        }
+
+        when:
+        threads*.start()
+        threads*.join()
+
+        then:
+        writer.buffers.size() == 10
+        writer.buffers.every { it.bytes == null }
+        writer.freeBuffers.size() <= Runtime.getRuntime().availableProcessors()
+
+        when:
+        writer.stop()
+        def events = convert()
+
+        then:
+        events.findAll { it.ph == "M" }.size() == 10
+        events.findAll { it.ph == "X" }*.name as Set == (1..10).collect { "Operation ${it}".toString() } as Set
+    }
+
+    def "ignores events after the trace is stopped"() {
+        def writer = new BinaryBuildOperationTraceWriter(traceFile)
+        def operation = descriptor(1, null, "Operation", null)
+
+        when:
+        writer.started(operation, new OperationStartEvent(0))
+        writer.finished(operation, new OperationFinishEvent(0, 0, null, null))
+        writer.stop()
+        writer.started(descriptor(2, null, "Late", null), new OperationStartEvent(0))
+        def events = convert()
+
+        then:
+        events.findAll { it.ph != "M" }*.name == ["Operation"]
+    }
+
+    private List<Map> convert() {
+        BinaryBuildOperationTraceConverter.convert(traceFile, jsonFile)
+        def json = new JsonSlurper().parse(jsonFile)
+        assert json.displayTimeUnit == "ms"
+        assert json.otherData.startTime > 0
+        return json.traceEvents
+    }
+
+    private static BuildOperationDescriptor descriptor(long id, Long parentId, String displayName, Object details) {
+        BuildOperationDescriptor.displayName(displayName).details(details).build(
+            new OperationIdentifier(id),
+            parentId == null ? null : new OperationIdentifier(parentId)
+        )
+    }
+}
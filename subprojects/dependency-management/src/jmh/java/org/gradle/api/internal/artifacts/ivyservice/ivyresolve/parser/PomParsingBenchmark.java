@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares parsing a POM into a full DOM with parsing it using {@link PomStaxParser}.
+ *
+ * The POMs are generated to resemble real-world BOMs and parent POMs: a large dependency management section,
+ * many properties, a few profiles and a build section that Gradle does not use.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class PomParsingBenchmark {
+    private static final String SYSTEM_ID = "file:/benchmark/pom.xml";
+
+    @Param({"10", "200", "1000"})
+    int managedDependencies;
+
+    private byte[] pom;
+    private DocumentBuilderFactory documentBuilderFactory;
+    private EntityResolver entityResolver;
+
+    @Setup
+    public void setup() throws IOException {
+        pom = generatePom(managedDependencies).getBytes(StandardCharsets.UTF_8);
+        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setValidating(false);
+        final byte[] entities = IOUtils.toByteArray(org.apache.ivy.plugins.parser.m2.PomReader.class.getResourceAsStream("m2-entities.ent"));
+        entityResolver = new EntityResolver() {
+            @Override
+            public InputSource resolveEntity(String publicId, String systemId) {
+                if (systemId != null && systemId.endsWith("m2-entities.ent")) {
+                    return new InputSource(new ByteArrayInputStream(entities));
+                }
+                return null;
+            }
+        };
+    }
+
+    @Benchmark
+    public Object dom() throws Exception {
+        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        documentBuilder.setEntityResolver(entityResolver);
+        Document document = documentBuilder.parse(new PomDomParser.AddDTDFilterInputStream(new ByteArrayInputStream(pom)), SYSTEM_ID);
+        return document.getDocumentElement();
+    }
+
+    @Benchmark
+    public Object stax() throws Exception {
+        return PomStaxParser.parse(new ByteArrayInputStream(pom), SYSTEM_ID);
+    }
+
+    private static String generatePom(int managedDependencies) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        builder.append("<!-- do_not_remove: published-with-gradle-metadata -->\n");
+        builder.append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n");
+        builder.append("  <modelVersion>4.0.0</modelVersion>\n");
+        builder.append("  <parent><groupId>org.example</groupId><artifactId>parent</artifactId><version>1.0</version></parent>\n");
+        builder.append("  <artifactId>bom</artifactId>\n");
+        builder.append("  <packaging>pom</packaging>\n");
+        builder.append("  <name>Example BOM</name>\n");
+        builder.append("  <description>A generated bill of materials, used to measure POM parsing &amp; nothing else</description>\n");
+        builder.append("  <licenses><license><name>Apache License, Version 2.0</name><url>https://www.apache.org/licenses/LICENSE-2.0</url></license></licenses>\n");
+        builder.append("  <properties>\n");
+        for (int i = 0; i < managedDependencies; i++) {
+            builder.append("    <lib").append(i).append(".version>").append(i % 7).append('.').append(i % 13).append(".0</lib").append(i).append(".version>\n");
+        }
+        builder.append("  </properties>\n");
+        builder.append("  <dependencyManagement>\n    <dependencies>\n");
+        for (int i = 0; i < managedDependencies; i++) {
+            builder.append("      <dependency>\n");
+            builder.append("        <groupId>org.example.group").append(i % 20).append("</groupId>\n");
+            builder.append("        <artifactId>lib").append(i).append("</artifactId>\n");
+            builder.append("        <version>${lib").append(i).append(".version}</version>\n");
+            if (i % 5 == 0) {
+                builder.append("        <exclusions><exclusion><groupId>commons-logging</groupId><artifactId>commons-logging</artifactId></exclusion></exclusions>\n");
+            }
+            builder.append("      </dependency>\n");
+        }
+        builder.append("    </dependencies>\n  </dependencyManagement>\n");
+        builder.append("  <build>\n    <plugins>\n");
+        for (int i = 0; i < 20; i++) {
+            builder.append("      <plugin><groupId>org.apache.maven.plugins</groupId><artifactId>plugin").append(i).append("</artifactId>");
+            builder.append("<configuration><source>1.8</source><target>1.8</target><includes><include>**/*.java</include></includes></configuration></plugin>\n");
+        }
+        builder.append("    </plugins>\n  </build>\n");
+        builder.append("  <profiles>\n");
+        for (int i = 0; i < 3; i++) {
+            builder.append("    <profile><id>profile").append(i).append("</id><activation><property><name>release").append(i).append("</name></property></activation>");
+            builder.append("<build><plugins><plugin><artifactId>maven-gpg-plugin</artifactId></plugin></plugins></build></profile>\n");
+        }
+        builder.append("  </profiles>\n");
+        builder.append("</project>\n");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.io.IOUtils;
+import org.gradle.api.Transformer;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.resource.local.LocallyAvailableExternalResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An in-memory cache of parsed POMs, shared by all builds in a daemon. Parent POMs and imported BOMs are referenced by
+ * many modules, so they are parsed once and reused for as long as their content does not change.
+ *
+ * Entries are keyed by the hash of the POM content rather than by its location, so an updated snapshot is never served stale.
+ */
+public class ParsedPomCache {
+    private static final int MAX_ENTRIES = 2000;
+
+    private final Cache<HashCode, PomElement> cache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_ENTRIES)
+        .softValues()
+        .build();
+
+    public PomElement parse(final LocallyAvailableExternalResource resource) {
+        byte[] content = resource.withContent(new Transformer<byte[], InputStream>() {
+            @Override
+            public byte[] transform(InputStream inputStream) {
+                try {
+                    return IOUtils.toByteArray(inputStream);
+                } catch (IOException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+        }).getResult();
+        HashCode key = Hashing.sha1().hashBytes(content);
+        PomElement projectElement = cache.getIfPresent(key);
+        if (projectElement == null) {
+            projectElement = PomReader.parse(new ByteArrayInputStream(content), resource);
+            cache.put(key, projectElement);
+        }
+        return projectElement;
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+}
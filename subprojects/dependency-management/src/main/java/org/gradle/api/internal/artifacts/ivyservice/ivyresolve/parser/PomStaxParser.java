@@ -0,0 +1,257 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.IOUtils;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.classloader.ClassLoaderUtils;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses a POM into a tree of {@link PomElement}s, using a streaming parser.
+ *
+ * Only the elements that are used to build the metadata of a module are retained. Everything else, such as the build
+ * and reporting configuration, is skipped while parsing.
+ */
+public final class PomStaxParser {
+    private static final ElementFilter PROFILE = ElementFilter.retaining(ImmutableMap.<String, ElementFilter>builder()
+        .put("id", ElementFilter.ALL)
+        .put("activation", ElementFilter.ALL)
+        .put("properties", ElementFilter.ALL)
+        .put("dependencies", ElementFilter.ALL)
+        .put("dependencyManagement", ElementFilter.ALL)
+        .build());
+    private static final ElementFilter PROJECT = ElementFilter.retaining(ImmutableMap.<String, ElementFilter>builder()
+        .put("parent", ElementFilter.ALL)
+        .put("groupId", ElementFilter.ALL)
+        .put("artifactId", ElementFilter.ALL)
+        .put("version", ElementFilter.ALL)
+        .put("packaging", ElementFilter.ALL)
+        .put("properties", ElementFilter.ALL)
+        .put("dependencies", ElementFilter.ALL)
+        .put("dependencyManagement", ElementFilter.ALL)
+        .put("distributionManagement", ElementFilter.retaining(ImmutableMap.of("relocation", ElementFilter.ALL)))
+        .put("profiles", ElementFilter.retaining(ImmutableMap.of("profile", PROFILE)))
+        .build()).withComments();
+
+    private static final byte[] M2_ENTITIES_RESOURCE;
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+
+    static {
+        byte[] bytes;
+        try {
+            bytes = IOUtils.toByteArray(org.apache.ivy.plugins.parser.m2.PomReader.class.getResourceAsStream("m2-entities.ent"));
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        M2_ENTITIES_RESOURCE = bytes;
+
+        // Set the context classloader the bootstrap classloader, to work around the way that JAXP locates implementation classes
+        // This should ensure that the JAXP classes provided by the JVM are used, rather than some other implementation
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(ClassLoaderUtils.getPlatformClassLoader());
+        try {
+            XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_VALIDATING, false);
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+            XML_INPUT_FACTORY.setXMLResolver(new XMLResolver() {
+                @Override
+                public Object resolveEntity(String publicId, String systemId, String baseUri, String namespace) {
+                    if ((systemId != null) && systemId.endsWith("m2-entities.ent")) {
+                        return new ByteArrayInputStream(M2_ENTITIES_RESOURCE);
+                    }
+                    return null;
+                }
+            });
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+
+    private PomStaxParser() {}
+
+    /**
+     * Parses the given POM, returning its root element.
+     */
+    public static PomElement parse(InputStream stream, String systemId) throws IOException, XMLStreamException {
+        XMLStreamReader reader = createReader(new PomDomParser.AddDTDFilterInputStream(stream), systemId);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    return readElement(reader, qualifiedName(reader), PROJECT);
+                }
+            }
+            throw new XMLStreamException("No root element found in " + systemId);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static XMLStreamReader createReader(InputStream stream, String systemId) throws XMLStreamException {
+        synchronized (XML_INPUT_FACTORY) {
+            return XML_INPUT_FACTORY.createXMLStreamReader(systemId, stream);
+        }
+    }
+
+    private static PomElement readElement(XMLStreamReader reader, String name, ElementFilter filter) throws XMLStreamException {
+        StringBuilder text = null;
+        List<PomElement> children = null;
+        List<String> comments = null;
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    String childName = qualifiedName(reader);
+                    ElementFilter childFilter = filter.getChildFilter(childName);
+                    if (childFilter == null) {
+                        skipElement(reader);
+                    } else {
+                        if (children == null) {
+                            children = new ArrayList<PomElement>();
+                        }
+                        children.add(readElement(reader, childName, childFilter));
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (text == null) {
+                        text = new StringBuilder();
+                    }
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    if (filter.isRetainingComments()) {
+                        if (comments == null) {
+                            comments = new ArrayList<String>();
+                        }
+                        comments.add(reader.getText());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    return new PomElement(name,
+                        text == null ? "" : text.toString(),
+                        children == null ? Collections.<PomElement>emptyList() : ImmutableList.copyOf(children),
+                        comments == null ? Collections.<String>emptyList() : ImmutableList.copyOf(comments));
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static String qualifiedName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        String localName = reader.getLocalName();
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    public static String getTextContent(PomElement element) {
+        return element.getText();
+    }
+
+    @Nullable
+    public static String getFirstChildText(@Nullable PomElement parentElem, String name) {
+        PomElement node = getFirstChildElement(parentElem, name);
+        if (node != null) {
+            return getTextContent(node);
+        } else {
+            return null;
+        }
+    }
+
+    @Nullable
+    public static PomElement getFirstChildElement(@Nullable PomElement parentElem, String name) {
+        if (parentElem == null) {
+            return null;
+        }
+        for (PomElement child : parentElem.getChildren()) {
+            if (name.equals(child.getName())) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    public static List<PomElement> getAllChilds(@Nullable PomElement parent) {
+        if (parent == null) {
+            return Collections.emptyList();
+        }
+        return parent.getChildren();
+    }
+
+    /**
+     * Determines which children of an element are retained.
+     */
+    private static class ElementFilter {
+        static final ElementFilter ALL = new ElementFilter(null, false);
+
+        private final Map<String, ElementFilter> retainedChildren;
+        private final boolean retainingComments;
+
+        private ElementFilter(@Nullable Map<String, ElementFilter> retainedChildren, boolean retainingComments) {
+            this.retainedChildren = retainedChildren;
+            this.retainingComments = retainingComments;
+        }
+
+        static ElementFilter retaining(Map<String, ElementFilter> retainedChildren) {
+            return new ElementFilter(retainedChildren, false);
+        }
+
+        ElementFilter withComments() {
+            return new ElementFilter(retainedChildren, true);
+        }
+
+        boolean isRetainingComments() {
+            return retainingComments;
+        }
+
+        /**
+         * Returns the filter for the given child, or null if the child is not retained.
+         */
+        @Nullable
+        ElementFilter getChildFilter(String name) {
+            return retainedChildren == null ? ALL : retainedChildren.get(name);
+        }
+    }
+}
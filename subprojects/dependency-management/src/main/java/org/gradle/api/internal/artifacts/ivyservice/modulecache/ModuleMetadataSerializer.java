@@ -20,6 +20,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
+import org.gradle.api.Action;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
 import org.gradle.api.artifacts.component.ModuleComponentSelector;
 import org.gradle.api.attributes.AttributeContainer;
@@ -35,6 +36,7 @@ import org.gradle.api.internal.artifacts.repositories.metadata.IvyMutableModuleM
 import org.gradle.api.internal.artifacts.repositories.metadata.MavenMutableModuleMetadataFactory;
 import org.gradle.api.internal.artifacts.repositories.resolver.MavenUniqueSnapshotComponentIdentifier;
 import org.gradle.api.internal.attributes.ImmutableAttributes;
+import org.gradle.internal.UncheckedException;
 import org.gradle.internal.component.external.descriptor.Artifact;
 import org.gradle.internal.component.external.descriptor.Configuration;
 import org.gradle.internal.component.external.descriptor.DefaultExclude;
@@ -69,6 +71,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Serializes the metadata of a module, as stored in the module metadata cache.
+ *
+ * When used with a {@link StringTableEncoder}, the content of each variant is written as a separate section. When read using
+ * a {@link StringTableDecoder}, only the name and attributes of each variant are decoded upfront, and the rest of the variant is decoded
+ * when it is first used.
+ */
 public class ModuleMetadataSerializer {
     private static final byte TYPE_IVY = 1;
     private static final byte TYPE_MAVEN = 2;
@@ -130,13 +139,24 @@ public class ModuleMetadataSerializer {
             for (ComponentVariant variant : metadata.getVariants()) {
                 encoder.writeString(variant.getName());
                 writeAttributes(variant.getAttributes());
-                writeVariantDependencies(variant.getDependencies());
-                writeVariantConstraints(variant.getDependencyConstraints());
-                writeVariantFiles(variant.getFiles());
-                writeVariantCapabilities(variant.getCapabilities().getCapabilities());
+                if (encoder instanceof StringTableEncoder) {
+                    // Write the content as a separate section, so that it can be skipped until the variant is used
+                    StringTableEncoder section = ((StringTableEncoder) encoder).newSection();
+                    new Writer(section, attributeContainerSerializer, componentSelectorSerializer).writeVariantContent(variant);
+                    encoder.writeBinary(section.toByteArray());
+                } else {
+                    writeVariantContent(variant);
+                }
             }
         }
 
+        private void writeVariantContent(ComponentVariant variant) throws IOException {
+            writeVariantDependencies(variant.getDependencies());
+            writeVariantConstraints(variant.getDependencyConstraints());
+            writeVariantFiles(variant.getFiles());
+            writeVariantCapabilities(variant.getCapabilities().getCapabilities());
+        }
+
         private void writeVariantConstraints(ImmutableList<? extends ComponentVariant.DependencyConstraint> constraints) throws IOException {
             encoder.writeSmallInt(constraints.size());
             for (ComponentVariant.DependencyConstraint constraint : constraints) {
@@ -440,12 +460,29 @@ public class ModuleMetadataSerializer {
             for (int i = 0; i < count; i++) {
                 String name = decoder.readString();
                 ImmutableAttributes attributes = readAttributes();
-                MutableComponentVariant variant = metadata.addVariant(name, attributes);
-                readVariantDependencies(variant);
-                readVariantConstraints(variant);
-                readVariantFiles(variant);
-                readVariantCapabilities(variant);
-            }
+                if (decoder instanceof StringTableDecoder) {
+                    final StringTableDecoder section = ((StringTableDecoder) decoder).section(decoder.readSmallInt());
+                    metadata.addLazyVariant(name, attributes, new Action<MutableComponentVariant>() {
+                        @Override
+                        public void execute(MutableComponentVariant variant) {
+                            try {
+                                new Reader(section, moduleIdentifierFactory, attributeContainerSerializer, componentSelectorSerializer, mavenMetadataFactory, ivyMetadataFactory).readVariantContent(variant);
+                            } catch (IOException e) {
+                                throw UncheckedException.throwAsUncheckedException(e);
+                            }
+                        }
+                    });
+                } else {
+                    readVariantContent(metadata.addVariant(name, attributes));
+                }
+            }
+        }
+
+        private void readVariantContent(MutableComponentVariant variant) throws IOException {
+            readVariantDependencies(variant);
+            readVariantConstraints(variant);
+            readVariantFiles(variant);
+            readVariantCapabilities(variant);
         }
 
         private ImmutableAttributes readAttributes() throws IOException {
@@ -24,28 +24,53 @@ import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata;
 import org.gradle.internal.component.external.model.MutableModuleComponentResolveMetadata;
+import org.gradle.internal.os.OperatingSystem;
 import org.gradle.internal.resource.local.LocallyAvailableResource;
 import org.gradle.internal.resource.local.PathKeyFileStore;
 import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
 import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
+/**
+ * Stores the metadata of modules in files, one per module and repository.
+ *
+ * By default, each file contains a Kryo stream that is decoded in full on every lookup. When a {@link ModuleMetadataStringTable} is provided,
+ * the store uses a compact format instead: strings are replaced by their index in the shared table, larger files are memory mapped,
+ * and the content of each variant is only decoded when the variant is used.
+ */
 public class ModuleMetadataStore {
 
     private static final Joiner PATH_JOINER = Joiner.on("/");
+    private static final String DESCRIPTOR_FILE_NAME = "descriptor.bin";
+    static final String COMPACT_DESCRIPTOR_FILE_NAME = "descriptor.cbin";
+    // Mapping a file costs more than reading it, unless the file is reasonably large
+    private static final int MIN_MAPPED_FILE_SIZE = 16 * 1024;
+
     private final PathKeyFileStore metaDataStore;
     private final ModuleMetadataSerializer moduleMetadataSerializer;
     private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
     private final Interner<String> stringInterner;
+    private final ModuleMetadataStringTable stringTable;
 
     public ModuleMetadataStore(PathKeyFileStore metaDataStore, ModuleMetadataSerializer moduleMetadataSerializer, ImmutableModuleIdentifierFactory moduleIdentifierFactory, Interner<String> stringInterner) {
+        this(metaDataStore, moduleMetadataSerializer, moduleIdentifierFactory, stringInterner, null);
+    }
+
+    ModuleMetadataStore(PathKeyFileStore metaDataStore, ModuleMetadataSerializer moduleMetadataSerializer, ImmutableModuleIdentifierFactory moduleIdentifierFactory, Interner<String> stringInterner, @Nullable ModuleMetadataStringTable stringTable) {
         this.metaDataStore = metaDataStore;
         this.moduleMetadataSerializer = moduleMetadataSerializer;
         this.moduleIdentifierFactory = moduleIdentifierFactory;
         this.stringInterner = stringInterner;
+        this.stringTable = stringTable;
     }
 
     public MutableModuleComponentResolveMetadata getModuleDescriptor(ModuleComponentAtRepositoryKey component) {
@@ -53,6 +78,9 @@ public class ModuleMetadataStore {
         final LocallyAvailableResource resource = metaDataStore.get(filePath);
         if (resource != null) {
             try {
+                if (stringTable != null) {
+                    return readCompact(resource.getFile());
+                }
                 StringDeduplicatingDecoder decoder = new StringDeduplicatingDecoder(new KryoBackedDecoder(new FileInputStream(resource.getFile())), stringInterner);
                 try {
                     return moduleMetadataSerializer.read(decoder, moduleIdentifierFactory, Maps.newHashMap());
@@ -66,12 +94,46 @@ public class ModuleMetadataStore {
         return null;
     }
 
+    @Nullable
+    private MutableModuleComponentResolveMetadata readCompact(File file) throws IOException {
+        ByteBuffer buffer = readFile(file);
+        String[] strings = stringTable.readEntryStrings(buffer);
+        if (strings == null) {
+            // Written by an incompatible version or to a string table that has since been replaced, treat as missing
+            return null;
+        }
+        return moduleMetadataSerializer.read(new StringTableDecoder(buffer, strings), moduleIdentifierFactory, Maps.newHashMap());
+    }
+
+    private static ByteBuffer readFile(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            // A mapped file cannot be replaced on Windows, so read the file instead
+            if (size >= MIN_MAPPED_FILE_SIZE && !OperatingSystem.current().isWindows()) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            channel.close();
+        }
+    }
+
     public LocallyAvailableResource putModuleDescriptor(ModuleComponentAtRepositoryKey component, final ModuleComponentResolveMetadata metadata) {
         String[] filePath = getFilePath(component);
         return metaDataStore.add(PATH_JOINER.join(filePath), new Action<File>() {
             @Override
             public void execute(File moduleDescriptorFile) {
                 try {
+                    if (stringTable != null) {
+                        writeCompact(moduleDescriptorFile, metadata);
+                        return;
+                    }
                     KryoBackedEncoder encoder = new KryoBackedEncoder(new FileOutputStream(moduleDescriptorFile));
                     try {
                         moduleMetadataSerializer.write(encoder, metadata, Maps.newHashMap());
@@ -85,6 +147,21 @@ public class ModuleMetadataStore {
         });
     }
 
+    private void writeCompact(File moduleDescriptorFile, final ModuleComponentResolveMetadata metadata) throws IOException {
+        byte[] content = stringTable.encode(new ModuleMetadataStringTable.EntryWriter() {
+            @Override
+            public void write(StringTableEncoder encoder) throws IOException {
+                moduleMetadataSerializer.write(encoder, metadata, Maps.newHashMap());
+            }
+        });
+        OutputStream outputStream = new FileOutputStream(moduleDescriptorFile);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+    }
+
     private String[] getFilePath(ModuleComponentAtRepositoryKey componentId) {
         ModuleComponentIdentifier moduleComponentIdentifier = componentId.getComponentId();
         return new String[] {
@@ -92,7 +169,7 @@ public class ModuleMetadataStore {
             moduleComponentIdentifier.getModule(),
             moduleComponentIdentifier.getVersion(),
             componentId.getRepositoryId(),
-            "descriptor.bin"
+            stringTable != null ? COMPACT_DESCRIPTOR_FILE_NAME : DESCRIPTOR_FILE_NAME
         };
     }
 
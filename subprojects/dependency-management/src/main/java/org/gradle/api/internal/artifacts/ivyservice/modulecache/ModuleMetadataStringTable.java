@@ -0,0 +1,432 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache;
+
+import com.google.common.collect.Interner;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A table of strings shared by all entries of the compact module metadata store. Entries refer to the group and module names,
+ * versions and attribute values they use by their index in this table, so each distinct string is stored, and held in memory, only once.
+ *
+ * The table is persisted in an append-only file, which starts with a random id followed by a sequence of length-prefixed UTF-8 records.
+ * Strings are only appended while holding the artifact cache lock, so the index of a string is the same in every process that shares the cache.
+ * A record that was only partially written, for example because of a crash, is ignored and overwritten by the next append.
+ *
+ * Each entry starts with a header holding the id of the table and the indices of the strings the entry uses, and the content of the entry
+ * refers to these strings by their position in the header. Entries that were written with a different id are ignored.
+ * Once the table has grown too large, {@link ModuleMetadataStringTableCleanup} compacts it with {@link #compact(Iterable)}, which only has to rewrite the headers of the entries.
+ */
+class ModuleMetadataStringTable {
+    /**
+     * The name of the table file, in the parent directory of the module metadata store.
+     */
+    static final String FILE_NAME = "descriptor-strings.bin";
+    private static final int HEADER_LENGTH = 8;
+    private static final int ENTRY_MAGIC = 0x474d4d43;
+    private static final byte ENTRY_VERSION = 3;
+    // magic, version, table id, string count
+    private static final int ENTRY_HEADER_LENGTH = 4 + 1 + 8 + 4;
+    private static final int ENTRY_ID_OFFSET = 4 + 1;
+
+    private final File file;
+    private final Interner<String> stringInterner;
+    private final Random random = new SecureRandom();
+    // The committed strings, published for lock free reads
+    private volatile Strings strings = Strings.EMPTY;
+    // Guarded by this
+    private final List<String> uncommitted = new ArrayList<String>();
+    private final Map<String, Integer> indices = new HashMap<String, Integer>();
+
+    ModuleMetadataStringTable(File file, Interner<String> stringInterner) {
+        this.file = file;
+        this.stringInterner = stringInterner;
+    }
+
+    /**
+     * Encodes an entry, adding the strings it uses to the table. The new strings are written to the table file before the
+     * encoded entry is returned, so they are always visible to readers of the entry.
+     *
+     * @return the entry, including its header.
+     */
+    synchronized byte[] encode(EntryWriter writer) throws IOException {
+        // The table may have been replaced by a new table of the same length, so always check the id before appending to it
+        refresh(true);
+        if (file.length() < HEADER_LENGTH) {
+            // Start a new table
+            reset(new Strings(random.nextLong(), new String[0], 0, HEADER_LENGTH));
+        }
+        boolean committed = false;
+        try {
+            StringTableEncoder encoder = new StringTableEncoder(this);
+            writer.write(encoder);
+            commit();
+            committed = true;
+
+            List<Integer> stringIndices = encoder.getStringIndices();
+            StringTableEncoder entry = new StringTableEncoder(this);
+            entry.writeInt(ENTRY_MAGIC);
+            entry.writeByte(ENTRY_VERSION);
+            entry.writeLong(strings.id);
+            entry.writeInt(stringIndices.size());
+            for (Integer index : stringIndices) {
+                entry.writeInt(index);
+            }
+            entry.writeBytes(encoder.toByteArray());
+            return entry.toByteArray();
+        } finally {
+            if (!committed) {
+                discardUncommitted();
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the given string, adding it to the table if required. Must only be called from {@link #encode(EntryWriter)}.
+     */
+    synchronized int indexOf(String string) {
+        Integer index = indices.get(string);
+        if (index == null) {
+            index = strings.count + uncommitted.size();
+            uncommitted.add(string);
+            indices.put(string, index);
+        }
+        return index;
+    }
+
+    /**
+     * Reads the header of an entry written by {@link #encode(EntryWriter)}, and leaves the buffer positioned at the content of the entry.
+     *
+     * @return the strings used by the entry, in the order of their position in the header, or null when the entry was written by an incompatible
+     * version or to a table that has since been replaced.
+     */
+    @Nullable
+    String[] readEntryStrings(ByteBuffer entry) throws IOException {
+        if (entry.remaining() < ENTRY_HEADER_LENGTH || entry.getInt() != ENTRY_MAGIC || entry.get() != ENTRY_VERSION) {
+            return null;
+        }
+        Strings strings = strings(entry.getLong());
+        if (strings == null) {
+            return null;
+        }
+        int count = entry.getInt();
+        if (count < 0 || entry.remaining() < 4L * count) {
+            throw new EOFException();
+        }
+        String[] entryStrings = new String[count];
+        for (int i = 0; i < count; i++) {
+            entryStrings[i] = strings.get(entry.getInt());
+        }
+        return entryStrings;
+    }
+
+    /**
+     * Replaces the table with a new table that only holds the strings used by the given entries, and rewrites the headers of the entries to use the new table.
+     * Entries that cannot be read with the current table are deleted. Must be called while holding the artifact cache lock exclusively.
+     *
+     * @return the number of deleted entries.
+     */
+    synchronized int compact(Iterable<File> entries) throws IOException {
+        refresh(true);
+        Strings current = strings;
+        if (current == Strings.EMPTY) {
+            return 0;
+        }
+
+        // Find the strings that are still used
+        BitSet used = new BitSet(current.count);
+        List<File> liveEntries = new ArrayList<File>();
+        List<int[]> liveIndices = new ArrayList<int[]>();
+        int deleted = 0;
+        for (File entry : entries) {
+            int[] indices = readEntryIndices(entry, current);
+            if (indices == null) {
+                if (entry.delete()) {
+                    deleted++;
+                }
+                continue;
+            }
+            for (int index : indices) {
+                used.set(index);
+            }
+            liveEntries.add(entry);
+            liveIndices.add(indices);
+        }
+
+        int[] newIndices = new int[current.count];
+        List<String> kept = new ArrayList<String>(used.cardinality());
+        for (int index = used.nextSetBit(0); index >= 0; index = used.nextSetBit(index + 1)) {
+            newIndices[index] = kept.size();
+            kept.add(current.strings[index]);
+        }
+        long newId = random.nextLong();
+        replaceFile(newId, kept);
+        refresh(true);
+
+        // Write the indices before the id, so an entry that is only partially rewritten is ignored
+        for (int i = 0; i < liveEntries.size(); i++) {
+            int[] indices = liveIndices.get(i);
+            ByteBuffer header = ByteBuffer.allocate(4 * indices.length);
+            for (int index : indices) {
+                header.putInt(newIndices[index]);
+            }
+            RandomAccessFile randomAccessFile = new RandomAccessFile(liveEntries.get(i), "rw");
+            try {
+                randomAccessFile.seek(ENTRY_HEADER_LENGTH);
+                randomAccessFile.write(header.array());
+                randomAccessFile.seek(ENTRY_ID_OFFSET);
+                randomAccessFile.writeLong(newId);
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns the indices of the strings used by the given entry, or null when the entry cannot be read with the given table.
+     */
+    @Nullable
+    private static int[] readEntryIndices(File entry, Strings table) throws IOException {
+        FileChannel channel = FileChannel.open(entry.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_LENGTH);
+            if (!readFully(channel, header) || header.getInt() != ENTRY_MAGIC || header.get() != ENTRY_VERSION || header.getLong() != table.id) {
+                return null;
+            }
+            int count = header.getInt();
+            if (count < 0 || count > table.count) {
+                return null;
+            }
+            ByteBuffer indexBuffer = ByteBuffer.allocate(4 * count);
+            if (!readFully(channel, indexBuffer)) {
+                return null;
+            }
+            int[] indices = new int[count];
+            for (int i = 0; i < count; i++) {
+                indices[i] = indexBuffer.getInt();
+                if (indices[i] < 0 || indices[i] >= table.count) {
+                    return null;
+                }
+            }
+            return indices;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Writes a new table with the given strings to a temporary file, which then replaces the table file.
+     */
+    private void replaceFile(long id, List<String> strings) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        StringTableEncoder records = new StringTableEncoder(this);
+        records.writeLong(id);
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            records.writeInt(bytes.length);
+            records.writeBytes(bytes);
+        }
+        Files.write(tempFile.toPath(), records.toByteArray());
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the strings of the table with the given id, including those added by other processes, or null when the table has since been replaced.
+     * The returned strings do not change when strings are added or the table is replaced, so an entry can be decoded from them without locking.
+     */
+    @Nullable
+    private Strings strings(long id) throws IOException {
+        Strings current = strings;
+        if (current.id == id && current.length == file.length()) {
+            return current;
+        }
+        synchronized (this) {
+            refresh(strings.id != id);
+            current = strings;
+            return current.id == id ? current : null;
+        }
+    }
+
+    private void refresh(boolean checkId) throws IOException {
+        Strings current = strings;
+        long length = file.length();
+        if (length < HEADER_LENGTH) {
+            // The table has been deleted, or has not been created yet
+            if (current != Strings.EMPTY) {
+                reset(Strings.EMPTY);
+            }
+            return;
+        }
+        if (length == current.length && !checkId) {
+            return;
+        }
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            long id = inputStream.readLong();
+            if (id != current.id || length < current.length) {
+                current = new Strings(id, new String[0], 0, HEADER_LENGTH);
+                reset(current);
+            }
+            if (length == current.length) {
+                return;
+            }
+            long skip = current.length - HEADER_LENGTH;
+            long skipped = inputStream.skip(skip);
+            if (skipped != skip) {
+                throw new IOException("Could not read " + file);
+            }
+            List<String> added = new ArrayList<String>();
+            long addedLength = 0;
+            while (true) {
+                String string;
+                try {
+                    int recordLength = inputStream.readInt();
+                    byte[] bytes = new byte[recordLength];
+                    inputStream.readFully(bytes);
+                    string = stringInterner.intern(new String(bytes, StandardCharsets.UTF_8));
+                    addedLength += 4 + recordLength;
+                } catch (EOFException e) {
+                    // End of the table, or a partially written record
+                    break;
+                }
+                indices.put(string, current.count + added.size());
+                added.add(string);
+            }
+            strings = current.append(added, addedLength);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void reset(Strings empty) {
+        indices.clear();
+        uncommitted.clear();
+        strings = empty;
+    }
+
+    private void commit() throws IOException {
+        boolean newTable = file.length() < HEADER_LENGTH;
+        if (uncommitted.isEmpty() && !newTable) {
+            return;
+        }
+        Strings current = strings;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            StringTableEncoder records = new StringTableEncoder(this);
+            if (newTable) {
+                randomAccessFile.setLength(0);
+                records.writeLong(current.id);
+            } else {
+                randomAccessFile.setLength(current.length);
+                randomAccessFile.seek(current.length);
+            }
+            for (String string : uncommitted) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                records.writeInt(bytes.length);
+                records.writeBytes(bytes);
+            }
+            randomAccessFile.write(records.toByteArray());
+            long addedLength = newTable ? records.size() - HEADER_LENGTH : records.size();
+            strings = current.append(uncommitted, addedLength);
+            uncommitted.clear();
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private void discardUncommitted() {
+        for (String string : uncommitted) {
+            indices.remove(string);
+        }
+        uncommitted.clear();
+    }
+
+    interface EntryWriter {
+        void write(StringTableEncoder encoder) throws IOException;
+    }
+
+    /**
+     * The committed strings of one version of the table.
+     */
+    private static class Strings {
+        private static final Strings EMPTY = new Strings(0, new String[0], 0, HEADER_LENGTH);
+
+        private final long id;
+        // Shared with the later versions of the same table, which only ever set the elements after count
+        private final String[] strings;
+        private final int count;
+        private final long length;
+
+        private Strings(long id, String[] strings, int count, long length) {
+            this.id = id;
+            this.strings = strings;
+            this.count = count;
+            this.length = length;
+        }
+
+        String get(int index) throws IOException {
+            if (index < 0 || index >= count) {
+                throw new IOException("Unknown string " + index + " in module metadata string table");
+            }
+            return strings[index];
+        }
+
+        private Strings append(List<String> added, long addedLength) {
+            String[] target = strings;
+            if (count + added.size() > target.length) {
+                target = Arrays.copyOf(target, Math.max(count + added.size(), target.length * 2));
+            }
+            for (int i = 0; i < added.size(); i++) {
+                target[count + i] = added.get(i);
+            }
+            return new Strings(id, target, count + added.size(), length + addedLength);
+        }
+    }
+}
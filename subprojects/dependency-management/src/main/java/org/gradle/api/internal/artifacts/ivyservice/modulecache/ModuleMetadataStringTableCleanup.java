@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache;
+
+import com.google.common.collect.Interners;
+import org.gradle.cache.CleanableStore;
+import org.gradle.cache.CleanupAction;
+import org.gradle.cache.CleanupProgressMonitor;
+import org.gradle.cache.internal.FilesFinder;
+import org.gradle.cache.internal.SingleDepthFilesFinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+
+/**
+ * Compacts the string table of the compact module metadata store once it has grown too large.
+ *
+ * Strings are never removed from the table while entries are added, so the table keeps growing as modules are added to and removed from the store.
+ * Compacting replaces the table with one that only holds the strings used by the remaining entries. Entries that cannot be read with the current table
+ * are deleted, and are downloaded again when they are next used. Must be scoped to the directory of the module metadata store.
+ */
+public class ModuleMetadataStringTableCleanup implements CleanupAction {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModuleMetadataStringTableCleanup.class);
+    // group/module/version/repository/file
+    private static final int ENTRY_DEPTH = 5;
+    private static final long DEFAULT_MAX_TABLE_SIZE = 8 * 1024 * 1024;
+
+    private final FilesFinder entryFinder = new SingleDepthFilesFinder(ENTRY_DEPTH);
+    private final long maxTableSize;
+
+    public ModuleMetadataStringTableCleanup() {
+        this(DEFAULT_MAX_TABLE_SIZE);
+    }
+
+    ModuleMetadataStringTableCleanup(long maxTableSize) {
+        this.maxTableSize = maxTableSize;
+    }
+
+    @Override
+    public void clean(CleanableStore cleanableStore, CleanupProgressMonitor progressMonitor) {
+        File tableFile = new File(cleanableStore.getBaseDir().getParentFile(), ModuleMetadataStringTable.FILE_NAME);
+        long tableSize = tableFile.length();
+        if (tableSize <= maxTableSize) {
+            return;
+        }
+        Iterable<File> entries = entryFinder.find(cleanableStore.getBaseDir(), new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().equals(ModuleMetadataStore.COMPACT_DESCRIPTOR_FILE_NAME);
+            }
+        });
+        try {
+            int deleted = new ModuleMetadataStringTable(tableFile, Interners.<String>newWeakInterner()).compact(entries);
+            for (int i = 0; i < deleted; i++) {
+                progressMonitor.incrementDeleted();
+            }
+            LOGGER.debug("Compacted module metadata string table at {} from {} to {} bytes, deleting {} unreadable entries", tableFile, tableSize, tableFile.length(), deleted);
+        } catch (IOException e) {
+            // Entries refer to the id of the deleted table, so they are ignored by the next table and deleted when it is compacted
+            LOGGER.debug("Could not compact module metadata string table at {}, deleting it", tableFile, e);
+            if (tableFile.delete()) {
+                progressMonitor.incrementDeleted();
+            }
+        }
+    }
+}
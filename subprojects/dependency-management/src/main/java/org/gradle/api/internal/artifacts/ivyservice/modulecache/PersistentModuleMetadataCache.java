@@ -35,7 +35,13 @@ import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.util.BuildCommencedTimeProvider;
 
+import java.io.File;
+
 public class PersistentModuleMetadataCache extends AbstractModuleMetadataCache {
+    /**
+     * Stores module metadata in a compact format, which is memory mapped and decodes the content of each variant only when it is used.
+     */
+    public static final String COMPACT_FORMAT_PROPERTY = "org.gradle.unsafe.compact-module-metadata-cache";
 
     private PersistentIndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> cache;
     private final ModuleMetadataStore moduleMetadataStore;
@@ -50,7 +56,11 @@ public class PersistentModuleMetadataCache extends AbstractModuleMetadataCache {
                                          IvyMutableModuleMetadataFactory ivyMetadataFactory,
                                          Interner<String> stringInterner) {
         super(timeProvider);
-        moduleMetadataStore = new ModuleMetadataStore(new DefaultPathKeyFileStore(artifactCacheMetadata.getMetaDataStoreDirectory()), new ModuleMetadataSerializer(attributeContainerSerializer, mavenMetadataFactory, ivyMetadataFactory), moduleIdentifierFactory, stringInterner);
+        File metaDataStoreDirectory = artifactCacheMetadata.getMetaDataStoreDirectory();
+        ModuleMetadataStringTable stringTable = Boolean.getBoolean(COMPACT_FORMAT_PROPERTY)
+            ? new ModuleMetadataStringTable(new File(metaDataStoreDirectory.getParentFile(), ModuleMetadataStringTable.FILE_NAME), stringInterner)
+            : null;
+        moduleMetadataStore = new ModuleMetadataStore(new DefaultPathKeyFileStore(metaDataStoreDirectory), new ModuleMetadataSerializer(attributeContainerSerializer, mavenMetadataFactory, ivyMetadataFactory), moduleIdentifierFactory, stringInterner, stringTable);
         this.artifactCacheLockingManager = artifactCacheLockingManager;
     }
 
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache;
+
+import org.gradle.internal.serialize.AbstractDecoder;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes an entry of the compact module metadata store from a buffer, which is usually a memory mapped file.
+ *
+ * @see StringTableEncoder
+ */
+class StringTableDecoder extends AbstractDecoder {
+    private final ByteBuffer buffer;
+    private final String[] strings;
+
+    StringTableDecoder(ByteBuffer buffer, String[] strings) {
+        this.buffer = buffer;
+        this.strings = strings;
+    }
+
+    /**
+     * Returns a decoder for the next {@code length} bytes, and skips over them. The returned decoder is independent of this decoder, so it can be
+     * used later, from any thread.
+     */
+    StringTableDecoder section(int length) throws EOFException {
+        ensureRemaining(length);
+        ByteBuffer section = buffer.duplicate();
+        section.limit(section.position() + length);
+        buffer.position(buffer.position() + length);
+        return new StringTableDecoder(section.slice(), strings);
+    }
+
+    @Override
+    protected int maybeReadBytes(byte[] bytes, int offset, int count) {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int read = Math.min(count, buffer.remaining());
+        buffer.get(bytes, offset, read);
+        return read;
+    }
+
+    @Override
+    protected long maybeSkip(long count) {
+        int skipped = (int) Math.min(count, buffer.remaining());
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public byte readByte() throws EOFException {
+        ensureRemaining(1);
+        return buffer.get();
+    }
+
+    @Override
+    public void readBytes(byte[] bytes, int offset, int count) throws EOFException {
+        ensureRemaining(count);
+        buffer.get(bytes, offset, count);
+    }
+
+    @Override
+    public long readLong() throws EOFException {
+        ensureRemaining(8);
+        return buffer.getLong();
+    }
+
+    @Override
+    public long readSmallLong() throws EOFException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new EOFException("Malformed variable length long");
+    }
+
+    @Override
+    public int readInt() throws EOFException {
+        ensureRemaining(4);
+        return buffer.getInt();
+    }
+
+    @Override
+    public int readSmallInt() throws EOFException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new EOFException("Malformed variable length int");
+    }
+
+    @Override
+    public boolean readBoolean() throws EOFException {
+        return readByte() != 0;
+    }
+
+    @Override
+    public String readString() throws IOException {
+        return string(readSmallInt());
+    }
+
+    @Nullable
+    @Override
+    public String readNullableString() throws IOException {
+        int index = readSmallInt();
+        return index == 0 ? null : string(index - 1);
+    }
+
+    private String string(int index) throws IOException {
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Unknown string " + index + " in module metadata entry");
+        }
+        return strings[index];
+    }
+
+    private void ensureRemaining(int count) throws EOFException {
+        if (buffer.remaining() < count) {
+            throw new EOFException();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache;
+
+import org.gradle.internal.serialize.AbstractEncoder;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes an entry of the compact module metadata store into memory. Strings are written as their position in the strings used by the entry,
+ * which {@link ModuleMetadataStringTable} lists in the header of the entry.
+ *
+ * @see StringTableDecoder
+ */
+class StringTableEncoder extends AbstractEncoder {
+    private final ModuleMetadataStringTable stringTable;
+    // The strings used by the entry, shared with its sections
+    private final Map<String, Integer> entryIndices;
+    private final List<Integer> stringIndices;
+    private byte[] buffer = new byte[512];
+    private int size;
+
+    StringTableEncoder(ModuleMetadataStringTable stringTable) {
+        this(stringTable, new HashMap<String, Integer>(), new ArrayList<Integer>());
+    }
+
+    private StringTableEncoder(ModuleMetadataStringTable stringTable, Map<String, Integer> entryIndices, List<Integer> stringIndices) {
+        this.stringTable = stringTable;
+        this.entryIndices = entryIndices;
+        this.stringIndices = stringIndices;
+    }
+
+    /**
+     * Creates an encoder for a nested section of this entry, which uses the same strings.
+     */
+    StringTableEncoder newSection() {
+        return new StringTableEncoder(stringTable, entryIndices, stringIndices);
+    }
+
+    /**
+     * Returns the indices in the string table of the strings used by the entry, in the order they are referenced by the entry.
+     */
+    List<Integer> getStringIndices() {
+        return stringIndices;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    @Override
+    public void writeByte(byte value) {
+        ensureCapacity(1);
+        buffer[size++] = value;
+    }
+
+    @Override
+    public void writeBytes(byte[] bytes, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(bytes, offset, buffer, size, count);
+        size += count;
+    }
+
+    @Override
+    public void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    @Override
+    public void writeSmallLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    @Override
+    public void writeInt(int value) {
+        ensureCapacity(4);
+        buffer[size++] = (byte) (value >>> 24);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+    }
+
+    @Override
+    public void writeSmallInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    @Override
+    public void writeBoolean(boolean value) {
+        writeByte(value ? (byte) 1 : (byte) 0);
+    }
+
+    @Override
+    public void writeString(CharSequence value) {
+        writeSmallInt(entryIndexOf(value.toString()));
+    }
+
+    @Override
+    public void writeNullableString(@Nullable CharSequence value) {
+        // Use index 0 for null, to avoid writing a separate flag
+        writeSmallInt(value == null ? 0 : entryIndexOf(value.toString()) + 1);
+    }
+
+    private int entryIndexOf(String value) {
+        Integer index = entryIndices.get(value);
+        if (index == null) {
+            index = stringIndices.size();
+            stringIndices.add(stringTable.indexOf(value));
+            entryIndices.put(value, index);
+        }
+        return index;
+    }
+
+    private void ensureCapacity(int count) {
+        if (size + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + count));
+        }
+    }
+}
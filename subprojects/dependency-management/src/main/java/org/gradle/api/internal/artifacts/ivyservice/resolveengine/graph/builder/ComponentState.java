@@ -47,6 +47,7 @@ import org.gradle.internal.resolve.ModuleVersionResolveException;
 import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
 import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -191,8 +192,7 @@ public class ComponentState implements ComponentResolutionState, DependencyGraph
             return;
         }
 
-        // Any metadata overrides (e.g classifier/artifacts/client-module) will be taken from the first dependency that referenced this component
-        ComponentOverrideMetadata componentOverrideMetadata = DefaultComponentOverrideMetadata.forDependency(firstSelectedBy.getDependencyMetadata());
+        ComponentOverrideMetadata componentOverrideMetadata = getComponentOverrideMetadata();
 
         DefaultBuildableComponentResolveResult result = new DefaultBuildableComponentResolveResult();
         if (tryResolveVirtualPlatform()) {
@@ -207,6 +207,18 @@ public class ComponentState implements ComponentResolutionState, DependencyGraph
         metadata = result.getMetadata();
     }
 
+    /**
+     * Returns the metadata overrides to use when resolving this component, or null if this component has not been selected by any dependency.
+     */
+    @Nullable
+    ComponentOverrideMetadata getComponentOverrideMetadata() {
+        if (firstSelectedBy == null) {
+            return null;
+        }
+        // Any metadata overrides (e.g classifier/artifacts/client-module) will be taken from the first dependency that referenced this component
+        return DefaultComponentOverrideMetadata.forDependency(firstSelectedBy.getDependencyMetadata());
+    }
+
     private boolean tryResolveVirtualPlatform() {
         if (module.isVirtualPlatform()) {
             for (ComponentState version : module.getAllVersions()) {
@@ -48,6 +48,7 @@ import org.gradle.api.internal.attributes.CompatibilityRule;
 import org.gradle.api.internal.attributes.ImmutableAttributes;
 import org.gradle.api.internal.attributes.ImmutableAttributesFactory;
 import org.gradle.api.specs.Spec;
+import org.gradle.internal.UncheckedException;
 import org.gradle.internal.component.IncompatibleVariantsSelectionException;
 import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
 import org.gradle.internal.component.model.DefaultCompatibilityCheckResult;
@@ -65,6 +66,7 @@ import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -77,6 +79,11 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 public class DependencyGraphBuilder {
+    /**
+     * When set, the metadata of the components in the graph is downloaded ahead of the traversal, see {@link MetadataPrefetcher}.
+     */
+    public static final String METADATA_PREFETCH_PROPERTY = "org.gradle.unsafe.dependency-metadata-prefetch";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DependencyGraphBuilder.class);
     private final ModuleConflictHandler moduleConflictHandler;
     private final Spec<? super DependencyMetadata> edgeFilter;
@@ -136,10 +143,15 @@ public class DependencyGraphBuilder {
         moduleResolver.resolve(resolveContext, rootModule);
 
         int graphSize = estimateSize(resolveContext);
-        final ResolveState resolveState = new ResolveState(idGenerator, rootModule, resolveContext.getName(), idResolver, metaDataResolver, edgeFilter, attributesSchema, moduleExclusions, componentSelectorConverter, attributesFactory, dependencySubstitutionApplicator, versionSelectorScheme, versionComparator, versionParser, moduleConflictHandler.getResolver(), graphSize);
+        final MetadataPrefetcher prefetcher = Boolean.getBoolean(METADATA_PREFETCH_PROPERTY) ? new MetadataPrefetcher(metaDataResolver, versionSelectorScheme) : null;
+        final ResolveState resolveState = new ResolveState(idGenerator, rootModule, resolveContext.getName(), idResolver, prefetcher != null ? prefetcher : metaDataResolver, edgeFilter, attributesSchema, moduleExclusions, componentSelectorConverter, attributesFactory, dependencySubstitutionApplicator, versionSelectorScheme, versionComparator, versionParser, moduleConflictHandler.getResolver(), graphSize);
 
         Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache = Maps.newHashMapWithExpectedSize(graphSize/2);
-        traverseGraph(resolveState, componentIdentifierCache);
+        if (prefetcher != null) {
+            traverseGraphWithPrefetching(resolveState, componentIdentifierCache, prefetcher);
+        } else {
+            traverseGraph(resolveState, componentIdentifierCache, null);
+        }
 
         validateGraph(resolveState);
 
@@ -160,14 +172,41 @@ public class DependencyGraphBuilder {
         return Math.max(10, estimate);
     }
 
+    /**
+     * Traverses the dependency graph while the metadata of its components is downloaded by the build operation workers.
+     */
+    private void traverseGraphWithPrefetching(final ResolveState resolveState, final Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache, final MetadataPrefetcher prefetcher) {
+        final List<Throwable> failures = Lists.newArrayListWithCapacity(1);
+        buildOperationExecutor.runAll(new Action<BuildOperationQueue<RunnableBuildOperation>>() {
+            @Override
+            public void execute(BuildOperationQueue<RunnableBuildOperation> buildOperationQueue) {
+                prefetcher.start(buildOperationQueue);
+                try {
+                    traverseGraph(resolveState, componentIdentifierCache, prefetcher);
+                } catch (Throwable t) {
+                    // Rethrown as is below, rather than as a failure to populate the queue
+                    failures.add(t);
+                } finally {
+                    prefetcher.stop();
+                }
+            }
+        });
+        if (!failures.isEmpty()) {
+            throw UncheckedException.throwAsUncheckedException(failures.get(0));
+        }
+    }
+
     /**
      * Traverses the dependency graph, resolving conflicts and building the paths from the root configuration.
      */
-    private void traverseGraph(final ResolveState resolveState, final Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache) {
+    private void traverseGraph(final ResolveState resolveState, final Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache, @Nullable final MetadataPrefetcher prefetcher) {
         resolveState.onMoreSelected(resolveState.getRoot());
         final List<EdgeState> dependencies = Lists.newArrayList();
 
         while (resolveState.peek() != null || moduleConflictHandler.hasConflicts() || capabilitiesConflictHandler.hasConflicts()) {
+            if (prefetcher != null) {
+                prefetcher.speculate();
+            }
             if (resolveState.peek() != null) {
                 final NodeState node = resolveState.pop();
                 LOGGER.debug("Visiting configuration {}.", node);
@@ -178,7 +217,7 @@ public class DependencyGraphBuilder {
                 // Initialize and collect any new outgoing edges of this node
                 dependencies.clear();
                 node.visitOutgoingDependencies(dependencies);
-                resolveEdges(node, dependencies, resolveState, componentIdentifierCache);
+                resolveEdges(node, dependencies, resolveState, componentIdentifierCache, prefetcher);
             } else {
                 // We have some batched up conflicts. Resolve the first, and continue traversing the graph
                 if (moduleConflictHandler.hasConflicts()) {
@@ -233,17 +272,20 @@ public class DependencyGraphBuilder {
     private void resolveEdges(final NodeState node,
                               final List<EdgeState> dependencies,
                               final ResolveState resolveState,
-                              final Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache) {
+                              final Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache,
+                              @Nullable final MetadataPrefetcher prefetcher) {
         if (dependencies.isEmpty()) {
             return;
         }
-        performSelectionSerially(dependencies, resolveState);
-        maybeDownloadMetadataInParallel(node, componentIdentifierCache, dependencies);
+        performSelectionSerially(dependencies, resolveState, prefetcher);
+        if (prefetcher == null) {
+            maybeDownloadMetadataInParallel(node, componentIdentifierCache, dependencies);
+        }
         attachToTargetRevisionsSerially(dependencies);
 
     }
 
-    private void performSelectionSerially(List<EdgeState> dependencies, ResolveState resolveState) {
+    private void performSelectionSerially(List<EdgeState> dependencies, ResolveState resolveState, @Nullable MetadataPrefetcher prefetcher) {
         for (EdgeState dependency : dependencies) {
             SelectorState selector = dependency.getSelector();
             ModuleResolveState module = selector.getTargetModule();
@@ -251,6 +293,9 @@ public class DependencyGraphBuilder {
             if (!selector.isResolved()) {
                 // Have an unprocessed/new selector for this module. Need to re-select the target version.
                 performSelection(resolveState, module);
+                if (prefetcher != null && module.getSelected() != null) {
+                    prefetcher.prefetch(module.getSelected());
+                }
             }
 
             module.addUnattachedDependency(dependency);
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.VersionConstraint;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.model.ComponentOverrideMetadata;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+import org.gradle.internal.component.model.ConfigurationMetadata;
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult;
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Downloads the metadata of components ahead of the graph traversal.
+ *
+ * The metadata of a component is queued for download as soon as the component is selected. When the metadata of a component
+ * has been downloaded, the metadata of the dependencies it declares with a static version is queued as well, so that the
+ * downloads of the next levels of the graph overlap with the traversal of the current level.
+ *
+ * The traversal consumes the downloaded metadata through {@link #resolve(ComponentIdentifier, ComponentOverrideMetadata, BuildableComponentResolveResult)}.
+ * A download that has not started yet when its metadata is required is resolved by the traversal itself, so the traversal
+ * never waits for a free worker.
+ *
+ * All graph state, including the dependencies of the downloaded components, is only ever read from the thread that
+ * traverses the graph. The downloads only call the delegate resolver.
+ */
+class MetadataPrefetcher implements ComponentMetaDataResolver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataPrefetcher.class);
+    private static final long SPECULATE_WHILE_WAITING_MILLIS = 10;
+
+    private final ComponentMetaDataResolver delegate;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final ConcurrentMap<ComponentIdentifier, PrefetchOperation> operations = new ConcurrentHashMap<ComponentIdentifier, PrefetchOperation>();
+    private final Queue<PrefetchOperation> downloaded = new ConcurrentLinkedQueue<PrefetchOperation>();
+    private Thread traversalThread;
+    private BuildOperationQueue<RunnableBuildOperation> queue;
+    private volatile boolean stopped = true;
+
+    MetadataPrefetcher(ComponentMetaDataResolver delegate, VersionSelectorScheme versionSelectorScheme) {
+        this.delegate = delegate;
+        this.versionSelectorScheme = versionSelectorScheme;
+    }
+
+    /**
+     * Starts queueing downloads to the given queue. Must be called from the thread that traverses the graph.
+     */
+    void start(BuildOperationQueue<RunnableBuildOperation> queue) {
+        this.queue = queue;
+        this.traversalThread = Thread.currentThread();
+        this.stopped = false;
+    }
+
+    /**
+     * Stops queueing downloads. Queued downloads that have not started yet are skipped.
+     */
+    void stop() {
+        stopped = true;
+        queue = null;
+        downloaded.clear();
+    }
+
+    /**
+     * Queues the download of the metadata of the given selected component.
+     */
+    void prefetch(ComponentState component) {
+        if (!component.alreadyResolved() && !component.getModule().isVirtualPlatform()) {
+            prefetch(component.getComponentId(), component.getComponentOverrideMetadata());
+        }
+    }
+
+    void prefetch(ComponentIdentifier componentId, @Nullable ComponentOverrideMetadata overrideMetadata) {
+        if (!stopped && componentId instanceof ModuleComponentIdentifier && overrideMetadata != null && isDefault(overrideMetadata)) {
+            maybeQueue(componentId);
+        }
+    }
+
+    /**
+     * Queues the downloads of the dependencies of the components whose metadata has been downloaded since the last call.
+     */
+    void speculate() {
+        PrefetchOperation operation = downloaded.poll();
+        while (operation != null && !stopped) {
+            ComponentResolveMetadata metadata = operation.result.getMetadata();
+            for (ConfigurationMetadata configuration : configurationsForTraversal(metadata)) {
+                for (DependencyMetadata dependency : configuration.getDependencies()) {
+                    ComponentIdentifier candidate = candidateFor(dependency);
+                    if (candidate != null) {
+                        maybeQueue(candidate);
+                    }
+                }
+            }
+            operation = downloaded.poll();
+        }
+    }
+
+    private void maybeQueue(ComponentIdentifier componentId) {
+        if (operations.containsKey(componentId) || delegate.isFetchingMetadataCheap(componentId)) {
+            return;
+        }
+        PrefetchOperation operation = new PrefetchOperation(componentId);
+        operations.put(componentId, operation);
+        queue.add(operation);
+    }
+
+    private static Iterable<? extends ConfigurationMetadata> configurationsForTraversal(ComponentResolveMetadata metadata) {
+        Optional<ImmutableList<? extends ConfigurationMetadata>> variants = metadata.getVariantsForGraphTraversal();
+        if (variants.isPresent()) {
+            return variants.get();
+        }
+        ConfigurationMetadata defaultConfiguration = metadata.getConfiguration(Dependency.DEFAULT_CONFIGURATION);
+        return defaultConfiguration == null ? ImmutableList.<ConfigurationMetadata>of() : ImmutableList.of(defaultConfiguration);
+    }
+
+    /**
+     * Returns the component that a dependency will most likely select, or null when this cannot be known without resolving the dependency.
+     */
+    @Nullable
+    private ComponentIdentifier candidateFor(DependencyMetadata dependency) {
+        ComponentSelector selector = dependency.getSelector();
+        if (dependency.isConstraint() || !(selector instanceof ModuleComponentSelector)) {
+            return null;
+        }
+        VersionConstraint versionConstraint = ((ModuleComponentSelector) selector).getVersionConstraint();
+        String version = versionConstraint.getRequiredVersion();
+        if (version.isEmpty() || versionConstraint.getBranch() != null || versionSelectorScheme.parseSelector(version).isDynamic()) {
+            return null;
+        }
+        return DefaultModuleComponentIdentifier.newId(((ModuleComponentSelector) selector).getModuleIdentifier(), version);
+    }
+
+    private static boolean isDefault(ComponentOverrideMetadata overrideMetadata) {
+        return !overrideMetadata.isChanging() && overrideMetadata.getArtifacts().isEmpty() && overrideMetadata.getClientModule() == null;
+    }
+
+    @Override
+    public void resolve(ComponentIdentifier identifier, ComponentOverrideMetadata componentOverrideMetadata, BuildableComponentResolveResult result) {
+        PrefetchOperation operation = isDefault(componentOverrideMetadata) ? operations.get(identifier) : null;
+        if (operation == null) {
+            // Not downloaded
+            delegate.resolve(identifier, componentOverrideMetadata, result);
+            return;
+        }
+        if (operation.claim()) {
+            // The download has not started yet, so run it on this thread. Any later resolve of the component waits for it
+            operation.download(componentOverrideMetadata);
+        } else {
+            awaitDownload(operation);
+        }
+        operation.applyTo(result);
+    }
+
+    private void awaitDownload(PrefetchOperation operation) {
+        try {
+            if (Thread.currentThread() != traversalThread) {
+                operation.done.await();
+                return;
+            }
+            while (!operation.done.await(SPECULATE_WHILE_WAITING_MILLIS, TimeUnit.MILLISECONDS)) {
+                speculate();
+            }
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    @Override
+    public boolean isFetchingMetadataCheap(ComponentIdentifier identifier) {
+        return delegate.isFetchingMetadataCheap(identifier);
+    }
+
+    private class PrefetchOperation implements RunnableBuildOperation {
+        private final ComponentIdentifier componentId;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final DefaultBuildableComponentResolveResult result = new DefaultBuildableComponentResolveResult();
+        private Throwable failure;
+
+        PrefetchOperation(ComponentIdentifier componentId) {
+            this.componentId = componentId;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            if (stopped || !claim()) {
+                return;
+            }
+            download(new DefaultComponentOverrideMetadata());
+        }
+
+        /**
+         * Resolves the metadata of the component. Must only be called by the thread that claimed the operation.
+         */
+        void download(ComponentOverrideMetadata overrideMetadata) {
+            try {
+                delegate.resolve(componentId, overrideMetadata, result);
+            } catch (Throwable t) {
+                // Only reported if the component turns out to be part of the graph
+                failure = t;
+            } finally {
+                done.countDown();
+            }
+            if (failure == null && result.hasResult() && result.getFailure() == null) {
+                downloaded.add(this);
+            } else {
+                LOGGER.debug("Could not prefetch metadata for {}", componentId);
+            }
+        }
+
+        void applyTo(BuildableComponentResolveResult target) {
+            if (failure != null) {
+                throw UncheckedException.throwAsUncheckedException(failure);
+            }
+            for (String location : result.getAttempted()) {
+                target.attempted(location);
+            }
+            if (result.getFailure() != null) {
+                target.failed(result.getFailure());
+            } else {
+                target.resolved(result.getMetadata());
+            }
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Resolve " + componentId);
+        }
+    }
+}
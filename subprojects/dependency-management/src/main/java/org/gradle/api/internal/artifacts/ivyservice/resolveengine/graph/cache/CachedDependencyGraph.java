@@ -0,0 +1,419 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.cache;
+
+import com.google.common.collect.ImmutableList;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.ModuleVersionIdentifierSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.ResolvedGraphComponent;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.AttributeContainerSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentIdentifierSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentResultSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectorSerializer;
+import org.gradle.api.internal.attributes.ImmutableAttributes;
+import org.gradle.internal.component.model.DefaultIvyArtifactName;
+import org.gradle.internal.component.model.IvyArtifactName;
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A dependency graph resolved by a previous build, along with the fingerprints of the module metadata that it was resolved from.
+ *
+ * The graph is stored as the sequence of events that the {@link org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder.DependencyGraphBuilder}
+ * delivered to its visitor: the selectors, then the nodes, then the edges of the nodes in consumer-first order.
+ * Nodes and edges refer to each other by id, so the graph can be rebuilt without the metadata of its components.
+ */
+class CachedDependencyGraph {
+    private final List<MetadataFingerprint> fingerprints;
+    private final List<Selector> selectors;
+    private final List<Component> components;
+    private final List<Node> nodes;
+    private final List<Edge> edges;
+    private final List<Long> edgeVisitOrder;
+
+    CachedDependencyGraph(List<MetadataFingerprint> fingerprints, List<Selector> selectors, List<Component> components, List<Node> nodes, List<Edge> edges, List<Long> edgeVisitOrder) {
+        this.fingerprints = fingerprints;
+        this.selectors = selectors;
+        this.components = components;
+        this.nodes = nodes;
+        this.edges = edges;
+        this.edgeVisitOrder = edgeVisitOrder;
+    }
+
+    /**
+     * The metadata of every module component that was resolved while building the graph, including versions that were later evicted.
+     */
+    List<MetadataFingerprint> getFingerprints() {
+        return fingerprints;
+    }
+
+    List<Selector> getSelectors() {
+        return selectors;
+    }
+
+    List<Component> getComponents() {
+        return components;
+    }
+
+    /**
+     * The nodes of the graph, in the order they were visited.
+     */
+    List<Node> getNodes() {
+        return nodes;
+    }
+
+    List<Edge> getEdges() {
+        return edges;
+    }
+
+    /**
+     * The ids of the nodes whose edges were visited, in consumer-first order.
+     */
+    List<Long> getEdgeVisitOrder() {
+        return edgeVisitOrder;
+    }
+
+    static class MetadataFingerprint {
+        private final ModuleComponentIdentifier componentId;
+        private final String repositoryId;
+        private final String contentHash;
+
+        MetadataFingerprint(ModuleComponentIdentifier componentId, String repositoryId, String contentHash) {
+            this.componentId = componentId;
+            this.repositoryId = repositoryId;
+            this.contentHash = contentHash;
+        }
+
+        ModuleComponentIdentifier getComponentId() {
+            return componentId;
+        }
+
+        String getRepositoryId() {
+            return repositoryId;
+        }
+
+        String getContentHash() {
+            return contentHash;
+        }
+    }
+
+    static class Selector {
+        private final long id;
+        private final ComponentSelector requested;
+
+        Selector(long id, ComponentSelector requested) {
+            this.id = id;
+            this.requested = requested;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        ComponentSelector getRequested() {
+            return requested;
+        }
+    }
+
+    static class Component {
+        private final ResolvedGraphComponent result;
+        private final List<ModuleVersionIdentifier> allVersions;
+
+        Component(ResolvedGraphComponent result, List<ModuleVersionIdentifier> allVersions) {
+            this.result = result;
+            this.allVersions = allVersions;
+        }
+
+        ResolvedGraphComponent getResult() {
+            return result;
+        }
+
+        List<ModuleVersionIdentifier> getAllVersions() {
+            return allVersions;
+        }
+    }
+
+    static class Node {
+        private final long id;
+        private final long componentId;
+        private final String configurationName;
+        private final boolean root;
+        private final List<Integer> incomingEdges;
+        private final List<Integer> outgoingEdges;
+
+        Node(long id, long componentId, String configurationName, boolean root, List<Integer> incomingEdges, List<Integer> outgoingEdges) {
+            this.id = id;
+            this.componentId = componentId;
+            this.configurationName = configurationName;
+            this.root = root;
+            this.incomingEdges = incomingEdges;
+            this.outgoingEdges = outgoingEdges;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        long getComponentId() {
+            return componentId;
+        }
+
+        String getConfigurationName() {
+            return configurationName;
+        }
+
+        boolean isRoot() {
+            return root;
+        }
+
+        /**
+         * The indexes of the incoming edges in {@link #getEdges()}.
+         */
+        List<Integer> getIncomingEdges() {
+            return incomingEdges;
+        }
+
+        /**
+         * The indexes of the outgoing edges in {@link #getEdges()}.
+         */
+        List<Integer> getOutgoingEdges() {
+            return outgoingEdges;
+        }
+    }
+
+    static class Edge {
+        static final int NO_ORIGINAL_DEPENDENCY = -1;
+
+        private final long fromNodeId;
+        private final long selectorId;
+        private final long selectedComponentId;
+        private final boolean constraint;
+        private final ImmutableAttributes attributes;
+        private final List<IvyArtifactName> artifacts;
+        private final int originalDependencyIndex;
+
+        Edge(long fromNodeId, long selectorId, long selectedComponentId, boolean constraint, ImmutableAttributes attributes, List<IvyArtifactName> artifacts, int originalDependencyIndex) {
+            this.fromNodeId = fromNodeId;
+            this.selectorId = selectorId;
+            this.selectedComponentId = selectedComponentId;
+            this.constraint = constraint;
+            this.attributes = attributes;
+            this.artifacts = artifacts;
+            this.originalDependencyIndex = originalDependencyIndex;
+        }
+
+        long getFromNodeId() {
+            return fromNodeId;
+        }
+
+        long getSelectorId() {
+            return selectorId;
+        }
+
+        long getSelectedComponentId() {
+            return selectedComponentId;
+        }
+
+        boolean isConstraint() {
+            return constraint;
+        }
+
+        ImmutableAttributes getAttributes() {
+            return attributes;
+        }
+
+        List<IvyArtifactName> getArtifacts() {
+            return artifacts;
+        }
+
+        /**
+         * The index of the dependency declared by the root configuration that this edge was created for, or {@link #NO_ORIGINAL_DEPENDENCY}.
+         */
+        int getOriginalDependencyIndex() {
+            return originalDependencyIndex;
+        }
+    }
+
+    static class Serializer extends AbstractSerializer<CachedDependencyGraph> {
+        private final ComponentIdentifierSerializer componentIdSerializer = new ComponentIdentifierSerializer();
+        private final ModuleVersionIdentifierSerializer moduleVersionIdSerializer;
+        private final ComponentSelectorSerializer componentSelectorSerializer;
+        private final ComponentResultSerializer componentResultSerializer;
+        private final AttributeContainerSerializer attributeContainerSerializer;
+
+        Serializer(ImmutableModuleIdentifierFactory moduleIdentifierFactory, AttributeContainerSerializer attributeContainerSerializer) {
+            this.moduleVersionIdSerializer = new ModuleVersionIdentifierSerializer(moduleIdentifierFactory);
+            this.componentSelectorSerializer = new ComponentSelectorSerializer(attributeContainerSerializer);
+            this.componentResultSerializer = new ComponentResultSerializer(moduleIdentifierFactory, attributeContainerSerializer);
+            this.attributeContainerSerializer = attributeContainerSerializer;
+        }
+
+        @Override
+        public CachedDependencyGraph read(Decoder decoder) throws Exception {
+            int count = decoder.readSmallInt();
+            ImmutableList.Builder<MetadataFingerprint> fingerprints = ImmutableList.builderWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                ModuleComponentIdentifier componentId = (ModuleComponentIdentifier) componentIdSerializer.read(decoder);
+                fingerprints.add(new MetadataFingerprint(componentId, decoder.readString(), decoder.readString()));
+            }
+
+            count = decoder.readSmallInt();
+            ImmutableList.Builder<Selector> selectors = ImmutableList.builderWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                selectors.add(new Selector(decoder.readSmallLong(), componentSelectorSerializer.read(decoder)));
+            }
+
+            count = decoder.readSmallInt();
+            ImmutableList.Builder<Component> components = ImmutableList.builderWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                ResolvedGraphComponent result = componentResultSerializer.read(decoder);
+                int versionCount = decoder.readSmallInt();
+                ImmutableList.Builder<ModuleVersionIdentifier> allVersions = ImmutableList.builderWithExpectedSize(versionCount);
+                for (int j = 0; j < versionCount; j++) {
+                    allVersions.add(moduleVersionIdSerializer.read(decoder));
+                }
+                components.add(new Component(result, allVersions.build()));
+            }
+
+            count = decoder.readSmallInt();
+            ImmutableList.Builder<Node> nodes = ImmutableList.builderWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                long id = decoder.readSmallLong();
+                long componentId = decoder.readSmallLong();
+                String configurationName = decoder.readString();
+                boolean root = decoder.readBoolean();
+                nodes.add(new Node(id, componentId, configurationName, root, readIndexes(decoder), readIndexes(decoder)));
+            }
+
+            count = decoder.readSmallInt();
+            ImmutableList.Builder<Edge> edges = ImmutableList.builderWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                long fromNodeId = decoder.readSmallLong();
+                long selectorId = decoder.readSmallLong();
+                long selectedComponentId = decoder.readSmallLong();
+                boolean constraint = decoder.readBoolean();
+                ImmutableAttributes attributes = attributeContainerSerializer.read(decoder);
+                List<IvyArtifactName> artifacts = readArtifacts(decoder);
+                int originalDependencyIndex = decoder.readInt();
+                edges.add(new Edge(fromNodeId, selectorId, selectedComponentId, constraint, attributes, artifacts, originalDependencyIndex));
+            }
+
+            count = decoder.readSmallInt();
+            ImmutableList.Builder<Long> edgeVisitOrder = ImmutableList.builderWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                edgeVisitOrder.add(decoder.readSmallLong());
+            }
+            return new CachedDependencyGraph(fingerprints.build(), selectors.build(), components.build(), nodes.build(), edges.build(), edgeVisitOrder.build());
+        }
+
+        @Override
+        public void write(Encoder encoder, CachedDependencyGraph value) throws Exception {
+            encoder.writeSmallInt(value.getFingerprints().size());
+            for (MetadataFingerprint fingerprint : value.getFingerprints()) {
+                componentIdSerializer.write(encoder, fingerprint.getComponentId());
+                encoder.writeString(fingerprint.getRepositoryId());
+                encoder.writeString(fingerprint.getContentHash());
+            }
+
+            encoder.writeSmallInt(value.getSelectors().size());
+            for (Selector selector : value.getSelectors()) {
+                encoder.writeSmallLong(selector.getId());
+                componentSelectorSerializer.write(encoder, selector.getRequested());
+            }
+
+            encoder.writeSmallInt(value.getComponents().size());
+            for (Component component : value.getComponents()) {
+                componentResultSerializer.write(encoder, component.getResult());
+                encoder.writeSmallInt(component.getAllVersions().size());
+                for (ModuleVersionIdentifier version : component.getAllVersions()) {
+                    moduleVersionIdSerializer.write(encoder, version);
+                }
+            }
+
+            encoder.writeSmallInt(value.getNodes().size());
+            for (Node node : value.getNodes()) {
+                encoder.writeSmallLong(node.getId());
+                encoder.writeSmallLong(node.getComponentId());
+                encoder.writeString(node.getConfigurationName());
+                encoder.writeBoolean(node.isRoot());
+                writeIndexes(encoder, node.getIncomingEdges());
+                writeIndexes(encoder, node.getOutgoingEdges());
+            }
+
+            encoder.writeSmallInt(value.getEdges().size());
+            for (Edge edge : value.getEdges()) {
+                encoder.writeSmallLong(edge.getFromNodeId());
+                encoder.writeSmallLong(edge.getSelectorId());
+                encoder.writeSmallLong(edge.getSelectedComponentId());
+                encoder.writeBoolean(edge.isConstraint());
+                attributeContainerSerializer.write(encoder, edge.getAttributes());
+                writeArtifacts(encoder, edge.getArtifacts());
+                encoder.writeInt(edge.getOriginalDependencyIndex());
+            }
+
+            encoder.writeSmallInt(value.getEdgeVisitOrder().size());
+            for (Long nodeId : value.getEdgeVisitOrder()) {
+                encoder.writeSmallLong(nodeId);
+            }
+        }
+
+        private static List<Integer> readIndexes(Decoder decoder) throws IOException {
+            int count = decoder.readSmallInt();
+            ImmutableList.Builder<Integer> indexes = ImmutableList.builderWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                indexes.add(decoder.readSmallInt());
+            }
+            return indexes.build();
+        }
+
+        private static void writeIndexes(Encoder encoder, List<Integer> indexes) throws IOException {
+            encoder.writeSmallInt(indexes.size());
+            for (Integer index : indexes) {
+                encoder.writeSmallInt(index);
+            }
+        }
+
+        private static List<IvyArtifactName> readArtifacts(Decoder decoder) throws IOException {
+            int count = decoder.readSmallInt();
+            if (count == 0) {
+                return ImmutableList.of();
+            }
+            ImmutableList.Builder<IvyArtifactName> artifacts = ImmutableList.builderWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                artifacts.add(new DefaultIvyArtifactName(decoder.readString(), decoder.readString(), decoder.readNullableString(), decoder.readNullableString()));
+            }
+            return artifacts.build();
+        }
+
+        private static void writeArtifacts(Encoder encoder, List<IvyArtifactName> artifacts) throws IOException {
+            encoder.writeSmallInt(artifacts.size());
+            for (IvyArtifactName artifact : artifacts) {
+                encoder.writeString(artifact.getName());
+                encoder.writeString(artifact.getType());
+                encoder.writeNullableString(artifact.getExtension());
+                encoder.writeNullableString(artifact.getClassifier());
+            }
+        }
+    }
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.cache;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import org.gradle.api.Action;
+import org.gradle.api.Named;
+import org.gradle.api.artifacts.ClientModule;
+import org.gradle.api.artifacts.DependencySubstitution;
+import org.gradle.api.artifacts.ModuleVersionSelector;
+import org.gradle.api.artifacts.VersionConstraint;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.attributes.AttributeContainer;
+import org.gradle.api.capabilities.Capability;
+import org.gradle.api.internal.artifacts.ComponentMetadataProcessor;
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules;
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.MetadataResolutionContext;
+import org.gradle.api.internal.artifacts.ResolveContext;
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
+import org.gradle.api.internal.artifacts.configurations.dynamicversion.CachePolicy;
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData;
+import org.gradle.api.internal.artifacts.ivyservice.ArtifactCacheLockingManager;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.ModuleExclusions;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.AttributeContainerSerializer;
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
+import org.gradle.api.internal.artifacts.repositories.descriptor.RepositoryDescriptor;
+import org.gradle.api.internal.attributes.AttributesSchemaInternal;
+import org.gradle.api.internal.attributes.CompatibilityRule;
+import org.gradle.api.internal.attributes.DisambiguationRule;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.specs.Specs;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.Actions;
+import org.gradle.internal.Factory;
+import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata;
+import org.gradle.internal.component.local.model.DslOriginDependencyMetadata;
+import org.gradle.internal.component.local.model.LocalConfigurationMetadata;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+import org.gradle.internal.component.model.ConfigurationMetadata;
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.component.model.ExcludeMetadata;
+import org.gradle.internal.component.model.IvyArtifactName;
+import org.gradle.internal.component.model.LocalOriginDependencyMetadata;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashable;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.reflect.Instantiator;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
+import org.gradle.internal.serialize.HashCodeSerializer;
+import org.gradle.util.GradleVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A persistent cache of resolved dependency graphs, shared between builds.
+ *
+ * A graph is stored under a hash of the inputs of the resolution: the root configuration with its attributes and declared dependencies,
+ * the resolution strategy including its forced modules, the component metadata rules, the repositories with their URLs and metadata sources and the consumer attributes schema with its compatibility and disambiguation rules.
+ * Along with the graph, the cache stores the repository and content hash of the metadata of every module component that was resolved while building it.
+ * On a hit, the metadata of these components is resolved again, which is normally served by the module metadata cache, and compared with the stored fingerprints.
+ * When everything matches, the stored graph is replayed to the visitor instead of building the graph again, so the stores of the
+ * resolution results are populated exactly as they would be by the {@link org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder.DependencyGraphBuilder}.
+ *
+ * Graphs that depend on anything which is not covered by the key are not cached. This includes dynamic and changing versions, project dependencies,
+ * declared dependency substitution rules, component selection rules, dependency locking, failed resolution and artifact exclusions.
+ *
+ * Enabled by setting the {@value #DEPENDENCY_GRAPH_CACHE_PROPERTY} system property to {@code true}.
+ */
+public class DependencyGraphCache {
+    public static final String DEPENDENCY_GRAPH_CACHE_PROPERTY = "org.gradle.unsafe.dependency-graph-cache";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DependencyGraphCache.class);
+    private static final int CACHE_FORMAT_VERSION = 3;
+
+    private final ArtifactCacheLockingManager cacheLockingManager;
+    private final CachedDependencyGraph.Serializer graphSerializer;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final ModuleExclusions moduleExclusions;
+    private PersistentIndexedCache<HashCode, CachedDependencyGraph> cache;
+
+    public DependencyGraphCache(ArtifactCacheLockingManager cacheLockingManager, ImmutableModuleIdentifierFactory moduleIdentifierFactory, AttributeContainerSerializer attributeContainerSerializer, VersionSelectorScheme versionSelectorScheme, ModuleExclusions moduleExclusions) {
+        this.cacheLockingManager = cacheLockingManager;
+        this.graphSerializer = new CachedDependencyGraph.Serializer(moduleIdentifierFactory, attributeContainerSerializer);
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.moduleExclusions = moduleExclusions;
+    }
+
+    private synchronized PersistentIndexedCache<HashCode, CachedDependencyGraph> getCache() {
+        if (cache == null) {
+            cache = cacheLockingManager.createCache("dependency-graphs", new HashCodeSerializer(), graphSerializer);
+        }
+        return cache;
+    }
+
+    /**
+     * Calculates the key for the dependency graph of the given context.
+     *
+     * @return the key, or null when the cache is disabled or the graph cannot be cached.
+     */
+    @Nullable
+    public HashCode createKey(ResolveContext resolveContext, List<? extends ResolutionAwareRepository> repositories, GlobalDependencyResolutionRules metadataHandler, Spec<? super DependencyMetadata> edgeFilter, AttributesSchemaInternal consumerSchema) {
+        if (!Boolean.getBoolean(DEPENDENCY_GRAPH_CACHE_PROPERTY) || edgeFilter != Specs.satisfyAll()) {
+            return null;
+        }
+        ResolutionStrategyInternal resolutionStrategy = resolveContext.getResolutionStrategy();
+        // Forced modules are also applied as a substitution rule, but they are part of the key, so only the declared substitution rules are checked
+        Action<DependencySubstitution> declaredSubstitutionRule = Actions.composite(resolutionStrategy.getDependencySubstitution().getRuleAction(), metadataHandler.getDependencySubstitutionRules().getRuleAction());
+        if (declaredSubstitutionRule != Actions.<DependencySubstitution>doNothing()
+            || !resolutionStrategy.getComponentSelection().getRules().isEmpty()
+            || resolutionStrategy.isDependencyLockingEnabled()) {
+            return null;
+        }
+        ComponentResolveMetadata rootComponent = resolveContext.toRootComponentMetaData();
+        ConfigurationMetadata rootConfiguration = rootComponent.getConfiguration(resolveContext.getName());
+        if (!(rootConfiguration instanceof LocalConfigurationMetadata)) {
+            return null;
+        }
+
+        Hasher hasher = Hashing.newHasher();
+        hasher.putInt(CACHE_FORMAT_VERSION);
+        hasher.putString(GradleVersion.current().getVersion());
+        hasher.putString(rootComponent.getId().getDisplayName());
+        hasher.putString(rootComponent.getModuleVersionId().toString());
+        if (!hashConfiguration((LocalConfigurationMetadata) rootConfiguration, hasher)) {
+            return null;
+        }
+
+        hasher.putString(resolutionStrategy.getConflictResolution().name());
+        List<String> forcedModules = new ArrayList<String>();
+        for (ModuleVersionSelector forcedModule : resolutionStrategy.getForcedModules()) {
+            forcedModules.add(forcedModule.getGroup() + ":" + forcedModule.getName() + ":" + forcedModule.getVersion());
+        }
+        Collections.sort(forcedModules);
+        hashStrings(forcedModules, hasher);
+
+        ComponentMetadataProcessor metadataProcessor = metadataHandler.getComponentMetadataProcessorFactory().createComponentMetadataProcessor(new KeyResolutionContext(resolutionStrategy.getCachePolicy()));
+        hasher.putInt(metadataProcessor.getRulesHash());
+
+        hasher.putInt(repositories.size());
+        for (ResolutionAwareRepository repository : repositories) {
+            hashRepository(repository.getDescriptor(), hasher);
+        }
+
+        List<Attribute<?>> schemaAttributes = new ArrayList<Attribute<?>>(consumerSchema.getAttributes());
+        schemaAttributes.sort(Comparator.comparing(Attribute::getName));
+        hasher.putInt(schemaAttributes.size());
+        for (Attribute<?> attribute : schemaAttributes) {
+            hasher.putString(attribute.getName());
+            hasher.putString(attribute.getType().getName());
+            // The rules decide which variants of the components are selected, and the stored graph refers to the selected variants by name
+            CompatibilityRule<Object> compatibilityRules = consumerSchema.compatibilityRules(attribute);
+            DisambiguationRule<Object> disambiguationRules = consumerSchema.disambiguationRules(attribute);
+            if (!(compatibilityRules instanceof Hashable) || !(disambiguationRules instanceof Hashable)) {
+                return null;
+            }
+            ((Hashable) compatibilityRules).appendToHasher(hasher);
+            ((Hashable) disambiguationRules).appendToHasher(hasher);
+        }
+        return hasher.hash();
+    }
+
+    private static void hashRepository(RepositoryDescriptor descriptor, Hasher hasher) {
+        hasher.putString(descriptor.getType().name());
+        hasher.putString(descriptor.name);
+        // The properties include the URLs and the metadata sources of the repository
+        Map<String, ?> properties = descriptor.getProperties();
+        hasher.putInt(properties.size());
+        for (Map.Entry<String, ?> property : properties.entrySet()) {
+            hasher.putString(property.getKey());
+            hasher.putString(String.valueOf(property.getValue()));
+        }
+    }
+
+    private static boolean hashConfiguration(LocalConfigurationMetadata configuration, Hasher hasher) {
+        hasher.putString(configuration.getName());
+        hashStrings(configuration.getHierarchy(), hasher);
+        hasher.putBoolean(configuration.isTransitive());
+        hashAttributes(configuration.getAttributes(), hasher);
+        hashCapabilities(configuration.getCapabilities().getCapabilities(), hasher);
+        hashExcludes(configuration.getExcludes(), hasher);
+        hasher.putInt(configuration.getDependencies().size());
+        for (LocalOriginDependencyMetadata dependency : configuration.getDependencies()) {
+            if (dependency instanceof DslOriginDependencyMetadata && ((DslOriginDependencyMetadata) dependency).getSource() instanceof ClientModule) {
+                // The metadata of a client module is declared in the build script
+                return false;
+            }
+            hashSelector(dependency.getSelector(), hasher);
+            hasher.putString(dependency.getModuleConfiguration());
+            hashNullableString(dependency.getDependencyConfiguration(), hasher);
+            hasher.putBoolean(dependency.isTransitive());
+            hasher.putBoolean(dependency.isForce());
+            hasher.putBoolean(dependency.isChanging());
+            hasher.putBoolean(dependency.isConstraint());
+            hashNullableString(dependency.getReason(), hasher);
+            hashExcludes(dependency.getExcludes(), hasher);
+            hasher.putInt(dependency.getArtifacts().size());
+            for (IvyArtifactName artifact : dependency.getArtifacts()) {
+                hashArtifact(artifact, hasher);
+            }
+        }
+        return true;
+    }
+
+    private static void hashSelector(ComponentSelector selector, Hasher hasher) {
+        hasher.putString(selector.getClass().getName());
+        hasher.putString(selector.getDisplayName());
+        if (selector instanceof ModuleComponentSelector) {
+            ModuleComponentSelector moduleSelector = (ModuleComponentSelector) selector;
+            VersionConstraint versionConstraint = moduleSelector.getVersionConstraint();
+            hasher.putString(versionConstraint.getRequiredVersion());
+            hasher.putString(versionConstraint.getPreferredVersion());
+            hasher.putString(versionConstraint.getStrictVersion());
+            hashNullableString(versionConstraint.getBranch(), hasher);
+            hashStrings(versionConstraint.getRejectedVersions(), hasher);
+            hashAttributes(moduleSelector.getAttributes(), hasher);
+            hashCapabilities(moduleSelector.getRequestedCapabilities(), hasher);
+        }
+    }
+
+    private static void hashAttributes(AttributeContainer attributes, Hasher hasher) {
+        List<Attribute<?>> keys = new ArrayList<Attribute<?>>(attributes.keySet());
+        keys.sort(Comparator.comparing(Attribute::getName));
+        hasher.putInt(keys.size());
+        for (Attribute<?> key : keys) {
+            hasher.putString(key.getName());
+            Object value = attributes.getAttribute(key);
+            hasher.putString(value instanceof Named ? ((Named) value).getName() : String.valueOf(value));
+        }
+    }
+
+    private static void hashCapabilities(List<? extends Capability> capabilities, Hasher hasher) {
+        hasher.putInt(capabilities.size());
+        for (Capability capability : capabilities) {
+            hasher.putString(capability.getGroup());
+            hasher.putString(capability.getName());
+            hashNullableString(capability.getVersion(), hasher);
+        }
+    }
+
+    private static void hashExcludes(List<ExcludeMetadata> excludes, Hasher hasher) {
+        hasher.putInt(excludes.size());
+        for (ExcludeMetadata exclude : excludes) {
+            hasher.putString(exclude.getModuleId().getGroup());
+            hasher.putString(exclude.getModuleId().getName());
+            IvyArtifactName artifact = exclude.getArtifact();
+            if (artifact == null) {
+                hasher.putNull();
+            } else {
+                hashArtifact(artifact, hasher);
+            }
+            hashNullableString(exclude.getMatcher(), hasher);
+        }
+    }
+
+    private static void hashArtifact(IvyArtifactName artifact, Hasher hasher) {
+        hasher.putString(artifact.getName());
+        hasher.putString(artifact.getType());
+        hashNullableString(artifact.getExtension(), hasher);
+        hashNullableString(artifact.getClassifier(), hasher);
+    }
+
+    private static void hashStrings(Iterable<String> values, Hasher hasher) {
+        for (String value : values) {
+            hasher.putString(value);
+        }
+        hasher.putNull();
+    }
+
+    private static void hashNullableString(@Nullable String value, Hasher hasher) {
+        if (value == null) {
+            hasher.putNull();
+        } else {
+            hasher.putString(value);
+        }
+    }
+
+    /**
+     * Replays the graph stored under the given key to the visitor, when the metadata that the graph was resolved from has not changed.
+     *
+     * @return true if the graph was replayed, false if the graph needs to be resolved.
+     */
+    public boolean replay(final HashCode key, ResolveContext resolveContext, ComponentMetaDataResolver componentResolver, ModuleReplacementsData moduleReplacements, DependencyGraphVisitor visitor) {
+        final PersistentIndexedCache<HashCode, CachedDependencyGraph> cache = getCache();
+        CachedDependencyGraph graph = cacheLockingManager.useCache(new Factory<CachedDependencyGraph>() {
+            @Override
+            public CachedDependencyGraph create() {
+                return cache.get(key);
+            }
+        });
+        if (graph == null) {
+            return false;
+        }
+        Map<ComponentIdentifier, ComponentResolveMetadata> metadata = resolveFingerprintedMetadata(graph, componentResolver, moduleReplacements);
+        if (metadata == null) {
+            LOGGER.debug("Metadata of the cached dependency graph for {} has changed", resolveContext);
+            return false;
+        }
+        ReplayedDependencyGraph replayedGraph = ReplayedDependencyGraph.of(graph, resolveContext.toRootComponentMetaData(), resolveContext.getName(), metadata, moduleExclusions.nothing());
+        if (replayedGraph == null) {
+            LOGGER.debug("Cached dependency graph for {} no longer matches the metadata of its components", resolveContext);
+            return false;
+        }
+        LOGGER.debug("Using cached dependency graph for {}", resolveContext);
+        replayedGraph.visit(visitor);
+        return true;
+    }
+
+    @Nullable
+    private static Map<ComponentIdentifier, ComponentResolveMetadata> resolveFingerprintedMetadata(CachedDependencyGraph graph, ComponentMetaDataResolver componentResolver, ModuleReplacementsData moduleReplacements) {
+        Map<ComponentIdentifier, ComponentResolveMetadata> result = Maps.newHashMapWithExpectedSize(graph.getFingerprints().size());
+        for (CachedDependencyGraph.MetadataFingerprint fingerprint : graph.getFingerprints()) {
+            if (moduleReplacements.participatesInReplacements(fingerprint.getComponentId().getModuleIdentifier())) {
+                return null;
+            }
+            DefaultBuildableComponentResolveResult resolveResult = new DefaultBuildableComponentResolveResult();
+            componentResolver.resolve(fingerprint.getComponentId(), new DefaultComponentOverrideMetadata(), resolveResult);
+            if (!resolveResult.hasResult() || resolveResult.getFailure() != null) {
+                return null;
+            }
+            ComponentResolveMetadata metadata = resolveResult.getMetadata();
+            if (!(metadata instanceof ModuleComponentResolveMetadata)
+                || metadata.isChanging()
+                || !fingerprint.getRepositoryId().equals(DependencyGraphRecorder.repositoryId(metadata))
+                || !fingerprint.getContentHash().equals(((ModuleComponentResolveMetadata) metadata).getOriginalContentHash().asHexString())) {
+                return null;
+            }
+            result.put(fingerprint.getComponentId(), metadata);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a recorder for a graph that is about to be resolved. The recorder must be added to the visitors of the graph,
+     * and the metadata of the components in the graph must be resolved through {@link DependencyGraphRecorder#fingerprinting(ComponentMetaDataResolver)}.
+     */
+    public DependencyGraphRecorder createRecorder() {
+        return new DependencyGraphRecorder(versionSelectorScheme);
+    }
+
+    /**
+     * Stores the graph captured by the given recorder, if it can be cached.
+     */
+    public void store(final HashCode key, DependencyGraphRecorder recorder) {
+        final CachedDependencyGraph graph = recorder.getGraph();
+        if (graph == null) {
+            return;
+        }
+        final PersistentIndexedCache<HashCode, CachedDependencyGraph> cache = getCache();
+        cacheLockingManager.useCache(new Runnable() {
+            @Override
+            public void run() {
+                cache.put(key, graph);
+            }
+        });
+    }
+
+    /**
+     * Locates the configuration or variant with the given name, as it is used for graph traversal.
+     */
+    @Nullable
+    static ConfigurationMetadata findConfiguration(ComponentResolveMetadata metadata, String name) {
+        Optional<ImmutableList<? extends ConfigurationMetadata>> variants = metadata.getVariantsForGraphTraversal();
+        if (variants.isPresent()) {
+            for (ConfigurationMetadata variant : variants.get()) {
+                if (variant.getName().equals(name)) {
+                    return variant;
+                }
+            }
+        }
+        Set<String> configurationNames = metadata.getConfigurationNames();
+        return configurationNames.contains(name) ? metadata.getConfiguration(name) : null;
+    }
+
+    private static class KeyResolutionContext implements MetadataResolutionContext {
+        private final CachePolicy cachePolicy;
+
+        KeyResolutionContext(CachePolicy cachePolicy) {
+            this.cachePolicy = cachePolicy;
+        }
+
+        @Override
+        public CachePolicy getCachePolicy() {
+            return cachePolicy;
+        }
+
+        @Override
+        public Instantiator getInjectingInstantiator() {
+            throw new UnsupportedOperationException("Component metadata rules are not executed when calculating the key of a dependency graph.");
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.VersionConstraint;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.RepositoryChainModuleSource;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.RootGraphNode;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DetachedComponentResult;
+import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata;
+import org.gradle.internal.component.local.model.DslOriginDependencyMetadata;
+import org.gradle.internal.component.model.ComponentArtifactMetadata;
+import org.gradle.internal.component.model.ComponentOverrideMetadata;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.component.model.IvyArtifactName;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records the result of resolving a dependency graph so it can be stored in the {@link DependencyGraphCache}.
+ *
+ * Only graphs whose shape is fully determined by the inputs of the cache key and the metadata of their module components are recorded.
+ * As soon as anything else is seen, such as a failure, a dynamic version or a project dependency, the recording is abandoned.
+ */
+public class DependencyGraphRecorder implements DependencyGraphVisitor {
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final ConcurrentMap<ComponentIdentifier, CachedDependencyGraph.MetadataFingerprint> fingerprints = new ConcurrentHashMap<ComponentIdentifier, CachedDependencyGraph.MetadataFingerprint>();
+    private final List<CachedDependencyGraph.Selector> selectors = Lists.newArrayList();
+    private final Set<Long> selectorIds = Sets.newHashSet();
+    private final Map<Long, CachedDependencyGraph.Component> components = Maps.newLinkedHashMap();
+    private final List<CachedDependencyGraph.Node> nodes = Lists.newArrayList();
+    private final Set<Long> nodeIds = Sets.newHashSet();
+    private final Map<DependencyGraphEdge, Integer> edgeIndexes = new IdentityHashMap<DependencyGraphEdge, Integer>();
+    private final List<DependencyGraphEdge> edges = Lists.newArrayList();
+    private final Map<Integer, List<IvyArtifactName>> edgeArtifacts = Maps.newHashMap();
+    private final List<Long> edgeVisitOrder = Lists.newArrayList();
+    private volatile boolean abandoned;
+    private RootGraphNode root;
+
+    DependencyGraphRecorder(VersionSelectorScheme versionSelectorScheme) {
+        this.versionSelectorScheme = versionSelectorScheme;
+    }
+
+    /**
+     * Wraps the given resolver, so that the metadata of every module component resolved through it is fingerprinted.
+     */
+    public ComponentMetaDataResolver fingerprinting(final ComponentMetaDataResolver delegate) {
+        return new ComponentMetaDataResolver() {
+            @Override
+            public void resolve(ComponentIdentifier identifier, ComponentOverrideMetadata componentOverrideMetadata, BuildableComponentResolveResult result) {
+                delegate.resolve(identifier, componentOverrideMetadata, result);
+                if (identifier instanceof ModuleComponentIdentifier) {
+                    fingerprint((ModuleComponentIdentifier) identifier, result);
+                }
+            }
+
+            @Override
+            public boolean isFetchingMetadataCheap(ComponentIdentifier identifier) {
+                return delegate.isFetchingMetadataCheap(identifier);
+            }
+        };
+    }
+
+    private void fingerprint(ModuleComponentIdentifier identifier, BuildableComponentResolveResult result) {
+        if (!result.hasResult() || result.getFailure() != null) {
+            abandoned = true;
+            return;
+        }
+        ComponentResolveMetadata metadata = result.getMetadata();
+        String repositoryId = repositoryId(metadata);
+        if (!(metadata instanceof ModuleComponentResolveMetadata) || metadata.isChanging() || metadata.isMissing() || repositoryId == null) {
+            abandoned = true;
+            return;
+        }
+        String contentHash = ((ModuleComponentResolveMetadata) metadata).getOriginalContentHash().asHexString();
+        fingerprints.put(identifier, new CachedDependencyGraph.MetadataFingerprint(identifier, repositoryId, contentHash));
+    }
+
+    @Nullable
+    static String repositoryId(ComponentResolveMetadata metadata) {
+        if (metadata.getSource() instanceof RepositoryChainModuleSource) {
+            return ((RepositoryChainModuleSource) metadata.getSource()).getRepositoryId();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the recorded graph, or null when the graph cannot be cached.
+     */
+    @Nullable
+    CachedDependencyGraph getGraph() {
+        if (abandoned || root == null) {
+            return null;
+        }
+        List<CachedDependencyGraph.Edge> recordedEdges = new ArrayList<CachedDependencyGraph.Edge>(edges.size());
+        for (int i = 0; i < edges.size(); i++) {
+            CachedDependencyGraph.Edge edge = recordEdge(edges.get(i), i);
+            if (edge == null) {
+                return null;
+            }
+            recordedEdges.add(edge);
+        }
+        return new CachedDependencyGraph(ImmutableList.copyOf(fingerprints.values()), selectors, ImmutableList.copyOf(components.values()), nodes, recordedEdges, edgeVisitOrder);
+    }
+
+    @Nullable
+    private CachedDependencyGraph.Edge recordEdge(DependencyGraphEdge edge, int index) {
+        long fromNodeId = edge.getFrom().getNodeId();
+        long selectorId = edge.getSelector().getResultId();
+        if (!nodeIds.contains(fromNodeId) || !selectorIds.contains(selectorId) || !components.containsKey(edge.getSelected())) {
+            return null;
+        }
+        int originalDependencyIndex = CachedDependencyGraph.Edge.NO_ORIGINAL_DEPENDENCY;
+        Dependency originalDependency = edge.getOriginalDependency();
+        if (originalDependency != null) {
+            originalDependencyIndex = indexOf(originalDependency, edge.getFrom().getMetadata().getDependencies());
+            if (originalDependencyIndex == CachedDependencyGraph.Edge.NO_ORIGINAL_DEPENDENCY) {
+                return null;
+            }
+        }
+        List<IvyArtifactName> artifacts = edgeArtifacts.get(index);
+        return new CachedDependencyGraph.Edge(fromNodeId, selectorId, edge.getSelected(), edge.isConstraint(), edge.getAttributes(), artifacts == null ? ImmutableList.<IvyArtifactName>of() : artifacts, originalDependencyIndex);
+    }
+
+    private static int indexOf(Dependency dependency, List<? extends DependencyMetadata> dependencies) {
+        for (int i = 0; i < dependencies.size(); i++) {
+            DependencyMetadata candidate = dependencies.get(i);
+            if (candidate instanceof DslOriginDependencyMetadata && ((DslOriginDependencyMetadata) candidate).getSource() == dependency) {
+                return i;
+            }
+        }
+        return CachedDependencyGraph.Edge.NO_ORIGINAL_DEPENDENCY;
+    }
+
+    @Override
+    public void start(RootGraphNode root) {
+        this.root = root;
+    }
+
+    @Override
+    public void visitSelector(DependencyGraphSelector selector) {
+        if (abandoned) {
+            return;
+        }
+        if (isDynamic(selector.getRequested())) {
+            abandoned = true;
+            return;
+        }
+        selectors.add(new CachedDependencyGraph.Selector(selector.getResultId(), selector.getRequested()));
+        selectorIds.add(selector.getResultId());
+    }
+
+    private boolean isDynamic(ComponentSelector requested) {
+        if (!(requested instanceof ModuleComponentSelector)) {
+            return true;
+        }
+        VersionConstraint versionConstraint = ((ModuleComponentSelector) requested).getVersionConstraint();
+        return versionConstraint.getBranch() != null
+            || isDynamic(versionConstraint.getRequiredVersion())
+            || isDynamic(versionConstraint.getPreferredVersion())
+            || isDynamic(versionConstraint.getStrictVersion());
+    }
+
+    private boolean isDynamic(String version) {
+        return !version.isEmpty() && versionSelectorScheme.parseSelector(version).isDynamic();
+    }
+
+    @Override
+    public void visitNode(DependencyGraphNode node) {
+        if (abandoned) {
+            return;
+        }
+        DependencyGraphComponent owner = node.getOwner();
+        ComponentResolveMetadata metadata = owner.getMetadata();
+        if (!node.isRoot() && !canReplay(node, metadata)) {
+            abandoned = true;
+            return;
+        }
+        if (!components.containsKey(owner.getResultId())) {
+            DetachedComponentResult result = new DetachedComponentResult(owner.getResultId(), owner.getModuleVersion(), owner.getSelectionReason(), owner.getComponentId(), owner.getResolvedVariants(), owner.getRepositoryName());
+            components.put(owner.getResultId(), new CachedDependencyGraph.Component(result, ImmutableList.<ModuleVersionIdentifier>copyOf(owner.getAllVersions())));
+        }
+
+        List<Integer> incomingEdges = new ArrayList<Integer>(node.getIncomingEdges().size());
+        for (DependencyGraphEdge edge : node.getIncomingEdges()) {
+            int index = edgeIndex(edge);
+            incomingEdges.add(index);
+            if (edge.contributesArtifacts() && !edgeArtifacts.containsKey(index)) {
+                edgeArtifacts.put(index, artifactNames(edge.getArtifacts(node.getMetadata())));
+            }
+        }
+        List<Integer> outgoingEdges = new ArrayList<Integer>(node.getOutgoingEdges().size());
+        for (DependencyGraphEdge edge : node.getOutgoingEdges()) {
+            outgoingEdges.add(edgeIndex(edge));
+        }
+        nodes.add(new CachedDependencyGraph.Node(node.getNodeId(), owner.getResultId(), node.getMetadata().getName(), node.isRoot(), incomingEdges, outgoingEdges));
+        nodeIds.add(node.getNodeId());
+    }
+
+    private static boolean canReplay(DependencyGraphNode node, @Nullable ComponentResolveMetadata metadata) {
+        return node.getOwner().getComponentId() instanceof ModuleComponentIdentifier
+            && metadata != null
+            && !metadata.isChanging()
+            && node.getOutgoingFileEdges().isEmpty()
+            // The node must be reachable again from the metadata of its component, by name
+            && DependencyGraphCache.findConfiguration(metadata, node.getMetadata().getName()) == node.getMetadata();
+    }
+
+    private int edgeIndex(DependencyGraphEdge edge) {
+        Integer index = edgeIndexes.get(edge);
+        if (index == null) {
+            if (edge.getFailure() != null || edge.getSelected() == null || edge.isTargetVirtualPlatform() || edge.getExclusions().mayExcludeArtifacts()) {
+                abandoned = true;
+            }
+            index = edges.size();
+            edges.add(edge);
+            edgeIndexes.put(edge, index);
+        }
+        return index;
+    }
+
+    private static List<IvyArtifactName> artifactNames(List<? extends ComponentArtifactMetadata> artifacts) {
+        if (artifacts.isEmpty()) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<IvyArtifactName> names = ImmutableList.builderWithExpectedSize(artifacts.size());
+        for (ComponentArtifactMetadata artifact : artifacts) {
+            names.add(artifact.getName());
+        }
+        return names.build();
+    }
+
+    @Override
+    public void visitEdges(DependencyGraphNode node) {
+        edgeVisitOrder.add(node.getNodeId());
+    }
+
+    @Override
+    public void finish(DependencyGraphNode root) {
+    }
+}
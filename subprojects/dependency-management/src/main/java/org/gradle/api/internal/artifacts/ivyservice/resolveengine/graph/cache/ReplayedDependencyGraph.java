@@ -0,0 +1,453 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.result.ComponentSelectionReason;
+import org.gradle.api.internal.artifacts.ResolvedConfigurationIdentifier;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.ComponentResolutionState;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.ExcludeSpec;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.ResolvedGraphComponent;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.ResolvedVariantDetails;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.RootGraphNode;
+import org.gradle.api.internal.attributes.ImmutableAttributes;
+import org.gradle.internal.component.local.model.DslOriginDependencyMetadata;
+import org.gradle.internal.component.local.model.LocalFileDependencyMetadata;
+import org.gradle.internal.component.local.model.RootConfigurationMetadata;
+import org.gradle.internal.component.model.ComponentArtifactMetadata;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+import org.gradle.internal.component.model.ConfigurationMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.component.model.IvyArtifactName;
+import org.gradle.internal.resolve.ModuleVersionResolveException;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link CachedDependencyGraph} attached to the current metadata of its components, which can be visited in place of a freshly resolved graph.
+ */
+class ReplayedDependencyGraph {
+    private final ReplayedRootNode root;
+    private final List<ReplayedSelector> selectors;
+    private final List<ReplayedNode> nodes;
+    private final List<ReplayedNode> edgeVisitOrder;
+
+    private ReplayedDependencyGraph(ReplayedRootNode root, List<ReplayedSelector> selectors, List<ReplayedNode> nodes, List<ReplayedNode> edgeVisitOrder) {
+        this.root = root;
+        this.selectors = selectors;
+        this.nodes = nodes;
+        this.edgeVisitOrder = edgeVisitOrder;
+    }
+
+    /**
+     * Attaches the given graph to the metadata of its components.
+     *
+     * @return the graph, or null when the graph refers to a component or variant that is not present in the metadata.
+     */
+    @Nullable
+    static ReplayedDependencyGraph of(CachedDependencyGraph graph, ComponentResolveMetadata rootComponent, String rootConfigurationName, Map<ComponentIdentifier, ComponentResolveMetadata> metadata, ExcludeSpec exclusions) {
+        ConfigurationMetadata rootConfiguration = rootComponent.getConfiguration(rootConfigurationName);
+        if (!(rootConfiguration instanceof RootConfigurationMetadata)) {
+            return null;
+        }
+
+        Map<Long, ReplayedSelector> selectors = Maps.newLinkedHashMap();
+        for (CachedDependencyGraph.Selector selector : graph.getSelectors()) {
+            selectors.put(selector.getId(), new ReplayedSelector(selector.getId(), selector.getRequested()));
+        }
+
+        Map<Long, ReplayedComponent> components = Maps.newHashMapWithExpectedSize(graph.getComponents().size());
+        for (CachedDependencyGraph.Component component : graph.getComponents()) {
+            ResolvedGraphComponent result = component.getResult();
+            ComponentResolveMetadata componentMetadata = result.getComponentId().equals(rootComponent.getId()) ? rootComponent : metadata.get(result.getComponentId());
+            if (componentMetadata == null) {
+                return null;
+            }
+            components.put(result.getResultId(), new ReplayedComponent(result, componentMetadata, component.getAllVersions()));
+        }
+
+        ReplayedRootNode root = null;
+        Map<Long, ReplayedNode> nodes = Maps.newLinkedHashMap();
+        for (CachedDependencyGraph.Node node : graph.getNodes()) {
+            ReplayedComponent owner = components.get(node.getComponentId());
+            if (owner == null) {
+                return null;
+            }
+            ReplayedNode replayedNode;
+            if (node.isRoot()) {
+                root = new ReplayedRootNode(node.getId(), owner, (RootConfigurationMetadata) rootConfiguration);
+                replayedNode = root;
+            } else {
+                ConfigurationMetadata configuration = DependencyGraphCache.findConfiguration(owner.getMetadata(), node.getConfigurationName());
+                if (configuration == null) {
+                    return null;
+                }
+                replayedNode = new ReplayedNode(node.getId(), owner, configuration);
+            }
+            nodes.put(node.getId(), replayedNode);
+        }
+        if (root == null) {
+            return null;
+        }
+
+        List<ReplayedEdge> edges = new ArrayList<ReplayedEdge>(graph.getEdges().size());
+        for (CachedDependencyGraph.Edge edge : graph.getEdges()) {
+            ReplayedNode from = nodes.get(edge.getFromNodeId());
+            ReplayedSelector selector = selectors.get(edge.getSelectorId());
+            if (from == null || selector == null) {
+                return null;
+            }
+            Dependency originalDependency = null;
+            if (edge.getOriginalDependencyIndex() != CachedDependencyGraph.Edge.NO_ORIGINAL_DEPENDENCY) {
+                List<? extends DependencyMetadata> dependencies = from.getMetadata().getDependencies();
+                if (edge.getOriginalDependencyIndex() >= dependencies.size() || !(dependencies.get(edge.getOriginalDependencyIndex()) instanceof DslOriginDependencyMetadata)) {
+                    return null;
+                }
+                originalDependency = ((DslOriginDependencyMetadata) dependencies.get(edge.getOriginalDependencyIndex())).getSource();
+            }
+            edges.add(new ReplayedEdge(from, selector, edge, exclusions, originalDependency));
+        }
+
+        for (CachedDependencyGraph.Node node : graph.getNodes()) {
+            ReplayedNode replayedNode = nodes.get(node.getId());
+            for (Integer index : node.getIncomingEdges()) {
+                replayedNode.incomingEdges.add(edges.get(index));
+            }
+            for (Integer index : node.getOutgoingEdges()) {
+                replayedNode.outgoingEdges.add(edges.get(index));
+            }
+        }
+
+        List<ReplayedNode> edgeVisitOrder = new ArrayList<ReplayedNode>(graph.getEdgeVisitOrder().size());
+        for (Long nodeId : graph.getEdgeVisitOrder()) {
+            ReplayedNode node = nodes.get(nodeId);
+            if (node == null) {
+                return null;
+            }
+            edgeVisitOrder.add(node);
+        }
+        return new ReplayedDependencyGraph(root, ImmutableList.copyOf(selectors.values()), ImmutableList.copyOf(nodes.values()), edgeVisitOrder);
+    }
+
+    /**
+     * Delivers the graph to the given visitor, in the same order as the graph was delivered when it was resolved.
+     */
+    void visit(DependencyGraphVisitor visitor) {
+        visitor.start(root);
+        for (ReplayedSelector selector : selectors) {
+            visitor.visitSelector(selector);
+        }
+        for (ReplayedNode node : nodes) {
+            visitor.visitNode(node);
+        }
+        for (ReplayedNode node : edgeVisitOrder) {
+            visitor.visitEdges(node);
+        }
+        visitor.finish(root);
+    }
+
+    private static class ReplayedSelector implements DependencyGraphSelector {
+        private final Long resultId;
+        private final ComponentSelector requested;
+
+        ReplayedSelector(Long resultId, ComponentSelector requested) {
+            this.resultId = resultId;
+            this.requested = requested;
+        }
+
+        @Override
+        public Long getResultId() {
+            return resultId;
+        }
+
+        @Override
+        public ComponentSelector getRequested() {
+            return requested;
+        }
+    }
+
+    private static class ReplayedComponent implements DependencyGraphComponent {
+        private final ResolvedGraphComponent result;
+        private final ComponentResolveMetadata metadata;
+        private final List<ModuleVersionIdentifier> allVersions;
+
+        ReplayedComponent(ResolvedGraphComponent result, ComponentResolveMetadata metadata, List<ModuleVersionIdentifier> allVersions) {
+            this.result = result;
+            this.metadata = metadata;
+            this.allVersions = allVersions;
+        }
+
+        @Override
+        public Long getResultId() {
+            return result.getResultId();
+        }
+
+        @Override
+        public ComponentIdentifier getComponentId() {
+            return result.getComponentId();
+        }
+
+        @Override
+        public ModuleVersionIdentifier getModuleVersion() {
+            return result.getModuleVersion();
+        }
+
+        @Override
+        public ComponentSelectionReason getSelectionReason() {
+            return result.getSelectionReason();
+        }
+
+        @Nullable
+        @Override
+        public String getRepositoryName() {
+            return result.getRepositoryName();
+        }
+
+        @Override
+        public List<ResolvedVariantDetails> getResolvedVariants() {
+            return result.getResolvedVariants();
+        }
+
+        @Override
+        public ComponentResolveMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public Collection<? extends DependencyGraphComponent> getDependents() {
+            // Only used while resolving the graph
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<? extends ModuleVersionIdentifier> getAllVersions() {
+            return allVersions;
+        }
+
+        @Override
+        public String toString() {
+            return result.getModuleVersion().toString();
+        }
+    }
+
+    private static class ReplayedNode implements DependencyGraphNode {
+        private final Long nodeId;
+        private final ReplayedComponent owner;
+        private final ConfigurationMetadata metadata;
+        private final List<ReplayedEdge> incomingEdges = new ArrayList<ReplayedEdge>();
+        private final List<ReplayedEdge> outgoingEdges = new ArrayList<ReplayedEdge>();
+
+        ReplayedNode(Long nodeId, ReplayedComponent owner, ConfigurationMetadata metadata) {
+            this.nodeId = nodeId;
+            this.owner = owner;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public Long getNodeId() {
+            return nodeId;
+        }
+
+        @Override
+        public boolean isRoot() {
+            return false;
+        }
+
+        @Override
+        public ResolvedConfigurationIdentifier getResolvedConfigurationId() {
+            return new ResolvedConfigurationIdentifier(owner.getModuleVersion(), metadata.getName());
+        }
+
+        @Override
+        public DependencyGraphComponent getOwner() {
+            return owner;
+        }
+
+        @Override
+        public Collection<? extends DependencyGraphEdge> getIncomingEdges() {
+            return incomingEdges;
+        }
+
+        @Override
+        public Collection<? extends DependencyGraphEdge> getOutgoingEdges() {
+            return outgoingEdges;
+        }
+
+        @Override
+        public Set<? extends LocalFileDependencyMetadata> getOutgoingFileEdges() {
+            return ImmutableSet.of();
+        }
+
+        @Override
+        public ConfigurationMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public boolean isSelected() {
+            return true;
+        }
+
+        @Override
+        public ComponentResolutionState getComponent() {
+            throw new UnsupportedOperationException("The resolution state of a component is not available for a dependency graph loaded from the cache.");
+        }
+
+        @Override
+        public String toString() {
+            return owner + "(" + metadata.getName() + ")";
+        }
+    }
+
+    private static class ReplayedRootNode extends ReplayedNode implements RootGraphNode {
+        private final RootConfigurationMetadata metadata;
+
+        ReplayedRootNode(Long nodeId, ReplayedComponent owner, RootConfigurationMetadata metadata) {
+            super(nodeId, owner, metadata);
+            this.metadata = metadata;
+        }
+
+        @Override
+        public boolean isRoot() {
+            return true;
+        }
+
+        @Override
+        public Set<? extends LocalFileDependencyMetadata> getOutgoingFileEdges() {
+            return metadata.getFiles();
+        }
+
+        @Override
+        public RootConfigurationMetadata getMetadata() {
+            return metadata;
+        }
+    }
+
+    private static class ReplayedEdge implements DependencyGraphEdge {
+        private final ReplayedNode from;
+        private final ReplayedSelector selector;
+        private final CachedDependencyGraph.Edge edge;
+        private final ExcludeSpec exclusions;
+        private final Dependency originalDependency;
+
+        ReplayedEdge(ReplayedNode from, ReplayedSelector selector, CachedDependencyGraph.Edge edge, ExcludeSpec exclusions, @Nullable Dependency originalDependency) {
+            this.from = from;
+            this.selector = selector;
+            this.edge = edge;
+            this.exclusions = exclusions;
+            this.originalDependency = originalDependency;
+        }
+
+        @Override
+        public DependencyGraphNode getFrom() {
+            return from;
+        }
+
+        @Override
+        public DependencyGraphSelector getSelector() {
+            return selector;
+        }
+
+        @Override
+        public ExcludeSpec getExclusions() {
+            return exclusions;
+        }
+
+        @Override
+        public boolean contributesArtifacts() {
+            return !edge.isConstraint();
+        }
+
+        @Override
+        public List<ComponentArtifactMetadata> getArtifacts(ConfigurationMetadata targetConfiguration) {
+            List<IvyArtifactName> artifacts = edge.getArtifacts();
+            if (artifacts.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<ComponentArtifactMetadata> result = new ArrayList<ComponentArtifactMetadata>(artifacts.size());
+            for (IvyArtifactName artifact : artifacts) {
+                result.add(targetConfiguration.artifact(artifact));
+            }
+            return result;
+        }
+
+        @Override
+        public ImmutableAttributes getAttributes() {
+            return edge.getAttributes();
+        }
+
+        @Nullable
+        @Override
+        public Dependency getOriginalDependency() {
+            return originalDependency;
+        }
+
+        @Override
+        public boolean isTargetVirtualPlatform() {
+            return false;
+        }
+
+        @Override
+        public ComponentSelector getRequested() {
+            return selector.getRequested();
+        }
+
+        @Nullable
+        @Override
+        public ModuleVersionResolveException getFailure() {
+            return null;
+        }
+
+        @Override
+        public Long getSelected() {
+            return edge.getSelectedComponentId();
+        }
+
+        @Nullable
+        @Override
+        public ComponentSelectionReason getReason() {
+            return null;
+        }
+
+        @Override
+        public boolean isConstraint() {
+            return edge.isConstraint();
+        }
+
+        @Override
+        public String toString() {
+            return from + " -> " + selector.getRequested();
+        }
+    }
+}
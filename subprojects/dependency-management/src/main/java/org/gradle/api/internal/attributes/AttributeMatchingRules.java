@@ -19,8 +19,15 @@ package org.gradle.api.internal.attributes;
 import org.gradle.api.Action;
 import org.gradle.api.attributes.CompatibilityCheckDetails;
 import org.gradle.api.attributes.MultipleCandidatesDetails;
+import org.gradle.internal.action.ConfigurableRule;
+import org.gradle.internal.action.InstantiatingAction;
+import org.gradle.internal.hash.Hashable;
+import org.gradle.internal.hash.Hasher;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.Comparator;
+import java.util.List;
 
 public abstract class AttributeMatchingRules {
     public static <T> Action<? super CompatibilityCheckDetails<T>> orderedCompatibility(Comparator<? super T> comparator, boolean reverse) {
@@ -30,4 +37,66 @@ public abstract class AttributeMatchingRules {
     public static <T> Action<? super MultipleCandidatesDetails<T>> orderedDisambiguation(Comparator<? super T> comparator, boolean pickFirst) {
         return new DefaultOrderedDisambiguationRule<T>(comparator, pickFirst);
     }
+
+    /**
+     * Appends the given rules to the hasher. Rules which Gradle provides are identified by their class and parameters.
+     * Rules declared by the build can change without changing their names, so they are identified by their class or instance,
+     * which only lasts as long as their class loader.
+     */
+    static void appendToHasher(List<? extends Action<?>> rules, Hasher hasher) {
+        hasher.putInt(rules.size());
+        for (Action<?> rule : rules) {
+            if (rule instanceof InstantiatingAction) {
+                List<? extends ConfigurableRule<?>> configurableRules = ((InstantiatingAction<?>) rule).getRules().getConfigurableRules();
+                hasher.putInt(configurableRules.size());
+                for (ConfigurableRule<?> configurableRule : configurableRules) {
+                    appendImplementation(configurableRule.getRuleClass(), hasher);
+                    configurableRule.getRuleParams().appendToHasher(hasher);
+                }
+            } else if (rule instanceof Hashable) {
+                ((Hashable) rule).appendToHasher(hasher);
+            } else {
+                appendInstance(rule, hasher);
+            }
+        }
+    }
+
+    static void appendInstance(Object implementation, Hasher hasher) {
+        appendImplementation(implementation.getClass(), hasher);
+        if (hasState(implementation.getClass())) {
+            hasher.putInt(System.identityHashCode(implementation));
+        }
+    }
+
+    private static void appendImplementation(Class<?> type, Hasher hasher) {
+        hasher.putString(type.getName());
+        if (!isProvidedByGradle(type)) {
+            hasher.putInt(System.identityHashCode(type));
+        }
+    }
+
+    private static boolean isProvidedByGradle(Class<?> type) {
+        ClassLoader classLoader = type.getClassLoader();
+        if (classLoader == null) {
+            return true;
+        }
+        for (ClassLoader gradleClassLoader = AttributeMatchingRules.class.getClassLoader(); gradleClassLoader != null; gradleClassLoader = gradleClassLoader.getParent()) {
+            if (gradleClassLoader == classLoader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasState(Class<?> type) {
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                // Transient fields are assumed to cache values derived from the rest of the state
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 }
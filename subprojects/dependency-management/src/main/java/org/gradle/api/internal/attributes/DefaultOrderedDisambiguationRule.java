@@ -17,11 +17,13 @@ package org.gradle.api.internal.attributes;
 
 import org.gradle.api.Action;
 import org.gradle.api.attributes.MultipleCandidatesDetails;
+import org.gradle.internal.hash.Hashable;
+import org.gradle.internal.hash.Hasher;
 
 import java.util.Comparator;
 import java.util.Set;
 
-public class DefaultOrderedDisambiguationRule<T> implements Action<MultipleCandidatesDetails<T>> {
+public class DefaultOrderedDisambiguationRule<T> implements Action<MultipleCandidatesDetails<T>>, Hashable {
     private final Comparator<? super T> comparator;
     private final boolean pickFirst;
 
@@ -52,4 +54,11 @@ public class DefaultOrderedDisambiguationRule<T> implements Action<MultipleCandi
             }
         }
     }
+
+    @Override
+    public void appendToHasher(Hasher hasher) {
+        hasher.putString(getClass().getName());
+        hasher.putBoolean(pickFirst);
+        AttributeMatchingRules.appendInstance(comparator, hasher);
+    }
 }
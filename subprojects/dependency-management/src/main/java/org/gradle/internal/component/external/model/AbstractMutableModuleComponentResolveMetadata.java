@@ -21,6 +21,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import org.gradle.api.Action;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
 import org.gradle.api.artifacts.VersionConstraint;
 import org.gradle.api.artifacts.component.ComponentIdentifier;
@@ -216,6 +217,12 @@ public abstract class AbstractMutableModuleComponentResolveMetadata implements M
         return variant;
     }
 
+    @Override
+    public void addLazyVariant(String variantName, ImmutableAttributes attributes, Action<? super MutableComponentVariant> content) {
+        LazyVariantImpl variant = new LazyVariantImpl(getId(), variantName, attributes, content);
+        variants = variants == null ? ImmutableList.of(variant) : ImmutableList.<ComponentVariant>builder().addAll(variants).add(variant).build();
+    }
+
     public ImmutableList<? extends ComponentVariant> getVariants() {
         if (variants == null && newVariants == null) {
             return ImmutableList.of();
@@ -228,7 +235,7 @@ public abstract class AbstractMutableModuleComponentResolveMetadata implements M
             builder.addAll(variants);
         }
         for (MutableVariantImpl variant : newVariants) {
-            builder.add(new ImmutableVariantImpl(getId(), variant.name, variant.attributes, ImmutableList.copyOf(variant.dependencies), ImmutableList.copyOf(variant.dependencyConstraints), ImmutableList.copyOf(variant.files), ImmutableCapabilities.of(variant.capabilities)));
+            builder.add(variant.asImmutable(getId()));
         }
         return builder.build();
     }
@@ -287,6 +294,10 @@ public abstract class AbstractMutableModuleComponentResolveMetadata implements M
         public String getName() {
             return name;
         }
+
+        ImmutableVariantImpl asImmutable(ModuleComponentIdentifier componentId) {
+            return new ImmutableVariantImpl(componentId, name, attributes, ImmutableList.copyOf(dependencies), ImmutableList.copyOf(dependencyConstraints), ImmutableList.copyOf(files), ImmutableCapabilities.of(capabilities));
+        }
     }
 
     protected static class FileImpl implements ComponentVariant.File {
@@ -542,11 +553,11 @@ public abstract class AbstractMutableModuleComponentResolveMetadata implements M
             if (this == o) {
                 return true;
             }
-            if (o == null || getClass() != o.getClass()) {
+            if (o == null || (getClass() != o.getClass() && !(o instanceof LazyVariantImpl))) {
                 return false;
             }
 
-            ImmutableVariantImpl that = (ImmutableVariantImpl) o;
+            ImmutableVariantImpl that = o instanceof LazyVariantImpl ? ((LazyVariantImpl) o).getContent() : (ImmutableVariantImpl) o;
             return Objects.equal(componentId, that.componentId)
                 && Objects.equal(name, that.name)
                 && Objects.equal(attributes, that.attributes)
@@ -566,4 +577,93 @@ public abstract class AbstractMutableModuleComponentResolveMetadata implements M
         }
     }
 
+    /**
+     * A variant whose content is only populated when it is first queried. The name and attributes, which are needed to select a variant,
+     * are always available.
+     */
+    protected static class LazyVariantImpl implements ComponentVariant, VariantResolveMetadata {
+        private final ModuleComponentIdentifier componentId;
+        private final String name;
+        private final ImmutableAttributes attributes;
+        private Action<? super MutableComponentVariant> contentAction;
+        private volatile ImmutableVariantImpl content;
+
+        LazyVariantImpl(ModuleComponentIdentifier componentId, String name, ImmutableAttributes attributes, Action<? super MutableComponentVariant> contentAction) {
+            this.componentId = componentId;
+            this.name = name;
+            this.attributes = attributes;
+            this.contentAction = contentAction;
+        }
+
+        ImmutableVariantImpl getContent() {
+            ImmutableVariantImpl result = content;
+            if (result == null) {
+                synchronized (this) {
+                    result = content;
+                    if (result == null) {
+                        MutableVariantImpl variant = new MutableVariantImpl(name, attributes);
+                        contentAction.execute(variant);
+                        result = variant.asImmutable(componentId);
+                        content = result;
+                        contentAction = null;
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public DisplayName asDescribable() {
+            return Describables.of(componentId, "variant", name);
+        }
+
+        @Override
+        public ImmutableAttributes getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public ImmutableList<? extends Dependency> getDependencies() {
+            return getContent().getDependencies();
+        }
+
+        @Override
+        public ImmutableList<? extends DependencyConstraint> getDependencyConstraints() {
+            return getContent().getDependencyConstraints();
+        }
+
+        @Override
+        public ImmutableList<? extends File> getFiles() {
+            return getContent().getFiles();
+        }
+
+        @Override
+        public CapabilitiesMetadata getCapabilities() {
+            return getContent().getCapabilities();
+        }
+
+        @Override
+        public List<? extends ComponentArtifactMetadata> getArtifacts() {
+            return getContent().getArtifacts();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            return getContent().equals(o instanceof LazyVariantImpl ? ((LazyVariantImpl) o).getContent() : o);
+        }
+
+        @Override
+        public int hashCode() {
+            return getContent().hashCode();
+        }
+    }
+
 }
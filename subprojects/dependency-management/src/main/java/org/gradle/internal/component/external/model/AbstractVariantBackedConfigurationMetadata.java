@@ -43,31 +43,11 @@ import java.util.Set;
 class AbstractVariantBackedConfigurationMetadata implements ConfigurationMetadata {
     private final ModuleComponentIdentifier componentId;
     private final ComponentVariant variant;
-    private final ImmutableList<GradleDependencyMetadata> dependencies;
+    private ImmutableList<GradleDependencyMetadata> dependencies;
 
     AbstractVariantBackedConfigurationMetadata(ModuleComponentIdentifier componentId, ComponentVariant variant) {
         this.componentId = componentId;
         this.variant = variant;
-        List<GradleDependencyMetadata> dependencies = new ArrayList<GradleDependencyMetadata>(variant.getDependencies().size());
-        // Forced dependencies are only supported for enforced platforms, so it is currently hardcoded.
-        // Should we want to add this as a first class concept to Gradle metadata, then it should be available on the component variant
-        // metadata as well.
-        boolean forcedDependencies = PlatformSupport.hasForcedDependencies(variant);
-        for (ComponentVariant.Dependency dependency : variant.getDependencies()) {
-            ModuleComponentSelector selector = DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId(dependency.getGroup(), dependency.getModule()), dependency.getVersionConstraint(), dependency.getAttributes(), dependency.getRequestedCapabilities());
-            List<ExcludeMetadata> excludes = dependency.getExcludes();
-            dependencies.add(new GradleDependencyMetadata(selector, excludes, false, dependency.getReason(), forcedDependencies));
-        }
-        for (ComponentVariant.DependencyConstraint dependencyConstraint : variant.getDependencyConstraints()) {
-            dependencies.add(new GradleDependencyMetadata(
-                DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId(dependencyConstraint.getGroup(), dependencyConstraint.getModule()), dependencyConstraint.getVersionConstraint(), dependencyConstraint.getAttributes(), ImmutableList.of()),
-                Collections.<ExcludeMetadata>emptyList(),
-                true,
-                dependencyConstraint.getReason(),
-                forcedDependencies
-            ));
-        }
-        this.dependencies = ImmutableList.copyOf(dependencies);
     }
 
     AbstractVariantBackedConfigurationMetadata(ModuleComponentIdentifier componentId, ComponentVariant variant, ImmutableList<GradleDependencyMetadata> dependencies) {
@@ -148,9 +128,36 @@ class AbstractVariantBackedConfigurationMetadata implements ConfigurationMetadat
 
     @Override
     public List<? extends ModuleDependencyMetadata> getDependencies() {
+        if (dependencies == null) {
+            // The content of a variant may be expensive to load, so only do this when the variant is actually used
+            dependencies = convertDependencies(variant);
+        }
         return dependencies;
     }
 
+    private static ImmutableList<GradleDependencyMetadata> convertDependencies(ComponentVariant variant) {
+        List<GradleDependencyMetadata> dependencies = new ArrayList<GradleDependencyMetadata>(variant.getDependencies().size());
+        // Forced dependencies are only supported for enforced platforms, so it is currently hardcoded.
+        // Should we want to add this as a first class concept to Gradle metadata, then it should be available on the component variant
+        // metadata as well.
+        boolean forcedDependencies = PlatformSupport.hasForcedDependencies(variant);
+        for (ComponentVariant.Dependency dependency : variant.getDependencies()) {
+            ModuleComponentSelector selector = DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId(dependency.getGroup(), dependency.getModule()), dependency.getVersionConstraint(), dependency.getAttributes(), dependency.getRequestedCapabilities());
+            List<ExcludeMetadata> excludes = dependency.getExcludes();
+            dependencies.add(new GradleDependencyMetadata(selector, excludes, false, dependency.getReason(), forcedDependencies));
+        }
+        for (ComponentVariant.DependencyConstraint dependencyConstraint : variant.getDependencyConstraints()) {
+            dependencies.add(new GradleDependencyMetadata(
+                DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId(dependencyConstraint.getGroup(), dependencyConstraint.getModule()), dependencyConstraint.getVersionConstraint(), dependencyConstraint.getAttributes(), ImmutableList.of()),
+                Collections.<ExcludeMetadata>emptyList(),
+                true,
+                dependencyConstraint.getReason(),
+                forcedDependencies
+            ));
+        }
+        return ImmutableList.copyOf(dependencies);
+    }
+
     protected ComponentVariant getVariant() {
         return variant;
     }
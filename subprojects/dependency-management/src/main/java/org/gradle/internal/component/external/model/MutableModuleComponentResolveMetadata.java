@@ -15,6 +15,7 @@
  */
 package org.gradle.internal.component.external.model;
 
+import org.gradle.api.Action;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
 import org.gradle.api.artifacts.component.ComponentIdentifier;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
@@ -75,6 +76,12 @@ public interface MutableModuleComponentResolveMetadata {
      */
     MutableComponentVariant addVariant(String variantName, ImmutableAttributes attributes);
 
+    /**
+     * Adds a variant to this module, whose dependencies, dependency constraints, files and capabilities are only added by the given action when
+     * the variant is first queried for them. The action may be called from any thread, at most once.
+     */
+    void addLazyVariant(String variantName, ImmutableAttributes attributes, Action<? super MutableComponentVariant> content);
+
     AttributeContainer getAttributes();
 
     void setAttributes(AttributeContainer attributes);
@@ -101,4 +101,34 @@ class DefaultArtifactCacheLockingManagerTest extends Specification {
         then:
         oldCacheDir.assertDoesNotExist()
     }
+
+    def "compacts the string table and deletes unreadable compact module metadata when the table has grown too large"() {
+        given:
+        def stringTable = metaDataDir.file("descriptor-strings.bin").createFile()
+        new RandomAccessFile(stringTable, "rw").withCloseable { it.setLength(9 * 1024 * 1024) }
+        def compactDescriptor = metaDataDir.createDir("descriptors/group/module/1.0/repo").createFile("descriptor.cbin")
+        def descriptor = metaDataDir.createDir("descriptors/group/module/2.0/repo").createFile("descriptor.bin")
+
+        when:
+        cacheLockingManager.close()
+
+        then:
+        stringTable.assertExists()
+        stringTable.length() < 1024
+        compactDescriptor.assertDoesNotExist()
+        descriptor.assertExists()
+    }
+
+    def "keeps compact module metadata while the string table is small"() {
+        given:
+        def stringTable = metaDataDir.file("descriptor-strings.bin").createFile()
+        def compactDescriptor = metaDataDir.createDir("descriptors/group/module/1.0/repo").createFile("descriptor.cbin")
+
+        when:
+        cacheLockingManager.close()
+
+        then:
+        stringTable.assertExists()
+        compactDescriptor.assertExists()
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser
+
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.resource.local.LocalFileStandInExternalResource
+import org.gradle.internal.resource.local.LocallyAvailableExternalResource
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class ParsedPomCacheTest extends Specification {
+    @Rule public final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def cache = new ParsedPomCache()
+
+    def "reuses parsed POM when content is the same"() {
+        given:
+        def first = resource('first/pom.xml', pom('1.0'))
+        def second = resource('second/pom.xml', pom('1.0'))
+
+        expect:
+        cache.parse(first).is(cache.parse(first))
+        cache.parse(second).is(cache.parse(first))
+    }
+
+    def "parses POM again when content changes"() {
+        given:
+        def pomFile = tmpDir.file('pom.xml')
+        pomFile.text = pom('1.0')
+        def resource = new LocalFileStandInExternalResource(pomFile, TestFiles.fileSystem())
+        def original = cache.parse(resource)
+
+        when:
+        pomFile.text = pom('2.0')
+        def updated = cache.parse(resource)
+
+        then:
+        !updated.is(original)
+        PomStaxParser.getFirstChildText(updated, 'version') == '2.0'
+    }
+
+    def "retains only the elements used to build module metadata"() {
+        given:
+        def resource = resource('pom.xml', """
+<project>
+    <!-- do_not_remove: published-with-gradle-metadata -->
+    <groupId>group-one</groupId>
+    <artifactId>artifact-one</artifactId>
+    <version>1.0</version>
+    <description>Some &amp; text</description>
+    <build><plugins><plugin><artifactId>plugin</artifactId></plugin></plugins></build>
+    <properties><some.prop><![CDATA[some value]]></some.prop></properties>
+</project>
+""")
+
+        when:
+        def project = cache.parse(resource)
+
+        then:
+        project.children*.name == ['groupId', 'artifactId', 'version', 'properties']
+        project.comments == [' do_not_remove: published-with-gradle-metadata ']
+        PomStaxParser.getFirstChildText(PomStaxParser.getFirstChildElement(project, 'properties'), 'some.prop') == 'some value'
+    }
+
+    private LocallyAvailableExternalResource resource(String path, String content) {
+        def pomFile = tmpDir.file(path)
+        pomFile.text = content
+        return new LocalFileStandInExternalResource(pomFile, TestFiles.fileSystem())
+    }
+
+    private static String pom(String version) {
+        """
+<project>
+    <groupId>group-one</groupId>
+    <artifactId>parent</artifactId>
+    <version>${version}</version>
+    <packaging>pom</packaging>
+</project>
+"""
+    }
+}
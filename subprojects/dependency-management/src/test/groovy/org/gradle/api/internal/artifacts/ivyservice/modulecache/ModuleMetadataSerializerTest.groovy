@@ -46,12 +46,19 @@ import org.gradle.internal.resource.local.LocalFileStandInExternalResource
 import org.gradle.internal.resource.local.LocallyAvailableExternalResource
 import org.gradle.internal.serialize.InputStreamBackedDecoder
 import org.gradle.internal.serialize.OutputStreamBackedEncoder
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.util.AttributeTestUtil
 import org.gradle.util.TestUtil
+import org.gradle.util.internal.SimpleMapInterner
+import org.junit.Rule
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.nio.ByteBuffer
+
 class ModuleMetadataSerializerTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
 
     private final ImmutableModuleIdentifierFactory moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory()
     private final MavenMutableModuleMetadataFactory mavenMetadataFactory = new MavenMutableModuleMetadataFactory(moduleIdentifierFactory, AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator(), TestUtil.featurePreviews())
@@ -95,6 +102,30 @@ class ModuleMetadataSerializerTest extends Specification {
 
     }
 
+    @Unroll
+    def "can write and re-read sample #sample.parentFile.name metadata file #sample.name in compact format"() {
+        given:
+        def metadata = parse(sample)
+        def stringTableFile = temporaryFolder.file("strings.bin")
+        def writtenStringTable = new ModuleMetadataStringTable(stringTableFile, SimpleMapInterner.notThreadSafe())
+        def bytes = writtenStringTable.encode { encoder ->
+            serializer.write(encoder, metadata.asImmutable(), Maps.newHashMap())
+        }
+
+        when:
+        def stringTable = new ModuleMetadataStringTable(stringTableFile, SimpleMapInterner.notThreadSafe())
+        def buffer = ByteBuffer.wrap(bytes)
+        def deserializedMetadata = serializer.read(new StringTableDecoder(buffer, stringTable.readEntryStrings(buffer)), moduleIdentifierFactory, Maps.newHashMap()).asImmutable()
+        def originMetadata = metadata.asImmutable()
+
+        then:
+        deserializedMetadata == originMetadata
+        deserializedMetadata.variants == originMetadata.variants
+
+        where:
+        sample << sampleFiles()
+    }
+
     private MutableModuleComponentResolveMetadata deserialize(byte[] serializedForm) {
         serializer.read(new InputStreamBackedDecoder(new ByteArrayInputStream(serializedForm)), moduleIdentifierFactory, Maps.newHashMap())
     }
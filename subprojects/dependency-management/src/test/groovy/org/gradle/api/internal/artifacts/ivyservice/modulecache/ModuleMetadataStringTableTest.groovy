@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache
+
+import org.gradle.util.internal.SimpleMapInterner
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+
+class ModuleMetadataStringTableTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def file = temporaryFolder.file(ModuleMetadataStringTable.FILE_NAME)
+
+    def "reads strings added by another table instance"() {
+        def writer = table()
+        def reader = table()
+
+        when:
+        def first = writer.encode { it.writeString("a"); it.writeString("b"); it.writeString("a") }
+
+        then:
+        strings(reader, first) == ["a", "b"]
+
+        when:
+        def second = writer.encode { it.writeString("c"); it.writeNullableString("b"); it.writeNullableString(null) }
+
+        then:
+        strings(reader, second) == ["c", "b"]
+        strings(reader, first) == ["a", "b"]
+    }
+
+    def "ignores entries of a table which has been deleted"() {
+        def writer = table()
+        def reader = table()
+        def oldEntry = writer.encode { it.writeString("a") }
+        strings(reader, oldEntry)
+
+        when:
+        file.delete()
+        def newEntry = writer.encode { it.writeString("bb") }
+
+        then:
+        strings(reader, oldEntry) == null
+        strings(reader, newEntry) == ["bb"]
+    }
+
+    def "does not add strings of an entry that could not be encoded"() {
+        def table = table()
+        table.encode { it.writeString("a") }
+
+        when:
+        table.encode { it.writeString("b"); throw new IOException("broken") }
+
+        then:
+        thrown(IOException)
+
+        when:
+        def bytes = table.encode { it.writeString("c") }
+
+        then:
+        ByteBuffer.wrap(bytes).getInt(17) == 1
+        strings(table(), bytes) == ["c"]
+    }
+
+    def "compacts the table to the strings used by the remaining entries"() {
+        def writer = table()
+        def first = entry("first", writer.encode { it.writeString("a"); it.writeString("b") })
+        writer.encode { it.writeString("unused") }
+        def second = entry("second", writer.encode { it.writeString("c"); it.writeString("b") })
+        def unreadable = entry("unreadable", [1, 2, 3] as byte[])
+        def tableLength = file.length()
+
+        when:
+        def deleted = table().compact([first, second, unreadable])
+
+        then:
+        deleted == 1
+        !unreadable.exists()
+        file.length() < tableLength
+
+        and:
+        def reader = table()
+        strings(reader, first.bytes) == ["a", "b"]
+        strings(reader, second.bytes) == ["c", "b"]
+
+        when:
+        def added = writer.encode { it.writeString("d") }
+
+        then:
+        ByteBuffer.wrap(added).getInt(17) == 3
+        strings(reader, added) == ["d"]
+    }
+
+    private ModuleMetadataStringTable table() {
+        new ModuleMetadataStringTable(file, SimpleMapInterner.notThreadSafe())
+    }
+
+    private File entry(String name, byte[] bytes) {
+        def entry = temporaryFolder.file(name)
+        entry.bytes = bytes
+        return entry
+    }
+
+    private static List<String> strings(ModuleMetadataStringTable table, byte[] entry) {
+        def strings = table.readEntryStrings(ByteBuffer.wrap(entry))
+        return strings == null ? null : strings as List
+    }
+}
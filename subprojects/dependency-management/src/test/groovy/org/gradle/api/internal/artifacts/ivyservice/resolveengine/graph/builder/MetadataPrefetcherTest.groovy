@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder
+
+import com.google.common.base.Optional
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.model.ComponentResolveMetadata
+import org.gradle.internal.component.model.ConfigurationMetadata
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata
+import org.gradle.internal.component.model.DependencyMetadata
+import org.gradle.internal.operations.BuildOperationQueue
+import org.gradle.internal.operations.RunnableBuildOperation
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult
+import spock.lang.Specification
+
+class MetadataPrefetcherTest extends Specification {
+    def delegate = Mock(ComponentMetaDataResolver)
+    def queued = []
+    def queue = Stub(BuildOperationQueue) {
+        add(_) >> { RunnableBuildOperation operation -> queued << operation }
+    }
+    def prefetcher = new MetadataPrefetcher(delegate, new DefaultVersionSelectorScheme(new DefaultVersionComparator()))
+    def id = componentId("a", "1.0")
+    def metadata = Stub(ComponentResolveMetadata) {
+        getVariantsForGraphTraversal() >> Optional.absent()
+    }
+
+    def setup() {
+        prefetcher.start(queue)
+    }
+
+    def "hands metadata downloaded by worker to traversal"() {
+        def result = new DefaultBuildableComponentResolveResult()
+
+        when:
+        prefetcher.prefetch(id, new DefaultComponentOverrideMetadata())
+
+        then:
+        queued.size() == 1
+
+        when:
+        queued[0].run(null)
+
+        then:
+        1 * delegate.resolve(id, _, _) >> { args -> args[2].resolved(metadata) }
+
+        when:
+        prefetcher.resolve(id, new DefaultComponentOverrideMetadata(), result)
+
+        then:
+        0 * delegate.resolve(_, _, _)
+        result.metadata == metadata
+    }
+
+    def "resolves component in traversal when download has not started"() {
+        def result = new DefaultBuildableComponentResolveResult()
+
+        given:
+        prefetcher.prefetch(id, new DefaultComponentOverrideMetadata())
+
+        when:
+        prefetcher.resolve(id, new DefaultComponentOverrideMetadata(), result)
+        queued[0].run(null)
+
+        then:
+        1 * delegate.resolve(id, _, _) >> { args -> args[2].resolved(metadata) }
+        0 * delegate.resolve(_, _, _)
+        result.metadata == metadata
+    }
+
+    def "later resolves of a component resolved in traversal reuse its result"() {
+        def result = new DefaultBuildableComponentResolveResult()
+        def failure = new RuntimeException("broken")
+
+        given:
+        prefetcher.prefetch(id, new DefaultComponentOverrideMetadata())
+
+        when:
+        prefetcher.resolve(id, new DefaultComponentOverrideMetadata(), result)
+
+        then:
+        1 * delegate.resolve(id, _, _) >> { throw failure }
+        def e = thrown(RuntimeException)
+        e.is(failure)
+
+        when:
+        prefetcher.resolve(id, new DefaultComponentOverrideMetadata(), result)
+
+        then:
+        0 * delegate.resolve(_, _, _)
+        e = thrown(RuntimeException)
+        e.is(failure)
+    }
+
+    def "does not download metadata that is cheap to fetch"() {
+        given:
+        delegate.isFetchingMetadataCheap(id) >> true
+
+        when:
+        prefetcher.prefetch(id, new DefaultComponentOverrideMetadata())
+
+        then:
+        queued.empty
+    }
+
+    def "queues downloads for dependencies with static versions of downloaded components"() {
+        def defaultConfiguration = Stub(ConfigurationMetadata) {
+            getDependencies() >> [dependency("b", "1.0"), dependency("c", "1.+"), dependency("d", "1.0", true), dependency("a", "1.0")]
+        }
+        metadata.getConfiguration("default") >> defaultConfiguration
+        delegate.resolve(id, _, _) >> { args -> args[2].resolved(metadata) }
+
+        when:
+        prefetcher.prefetch(id, new DefaultComponentOverrideMetadata())
+        queued[0].run(null)
+        prefetcher.speculate()
+
+        then:
+        queued.size() == 2
+        queued[1].description().build().displayName == "Resolve org:b:1.0"
+    }
+
+    def "does not queue downloads once stopped"() {
+        given:
+        prefetcher.prefetch(id, new DefaultComponentOverrideMetadata())
+        prefetcher.stop()
+
+        when:
+        prefetcher.prefetch(componentId("b", "1.0"), new DefaultComponentOverrideMetadata())
+        queued[0].run(null)
+
+        then:
+        queued.size() == 1
+        0 * delegate.resolve(_, _, _)
+    }
+
+    def componentId(String name, String version) {
+        DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org", name), version)
+    }
+
+    def dependency(String name, String version, boolean constraint = false) {
+        Stub(DependencyMetadata) {
+            getSelector() >> DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId("org", name), version)
+            isConstraint() >> constraint
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.cache
+
+import com.google.common.base.Optional
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.ImmutableSet
+import org.gradle.api.Action
+import org.gradle.api.artifacts.DependencySubstitution
+import org.gradle.api.artifacts.ModuleVersionSelector
+import org.gradle.api.internal.artifacts.ComponentSelectionRulesInternal
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleVersionSelector
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules
+import org.gradle.api.internal.artifacts.ResolveContext
+import org.gradle.api.internal.artifacts.configurations.ConflictResolution
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData
+import org.gradle.api.internal.artifacts.ivyservice.ArtifactCacheLockingManager
+import org.gradle.api.internal.artifacts.ivyservice.dependencysubstitution.DependencySubstitutionRules
+import org.gradle.api.internal.artifacts.ivyservice.dependencysubstitution.DependencySubstitutionsInternal
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ModuleComponentRepository
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.RepositoryChainModuleSource
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.ModuleExclusions
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.RootGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectionReasons
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DesugaredAttributeContainerSerializer
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository
+import org.gradle.api.internal.artifacts.repositories.descriptor.MavenRepositoryDescriptor
+import org.gradle.api.internal.attributes.AttributesSchemaInternal
+import org.gradle.api.internal.attributes.ImmutableAttributes
+import org.gradle.api.internal.model.NamedObjectInstantiator
+import org.gradle.api.specs.Specs
+import org.gradle.internal.Actions
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.external.model.ImmutableCapabilities
+import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata
+import org.gradle.internal.component.local.model.RootConfigurationMetadata
+import org.gradle.internal.component.model.ComponentOverrideMetadata
+import org.gradle.internal.component.model.ComponentResolveMetadata
+import org.gradle.internal.component.model.ConfigurationMetadata
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.hash.HashValue
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult
+import org.gradle.testfixtures.internal.InMemoryIndexedCache
+import org.gradle.util.AttributeTestUtil
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
+import spock.lang.Specification
+
+import static org.gradle.internal.component.local.model.TestComponentIdentifiers.newProjectId
+
+class DependencyGraphCacheTest extends Specification {
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties()
+
+    def key = HashCode.fromInt(12)
+    def moduleExclusions = new ModuleExclusions()
+    def cacheLockingManager = Stub(ArtifactCacheLockingManager) {
+        createCache(_, _, _) >> { String name, keySerializer, valueSerializer -> new InMemoryIndexedCache(valueSerializer) }
+        useCache(_) >> { args -> args[0] instanceof Runnable ? args[0].run() : args[0].create() }
+    }
+    def cache = new DependencyGraphCache(cacheLockingManager, new DefaultImmutableModuleIdentifierFactory(), new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), NamedObjectInstantiator.INSTANCE), new DefaultVersionSelectorScheme(new DefaultVersionComparator()), moduleExclusions)
+    def repository = Stub(ModuleComponentRepository) {
+        getId() >> "repo-id"
+        getName() >> "repo"
+    }
+    def moduleReplacements = Stub(ModuleReplacementsData)
+
+    def rootConfiguration = Stub(RootConfigurationMetadata) {
+        getName() >> "root"
+        getDependencies() >> []
+        getFiles() >> []
+    }
+    def rootMetadata = Stub(ComponentResolveMetadata) {
+        getId() >> newProjectId(":")
+        getConfiguration("root") >> rootConfiguration
+    }
+    def resolveContext = Stub(ResolveContext) {
+        getName() >> "root"
+        toRootComponentMetaData() >> rootMetadata
+    }
+
+    def moduleConfiguration = Stub(ConfigurationMetadata) {
+        getName() >> "default"
+    }
+    def moduleId = DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org", "a"), "1.0")
+    def metadata = [:]
+    def metadataResolver = Stub(ComponentMetaDataResolver) {
+        resolve(_, _, _) >> { id, ComponentOverrideMetadata override, BuildableComponentResolveResult result -> result.resolved(metadata[id]) }
+    }
+
+    def "replays recorded graph when metadata has not changed"() {
+        def visitor = Mock(DependencyGraphVisitor)
+        metadata[moduleId] = moduleMetadata("abc123")
+        record("1.0")
+
+        when:
+        def replayed = cache.replay(key, resolveContext, metadataResolver, moduleReplacements, visitor)
+
+        then:
+        replayed
+
+        then:
+        1 * visitor.start({ it.nodeId == 1 && it.root })
+
+        then:
+        1 * visitor.visitSelector({ it.resultId == 10 && it.requested.version == "1.0" })
+
+        then:
+        1 * visitor.visitNode({ it.nodeId == 1 })
+
+        then:
+        1 * visitor.visitNode({ DependencyGraphNode node ->
+            node.nodeId == 2 && node.metadata.is(moduleConfiguration) && node.owner.componentId == moduleId && node.owner.repositoryName == "repo" && node.incomingEdges.size() == 1 && node.incomingEdges[0].from.nodeId == 1
+        })
+
+        then:
+        1 * visitor.visitEdges({ it.nodeId == 1 })
+
+        then:
+        1 * visitor.visitEdges({ it.nodeId == 2 })
+
+        then:
+        1 * visitor.finish({ it.nodeId == 1 })
+        0 * visitor._
+    }
+
+    def "does not replay graph when metadata of a component has changed"() {
+        def visitor = Mock(DependencyGraphVisitor)
+        metadata[moduleId] = moduleMetadata("abc123")
+        record("1.0")
+        metadata[moduleId] = moduleMetadata("def456")
+
+        when:
+        def replayed = cache.replay(key, resolveContext, metadataResolver, moduleReplacements, visitor)
+
+        then:
+        !replayed
+        0 * visitor._
+    }
+
+    def "does not replay graph when component participates in module replacements"() {
+        def visitor = Mock(DependencyGraphVisitor)
+        metadata[moduleId] = moduleMetadata("abc123")
+        record("1.0")
+        def replacements = Stub(ModuleReplacementsData) {
+            participatesInReplacements(moduleId.moduleIdentifier) >> true
+        }
+
+        when:
+        def replayed = cache.replay(key, resolveContext, metadataResolver, replacements, visitor)
+
+        then:
+        !replayed
+        0 * visitor._
+    }
+
+    def "does not store graph with dynamic versions"() {
+        def visitor = Mock(DependencyGraphVisitor)
+        metadata[moduleId] = moduleMetadata("abc123")
+        record("1.+")
+
+        when:
+        def replayed = cache.replay(key, resolveContext, metadataResolver, moduleReplacements, visitor)
+
+        then:
+        !replayed
+        0 * visitor._
+    }
+
+    def "does not create key when cache is disabled"() {
+        expect:
+        !Boolean.getBoolean(DependencyGraphCache.DEPENDENCY_GRAPH_CACHE_PROPERTY)
+        cache.createKey(resolveContext, [], null, null, null) == null
+    }
+
+    def "creates key for configuration with forced modules"() {
+        System.setProperty(DependencyGraphCache.DEPENDENCY_GRAPH_CACHE_PROPERTY, "true")
+        def forced = [DefaultModuleVersionSelector.newSelector(DefaultModuleIdentifier.newId("org", "a"), "1.0")] as Set
+
+        expect:
+        def key = createKey(resolutionStrategy(forced), [mavenRepository("repo", "https://repo/a", ["pom"])])
+        key != null
+        key != createKey(resolutionStrategy([] as Set), [mavenRepository("repo", "https://repo/a", ["pom"])])
+    }
+
+    def "does not create key when dependency substitution rules are declared"() {
+        System.setProperty(DependencyGraphCache.DEPENDENCY_GRAPH_CACHE_PROPERTY, "true")
+        def strategy = resolutionStrategy([] as Set, Stub(Action))
+
+        expect:
+        createKey(strategy, [mavenRepository("repo", "https://repo/a", ["pom"])]) == null
+    }
+
+    def "key includes url and metadata sources of repositories"() {
+        System.setProperty(DependencyGraphCache.DEPENDENCY_GRAPH_CACHE_PROPERTY, "true")
+        def strategy = resolutionStrategy([] as Set)
+        def key = createKey(strategy, [mavenRepository("repo", "https://repo/a", ["pom"])])
+
+        expect:
+        key == createKey(strategy, [mavenRepository("repo", "https://repo/a", ["pom"])])
+        key != createKey(strategy, [mavenRepository("repo", "https://repo/b", ["pom"])])
+        key != createKey(strategy, [mavenRepository("repo", "https://repo/a", ["pom", "artifact"])])
+    }
+
+    private HashCode createKey(ResolutionStrategyInternal strategy, List<ResolutionAwareRepository> repositories) {
+        def configuration = Stub(RootConfigurationMetadata) {
+            getName() >> "root"
+            getHierarchy() >> ImmutableSet.of("root")
+            getAttributes() >> ImmutableAttributes.EMPTY
+            getCapabilities() >> ImmutableCapabilities.EMPTY
+            getExcludes() >> ImmutableList.of()
+            getDependencies() >> []
+        }
+        def component = Stub(ComponentResolveMetadata) {
+            getId() >> newProjectId(":")
+            getModuleVersionId() >> DefaultModuleVersionIdentifier.newId("org", "root", "1.0")
+            getConfiguration("root") >> configuration
+        }
+        def context = Stub(ResolveContext) {
+            getName() >> "root"
+            toRootComponentMetaData() >> component
+            getResolutionStrategy() >> strategy
+        }
+        def rules = Stub(GlobalDependencyResolutionRules) {
+            getDependencySubstitutionRules() >> DependencySubstitutionRules.NO_OP
+        }
+        return cache.createKey(context, repositories, rules, Specs.satisfyAll(), Stub(AttributesSchemaInternal))
+    }
+
+    private ResolutionStrategyInternal resolutionStrategy(Set<ModuleVersionSelector> forcedModules, Action<DependencySubstitution> substitutionRule = Actions.doNothing()) {
+        Stub(ResolutionStrategyInternal) {
+            getDependencySubstitution() >> Stub(DependencySubstitutionsInternal) {
+                getRuleAction() >> substitutionRule
+            }
+            getComponentSelection() >> Stub(ComponentSelectionRulesInternal) {
+                getRules() >> []
+            }
+            getConflictResolution() >> ConflictResolution.latest
+            getForcedModules() >> forcedModules
+        }
+    }
+
+    private ResolutionAwareRepository mavenRepository(String name, String url, List<String> metadataSources) {
+        def descriptor = new MavenRepositoryDescriptor.Builder(name, new URI(url))
+            .setMetadataSources(metadataSources)
+            .setAuthenticated(false)
+            .setAuthenticationSchemes([])
+            .setArtifactUrls([])
+            .create()
+        Stub(ResolutionAwareRepository) {
+            getDescriptor() >> descriptor
+        }
+    }
+
+    private ModuleComponentResolveMetadata moduleMetadata(String contentHash) {
+        Stub(ModuleComponentResolveMetadata) {
+            getId() >> moduleId
+            getModuleVersionId() >> DefaultModuleVersionIdentifier.newId(moduleId)
+            getSource() >> new RepositoryChainModuleSource(repository, null)
+            getOriginalContentHash() >> HashValue.parse(contentHash)
+            getVariantsForGraphTraversal() >> Optional.absent()
+            getConfigurationNames() >> (["default"] as Set)
+            getConfiguration("default") >> moduleConfiguration
+        }
+    }
+
+    private void record(String requestedVersion) {
+        def recorder = cache.createRecorder()
+        recorder.fingerprinting(metadataResolver).resolve(moduleId, Stub(ComponentOverrideMetadata), new DefaultBuildableComponentResolveResult())
+
+        def rootComponent = component(1L, newProjectId(":"), DefaultModuleVersionIdentifier.newId("org", "root", "1.0"), rootMetadata)
+        def moduleComponent = component(2L, moduleId, DefaultModuleVersionIdentifier.newId(moduleId), metadata[moduleId])
+        def selector = Stub(DependencyGraphSelector) {
+            getResultId() >> 10L
+            getRequested() >> DefaultModuleComponentSelector.newSelector(moduleId.moduleIdentifier, requestedVersion)
+        }
+        RootGraphNode root = null
+        def edge = Stub(DependencyGraphEdge) {
+            getFrom() >> { root }
+            getSelector() >> selector
+            getSelected() >> 2L
+            getAttributes() >> ImmutableAttributes.EMPTY
+            getExclusions() >> moduleExclusions.nothing()
+            getFailure() >> null
+            getOriginalDependency() >> null
+            contributesArtifacts() >> true
+            getArtifacts(_) >> []
+        }
+        root = Stub(RootGraphNode) {
+            getNodeId() >> 1L
+            isRoot() >> true
+            getOwner() >> rootComponent
+            getMetadata() >> rootConfiguration
+            getIncomingEdges() >> []
+            getOutgoingEdges() >> [edge]
+            getOutgoingFileEdges() >> []
+        }
+        def node = Stub(DependencyGraphNode) {
+            getNodeId() >> 2L
+            getOwner() >> moduleComponent
+            getMetadata() >> moduleConfiguration
+            getIncomingEdges() >> [edge]
+            getOutgoingEdges() >> []
+            getOutgoingFileEdges() >> []
+        }
+
+        recorder.start(root)
+        recorder.visitSelector(selector)
+        recorder.visitNode(root)
+        recorder.visitNode(node)
+        recorder.visitEdges(root)
+        recorder.visitEdges(node)
+        recorder.finish(root)
+        cache.store(key, recorder)
+    }
+
+    private DependencyGraphComponent component(long id, componentId, moduleVersion, ComponentResolveMetadata componentMetadata) {
+        Stub(DependencyGraphComponent) {
+            getResultId() >> id
+            getComponentId() >> componentId
+            getModuleVersion() >> moduleVersion
+            getSelectionReason() >> ComponentSelectionReasons.requested()
+            getResolvedVariants() >> []
+            getRepositoryName() >> (componentMetadata instanceof ModuleComponentResolveMetadata ? "repo" : null)
+            getAllVersions() >> [moduleVersion]
+            getMetadata() >> componentMetadata
+        }
+    }
+}
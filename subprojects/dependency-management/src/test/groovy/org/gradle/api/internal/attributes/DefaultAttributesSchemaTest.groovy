@@ -16,6 +16,7 @@
 
 package org.gradle.api.internal.attributes
 
+import com.google.common.collect.Ordering
 import org.gradle.api.Named
 import org.gradle.api.attributes.Attribute
 import org.gradle.api.attributes.AttributeCompatibilityRule
@@ -24,6 +25,8 @@ import org.gradle.api.attributes.CompatibilityCheckDetails
 import org.gradle.api.attributes.MultipleCandidatesDetails
 import org.gradle.api.internal.model.NamedObjectInstantiator
 import org.gradle.internal.component.model.ComponentAttributeMatcher
+import org.gradle.internal.hash.Hashable
+import org.gradle.internal.hash.Hashing
 import org.gradle.util.AttributeTestUtil
 import org.gradle.util.SnapshotTestUtil
 import org.gradle.util.TestUtil
@@ -343,6 +346,60 @@ class DefaultAttributesSchemaTest extends Specification {
         best == [value1] as Set
     }
 
+    def "rules of an attribute contribute to its hash"() {
+        def attr = Attribute.of("a", String)
+
+        when:
+        schema.attribute(attr)
+        def noRules = rulesHash(attr)
+        schema.attribute(attr).compatibilityRules.add(DoNothingRule)
+        def compatibilityRule = rulesHash(attr)
+        schema.attribute(attr).disambiguationRules.add(DoNothingSelectionRule) { it.params("a") }
+        def disambiguationRule = rulesHash(attr)
+
+        then:
+        [noRules, compatibilityRule, disambiguationRule].toSet().size() == 3
+    }
+
+    def "equivalent rules have the same hash"() {
+        def attr = Attribute.of("a", Integer)
+        def other = new DefaultAttributesSchema(new ComponentAttributeMatcher(), TestUtil.instantiatorFactory(), SnapshotTestUtil.valueSnapshotter())
+
+        when:
+        [schema, other].each {
+            it.attribute(attr).compatibilityRules.ordered(Ordering.natural())
+            it.attribute(attr).disambiguationRules.add(CustomSelectionRule) { it.params("a") }
+        }
+
+        then:
+        rulesHash(attr) == rulesHash(attr, other)
+
+        when:
+        other.attribute(attr).disambiguationRules.pickLast(Ordering.natural())
+
+        then:
+        rulesHash(attr) != rulesHash(attr, other)
+    }
+
+    def "ordered rule with a stateful comparator is identified by the comparator instance"() {
+        def attr = Attribute.of("a", String)
+        def other = new DefaultAttributesSchema(new ComponentAttributeMatcher(), TestUtil.instantiatorFactory(), SnapshotTestUtil.valueSnapshotter())
+
+        when:
+        schema.attribute(attr).compatibilityRules.ordered(Ordering.explicit("a", "b"))
+        other.attribute(attr).compatibilityRules.ordered(Ordering.explicit("b", "a"))
+
+        then:
+        rulesHash(attr) != rulesHash(attr, other)
+    }
+
+    private String rulesHash(Attribute<?> attribute, AttributesSchemaInternal from = schema) {
+        def hasher = Hashing.newHasher()
+        (from.compatibilityRules(attribute) as Hashable).appendToHasher(hasher)
+        (from.disambiguationRules(attribute) as Hashable).appendToHasher(hasher)
+        return hasher.hash().toString()
+    }
+
     interface Flavor extends Named {}
 
     enum MyEnum {
@@ -54,11 +54,20 @@ import org.gradle.internal.time.Clock;
 
 import javax.annotation.Nullable;
 import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A {@link OutputEventListener} implementation which renders output events to various
  * destinations. This implementation is thread-safe.
+ *
+ * <p>Log and progress events are added to a lock-free queue, and rendered in batches by whichever thread
+ * manages to claim the rendering, so that threads producing output do not block each other on the renderer lock.
+ * A thread that finds another one rendering returns immediately, as its events will be rendered by the other thread.
+ * Events are rendered in the order they are queued, which preserves the order of the events of each thread and build operation.
+ * Other events, such as flushing and log level changes, are rendered along with all queued events before returning.</p>
  */
 @ThreadSafe
 public class OutputEventRenderer implements OutputEventListener, LoggingRouter {
@@ -67,6 +76,8 @@ public class OutputEventRenderer implements OutputEventListener, LoggingRouter {
     private final Clock clock;
     private final ListenerBroadcast<OutputEventListener> formatters = new ListenerBroadcast<OutputEventListener>(OutputEventListener.class);
     private final OutputEventTransformer transformer = new OutputEventTransformer(formatters.getSource());
+    private final Queue<OutputEvent> pending = new ConcurrentLinkedQueue<OutputEvent>();
+    private final AtomicBoolean rendering = new AtomicBoolean();
 
     private ColorMap colourMap;
     private OutputStream originalStdOut;
@@ -111,11 +122,13 @@ public class OutputEventRenderer implements OutputEventListener, LoggingRouter {
     }
 
     private void addChain(OutputEventListener listener) {
+        renderPending();
         listener.onOutput(new LogLevelChangeEvent(logLevel.get()));
         formatters.add(listener);
     }
 
     private void removeChain(OutputEventListener listener) {
+        renderPending();
         formatters.remove(listener);
         listener.onOutput(new EndOutputEvent());
     }
@@ -427,8 +440,40 @@ public class OutputEventRenderer implements OutputEventListener, LoggingRouter {
             }
             this.logLevel.set(newLogLevel);
         }
-        synchronized (lock) {
+        pending.add(event);
+        if (event instanceof RenderableOutputEvent || isProgressEvent(event)) {
+            tryRenderPending();
+        } else {
+            synchronized (lock) {
+                renderPending();
+            }
+        }
+    }
+
+    /**
+     * Renders the queued events, unless another thread is already doing so.
+     */
+    private void tryRenderPending() {
+        // Check again after releasing the claim, in case events were queued by a thread that found the rendering claimed
+        while (!pending.isEmpty() && rendering.compareAndSet(false, true)) {
+            try {
+                synchronized (lock) {
+                    renderPending();
+                }
+            } finally {
+                rendering.set(false);
+            }
+        }
+    }
+
+    /**
+     * Renders the queued events. Must be called while holding the lock.
+     */
+    private void renderPending() {
+        OutputEvent event = pending.poll();
+        while (event != null) {
             transformer.onOutput(event);
+            event = pending.poll();
         }
     }
 
@@ -23,8 +23,10 @@ import org.gradle.api.logging.configuration.ConsoleOutput
 import org.gradle.internal.logging.OutputSpecification
 import org.gradle.internal.logging.console.ConsoleStub
 import org.gradle.internal.logging.events.EndOutputEvent
+import org.gradle.internal.logging.events.FlushOutputEvent
 import org.gradle.internal.logging.events.LogEvent
 import org.gradle.internal.logging.events.LogLevelChangeEvent
+import org.gradle.internal.logging.events.OutputEvent
 import org.gradle.internal.logging.events.OutputEventListener
 import org.gradle.internal.nativeintegration.console.ConsoleMetaData
 import org.gradle.internal.operations.BuildOperationCategory
@@ -229,6 +231,35 @@ class OutputEventRendererTest extends OutputSpecification {
         0 * listener._
     }
 
+    def forwardsAllOutputEventsInOrderWhenGeneratedConcurrently() {
+        def received = []
+        def listener = { OutputEvent event ->
+            if (event instanceof LogEvent) {
+                received << event
+            }
+        } as OutputEventListener
+        def threads = 4
+        def eventsPerThread = 1000
+
+        when:
+        renderer.addOutputEventListener(listener)
+        def workers = (0..<threads).collect { thread ->
+            Thread.start {
+                eventsPerThread.times { index ->
+                    renderer.onOutput(event("${thread}:${index}", LogLevel.INFO))
+                }
+            }
+        }
+        workers*.join()
+        renderer.onOutput(new FlushOutputEvent())
+
+        then:
+        received.size() == threads * eventsPerThread
+        (0..<threads).every { thread ->
+            received.findAll { it.message.startsWith("${thread}:") }*.message == (0..<eventsPerThread).collect { "${thread}:${it}" as String }
+        }
+    }
+
     def restoresLogLevelWhenChangedSinceSnapshotWasTaken() {
         def listener = new TestListener()
 
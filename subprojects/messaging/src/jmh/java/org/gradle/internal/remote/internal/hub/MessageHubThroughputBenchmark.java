@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.remote.internal.hub;
+
+import com.google.common.base.Strings;
+import org.gradle.api.Action;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.DefaultExecutorFactory;
+import org.gradle.internal.dispatch.Dispatch;
+import org.gradle.internal.remote.internal.KryoBackedMessageSerializer;
+import org.gradle.internal.remote.internal.hub.protocol.InterHubMessage;
+import org.gradle.internal.remote.internal.inet.SocketConnection;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.internal.serialize.Serializers;
+import org.gradle.internal.serialize.StatefulSerializer;
+import org.gradle.internal.serialize.kryo.TypeSafeSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Measures how many messages per second one {@link MessageHub} can send to another over a loopback TCP connection,
+ * such as a stream of test output or log events.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class MessageHubThroughputBenchmark {
+    private static final int MESSAGES = 10000;
+    private static final String CHANNEL = "benchmark";
+
+    @Param({"16", "1024"})
+    int payloadSize;
+
+    private String payload;
+    private DefaultExecutorFactory executorFactory;
+    private MessageHub sender;
+    private MessageHub receiver;
+    private Dispatch<String> outgoing;
+    private final Semaphore received = new Semaphore(0);
+
+    @Setup
+    public void setup() throws IOException {
+        payload = Strings.repeat("x", payloadSize);
+        executorFactory = new DefaultExecutorFactory();
+        Action<Throwable> errorHandler = new Action<Throwable>() {
+            @Override
+            public void execute(Throwable throwable) {
+                throwable.printStackTrace();
+            }
+        };
+        sender = new MessageHub("sender", executorFactory, errorHandler);
+        receiver = new MessageHub("receiver", executorFactory, errorHandler);
+
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+        SocketChannel accepted = server.accept();
+        server.close();
+
+        receiver.addHandler(CHANNEL, new Dispatch<String>() {
+            private int count;
+
+            @Override
+            public void dispatch(String message) {
+                if (++count == MESSAGES) {
+                    count = 0;
+                    received.release();
+                }
+            }
+        });
+        sender.addConnection(new SocketConnection<InterHubMessage>(client, new KryoBackedMessageSerializer(), serializer()));
+        receiver.addConnection(new SocketConnection<InterHubMessage>(accepted, new KryoBackedMessageSerializer(), serializer()));
+        outgoing = sender.getOutgoing(CHANNEL, String.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        CompositeStoppable.stoppable(sender, receiver, executorFactory).stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void sendMessages() throws InterruptedException {
+        for (int i = 0; i < MESSAGES; i++) {
+            outgoing.dispatch(payload);
+        }
+        received.acquire();
+    }
+
+    private static StatefulSerializer<InterHubMessage> serializer() {
+        return new InterHubMessageSerializer(new TypeSafeSerializer<String>(String.class, Serializers.stateful(BaseSerializerFactory.STRING_SERIALIZER)));
+    }
+}
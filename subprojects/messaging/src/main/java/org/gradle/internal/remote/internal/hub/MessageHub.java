@@ -30,7 +30,9 @@ import org.gradle.internal.remote.internal.hub.queue.EndPointQueue;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -45,6 +47,10 @@ public class MessageHub implements AsyncStoppable {
     private enum State {Running, Stopping, Stopped}
 
     private static final Discard DISCARD = new Discard();
+    private static final int LINGER_BATCH_SIZE = 16;
+    private static final long LINGER_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_LINGER_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    private static final int MAX_BATCH_SIZE = 1000;
     private final ManagedExecutor workers;
     private final String displayName;
     private final Action<? super Throwable> errorHandler;
@@ -298,6 +304,14 @@ public class MessageHub implements AsyncStoppable {
         }
     }
 
+    /**
+     * Writes the outgoing messages to a connection.
+     *
+     * Messages are flushed as soon as the queue is empty, so a single message, such as a request or a response, is never delayed.
+     * When more messages have been queued while a batch was written, or when a batch was large, a high frequency stream of messages
+     * is being sent, and the dispatcher lingers for a short while to collect more messages before flushing, so that many messages
+     * are written to the connection at once.
+     */
     private class ConnectionDispatch implements Runnable {
         private final RemoteConnection<InterHubMessage> connection;
         private final EndPointQueue queue;
@@ -321,19 +335,33 @@ public class MessageHub implements AsyncStoppable {
                         } finally {
                             lock.unlock();
                         }
-                        for (InterHubMessage message : messages) {
-                            try {
-                                connection.dispatch(message);
-                            } catch (RecoverableMessageIOException e) {
-                                addToIncoming(new StreamFailureMessage(e));
+                        int batched = messages.size();
+                        if (dispatch(messages)) {
+                            return;
+                        }
+                        boolean streaming = batched >= LINGER_BATCH_SIZE;
+                        long deadline = System.nanoTime() + MAX_LINGER_NANOS;
+                        while (batched < MAX_BATCH_SIZE) {
+                            poll(messages);
+                            if (messages.isEmpty()) {
+                                if (!streaming || System.nanoTime() >= deadline) {
+                                    break;
+                                }
+                                LockSupport.parkNanos(LINGER_INTERVAL_NANOS);
+                                poll(messages);
+                                if (messages.isEmpty()) {
+                                    // The stream has paused, don't hold on to what has been written so far
+                                    break;
+                                }
                             }
-                            if (message instanceof EndOfStream) {
-                                connection.flush();
+                            // More messages arrived while the previous ones were written
+                            streaming = true;
+                            batched += messages.size();
+                            if (dispatch(messages)) {
                                 return;
                             }
                         }
                         connection.flush();
-                        messages.clear();
                     }
                 } finally {
                     lock.lock();
@@ -347,6 +375,36 @@ public class MessageHub implements AsyncStoppable {
                 errorHandler.execute(t);
             }
         }
+
+        private void poll(List<InterHubMessage> messages) {
+            lock.lock();
+            try {
+                queue.poll(messages);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Writes the given messages to the connection, without flushing, and clears the list.
+         *
+         * @return true when the end of the stream has been written and flushed.
+         */
+        private boolean dispatch(List<InterHubMessage> messages) {
+            for (InterHubMessage message : messages) {
+                try {
+                    connection.dispatch(message);
+                } catch (RecoverableMessageIOException e) {
+                    addToIncoming(new StreamFailureMessage(e));
+                }
+                if (message instanceof EndOfStream) {
+                    connection.flush();
+                    return true;
+                }
+            }
+            messages.clear();
+            return false;
+        }
     }
 
     private class ChannelDispatch<T> implements Dispatch<T> {
@@ -49,7 +49,9 @@ public class MultiEndPointQueue implements Dispatch<InterHubMessage> {
     }
 
     void empty(EndPointQueue endPointQueue) {
-        waiting.add(endPointQueue);
+        if (!waiting.contains(endPointQueue)) {
+            waiting.add(endPointQueue);
+        }
         flush();
     }
 
@@ -158,7 +158,8 @@ public class SocketConnection<T> implements RemoteConnection<T> {
             this.socket = socket;
             selector = Selector.open();
             socket.register(selector, SelectionKey.OP_READ);
-            buffer = ByteBuffer.allocateDirect(4096);
+            // Large enough to read many small messages with a single read
+            buffer = ByteBuffer.allocateDirect(64 * 1024);
             BufferCaster.cast(buffer).limit(0);
         }
 
@@ -222,11 +223,15 @@ public class SocketConnection<T> implements RemoteConnection<T> {
         private Selector selector;
         private final SocketChannel socket;
         private final ByteBuffer buffer;
+        private final ByteBuffer[] bufferOnly;
+        private final ByteBuffer[] buffers;
         private final byte[] writeBuffer = new byte[1];
 
         public SocketOutputStream(SocketChannel socket) throws IOException {
             this.socket = socket;
             buffer = ByteBuffer.allocateDirect(32 * 1024);
+            bufferOnly = new ByteBuffer[]{buffer};
+            buffers = new ByteBuffer[]{buffer, null};
         }
 
         @Override
@@ -237,18 +242,32 @@ public class SocketConnection<T> implements RemoteConnection<T> {
 
         @Override
         public void write(byte[] src, int offset, int max) throws IOException {
-            int remaining = max;
-            int currentPos = offset;
-            while (remaining > 0) {
-                int count = Math.min(remaining, buffer.remaining());
-                if (count > 0) {
-                    buffer.put(src, currentPos, count);
-                    remaining -= count;
-                    currentPos += count;
-                }
-                while (buffer.remaining() == 0) {
-                    writeBufferToChannel();
+            if (max <= buffer.remaining()) {
+                buffer.put(src, offset, max);
+                return;
+            }
+
+            // Does not fit: write the buffered bytes and as much of the source as possible with gathering writes,
+            // rather than copying the source through the buffer one buffer full at a time
+            int end = offset + max;
+            ByteBuffer source = ByteBuffer.wrap(src, offset, max);
+            buffers[1] = source;
+            try {
+                BufferCaster.cast(buffer).flip();
+                while (buffer.hasRemaining() || end - source.position() > buffer.capacity()) {
+                    // The channel copies the remaining bytes of a heap buffer into a temporary direct buffer on each write,
+                    // so offer at most one buffer full of the source at a time
+                    BufferCaster.cast(source).limit(Math.min(end, source.position() + buffer.capacity()));
+                    if (writeWithNonBlockingRetry(buffers) == 0) {
+                        // buffers were still full after non-blocking retries, now block
+                        waitForWriteBufferToDrain();
+                    }
                 }
+                BufferCaster.cast(source).limit(end);
+                buffer.compact();
+                buffer.put(source);
+            } finally {
+                buffers[1] = null;
             }
         }
 
@@ -261,7 +280,7 @@ public class SocketConnection<T> implements RemoteConnection<T> {
 
         private void writeBufferToChannel() throws IOException {
             BufferCaster.cast(buffer).flip();
-            int count = writeWithNonBlockingRetry();
+            long count = writeWithNonBlockingRetry(bufferOnly);
             if (count == 0) {
                 // buffer was still full after non-blocking retries, now block
                 waitForWriteBufferToDrain();
@@ -269,11 +288,11 @@ public class SocketConnection<T> implements RemoteConnection<T> {
             buffer.compact();
         }
 
-        private int writeWithNonBlockingRetry() throws IOException {
-            int count = 0;
+        private long writeWithNonBlockingRetry(ByteBuffer[] sources) throws IOException {
+            long count = 0;
             int retryCount = 0;
             while (count == 0 && retryCount++ < RETRIES_WHEN_BUFFER_FULL) {
-                count = socket.write(buffer);
+                count = sources.length == 1 ? socket.write(sources[0]) : socket.write(sources);
                 if (count < 0) {
                     throw new EOFException();
                 } else if (count == 0) {
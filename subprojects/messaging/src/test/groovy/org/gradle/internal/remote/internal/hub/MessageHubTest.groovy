@@ -110,6 +110,75 @@ class MessageHubTest extends ConcurrentSpec {
         connection.stop()
     }
 
+    def "single outgoing message is flushed without waiting for more messages after a recent flush"() {
+        RemoteConnection<InterHubMessage> outgoing = Mock()
+        def connection = new MockOutgoingConnection(outgoing)
+
+        given:
+        hub.addConnection(connection)
+
+        when:
+        hub.getOutgoing("channel", String).dispatch("message1")
+        thread.blockUntil.message1Flushed
+        hub.getOutgoing("channel", String).dispatch("message2")
+        thread.blockUntil.message2Flushed
+        hub.getOutgoing("channel", String).dispatch("message3")
+        thread.blockUntil.message3Flushed
+
+        then:
+        1 * outgoing.dispatch({ it.payload == "message1" })
+
+        then:
+        1 * outgoing.flush() >> { instant.message1Flushed }
+
+        then:
+        1 * outgoing.dispatch({ it.payload == "message2" })
+
+        then:
+        1 * outgoing.flush() >> { instant.message2Flushed }
+
+        then:
+        1 * outgoing.dispatch({ it.payload == "message3" })
+
+        then:
+        1 * outgoing.flush() >> { instant.message3Flushed }
+        0 * _._
+
+        cleanup:
+        connection.stop()
+    }
+
+    def "outgoing messages queued while writing are flushed together"() {
+        RemoteConnection<InterHubMessage> outgoing = Mock()
+        def connection = new MockOutgoingConnection(outgoing)
+
+        given:
+        hub.addConnection(connection)
+
+        when:
+        hub.getOutgoing("channel", String).dispatch("message1")
+        thread.blockUntil.message1Dispatched
+        hub.getOutgoing("channel", String).dispatch("message2")
+        hub.getOutgoing("channel", String).dispatch("message3")
+        instant.queued
+        thread.blockUntil.flushed
+
+        then:
+        1 * outgoing.dispatch({ it.payload == "message1" }) >> {
+            instant.message1Dispatched
+            thread.blockUntil.queued
+        }
+        1 * outgoing.dispatch({ it.payload == "message2" })
+        1 * outgoing.dispatch({ it.payload == "message3" })
+
+        then:
+        1 * outgoing.flush() >> { instant.flushed }
+        0 * _._
+
+        cleanup:
+        connection.stop()
+    }
+
     def "queued outgoing messages are dispatched asynchronously to connection when connection is added"() {
         RemoteConnection<InterHubMessage> outgoing = Mock()
         def connection = new MockOutgoingConnection(outgoing)
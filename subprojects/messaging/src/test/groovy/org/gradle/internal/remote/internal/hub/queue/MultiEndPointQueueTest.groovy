@@ -162,4 +162,55 @@ class MultiEndPointQueueTest extends AbstractQueueTest {
         messages.size() == 1
         messages[0] instanceof EndOfStream
     }
+
+    def "poll forwards queued unicast messages to endpoint without waiting"() {
+        given:
+        def message1 = unicast()
+        def message2 = unicast()
+        def endpoint = queue.newEndpoint()
+
+        when:
+        def messages = []
+        endpoint.poll(messages)
+
+        then:
+        messages.empty
+
+        when:
+        queue.dispatch(message1)
+        queue.dispatch(message2)
+        endpoint.poll(messages)
+
+        then:
+        messages == [message1]
+
+        when:
+        endpoint.poll(messages)
+
+        then:
+        messages == [message1, message2]
+    }
+
+    def "endpoint that polls repeatedly while empty is only waiting once"() {
+        given:
+        def message1 = unicast()
+        def message2 = unicast()
+        def endpoint1 = queue.newEndpoint()
+        def endpoint2 = queue.newEndpoint()
+
+        when:
+        def messages1 = []
+        endpoint1.poll(messages1)
+        endpoint1.poll(messages1)
+        queue.empty(endpoint2)
+        queue.dispatch(message1)
+        queue.dispatch(message2)
+        endpoint1.poll(messages1)
+        def messages2 = []
+        endpoint2.take(messages2)
+
+        then:
+        messages1 == [message1]
+        messages2 == [message2]
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares the B-tree cache on top of the {@link FileBackedBlockStore} with the cache on top of the {@link MappedFileBlockStore}.
+ * In both cases the blocks are accessed through the usual {@link CachingBlockStore} and {@link FreeListBlockStore}.
+ *
+ * The cache is filled with entries of the size of the file hash cache, i.e. a path as key and a hash with some metadata as value.
+ */
+@Fork(1)
+@Threads(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class BTreePersistentIndexedCacheBenchmark {
+    @Param({"file", "mapped"})
+    String store;
+
+    @Param({"100000"})
+    int entries;
+
+    File tmpDir;
+    BTreePersistentIndexedCache<String, byte[]> cache;
+    String[] keys;
+    byte[] value = new byte[40];
+    Random random = new Random(1234L);
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tmpDir = Files.createTempDirectory("btree-benchmark").toFile();
+        File cacheFile = new File(tmpDir, "cache.bin");
+        BlockStore backingStore = store.equals("mapped") ? new MappedFileBlockStore(cacheFile) : new FileBackedBlockStore(cacheFile);
+        cache = new BTreePersistentIndexedCache<String, byte[]>(cacheFile, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.BYTE_ARRAY_SERIALIZER, backingStore);
+        keys = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            keys[i] = "/home/user/project/subproject" + (i % 100) + "/src/main/java/org/gradle/Source" + i + ".java";
+            random.nextBytes(value);
+            cache.put(keys[i], value);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cache.close();
+        FileUtils.forceDelete(tmpDir);
+    }
+
+    @Benchmark
+    public byte[] get() {
+        return cache.get(keys[random.nextInt(entries)]);
+    }
+
+    @Benchmark
+    public void put() {
+        cache.put(keys[random.nextInt(entries)], value);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reads blocks from several threads at the same time. The {@link FileBackedBlockStore} is not thread-safe, so access to it is serialized,
+ * as it is when used by a cache. The {@link MappedFileBlockStore} is accessed without any external synchronization.
+ */
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class BlockStoreConcurrentReadBenchmark {
+    private static final BlockStore.Factory FACTORY = new BlockStore.Factory() {
+        @Override
+        public Object create(Class<? extends BlockPayload> type) {
+            return new BytesPayload();
+        }
+    };
+
+    @Param({"file", "mapped"})
+    String store;
+
+    @Param({"100000"})
+    int blocks;
+
+    File tmpDir;
+    BlockStore blockStore;
+    BlockPointer[] positions;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tmpDir = Files.createTempDirectory("block-store-benchmark").toFile();
+        File storeFile = new File(tmpDir, "store.bin");
+        blockStore = store.equals("mapped") ? new MappedFileBlockStore(storeFile) : new FileBackedBlockStore(storeFile);
+        blockStore.open(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, FACTORY);
+        Random random = new Random(1234L);
+        positions = new BlockPointer[blocks];
+        for (int i = 0; i < blocks; i++) {
+            BytesPayload payload = new BytesPayload();
+            random.nextBytes(payload.bytes);
+            blockStore.attach(payload);
+            blockStore.write(payload);
+            positions[i] = payload.getPos();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        blockStore.close();
+        FileUtils.forceDelete(tmpDir);
+    }
+
+    @Benchmark
+    public BlockPayload read() {
+        BlockPointer pos = positions[ThreadLocalRandom.current().nextInt(blocks)];
+        if (blockStore instanceof MappedFileBlockStore) {
+            return blockStore.read(pos, BytesPayload.class);
+        }
+        synchronized (blockStore) {
+            return blockStore.read(pos, BytesPayload.class);
+        }
+    }
+
+    private static class BytesPayload extends BlockPayload {
+        private final byte[] bytes = new byte[64];
+
+        @Override
+        protected int getSize() {
+            return Block.INT_SIZE + bytes.length;
+        }
+
+        @Override
+        protected byte getType() {
+            return 0x7f;
+        }
+
+        @Override
+        protected void read(DataInputStream inputStream) throws Exception {
+            int length = inputStream.readInt();
+            inputStream.readFully(bytes, 0, length);
+        }
+
+        @Override
+        protected void write(DataOutputStream outputStream) throws Exception {
+            outputStream.writeInt(bytes.length);
+            outputStream.write(bytes);
+        }
+    }
+}
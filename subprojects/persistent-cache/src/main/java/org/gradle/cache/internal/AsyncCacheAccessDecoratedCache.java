@@ -57,16 +57,12 @@ public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsy
     @Override
     public void putLater(final K key, final V value, final Runnable completion) {
         try {
-            asyncCacheAccess.enqueue(new Runnable() {
+            asyncCacheAccess.enqueue(new IndexedCacheWrite(persistentCache, key, new Runnable() {
                 @Override
                 public void run() {
-                    try {
-                        persistentCache.put(key, value);
-                    } finally {
-                        completion.run();
-                    }
+                    persistentCache.put(key, value);
                 }
-            });
+            }, completion));
         } catch (RuntimeException e) {
             completion.run();
             throw e;
@@ -76,16 +72,12 @@ public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsy
     @Override
     public void removeLater(final K key, final Runnable completion) {
         try {
-            asyncCacheAccess.enqueue(new Runnable() {
+            asyncCacheAccess.enqueue(new IndexedCacheWrite(persistentCache, key, new Runnable() {
                 @Override
                 public void run() {
-                    try {
-                        persistentCache.remove(key);
-                    } finally {
-                        completion.run();
-                    }
+                    persistentCache.remove(key);
                 }
-            });
+            }, completion));
         } catch (RuntimeException e) {
             completion.run();
             throw e;
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationIdFactory;
+import org.gradle.internal.operations.BuildOperationListener;
+import org.gradle.internal.operations.OperationFinishEvent;
+import org.gradle.internal.operations.OperationIdentifier;
+import org.gradle.internal.operations.OperationProgressEvent;
+import org.gradle.internal.operations.OperationStartEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reports each committed batch of cache writes as a {@link CommitCacheWritesBuildOperationType} build operation.
+ *
+ * The batches are committed by the cache access workers, outside of any build operation, some time after the operations which queued the writes have finished.
+ * So each batch is reported as a child of the root build operation, which is still running when the batch is committed.
+ * This listener tracks the root build operation, and the root operation does not finish while a batch is being reported.
+ * Batches committed while no build is running are logged instead.
+ */
+public class BuildOperationCacheWriteBatchListener implements CacheWriteBatchListener, BuildOperationListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildOperationCacheWriteBatchListener.class);
+
+    private final BuildOperationListener listener;
+    private final BuildOperationIdFactory buildOperationIdFactory;
+    private final Object lock = new Object();
+    private OperationIdentifier rootOperationId;
+
+    public BuildOperationCacheWriteBatchListener(BuildOperationListener listener, BuildOperationIdFactory buildOperationIdFactory) {
+        this.listener = listener;
+        this.buildOperationIdFactory = buildOperationIdFactory;
+    }
+
+    @Override
+    public void started(BuildOperationDescriptor buildOperation, OperationStartEvent startEvent) {
+        if (buildOperation.getParentId() == null) {
+            synchronized (lock) {
+                rootOperationId = buildOperation.getId();
+            }
+        }
+    }
+
+    @Override
+    public void progress(OperationIdentifier operationIdentifier, OperationProgressEvent progressEvent) {
+    }
+
+    @Override
+    public void finished(BuildOperationDescriptor buildOperation, OperationFinishEvent finishEvent) {
+        if (buildOperation.getParentId() == null) {
+            synchronized (lock) {
+                if (buildOperation.getId().equals(rootOperationId)) {
+                    rootOperationId = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void writesCommitted(CacheWriteBatch batch) {
+        long flushLatency = batch.getEndTime() - batch.getOldestWriteQueuedTime();
+        synchronized (lock) {
+            if (rootOperationId != null) {
+                BuildOperationDescriptor descriptor = BuildOperationDescriptor.displayName("Commit writes to " + batch.getCacheDisplayName())
+                    .details(new DetailsImpl(batch.getCacheDisplayName(), batch.getQueueDepth()))
+                    .build(new OperationIdentifier(buildOperationIdFactory.nextId()), rootOperationId);
+                listener.started(descriptor, new OperationStartEvent(batch.getStartTime()));
+                listener.finished(descriptor, new OperationFinishEvent(batch.getStartTime(), batch.getEndTime(), null, new ResultImpl(batch.getWriteCount(), batch.getCoalescedWriteCount(), flushLatency)));
+                return;
+            }
+        }
+        LOGGER.debug("Committed {} writes to {} outside of a build ({} coalesced, flush latency {}ms).", batch.getWriteCount(), batch.getCacheDisplayName(), batch.getCoalescedWriteCount(), flushLatency);
+    }
+
+    private static class DetailsImpl implements CommitCacheWritesBuildOperationType.Details {
+        private final String cacheDisplayName;
+        private final int queueDepth;
+
+        DetailsImpl(String cacheDisplayName, int queueDepth) {
+            this.cacheDisplayName = cacheDisplayName;
+            this.queueDepth = queueDepth;
+        }
+
+        @Override
+        public String getCacheDisplayName() {
+            return cacheDisplayName;
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+    }
+
+    private static class ResultImpl implements CommitCacheWritesBuildOperationType.Result {
+        private final int writeCount;
+        private final int coalescedWriteCount;
+        private final long flushLatencyMillis;
+
+        ResultImpl(int writeCount, int coalescedWriteCount, long flushLatencyMillis) {
+            this.writeCount = writeCount;
+            this.coalescedWriteCount = coalescedWriteCount;
+            this.flushLatencyMillis = flushLatencyMillis;
+        }
+
+        @Override
+        public int getWriteCount() {
+            return writeCount;
+        }
+
+        @Override
+        public int getCoalescedWriteCount() {
+            return coalescedWriteCount;
+        }
+
+        @Override
+        public long getFlushLatencyMillis() {
+            return flushLatencyMillis;
+        }
+    }
+}
@@ -22,25 +22,49 @@ import org.gradle.internal.Factory;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.concurrent.ExecutorPolicy;
 import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.time.Clock;
 import org.gradle.internal.time.CountdownTimer;
 import org.gradle.internal.time.Time;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Runs the queued operations of a persistent cache in batches, each batch holding the cache lock once.
+ *
+ * Writes to indexed caches ({@link IndexedCacheWrite}) are coalesced while they wait in the queue: a later write to the same key of the same cache replaces the queued write.
+ * Any other operation, such as a read, is a barrier for coalescing, so it sees the effect of all writes queued before it.
+ * Consecutive writes in a batch are committed grouped by cache. Each batch which contains writes is reported to the {@link CacheWriteBatchListener}.
+ */
 class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
-    private final BlockingQueue<Runnable> workQueue;
     private final String displayName;
     private final CacheAccess cacheAccess;
+    private final CacheWriteBatchListener writeBatchListener;
+    private final Clock clock = Time.clock();
     private final long batchWindowMillis;
     private final long maximumLockingTimeMillis;
+    private final int queueCapacity;
+    private final Lock queueLock = new ReentrantLock(true);
+    private final Condition notEmpty = queueLock.newCondition();
+    private final Condition notFull = queueLock.newCondition();
+    // Guarded by queueLock
+    private final Deque<Runnable> workQueue = new ArrayDeque<Runnable>();
+    // The writes in the queue which a later write to the same key can replace, by cache and key. Guarded by queueLock
+    private final Map<Object, Map<Object, IndexedCacheWrite>> coalescableWrites = new IdentityHashMap<Object, Map<Object, IndexedCacheWrite>>();
     private boolean closed;
     private boolean workerCompleted;
     private boolean stopSeen;
@@ -48,13 +72,17 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
     private final ExecutorPolicy.CatchAndRecordFailures failureHandler = new ExecutorPolicy.CatchAndRecordFailures();
 
     CacheAccessWorker(String displayName, CacheAccess cacheAccess) {
+        this(displayName, cacheAccess, CacheWriteBatchListener.NO_OP);
+    }
+
+    CacheAccessWorker(String displayName, CacheAccess cacheAccess, CacheWriteBatchListener writeBatchListener) {
         this.displayName = displayName;
         this.cacheAccess = cacheAccess;
+        this.writeBatchListener = writeBatchListener;
         this.batchWindowMillis = 200;
         this.maximumLockingTimeMillis = 5000;
         HeapProportionalCacheSizer heapProportionalCacheSizer = new HeapProportionalCacheSizer();
-        int queueCapacity = Math.min(4000, heapProportionalCacheSizer.scaleCacheSize(40000));
-        workQueue = new ArrayBlockingQueue<Runnable>(queueCapacity, true);
+        this.queueCapacity = Math.min(4000, heapProportionalCacheSizer.scaleCacheSize(40000));
     }
 
     @Override
@@ -67,12 +95,139 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
             throw new IllegalStateException("The worker has already been closed. Cannot add more work to queue.");
         }
         try {
-            workQueue.put(task);
+            putInQueue(task);
         } catch (InterruptedException e) {
             throw UncheckedException.throwAsUncheckedException(e);
         }
     }
 
+    private void putInQueue(Runnable task) throws InterruptedException {
+        queueLock.lockInterruptibly();
+        try {
+            IndexedCacheWrite write = task instanceof IndexedCacheWrite ? (IndexedCacheWrite) task : null;
+            while (true) {
+                if (write != null && coalesceWithQueuedWrite(write)) {
+                    return;
+                }
+                if (workQueue.size() < queueCapacity) {
+                    break;
+                }
+                notFull.await();
+            }
+            if (write != null) {
+                write.queued(clock.getCurrentTime());
+                Map<Object, IndexedCacheWrite> writesForCache = coalescableWrites.get(write.getCache());
+                if (writesForCache == null) {
+                    writesForCache = new HashMap<Object, IndexedCacheWrite>();
+                    coalescableWrites.put(write.getCache(), writesForCache);
+                }
+                writesForCache.put(write.getKey(), write);
+            } else {
+                // The operation may read from the caches, so later writes must not replace the writes queued before it
+                coalescableWrites.clear();
+            }
+            workQueue.addLast(task);
+            notEmpty.signal();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private boolean coalesceWithQueuedWrite(IndexedCacheWrite write) {
+        Map<Object, IndexedCacheWrite> writesForCache = coalescableWrites.get(write.getCache());
+        if (writesForCache == null) {
+            return false;
+        }
+        IndexedCacheWrite queuedWrite = writesForCache.get(write.getKey());
+        if (queuedWrite == null) {
+            return false;
+        }
+        queuedWrite.coalesce(write);
+        return true;
+    }
+
+    private Runnable takeFromQueue() throws InterruptedException {
+        queueLock.lockInterruptibly();
+        try {
+            while (workQueue.isEmpty()) {
+                notEmpty.await();
+            }
+            return removeFirstFromQueue();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Moves the operations in the queue to the given batch, waiting up to the given time for the queue to become non-empty.
+     * Stops after a flush or shutdown command, as these end the locked pass.
+     */
+    private void pollFromQueue(long timeoutMillis, List<Runnable> batch) throws InterruptedException {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        queueLock.lockInterruptibly();
+        try {
+            while (workQueue.isEmpty()) {
+                if (remainingNanos <= 0) {
+                    return;
+                }
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+            while (!workQueue.isEmpty()) {
+                Runnable operation = removeFirstFromQueue();
+                batch.add(operation);
+                if (isCommand(operation)) {
+                    return;
+                }
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private Runnable removeFirstFromQueue() {
+        Runnable operation = workQueue.removeFirst();
+        if (operation instanceof IndexedCacheWrite) {
+            // The write is about to be committed, so it can no longer be replaced
+            IndexedCacheWrite write = (IndexedCacheWrite) operation;
+            Map<Object, IndexedCacheWrite> writesForCache = coalescableWrites.get(write.getCache());
+            if (writesForCache != null && writesForCache.get(write.getKey()) == write) {
+                writesForCache.remove(write.getKey());
+                if (writesForCache.isEmpty()) {
+                    coalescableWrites.remove(write.getCache());
+                }
+            }
+        }
+        notFull.signal();
+        return operation;
+    }
+
+    private List<Runnable> drainQueue() {
+        queueLock.lock();
+        try {
+            List<Runnable> operations = new ArrayList<Runnable>(workQueue);
+            workQueue.clear();
+            coalescableWrites.clear();
+            notFull.signalAll();
+            return operations;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private int getQueueDepth() {
+        queueLock.lock();
+        try {
+            return workQueue.size();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private static boolean isCommand(Runnable operation) {
+        Class<? extends Runnable> runnableClass = operation.getClass();
+        return runnableClass == FlushOperationsCommand.class || runnableClass == ShutdownOperationsCommand.class;
+    }
+
     @Override
     public <T> T read(final Factory<T> task) {
         FutureTask<T> futureTask = new FutureTask<T>(new Callable<T>() {
@@ -152,9 +307,7 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
             failureHandler.onFailure("Failed to execute cache operations on " + displayName, t);
         } finally {
             // Notify any waiting flush threads that the worker is done, possibly with a failure
-            List<Runnable> runnables = new ArrayList<Runnable>();
-            workQueue.drainTo(runnables);
-            for (Runnable runnable : runnables) {
+            for (Runnable runnable : drainQueue()) {
                 if (runnable instanceof FlushOperationsCommand) {
                     FlushOperationsCommand flushOperationsCommand = (FlushOperationsCommand) runnable;
                     flushOperationsCommand.completed();
@@ -165,39 +318,30 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
         }
     }
 
-    private Runnable takeFromQueue() throws InterruptedException {
-        return workQueue.take();
-    }
-
     private void flushOperations(final Runnable updateOperation) {
         final List<FlushOperationsCommand> flushOperations = new ArrayList<FlushOperationsCommand>();
+        final WriteBatchStatistics statistics = new WriteBatchStatistics(getQueueDepth() + 1);
         try {
             cacheAccess.useCache(new Runnable() {
                 @Override
                 public void run() {
                     CountdownTimer timer = Time.startCountdownTimer(maximumLockingTimeMillis, TimeUnit.MILLISECONDS);
-                    if (updateOperation != null) {
-                        failureHandler.onExecute(updateOperation);
-                    }
-                    Runnable otherOperation;
+                    statistics.startTime = clock.getCurrentTime();
+                    List<Runnable> batch = new ArrayList<Runnable>();
+                    batch.add(updateOperation);
                     try {
-                        while ((otherOperation = workQueue.poll(batchWindowMillis, TimeUnit.MILLISECONDS)) != null) {
-                            failureHandler.onExecute(otherOperation);
-                            final Class<? extends Runnable> runnableClass = otherOperation.getClass();
-                            if (runnableClass == FlushOperationsCommand.class) {
-                                flushOperations.add((FlushOperationsCommand) otherOperation);
-                            }
-                            if (runnableClass == ShutdownOperationsCommand.class) {
-                                stopSeen = true;
-                            }
-                            if (runnableClass == ShutdownOperationsCommand.class
-                                    || runnableClass == FlushOperationsCommand.class
-                                    || timer.hasExpired()) {
+                        pollFromQueue(0, batch);
+                        while (!runBatch(batch, statistics, flushOperations) && !timer.hasExpired()) {
+                            batch.clear();
+                            pollFromQueue(batchWindowMillis, batch);
+                            if (batch.isEmpty()) {
                                 break;
                             }
                         }
                     } catch (InterruptedException e) {
                         throw UncheckedException.throwAsUncheckedException(e);
+                    } finally {
+                        statistics.endTime = clock.getCurrentTime();
                     }
                 }
             });
@@ -206,6 +350,72 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
                 flushOperation.completed();
             }
         }
+        if (statistics.writeCount > 0) {
+            writeBatchListener.writesCommitted(new CacheWriteBatch(displayName, statistics.queueDepth, statistics.writeCount, statistics.coalescedWriteCount, statistics.startTime, statistics.endTime, statistics.oldestWriteQueuedTime));
+        }
+    }
+
+    /**
+     * Runs the operations of the batch in order, except that consecutive writes are grouped by cache.
+     *
+     * @return true when the batch ends the locked pass.
+     */
+    private boolean runBatch(List<Runnable> batch, WriteBatchStatistics statistics, List<FlushOperationsCommand> flushOperations) {
+        Map<Object, List<IndexedCacheWrite>> writesByCache = new LinkedHashMap<Object, List<IndexedCacheWrite>>();
+        for (Runnable operation : batch) {
+            if (operation instanceof IndexedCacheWrite) {
+                IndexedCacheWrite write = (IndexedCacheWrite) operation;
+                List<IndexedCacheWrite> writesForCache = writesByCache.get(write.getCache());
+                if (writesForCache == null) {
+                    writesForCache = new ArrayList<IndexedCacheWrite>();
+                    writesByCache.put(write.getCache(), writesForCache);
+                }
+                writesForCache.add(write);
+                continue;
+            }
+            runWrites(writesByCache, statistics);
+            failureHandler.onExecute(operation);
+            Class<? extends Runnable> runnableClass = operation.getClass();
+            if (runnableClass == FlushOperationsCommand.class) {
+                flushOperations.add((FlushOperationsCommand) operation);
+                return true;
+            }
+            if (runnableClass == ShutdownOperationsCommand.class) {
+                stopSeen = true;
+                return true;
+            }
+        }
+        runWrites(writesByCache, statistics);
+        return false;
+    }
+
+    private void runWrites(Map<Object, List<IndexedCacheWrite>> writesByCache, WriteBatchStatistics statistics) {
+        for (List<IndexedCacheWrite> writesForCache : writesByCache.values()) {
+            for (IndexedCacheWrite write : writesForCache) {
+                statistics.add(write);
+                failureHandler.onExecute(write);
+            }
+        }
+        writesByCache.clear();
+    }
+
+    private static class WriteBatchStatistics {
+        final int queueDepth;
+        int writeCount;
+        int coalescedWriteCount;
+        long oldestWriteQueuedTime = Long.MAX_VALUE;
+        long startTime;
+        long endTime;
+
+        WriteBatchStatistics(int queueDepth) {
+            this.queueDepth = queueDepth;
+        }
+
+        void add(IndexedCacheWrite write) {
+            writeCount++;
+            coalescedWriteCount += write.getCoalescedWriteCount();
+            oldestWriteQueuedTime = Math.min(oldestWriteQueuedTime, write.getQueuedTime());
+        }
     }
 
     @Override
@@ -213,7 +423,7 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
         if (!closed && !workerCompleted) {
             closed = true;
             try {
-                workQueue.put(new ShutdownOperationsCommand());
+                putInQueue(new ShutdownOperationsCommand());
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
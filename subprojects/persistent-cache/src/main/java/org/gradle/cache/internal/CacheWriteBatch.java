@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+/**
+ * A batch of writes committed by the cache access worker of a persistent cache while holding the cache lock once. All times are in milliseconds since the epoch.
+ */
+public final class CacheWriteBatch {
+    private final String cacheDisplayName;
+    private final int queueDepth;
+    private final int writeCount;
+    private final int coalescedWriteCount;
+    private final long startTime;
+    private final long endTime;
+    private final long oldestWriteQueuedTime;
+
+    public CacheWriteBatch(String cacheDisplayName, int queueDepth, int writeCount, int coalescedWriteCount, long startTime, long endTime, long oldestWriteQueuedTime) {
+        this.cacheDisplayName = cacheDisplayName;
+        this.queueDepth = queueDepth;
+        this.writeCount = writeCount;
+        this.coalescedWriteCount = coalescedWriteCount;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.oldestWriteQueuedTime = oldestWriteQueuedTime;
+    }
+
+    public String getCacheDisplayName() {
+        return cacheDisplayName;
+    }
+
+    /**
+     * The number of operations waiting in the queue of the worker when the locked pass started.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * The number of writes which were replaced by a later write to the same key before they were committed.
+     */
+    public int getCoalescedWriteCount() {
+        return coalescedWriteCount;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public long getOldestWriteQueuedTime() {
+        return oldestWriteQueuedTime;
+    }
+}
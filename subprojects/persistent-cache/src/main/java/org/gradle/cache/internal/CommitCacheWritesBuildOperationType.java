@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * A batch of writes committed to the indexed caches of a persistent cache by its cache access worker, while holding the cache lock once.
+ *
+ * The operation is reported after the batch has been committed, with the start and end times of the locked pass.
+ */
+public final class CommitCacheWritesBuildOperationType implements BuildOperationType<CommitCacheWritesBuildOperationType.Details, CommitCacheWritesBuildOperationType.Result> {
+
+    public interface Details {
+
+        /**
+         * The display name of the persistent cache.
+         */
+        String getCacheDisplayName();
+
+        /**
+         * The number of operations waiting in the queue of the worker when the locked pass started.
+         */
+        int getQueueDepth();
+
+    }
+
+    public interface Result {
+
+        /**
+         * The number of writes committed in this batch.
+         */
+        int getWriteCount();
+
+        /**
+         * The number of writes which were replaced by a later write to the same key before they were committed.
+         * These writes are not included in {@link #getWriteCount()}.
+         */
+        int getCoalescedWriteCount();
+
+        /**
+         * The time between queueing the oldest write of this batch and the end of the batch.
+         */
+        long getFlushLatencyMillis();
+
+    }
+
+    private CommitCacheWritesBuildOperationType() {
+    }
+}
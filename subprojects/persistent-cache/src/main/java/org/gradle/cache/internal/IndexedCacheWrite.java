@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A put or remove of a single key of an indexed cache, queued on a {@link CacheAccessWorker}.
+ *
+ * While the write is waiting in the queue, a later write to the same key of the same cache can replace it. See {@link #coalesce(IndexedCacheWrite)}.
+ * All completions of the replaced writes are run when the write is committed.
+ */
+final class IndexedCacheWrite implements Runnable {
+    private final Object cache;
+    private final Object key;
+    private Runnable action;
+    private Runnable completion;
+    private List<Runnable> coalescedCompletions;
+    private long queuedTime;
+
+    IndexedCacheWrite(Object cache, Object key, Runnable action, Runnable completion) {
+        this.cache = cache;
+        this.key = key;
+        this.action = action;
+        this.completion = completion;
+    }
+
+    Object getCache() {
+        return cache;
+    }
+
+    Object getKey() {
+        return key;
+    }
+
+    long getQueuedTime() {
+        return queuedTime;
+    }
+
+    void queued(long time) {
+        queuedTime = time;
+    }
+
+    int getCoalescedWriteCount() {
+        return coalescedCompletions == null ? 0 : coalescedCompletions.size();
+    }
+
+    /**
+     * Replaces the action of this write with the action of the given later write to the same key.
+     */
+    void coalesce(IndexedCacheWrite later) {
+        if (coalescedCompletions == null) {
+            coalescedCompletions = new ArrayList<Runnable>(2);
+        }
+        coalescedCompletions.add(completion);
+        action = later.action;
+        completion = later.completion;
+    }
+
+    @Override
+    public void run() {
+        try {
+            action.run();
+        } finally {
+            runCompletions();
+        }
+    }
+
+    private void runCompletions() {
+        try {
+            if (coalescedCompletions != null) {
+                for (Runnable coalescedCompletion : coalescedCompletions) {
+                    coalescedCompletion.run();
+                }
+            }
+        } finally {
+            completion.run();
+        }
+    }
+}
@@ -22,7 +22,7 @@ import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.math.BigInteger;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -42,6 +42,7 @@ class KeyHasher<K> {
     }
 
     private static class MessageDigestStream extends OutputStream {
+        private final byte[] digest = new byte[16];
         MessageDigest messageDigest;
 
         private MessageDigestStream() {
@@ -67,10 +68,17 @@ class KeyHasher<K> {
             messageDigest.update(b, off, len);
         }
 
-        long getChecksum() {
-            byte[] digest = messageDigest.digest();
-            assert digest.length == 16;
-            return new BigInteger(digest).longValue();
+        /**
+         * Returns the low 64 bits of the digest, interpreted as a big-endian number, without allocating.
+         */
+        long getChecksum() throws DigestException {
+            int length = messageDigest.digest(digest, 0, digest.length);
+            assert length == 16;
+            long checksum = 0;
+            for (int i = 8; i < 16; i++) {
+                checksum = (checksum << 8) | (digest[i] & 0xff);
+            }
+            return checksum;
         }
     }
 }
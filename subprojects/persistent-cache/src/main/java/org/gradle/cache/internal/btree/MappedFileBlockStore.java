@@ -0,0 +1,477 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.cache.internal.btree;
+
+import com.google.common.util.concurrent.Striped;
+import org.gradle.api.UncheckedIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link BlockStore} which accesses the cache file through a memory mapping. Uses the same file format as {@link FileBackedBlockStore}.
+ *
+ * <p>The mapping covers the whole file. When a block is written beyond the end of the mapping, the file is mapped again with at least
+ * twice the size. The file is truncated to the end of the last block when the store is closed. The mapping is limited to 2GB.</p>
+ *
+ * <p>Blocks are read and written through a view of the mapping which is reused by each thread, so no buffers or streams are
+ * allocated per block. Access to a block is guarded by one of a fixed number of read-write locks, chosen by the position of the
+ * block, so that concurrent readers don't block each other.</p>
+ */
+public class MappedFileBlockStore implements BlockStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedFileBlockStore.class);
+    private static final int MIN_MAPPING_SIZE = 64 * 1024;
+    private static final int LOCK_STRIPES = 32;
+
+    private final File cacheFile;
+    private final ReadWriteLock mappingLock = new ReentrantReadWriteLock();
+    private final Striped<ReadWriteLock> blockLocks = Striped.readWriteLock(LOCK_STRIPES);
+    private final ThreadLocal<MappingView> views = ThreadLocal.withInitial(MappingView::new);
+    private final AtomicLong nextBlock = new AtomicLong();
+    private final AtomicLong currentFileSize = new AtomicLong();
+    private RandomAccessFile file;
+    private Factory factory;
+    // Guarded by mappingLock
+    private MappedByteBuffer mapping;
+    private int mappingGeneration;
+
+    public MappedFileBlockStore(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    @Override
+    public String toString() {
+        return "cache '" + cacheFile + "'";
+    }
+
+    @Override
+    public void open(Runnable runnable, Factory factory) {
+        this.factory = factory;
+        try {
+            cacheFile.getParentFile().mkdirs();
+            file = new RandomAccessFile(cacheFile, "rw");
+            long fileSize = file.length();
+            currentFileSize.set(fileSize);
+            nextBlock.set(fileSize);
+            if (fileSize == 0) {
+                runnable.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        mappingLock.writeLock().lock();
+        try {
+            unmap();
+            long fileSize = currentFileSize.get();
+            if (file.length() > fileSize) {
+                try {
+                    // Discard the unused part of the last mapping
+                    file.setLength(fileSize);
+                } catch (IOException e) {
+                    LOGGER.debug("Could not truncate {} to {} bytes.", cacheFile, fileSize, e);
+                }
+            }
+            file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        mappingLock.writeLock().lock();
+        try {
+            unmap();
+            file.setLength(0);
+            currentFileSize.set(0);
+            nextBlock.set(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void attach(BlockPayload block) {
+        if (block.getBlock() == null) {
+            block.setBlock(new BlockImpl(block));
+        }
+    }
+
+    @Override
+    public void remove(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        blockImpl.detach();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
+        return read(BlockPointer.pos(0), payloadType);
+    }
+
+    @Override
+    public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
+        assert !pos.isNull();
+        try {
+            T payload = payloadType.cast(factory.create(payloadType));
+            BlockImpl block = new BlockImpl(payload, pos);
+            block.read();
+            return payload;
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void write(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        try {
+            blockImpl.write();
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long alloc(long length) {
+        return nextBlock.getAndAdd(length);
+    }
+
+    /**
+     * Makes sure that the mapping covers the given number of bytes, mapping the file again if required.
+     */
+    private void ensureMapped(long size) throws IOException {
+        mappingLock.readLock().lock();
+        try {
+            if (mapping != null && mapping.capacity() >= size) {
+                return;
+            }
+        } finally {
+            mappingLock.readLock().unlock();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Cannot map %s, as it would exceed the maximum size of %d bytes.", cacheFile, Integer.MAX_VALUE));
+        }
+        mappingLock.writeLock().lock();
+        try {
+            int currentCapacity = mapping == null ? 0 : mapping.capacity();
+            if (currentCapacity >= size) {
+                return;
+            }
+            long newCapacity = Math.min(Math.max(Math.max(size, 2L * currentCapacity), MIN_MAPPING_SIZE), Integer.MAX_VALUE);
+            unmap();
+            // Mapping beyond the end of the file grows the file
+            mapping = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+            mappingGeneration++;
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Releases the current mapping. Must be called while holding the write lock of the mapping.
+     */
+    private void unmap() {
+        if (mapping != null) {
+            BufferCleaner.clean(mapping);
+            mapping = null;
+            mappingGeneration++;
+        }
+    }
+
+    /**
+     * A per-thread view of the current mapping, together with the streams to read and write blocks through it.
+     */
+    private class MappingView {
+        private final ByteBufferInputStream input = new ByteBufferInputStream();
+        private final DataInputStream dataInput = new DataInputStream(input);
+        private final ByteBufferOutputStream output = new ByteBufferOutputStream();
+        private final DataOutputStream dataOutput = new DataOutputStream(output);
+        private ByteBuffer buffer;
+        private int generation = -1;
+
+        /**
+         * Returns the view of the current mapping. Must be called while holding the read lock of the mapping.
+         */
+        ByteBuffer buffer() {
+            if (generation != mappingGeneration) {
+                buffer = mapping.duplicate();
+                generation = mappingGeneration;
+                input.buffer = buffer;
+                output.buffer = buffer;
+            }
+            return buffer;
+        }
+
+        DataInputStream startReading(long pos, long end) {
+            ByteBuffer buffer = buffer();
+            buffer.limit((int) end);
+            buffer.position((int) pos);
+            return dataInput;
+        }
+
+        DataOutputStream startWriting(long pos, long end) {
+            ByteBuffer buffer = buffer();
+            buffer.limit((int) end);
+            buffer.position((int) pos);
+            return dataOutput;
+        }
+    }
+
+    private final class BlockImpl extends Block {
+        private static final int HEADER_SIZE = 1 + INT_SIZE; // type, payload size
+        private static final int TAIL_SIZE = INT_SIZE;
+
+        private BlockPointer pos;
+        private int payloadSize;
+
+        private BlockImpl(BlockPayload payload, BlockPointer pos) {
+            this(payload);
+            setPos(pos);
+        }
+
+        public BlockImpl(BlockPayload payload) {
+            super(payload);
+            pos = null;
+            payloadSize = -1;
+        }
+
+        @Override
+        public boolean hasPos() {
+            return pos != null;
+        }
+
+        @Override
+        public BlockPointer getPos() {
+            if (pos == null) {
+                pos = BlockPointer.pos(alloc(getSize()));
+            }
+            return pos;
+        }
+
+        @Override
+        public void setPos(BlockPointer pos) {
+            assert this.pos == null && !pos.isNull();
+            this.pos = pos;
+        }
+
+        @Override
+        public int getSize() {
+            if (payloadSize < 0) {
+                payloadSize = getPayload().getSize();
+            }
+            return payloadSize + HEADER_SIZE + TAIL_SIZE;
+        }
+
+        @Override
+        public void setSize(int size) {
+            int newPayloadSize = size - HEADER_SIZE - TAIL_SIZE;
+            assert newPayloadSize >= payloadSize;
+            payloadSize = newPayloadSize;
+        }
+
+        public void write() throws Exception {
+            BlockPointer blockPos = getPos();
+            long pos = blockPos.getPos();
+            BlockPayload payload = getPayload();
+            long finalSize = pos + HEADER_SIZE + TAIL_SIZE + payloadSize;
+            ensureMapped(finalSize);
+
+            Lock blockLock = blockLocks.get(blockPos).writeLock();
+            mappingLock.readLock().lock();
+            blockLock.lock();
+            try {
+                DataOutputStream outputStream = views.get().startWriting(pos, finalSize);
+
+                // Write header
+                outputStream.writeByte(payload.getType());
+                outputStream.writeInt(payloadSize);
+
+                // Write body
+                payload.write(outputStream);
+
+                // Write count
+                int bytesWritten = (int) (views.get().buffer().position() - pos);
+                outputStream.writeInt(bytesWritten);
+
+                // Grow the size while holding the lock, so the size never exceeds the current mapping
+                currentFileSize.accumulateAndGet(finalSize, Math::max);
+            } finally {
+                blockLock.unlock();
+                mappingLock.readLock().unlock();
+            }
+        }
+
+        public void read() throws Exception {
+            BlockPointer blockPos = getPos();
+            long pos = blockPos.getPos();
+            assert pos >= 0;
+            long fileSize = currentFileSize.get();
+            if (pos + HEADER_SIZE >= fileSize) {
+                throw blockCorruptedException();
+            }
+            ensureMapped(fileSize);
+
+            Lock blockLock = blockLocks.get(blockPos).readLock();
+            mappingLock.readLock().lock();
+            blockLock.lock();
+            try {
+                DataInputStream inputStream = views.get().startReading(pos, fileSize);
+
+                BlockPayload payload = getPayload();
+
+                // Read header
+                byte type = inputStream.readByte();
+                if (type != payload.getType()) {
+                    throw blockCorruptedException();
+                }
+
+                // Read body
+                payloadSize = inputStream.readInt();
+                if (pos + HEADER_SIZE + TAIL_SIZE + payloadSize > fileSize) {
+                    throw blockCorruptedException();
+                }
+                payload.read(inputStream);
+
+                // Read and verify count
+                long actualCount = views.get().buffer().position() - pos;
+                long count = inputStream.readInt();
+                if (actualCount != count) {
+                    throw blockCorruptedException();
+                }
+            } finally {
+                blockLock.unlock();
+                mappingLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public RuntimeException blockCorruptedException() {
+            return new CorruptedCacheException(String.format("Corrupted %s found in %s.", this,
+                    MappedFileBlockStore.this));
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private ByteBuffer buffer;
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int count = Math.min(len, buffer.remaining());
+            if (count == 0) {
+                return -1;
+            }
+            buffer.get(bytes, off, count);
+            return count;
+        }
+    }
+
+    private static class ByteBufferOutputStream extends OutputStream {
+        private ByteBuffer buffer;
+
+        @Override
+        public void write(int b) {
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) {
+            buffer.put(bytes, off, len);
+        }
+    }
+
+    /**
+     * Releases the memory of a mapping right away, instead of waiting for it to be garbage collected. Otherwise the file could not be
+     * truncated or deleted on Windows while the mapping is still around.
+     */
+    private static class BufferCleaner {
+        private static final Method INVOKE_CLEANER;
+        private static final Object UNSAFE;
+
+        static {
+            Method invokeCleaner = null;
+            Object unsafe = null;
+            try {
+                // Java 9 and later
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafe = theUnsafe.get(null);
+            } catch (Exception e) {
+                invokeCleaner = null;
+            }
+            INVOKE_CLEANER = invokeCleaner;
+            UNSAFE = unsafe;
+        }
+
+        static void clean(MappedByteBuffer buffer) {
+            try {
+                if (INVOKE_CLEANER != null) {
+                    INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                } else {
+                    // Java 8
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Could not release memory mapping.", e);
+            }
+        }
+    }
+}
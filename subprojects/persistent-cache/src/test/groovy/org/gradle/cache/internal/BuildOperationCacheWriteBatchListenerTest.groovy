@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal
+
+import org.gradle.internal.operations.BuildOperationDescriptor
+import org.gradle.internal.operations.BuildOperationIdFactory
+import org.gradle.internal.operations.BuildOperationListener
+import org.gradle.internal.operations.OperationFinishEvent
+import org.gradle.internal.operations.OperationIdentifier
+import org.gradle.internal.operations.OperationStartEvent
+import spock.lang.Specification
+
+class BuildOperationCacheWriteBatchListenerTest extends Specification {
+    def buildOperationListener = Mock(BuildOperationListener)
+    def idFactory = Stub(BuildOperationIdFactory) {
+        nextId() >> 100
+    }
+    def listener = new BuildOperationCacheWriteBatchListener(buildOperationListener, idFactory)
+    def batch = new CacheWriteBatch("<cache>", 3, 2, 1, 20, 30, 10)
+
+    def "reports batch as a child of the running root build operation"() {
+        def root = operation(1, null)
+        listener.started(root, new OperationStartEvent(0))
+        listener.started(operation(2, root.id), new OperationStartEvent(0))
+
+        when:
+        listener.writesCommitted(batch)
+
+        then:
+        1 * buildOperationListener.started({ BuildOperationDescriptor descriptor -> descriptor.id.id == 100 && descriptor.parentId == root.id }, { it.startTime == 20 })
+        1 * buildOperationListener.finished({ it.id.id == 100 }, { OperationFinishEvent event ->
+            def result = event.result as CommitCacheWritesBuildOperationType.Result
+            event.startTime == 20 && event.endTime == 30 && result.writeCount == 2 && result.coalescedWriteCount == 1 && result.flushLatencyMillis == 20
+        })
+        0 * buildOperationListener._
+    }
+
+    def "does not report batches while no build is running"() {
+        def root = operation(1, null)
+
+        when:
+        listener.writesCommitted(batch)
+        listener.started(root, new OperationStartEvent(0))
+        listener.finished(root, new OperationFinishEvent(0, 1, null, null))
+        listener.writesCommitted(batch)
+
+        then:
+        0 * buildOperationListener._
+    }
+
+    private static BuildOperationDescriptor operation(long id, OperationIdentifier parentId) {
+        return BuildOperationDescriptor.displayName("<op>").build(new OperationIdentifier(id), parentId)
+    }
+}
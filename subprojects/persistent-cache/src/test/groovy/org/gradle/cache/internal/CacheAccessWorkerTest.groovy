@@ -198,4 +198,136 @@ class CacheAccessWorkerTest extends ConcurrentSpec {
         def e = thrown(RuntimeException)
         e == failure
     }
+
+    def "coalesces queued writes to the same key of the same cache"() {
+        given:
+        def cache = new Object()
+        def written = []
+        def completed = []
+        cacheAccessWorker.enqueue(write(cache, "a", { written << "a1" }, { completed << "a1" }))
+        cacheAccessWorker.enqueue(write(cache, "b", { written << "b1" }, { completed << "b1" }))
+        cacheAccessWorker.enqueue(write(cache, "a", { written << "a2" }, { completed << "a2" }))
+        cacheAccessWorker.enqueue(write(new Object(), "a", { written << "other" }, { completed << "other" }))
+
+        when:
+        start(cacheAccessWorker)
+        cacheAccessWorker.flush()
+
+        then:
+        written == ["a2", "b1", "other"]
+        completed as Set == ["a1", "a2", "b1", "other"] as Set
+
+        cleanup:
+        cacheAccessWorker?.stop()
+    }
+
+    def "does not coalesce writes queued before and after another operation"() {
+        given:
+        def cache = new Object()
+        def events = []
+        cacheAccessWorker.enqueue(write(cache, "a", { events << "a1" }, {}))
+        cacheAccessWorker.enqueue { events << "other" }
+        cacheAccessWorker.enqueue(write(cache, "a", { events << "a2" }, {}))
+
+        when:
+        start(cacheAccessWorker)
+        cacheAccessWorker.flush()
+
+        then:
+        events == ["a1", "other", "a2"]
+
+        cleanup:
+        cacheAccessWorker?.stop()
+    }
+
+    def "commits consecutive writes grouped by cache"() {
+        given:
+        def cache1 = new Object()
+        def cache2 = new Object()
+        def events = []
+        cacheAccessWorker.enqueue(write(cache1, "a", { events << "1a" }, {}))
+        cacheAccessWorker.enqueue(write(cache2, "a", { events << "2a" }, {}))
+        cacheAccessWorker.enqueue(write(cache1, "b", { events << "1b" }, {}))
+        cacheAccessWorker.enqueue { events << "other" }
+        cacheAccessWorker.enqueue(write(cache2, "b", { events << "2b" }, {}))
+        cacheAccessWorker.enqueue(write(cache1, "c", { events << "1c" }, {}))
+
+        when:
+        start(cacheAccessWorker)
+        cacheAccessWorker.flush()
+
+        then:
+        events == ["1a", "1b", "2a", "other", "2b", "1c"]
+
+        cleanup:
+        cacheAccessWorker?.stop()
+    }
+
+    def "runs completion of write when the write fails"() {
+        given:
+        def failure = new RuntimeException()
+        def cache = new Object()
+        def completed = []
+        cacheAccessWorker.enqueue(write(cache, "a", { throw new IllegalStateException() }, { completed << "a1" }))
+        cacheAccessWorker.enqueue(write(cache, "a", { throw failure }, { completed << "a2" }))
+
+        when:
+        start(cacheAccessWorker)
+        cacheAccessWorker.flush()
+
+        then:
+        def e = thrown(RuntimeException)
+        e == failure
+        completed == ["a1", "a2"]
+
+        cleanup:
+        cacheAccessWorker?.stop()
+    }
+
+    def "reports committed batches of writes"() {
+        given:
+        def listener = Mock(CacheWriteBatchListener)
+        def worker = new CacheAccessWorker("<cache>", cacheAccess, listener)
+        def cache = new Object()
+        worker.enqueue(write(cache, "a", {}, {}))
+        worker.enqueue(write(cache, "b", {}, {}))
+        worker.enqueue(write(cache, "a", {}, {}))
+
+        when:
+        start(worker)
+        worker.flush()
+
+        then:
+        1 * listener.writesCommitted(_) >> { CacheWriteBatch batch ->
+            assert batch.cacheDisplayName == "<cache>"
+            assert batch.queueDepth >= 2
+            assert batch.writeCount == 2
+            assert batch.coalescedWriteCount == 1
+            assert batch.oldestWriteQueuedTime <= batch.startTime
+            assert batch.startTime <= batch.endTime
+        }
+        0 * listener._
+
+        cleanup:
+        worker?.stop()
+    }
+
+    def "does not report batches without writes"() {
+        given:
+        def listener = Mock(CacheWriteBatchListener)
+        def worker = new CacheAccessWorker("<cache>", cacheAccess, listener)
+        worker.enqueue {}
+
+        when:
+        start(worker)
+        worker.flush()
+        worker.stop()
+
+        then:
+        0 * listener._
+    }
+
+    private static IndexedCacheWrite write(Object cache, Object key, Runnable action, Runnable completion) {
+        return new IndexedCacheWrite(cache, key, action, completion)
+    }
 }
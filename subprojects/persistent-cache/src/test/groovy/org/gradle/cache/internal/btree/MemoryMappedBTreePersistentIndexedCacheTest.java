@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.cache.internal.btree;
+
+import org.gradle.internal.serialize.DefaultSerializer;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.test.fixtures.file.TestFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+public class MemoryMappedBTreePersistentIndexedCacheTest extends BTreePersistentIndexedCacheTest {
+    @Override
+    protected <K, V> BTreePersistentIndexedCache<K, V> newCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer, short maxChildIndexEntries, int maxFreeListEntries) {
+        return new BTreePersistentIndexedCache<K, V>(cacheFile, keySerializer, valueSerializer, maxChildIndexEntries, maxFreeListEntries, new MappedFileBlockStore(cacheFile));
+    }
+
+    @Override
+    @Test
+    public void handlesOpeningATruncatedCacheFile() throws IOException {
+        // The file is only trimmed to the end of the last block when the cache is closed
+        TestFile cacheFile = tmpDir.file("cache.bin");
+        BTreePersistentIndexedCache<String, Integer> cache = newCache(cacheFile, new DefaultSerializer<String>(), new DefaultSerializer<Integer>(), (short) 512, 512);
+        cache.put("key_1", 99);
+        cache.close();
+
+        RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+        file.setLength(file.length() - 10);
+        file.close();
+
+        cache = newCache(cacheFile, new DefaultSerializer<String>(), new DefaultSerializer<Integer>(), (short) 512, 512);
+        assertNull(cache.get("key_1"));
+        cache.verify();
+        cache.close();
+    }
+
+    @Test
+    public void canReadFileWrittenByFileBackedStore() {
+        TestFile cacheFile = tmpDir.file("cache.bin");
+        BTreePersistentIndexedCache<String, Integer> cache = new BTreePersistentIndexedCache<String, Integer>(cacheFile, new DefaultSerializer<String>(), new DefaultSerializer<Integer>());
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key_" + i, i);
+        }
+        cache.close();
+
+        cache = newCache(cacheFile, new DefaultSerializer<String>(), new DefaultSerializer<Integer>(), (short) 512, 512);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(cache.get("key_" + i), equalTo(i));
+        }
+        cache.put("key_1000", 1000);
+        cache.verify();
+        cache.close();
+
+        cache = new BTreePersistentIndexedCache<String, Integer>(cacheFile, new DefaultSerializer<String>(), new DefaultSerializer<Integer>());
+        assertThat(cache.get("key_1000"), equalTo(1000));
+        cache.close();
+    }
+}
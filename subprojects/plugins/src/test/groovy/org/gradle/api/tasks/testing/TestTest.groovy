@@ -165,6 +165,10 @@ class TestTest extends AbstractConventionTaskTest {
             Action<WorkerProcessBuilder> getWorkerConfigurationAction() {
                 return null
             }
+
+            boolean isRunsTestClassesOnReceipt() {
+                return false
+            }
         })
 
         when:
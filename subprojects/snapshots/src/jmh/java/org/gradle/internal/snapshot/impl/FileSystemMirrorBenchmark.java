@@ -0,0 +1,242 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl;
+
+import com.google.common.collect.ImmutableList;
+import org.gradle.internal.file.FileMetadataSnapshot;
+import org.gradle.internal.file.FileType;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.FileSystemMirror;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.WellKnownFileLocations;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compares the hierarchical {@link DefaultFileSystemMirror} with the flat mirror it replaced.
+ *
+ * The file system is simulated by a number of projects, each with source files and an output directory.
+ * {@code reuseAfterOutputChange} simulates a task writing to the output directory of one project, and reports how many
+ * of the known snapshots could be reused afterwards. Run with {@code -prof gc} to compare the allocations of {@code populate}.
+ */
+@Fork(1)
+@Threads(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class FileSystemMirrorBenchmark {
+    private static final FileMetadataSnapshot FILE_METADATA = new FileMetadataSnapshot() {
+        @Override
+        public FileType getType() {
+            return FileType.RegularFile;
+        }
+
+        @Override
+        public long getLastModified() {
+            return 0;
+        }
+
+        @Override
+        public long getLength() {
+            return 0;
+        }
+    };
+
+    private static final WellKnownFileLocations NO_WELL_KNOWN_LOCATIONS = new WellKnownFileLocations() {
+        @Override
+        public boolean isImmutable(String path) {
+            return false;
+        }
+    };
+
+    @Param({"flat", "hierarchical"})
+    String mirrorType;
+
+    @Param({"100"})
+    int projects;
+
+    @Param({"200"})
+    int filesPerProject;
+
+    List<FileSystemLocationSnapshot> snapshots;
+    List<String> outputDirs;
+    Mirror populatedMirror;
+    String[] lookupPaths;
+    Random random = new Random(1234L);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        snapshots = new ArrayList<FileSystemLocationSnapshot>();
+        outputDirs = new ArrayList<String>();
+        for (int project = 0; project < projects; project++) {
+            String projectDir = "/home/user/monorepo/subprojects/project" + project;
+            for (int file = 0; file < filesPerProject; file++) {
+                String path = projectDir + "/src/main/java/org/gradle/package" + (file % 10) + "/Source" + file + ".java";
+                snapshots.add(new RegularFileSnapshot(path, "Source" + file + ".java", HashCode.fromInt(path.hashCode()), 0));
+            }
+            String outputDir = projectDir + "/build/classes";
+            for (int file = 0; file < filesPerProject; file++) {
+                String path = outputDir + "/java/main/org/gradle/package" + (file % 10) + "/Source" + file + ".class";
+                snapshots.add(new RegularFileSnapshot(path, "Source" + file + ".class", HashCode.fromInt(path.hashCode()), 0));
+            }
+            outputDirs.add(outputDir);
+        }
+        lookupPaths = new String[snapshots.size()];
+        for (int i = 0; i < lookupPaths.length; i++) {
+            // Use copies of the paths, so lookups can't take the identity shortcut of String.equals()
+            lookupPaths[i] = new String(snapshots.get(i).getAbsolutePath());
+        }
+        populatedMirror = populate();
+    }
+
+    @Benchmark
+    public Mirror populate() {
+        Mirror mirror = createMirror();
+        for (FileSystemLocationSnapshot snapshot : snapshots) {
+            mirror.putSnapshot(snapshot);
+            mirror.putMetadata(snapshot.getAbsolutePath(), FILE_METADATA);
+        }
+        return mirror;
+    }
+
+    @Benchmark
+    public void lookup(Blackhole blackhole) {
+        blackhole.consume(populatedMirror.getSnapshot(lookupPaths[random.nextInt(lookupPaths.length)]));
+    }
+
+    @Benchmark
+    public void reuseAfterOutputChange(ReuseCounters counters) {
+        Mirror mirror = populate();
+        mirror.beforeOutputChange(ImmutableList.of(outputDirs.get(random.nextInt(outputDirs.size()))));
+        for (String path : lookupPaths) {
+            if (mirror.getSnapshot(path) != null) {
+                counters.reused++;
+            } else {
+                counters.rescanned++;
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ReuseCounters {
+        public long reused;
+        public long rescanned;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            reused = 0;
+            rescanned = 0;
+        }
+    }
+
+    private Mirror createMirror() {
+        if (mirrorType.equals("flat")) {
+            return new FlatFileSystemMirror();
+        }
+        return new HierarchicalFileSystemMirror(new DefaultFileSystemMirror(NO_WELL_KNOWN_LOCATIONS));
+    }
+
+    interface Mirror extends FileSystemMirror {
+        void beforeOutputChange(Iterable<String> affectedOutputPaths);
+    }
+
+    private static class HierarchicalFileSystemMirror implements Mirror {
+        private final DefaultFileSystemMirror delegate;
+
+        HierarchicalFileSystemMirror(DefaultFileSystemMirror delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public FileSystemLocationSnapshot getSnapshot(String absolutePath) {
+            return delegate.getSnapshot(absolutePath);
+        }
+
+        @Override
+        public void putSnapshot(FileSystemLocationSnapshot file) {
+            delegate.putSnapshot(file);
+        }
+
+        @Override
+        public FileMetadataSnapshot getMetadata(String absolutePath) {
+            return delegate.getMetadata(absolutePath);
+        }
+
+        @Override
+        public void putMetadata(String absolutePath, FileMetadataSnapshot stat) {
+            delegate.putMetadata(absolutePath, stat);
+        }
+
+        @Override
+        public void beforeOutputChange(Iterable<String> affectedOutputPaths) {
+            delegate.beforeOutputChange(affectedOutputPaths);
+        }
+    }
+
+    /**
+     * The flat mirror that was used before {@link FileSystemSnapshotHierarchy}, without the handling of well known file locations.
+     * Since it cannot invalidate the descendants of an output directory, it has to throw away all state whenever outputs change.
+     */
+    private static class FlatFileSystemMirror implements Mirror {
+        private final Map<String, FileMetadataSnapshot> metadata = new ConcurrentHashMap<String, FileMetadataSnapshot>();
+        private final Map<String, FileSystemLocationSnapshot> files = new ConcurrentHashMap<String, FileSystemLocationSnapshot>();
+
+        @Override
+        public FileSystemLocationSnapshot getSnapshot(String absolutePath) {
+            return files.get(absolutePath);
+        }
+
+        @Override
+        public void putSnapshot(FileSystemLocationSnapshot file) {
+            files.put(file.getAbsolutePath(), file);
+        }
+
+        @Override
+        public FileMetadataSnapshot getMetadata(String absolutePath) {
+            return metadata.get(absolutePath);
+        }
+
+        @Override
+        public void putMetadata(String absolutePath, FileMetadataSnapshot stat) {
+            metadata.put(absolutePath, stat);
+        }
+
+        @Override
+        public void beforeOutputChange(Iterable<String> affectedOutputPaths) {
+            metadata.clear();
+            files.clear();
+        }
+    }
+}
@@ -22,19 +22,15 @@ import org.gradle.internal.snapshot.FileSystemMirror;
 import org.gradle.internal.snapshot.WellKnownFileLocations;
 
 import javax.annotation.Nullable;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * See {@link DefaultFileSystemSnapshotter} for some more details
+ * See {@link DefaultFileSystemSnapshotter} for some more details.
+ *
+ * The state is kept in a {@link FileSystemSnapshotHierarchy}, so that output changes only discard the state of the affected locations.
  */
 public class DefaultFileSystemMirror implements FileSystemMirror {
-    // Maps from interned absolute path for a file to metadata for the file.
-    private final Map<String, FileMetadataSnapshot> metadata = new ConcurrentHashMap<String, FileMetadataSnapshot>();
-    private final Map<String, FileMetadataSnapshot> cacheMetadata = new ConcurrentHashMap<String, FileMetadataSnapshot>();
-    // Maps from interned absolute path for a file to snapshot for the file.
-    private final Map<String, FileSystemLocationSnapshot> files = new ConcurrentHashMap<String, FileSystemLocationSnapshot>();
-    private final Map<String, FileSystemLocationSnapshot> cacheFiles = new ConcurrentHashMap<String, FileSystemLocationSnapshot>();
+    private final FileSystemSnapshotHierarchy files = new FileSystemSnapshotHierarchy();
+    private final FileSystemSnapshotHierarchy cacheFiles = new FileSystemSnapshotHierarchy();
 
     private final WellKnownFileLocations wellKnownFileLocations;
 
@@ -45,62 +41,49 @@ public class DefaultFileSystemMirror implements FileSystemMirror {
     @Nullable
     @Override
     public FileSystemLocationSnapshot getSnapshot(String absolutePath) {
-        // Could potentially also look whether we have the details for an ancestor directory tree
         // Could possibly infer that the path refers to a directory, if we have details for a descendant path (and it's not a missing file)
-        if (wellKnownFileLocations.isImmutable(absolutePath)) {
-            return cacheFiles.get(absolutePath);
-        }
-        return files.get(absolutePath);
+        return hierarchyFor(absolutePath).getSnapshot(absolutePath);
     }
 
     @Override
     public void putSnapshot(FileSystemLocationSnapshot snapshot) {
-        String absolutePath = snapshot.getAbsolutePath();
-        if (wellKnownFileLocations.isImmutable(absolutePath)) {
-            cacheFiles.put(absolutePath, snapshot);
-        } else {
-            files.put(absolutePath, snapshot);
-        }
+        hierarchyFor(snapshot.getAbsolutePath()).putSnapshot(snapshot);
     }
 
     @Override
     public FileMetadataSnapshot getMetadata(String absolutePath) {
-        if (wellKnownFileLocations.isImmutable(absolutePath)) {
-            return cacheMetadata.get(absolutePath);
-        }
-        return metadata.get(absolutePath);
+        return hierarchyFor(absolutePath).getMetadata(absolutePath);
     }
 
     @Override
     public void putMetadata(String absolutePath, FileMetadataSnapshot metadata) {
-        if (wellKnownFileLocations.isImmutable(absolutePath)) {
-            cacheMetadata.put(absolutePath, metadata);
-        } else {
-            this.metadata.put(absolutePath, metadata);
-        }
+        hierarchyFor(absolutePath).putMetadata(absolutePath, metadata);
+    }
+
+    private FileSystemSnapshotHierarchy hierarchyFor(String absolutePath) {
+        return wellKnownFileLocations.isImmutable(absolutePath) ? cacheFiles : files;
     }
 
     public void beforeOutputChange() {
         // When the outputs are generated, throw away all state for files that do not live in an append-only cache.
-        // This is intentionally very simple, to be improved later
-        metadata.clear();
         files.clear();
     }
 
     public void beforeBuildFinished() {
         // We throw away all state between builds
-        metadata.clear();
-        cacheMetadata.clear();
+        invalidateAll();
+    }
+
+    public void invalidateAll() {
         files.clear();
         cacheFiles.clear();
     }
 
     public void beforeOutputChange(Iterable<String> affectedOutputPaths) {
+        // Only throw away the state of the affected locations, their descendants and their ancestors
         for (String affectedOutputPath : affectedOutputPaths) {
-            metadata.remove(affectedOutputPath);
-            files.remove(affectedOutputPath);
-            cacheMetadata.remove(affectedOutputPath);
-            cacheFiles.remove(affectedOutputPath);
+            files.invalidate(affectedOutputPath);
+            cacheFiles.invalidate(affectedOutputPath);
         }
     }
 }
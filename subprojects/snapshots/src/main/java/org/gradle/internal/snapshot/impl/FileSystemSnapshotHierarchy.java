@@ -0,0 +1,385 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.gradle.api.file.internal.FilePathUtil;
+import org.gradle.internal.file.FileMetadataSnapshot;
+import org.gradle.internal.snapshot.DirectorySnapshot;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory tree of file system state, with one node per common path prefix.
+ *
+ * Each node can hold the metadata and the snapshot of the location it represents. A lookup walks down the tree one
+ * segment at a time, so its cost depends on the depth of the location and not on the number of known locations.
+ *
+ * When a location is invalidated, the whole subtree below it is discarded, together with the state of its ancestors,
+ * since the snapshot of an ancestor directory contains the invalidated location. Locations which are not related to the
+ * invalidated one are retained.
+ */
+@ThreadSafe
+class FileSystemSnapshotHierarchy {
+    private final char separatorChar;
+    private final Node root = new Node("");
+    private final Lock readLock;
+    private final Lock writeLock;
+
+    FileSystemSnapshotHierarchy() {
+        this(File.separatorChar);
+    }
+
+    @VisibleForTesting
+    FileSystemSnapshotHierarchy(char separatorChar) {
+        this.separatorChar = separatorChar;
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+    }
+
+    @Nullable
+    public FileSystemLocationSnapshot getSnapshot(String absolutePath) {
+        String path = normalize(absolutePath);
+        readLock.lock();
+        try {
+            Node current = root;
+            DirectorySnapshot closestAncestor = null;
+            int closestAncestorEnd = 0;
+            int offset = 0;
+            while (true) {
+                if (current.snapshot instanceof DirectorySnapshot) {
+                    closestAncestor = (DirectorySnapshot) current.snapshot;
+                    closestAncestorEnd = offset;
+                }
+                Node child = current.getChild(path, offset, separatorChar);
+                if (child == null || !child.isPrefixOf(path, offset, separatorChar)) {
+                    break;
+                }
+                int endOfChild = offset + child.prefix.length();
+                if (endOfChild == path.length()) {
+                    if (child.snapshot != null) {
+                        return child.snapshot;
+                    }
+                    break;
+                }
+                current = child;
+                offset = endOfChild + 1;
+            }
+            return closestAncestor == null ? null : findDescendant(closestAncestor, path, closestAncestorEnd);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public void putSnapshot(FileSystemLocationSnapshot snapshot) {
+        writeLock.lock();
+        try {
+            getOrCreateNode(normalize(snapshot.getAbsolutePath())).snapshot = snapshot;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Nullable
+    public FileMetadataSnapshot getMetadata(String absolutePath) {
+        String path = normalize(absolutePath);
+        readLock.lock();
+        try {
+            Node node = getNode(path);
+            return node == null ? null : node.metadata;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public void putMetadata(String absolutePath, FileMetadataSnapshot metadata) {
+        String path = normalize(absolutePath);
+        writeLock.lock();
+        try {
+            getOrCreateNode(path).metadata = metadata;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Discards all state for the given location, its descendants and its ancestors.
+     */
+    public void invalidate(String absolutePath) {
+        String path = normalize(absolutePath);
+        writeLock.lock();
+        try {
+            List<Node> ancestors = new ArrayList<Node>();
+            Node current = root;
+            int offset = 0;
+            while (true) {
+                current.clearState();
+                ancestors.add(current);
+                if (path.isEmpty()) {
+                    current.children.clear();
+                    break;
+                }
+                int index = current.indexOfChild(path, offset, separatorChar);
+                if (index < 0) {
+                    break;
+                }
+                Node child = current.children.get(index);
+                int commonPrefix = FilePathUtil.sizeOfCommonPrefix(child.prefix, path, offset, separatorChar);
+                if (offset + commonPrefix == path.length()) {
+                    // The child is the invalidated location or one of its descendants
+                    current.children.remove(index);
+                    break;
+                }
+                if (commonPrefix < child.prefix.length()) {
+                    // The child is not related to the invalidated location
+                    break;
+                }
+                current = child;
+                offset += commonPrefix + 1;
+            }
+            compact(ancestors);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void clear() {
+        writeLock.lock();
+        try {
+            root.clearState();
+            root.children.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @VisibleForTesting
+    List<String> flatten() {
+        readLock.lock();
+        try {
+            List<String> prefixes = new ArrayList<String>();
+            for (Node child : root.children) {
+                child.collect(0, prefixes);
+            }
+            return prefixes;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Removes nodes without state and children, and merges nodes without state into their only child, starting at the deepest ancestor.
+     */
+    private void compact(List<Node> ancestors) {
+        for (int i = ancestors.size() - 1; i > 0; i--) {
+            Node node = ancestors.get(i);
+            if (node.hasState()) {
+                return;
+            }
+            Node parent = ancestors.get(i - 1);
+            int index = parent.children.indexOf(node);
+            if (node.children.isEmpty()) {
+                parent.children.remove(index);
+            } else if (node.children.size() == 1) {
+                Node onlyChild = node.children.get(0);
+                onlyChild.prefix = node.prefix + separatorChar + onlyChild.prefix;
+                parent.children.set(index, onlyChild);
+            } else {
+                return;
+            }
+        }
+    }
+
+    @Nullable
+    private Node getNode(String path) {
+        Node current = root;
+        int offset = 0;
+        while (true) {
+            Node child = current.getChild(path, offset, separatorChar);
+            if (child == null || !child.isPrefixOf(path, offset, separatorChar)) {
+                return null;
+            }
+            int endOfChild = offset + child.prefix.length();
+            if (endOfChild == path.length()) {
+                return child;
+            }
+            current = child;
+            offset = endOfChild + 1;
+        }
+    }
+
+    private Node getOrCreateNode(String path) {
+        Node current = root;
+        int offset = 0;
+        while (true) {
+            int index = current.indexOfChild(path, offset, separatorChar);
+            if (index < 0) {
+                Node newNode = new Node(path.substring(offset));
+                current.children.add(-index - 1, newNode);
+                return newNode;
+            }
+            Node child = current.children.get(index);
+            int commonPrefix = FilePathUtil.sizeOfCommonPrefix(child.prefix, path, offset, separatorChar);
+            if (commonPrefix < child.prefix.length()) {
+                // Split the child at the end of the common prefix
+                Node intermediate = new Node(child.prefix.substring(0, commonPrefix));
+                child.prefix = child.prefix.substring(commonPrefix + 1);
+                intermediate.children.add(child);
+                current.children.set(index, intermediate);
+                child = intermediate;
+            }
+            int endOfChild = offset + commonPrefix;
+            if (endOfChild == path.length()) {
+                return child;
+            }
+            current = child;
+            offset = endOfChild + 1;
+        }
+    }
+
+    @Nullable
+    private FileSystemLocationSnapshot findDescendant(DirectorySnapshot ancestor, String path, int offset) {
+        FileSystemLocationSnapshot current = ancestor;
+        while (offset < path.length()) {
+            if (!(current instanceof DirectorySnapshot)) {
+                return null;
+            }
+            FileSystemLocationSnapshot match = null;
+            for (FileSystemLocationSnapshot child : ((DirectorySnapshot) current).getChildren()) {
+                if (compareFirstSegment(child.getName(), path, offset, separatorChar) == 0) {
+                    match = child;
+                    break;
+                }
+            }
+            if (match == null) {
+                return null;
+            }
+            current = match;
+            offset += match.getName().length() + 1;
+        }
+        return current;
+    }
+
+    /**
+     * Removes the trailing separator of file system roots, so that they are ancestors of the locations they contain.
+     */
+    private String normalize(String absolutePath) {
+        int length = absolutePath.length();
+        if (length > 0 && absolutePath.charAt(length - 1) == separatorChar) {
+            return absolutePath.substring(0, length - 1);
+        }
+        return absolutePath;
+    }
+
+    /**
+     * Compares the first segment of {@code prefix} with the segment of {@code path} starting at {@code offset}, without creating any substrings.
+     */
+    private static int compareFirstSegment(String prefix, String path, int offset, char separatorChar) {
+        int prefixLength = prefix.length();
+        int pathLength = path.length();
+        for (int i = 0, j = offset; ; i++, j++) {
+            boolean endOfPrefixSegment = i == prefixLength || prefix.charAt(i) == separatorChar;
+            boolean endOfPathSegment = j == pathLength || path.charAt(j) == separatorChar;
+            if (endOfPrefixSegment) {
+                return endOfPathSegment ? 0 : -1;
+            }
+            if (endOfPathSegment) {
+                return 1;
+            }
+            int diff = prefix.charAt(i) - path.charAt(j);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+    }
+
+    private static class Node {
+        private String prefix;
+        // Sorted by the first segment of the prefix. No two children share the same first segment.
+        private final List<Node> children = new ArrayList<Node>(2);
+        private FileSystemLocationSnapshot snapshot;
+        private FileMetadataSnapshot metadata;
+
+        Node(String prefix) {
+            this.prefix = prefix;
+        }
+
+        boolean hasState() {
+            return snapshot != null || metadata != null;
+        }
+
+        void clearState() {
+            snapshot = null;
+            metadata = null;
+        }
+
+        /**
+         * Returns the index of the child sharing the first segment with the path at the given offset,
+         * or {@code -(insertion point) - 1} if there is no such child.
+         */
+        int indexOfChild(String path, int offset, char separatorChar) {
+            int low = 0;
+            int high = children.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int comparison = compareFirstSegment(children.get(mid).prefix, path, offset, separatorChar);
+                if (comparison < 0) {
+                    low = mid + 1;
+                } else if (comparison > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        @Nullable
+        Node getChild(String path, int offset, char separatorChar) {
+            int index = indexOfChild(path, offset, separatorChar);
+            return index < 0 ? null : children.get(index);
+        }
+
+        /**
+         * Whether the location of this node is the path at the given offset or one of its ancestors.
+         */
+        boolean isPrefixOf(String path, int offset, char separatorChar) {
+            int prefixLength = prefix.length();
+            int endOfPrefix = offset + prefixLength;
+            if (path.length() < endOfPrefix || !path.regionMatches(offset, prefix, 0, prefixLength)) {
+                return false;
+            }
+            return endOfPrefix == path.length() || path.charAt(endOfPrefix) == separatorChar;
+        }
+
+        void collect(int depth, List<String> prefixes) {
+            prefixes.add(depth + ":" + prefix);
+            for (Node child : children) {
+                child.collect(depth + 1, prefixes);
+            }
+        }
+    }
+}
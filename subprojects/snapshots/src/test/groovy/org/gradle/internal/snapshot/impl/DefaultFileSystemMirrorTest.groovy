@@ -132,4 +132,27 @@ class DefaultFileSystemMirrorTest extends Specification {
         mirror.getMetadata(file.path) == null
         mirror.getSnapshot(file.path) == null
     }
+
+    def "discards only state related to the affected output paths"() {
+        def output = tmpDir.file("dir/output")
+        def sibling = tmpDir.file("dir/sibling")
+        def outputSnapshot = Stub(RegularFileSnapshot)
+        def siblingSnapshot = Stub(RegularFileSnapshot)
+        def metadata = Stub(FileMetadataSnapshot)
+
+        given:
+        _ * outputSnapshot.absolutePath >> output.path
+        _ * siblingSnapshot.absolutePath >> sibling.path
+
+        when:
+        mirror.putSnapshot(outputSnapshot)
+        mirror.putSnapshot(siblingSnapshot)
+        mirror.putMetadata(output.parentFile.path, metadata)
+        mirror.beforeOutputChange([output.path])
+
+        then:
+        mirror.getSnapshot(output.path) == null
+        mirror.getMetadata(output.parentFile.path) == null
+        mirror.getSnapshot(sibling.path) == siblingSnapshot
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl
+
+import org.gradle.internal.file.FileMetadataSnapshot
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.snapshot.DirectorySnapshot
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot
+import org.gradle.internal.snapshot.RegularFileSnapshot
+import spock.lang.Specification
+
+class FileSystemSnapshotHierarchyTest extends Specification {
+    def hierarchy = new FileSystemSnapshotHierarchy('/' as char)
+
+    def "stores snapshots and metadata by path"() {
+        def metadata = Stub(FileMetadataSnapshot)
+        def a = fileSnapshot("/root/a")
+        def b = fileSnapshot("/root/some/b")
+
+        when:
+        hierarchy.putSnapshot(a)
+        hierarchy.putSnapshot(b)
+        hierarchy.putMetadata("/root/a", metadata)
+
+        then:
+        hierarchy.getSnapshot("/root/a") == a
+        hierarchy.getSnapshot("/root/some/b") == b
+        hierarchy.getMetadata("/root/a") == metadata
+        hierarchy.getMetadata("/root/some/b") == null
+        hierarchy.getSnapshot("/root") == null
+        hierarchy.getSnapshot("/root/some") == null
+        hierarchy.getSnapshot("/root/so") == null
+        hierarchy.getSnapshot("/root/a/b") == null
+        hierarchy.getSnapshot("/root/ab") == null
+    }
+
+    def "shares common prefixes between paths"() {
+        when:
+        hierarchy.putSnapshot(fileSnapshot("/root/common/dir1"))
+        hierarchy.putSnapshot(fileSnapshot("/root/common/dir2"))
+        hierarchy.putSnapshot(fileSnapshot("/root/other"))
+
+        then:
+        hierarchy.flatten() == ["0:/root", "1:common", "2:dir1", "2:dir2", "1:other"]
+    }
+
+    def "invalidating a location discards its descendants and ancestors"() {
+        def sibling = fileSnapshot("/root/dir/sibling")
+        def unrelated = fileSnapshot("/root/dir2/unrelated")
+        hierarchy.putSnapshot(directorySnapshot("/root/dir"))
+        hierarchy.putSnapshot(fileSnapshot("/root/dir/output"))
+        hierarchy.putSnapshot(fileSnapshot("/root/dir/output/child"))
+        hierarchy.putSnapshot(sibling)
+        hierarchy.putSnapshot(unrelated)
+
+        when:
+        hierarchy.invalidate("/root/dir/output")
+
+        then:
+        hierarchy.getSnapshot("/root/dir/output") == null
+        hierarchy.getSnapshot("/root/dir/output/child") == null
+        hierarchy.getSnapshot("/root/dir") == null
+        hierarchy.getSnapshot("/root/dir/sibling") == sibling
+        hierarchy.getSnapshot("/root/dir2/unrelated") == unrelated
+        hierarchy.flatten() == ["0:/root", "1:dir/sibling", "1:dir2/unrelated"]
+    }
+
+    def "invalidating a location without state discards its ancestors"() {
+        def unrelated = fileSnapshot("/root/dir2")
+        hierarchy.putSnapshot(directorySnapshot("/root/dir"))
+        hierarchy.putSnapshot(unrelated)
+
+        when:
+        hierarchy.invalidate("/root/dir/new/file")
+
+        then:
+        hierarchy.getSnapshot("/root/dir") == null
+        hierarchy.getSnapshot("/root/dir2") == unrelated
+        hierarchy.flatten() == ["0:/root/dir2"]
+    }
+
+    def "invalidating the file system root discards everything"() {
+        hierarchy.putSnapshot(fileSnapshot("/root/a"))
+        hierarchy.putSnapshot(fileSnapshot("/other/b"))
+
+        when:
+        hierarchy.invalidate("/")
+
+        then:
+        hierarchy.getSnapshot("/root/a") == null
+        hierarchy.getSnapshot("/other/b") == null
+        hierarchy.flatten() == []
+    }
+
+    def "finds snapshots of descendants in the snapshot of an ancestor directory"() {
+        def file = fileSnapshot("/root/dir/sub/file")
+        def sub = directorySnapshot("/root/dir/sub", file)
+        hierarchy.putSnapshot(directorySnapshot("/root/dir", sub))
+
+        expect:
+        hierarchy.getSnapshot("/root/dir/sub") == sub
+        hierarchy.getSnapshot("/root/dir/sub/file") == file
+        hierarchy.getSnapshot("/root/dir/su") == null
+        hierarchy.getSnapshot("/root/dir/sub/missing") == null
+        hierarchy.getSnapshot("/root/dir/sub/file/child") == null
+    }
+
+    def "clear discards all state"() {
+        hierarchy.putSnapshot(fileSnapshot("/root/a"))
+        hierarchy.putMetadata("/root/b", Stub(FileMetadataSnapshot))
+
+        when:
+        hierarchy.clear()
+
+        then:
+        hierarchy.getSnapshot("/root/a") == null
+        hierarchy.getMetadata("/root/b") == null
+        hierarchy.flatten() == []
+    }
+
+    private static RegularFileSnapshot fileSnapshot(String absolutePath) {
+        return new RegularFileSnapshot(absolutePath, absolutePath.substring(absolutePath.lastIndexOf('/') + 1), HashCode.fromInt(absolutePath.hashCode()), 0)
+    }
+
+    private static DirectorySnapshot directorySnapshot(String absolutePath, FileSystemLocationSnapshot... children) {
+        return new DirectorySnapshot(absolutePath, absolutePath.substring(absolutePath.lastIndexOf('/') + 1), children as List, HashCode.fromInt(absolutePath.hashCode()))
+    }
+}
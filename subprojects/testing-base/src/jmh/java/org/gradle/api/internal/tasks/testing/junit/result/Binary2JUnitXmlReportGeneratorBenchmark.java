@@ -0,0 +1,186 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.junit.result;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.internal.tasks.testing.DefaultTestOutputEvent;
+import org.gradle.api.tasks.testing.TestOutputEvent;
+import org.gradle.api.tasks.testing.TestResult;
+import org.gradle.initialization.DefaultParallelismConfigurationManager;
+import org.gradle.internal.concurrent.DefaultExecutorFactory;
+import org.gradle.internal.concurrent.DefaultParallelismConfiguration;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
+import org.gradle.internal.event.DefaultListenerManager;
+import org.gradle.internal.logging.events.ProgressCompleteEvent;
+import org.gradle.internal.logging.events.ProgressEvent;
+import org.gradle.internal.logging.events.ProgressStartEvent;
+import org.gradle.internal.logging.progress.DefaultProgressLoggerFactory;
+import org.gradle.internal.logging.progress.ProgressListener;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationIdFactory;
+import org.gradle.internal.operations.BuildOperationListener;
+import org.gradle.internal.operations.DefaultBuildOperationExecutor;
+import org.gradle.internal.operations.DefaultBuildOperationIdFactory;
+import org.gradle.internal.operations.DefaultBuildOperationQueueFactory;
+import org.gradle.internal.operations.OperationFinishEvent;
+import org.gradle.internal.operations.OperationIdentifier;
+import org.gradle.internal.operations.OperationProgressEvent;
+import org.gradle.internal.operations.OperationStartEvent;
+import org.gradle.internal.resources.DefaultResourceLockCoordinationService;
+import org.gradle.internal.time.Time;
+import org.gradle.internal.work.DefaultWorkerLeaseService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Generates the JUnit XML results of a synthetic test suite, by default 1000 classes with 100 test methods each.
+ *
+ * Every test method writes a line to standard output, and every 50th test method fails.
+ */
+@Fork(1)
+@Threads(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class Binary2JUnitXmlReportGeneratorBenchmark {
+    @Param({"1", "4"})
+    int maxWorkers;
+
+    @Param({"1000"})
+    int classes;
+
+    @Param({"100"})
+    int methodsPerClass;
+
+    @Param({"WITH_SUITE", "WITH_TESTCASE"})
+    TestOutputAssociation outputAssociation;
+
+    File tmpDir;
+    File reportDirectory;
+    InMemoryTestResultsProvider resultsProvider;
+    DefaultWorkerLeaseService workerLeaseService;
+    BuildOperationExecutor buildOperationExecutor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tmpDir = File.createTempFile("junit-xml-benchmark", "");
+        tmpDir.delete();
+        File binaryResultsDir = new File(tmpDir, "binary");
+        reportDirectory = new File(tmpDir, "xml");
+        binaryResultsDir.mkdirs();
+        reportDirectory.mkdirs();
+
+        TestOutputStore outputStore = new TestOutputStore(binaryResultsDir);
+        TestOutputStore.Writer outputWriter = outputStore.writer();
+        List<TestClassResult> results = new ArrayList<TestClassResult>(classes);
+        long id = 1;
+        long startTime = System.currentTimeMillis();
+        for (int classIndex = 0; classIndex < classes; classIndex++) {
+            long classId = id++;
+            TestClassResult classResult = new TestClassResult(classId, "org.gradle.synthetic.package" + (classIndex % 20) + ".SyntheticTest" + classIndex, startTime);
+            outputWriter.onOutput(classId, new DefaultTestOutputEvent(TestOutputEvent.Destination.StdOut, "Setting up SyntheticTest" + classIndex + "\n"));
+            for (int methodIndex = 0; methodIndex < methodsPerClass; methodIndex++) {
+                long methodId = id++;
+                boolean failed = methodIndex % 50 == 49;
+                TestMethodResult methodResult = new TestMethodResult(methodId, "test" + methodIndex, failed ? TestResult.ResultType.FAILURE : TestResult.ResultType.SUCCESS, 12, startTime + 12);
+                if (failed) {
+                    methodResult.addFailure("expected:<1> but was:<2>", "java.lang.AssertionError: expected:<1> but was:<2>\n\tat org.gradle.synthetic.SyntheticTest.test(SyntheticTest.java:42)\n", "java.lang.AssertionError");
+                }
+                classResult.add(methodResult);
+                outputWriter.onOutput(classId, methodId, new DefaultTestOutputEvent(TestOutputEvent.Destination.StdOut, "Running test" + methodIndex + " <" + methodId + ">\n"));
+            }
+            results.add(classResult);
+        }
+        outputWriter.close();
+        resultsProvider = new InMemoryTestResultsProvider(results, outputStore);
+
+        ParallelismConfigurationManager parallelismConfigurationManager = new DefaultParallelismConfigurationManager(new DefaultListenerManager());
+        parallelismConfigurationManager.setParallelismConfiguration(new DefaultParallelismConfiguration(false, maxWorkers));
+        workerLeaseService = new DefaultWorkerLeaseService(new DefaultResourceLockCoordinationService(), parallelismConfigurationManager);
+        BuildOperationIdFactory buildOperationIdFactory = new DefaultBuildOperationIdFactory();
+        buildOperationExecutor = new DefaultBuildOperationExecutor(
+            new NoOpBuildOperationListener(),
+            Time.clock(),
+            new DefaultProgressLoggerFactory(new NoOpProgressListener(), Time.clock(), buildOperationIdFactory),
+            new DefaultBuildOperationQueueFactory(workerLeaseService),
+            new DefaultExecutorFactory(),
+            parallelismConfigurationManager,
+            buildOperationIdFactory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        resultsProvider.close();
+        workerLeaseService.stop();
+        FileUtils.forceDelete(tmpDir);
+    }
+
+    @Benchmark
+    public void generate() {
+        workerLeaseService.withLocks(Collections.singleton(workerLeaseService.getWorkerLease()), new Runnable() {
+            @Override
+            public void run() {
+                new Binary2JUnitXmlReportGenerator(reportDirectory, resultsProvider, outputAssociation, buildOperationExecutor, "localhost").generate();
+            }
+        });
+    }
+
+    private static class NoOpBuildOperationListener implements BuildOperationListener {
+        @Override
+        public void started(BuildOperationDescriptor buildOperation, OperationStartEvent startEvent) {
+        }
+
+        @Override
+        public void progress(OperationIdentifier operationIdentifier, OperationProgressEvent progressEvent) {
+        }
+
+        @Override
+        public void finished(BuildOperationDescriptor buildOperation, OperationFinishEvent finishEvent) {
+        }
+    }
+
+    private static class NoOpProgressListener implements ProgressListener {
+        @Override
+        public void started(ProgressStartEvent event) {
+        }
+
+        @Override
+        public void progress(ProgressEvent event) {
+        }
+
+        @Override
+        public void completed(ProgressCompleteEvent event) {
+        }
+    }
+}
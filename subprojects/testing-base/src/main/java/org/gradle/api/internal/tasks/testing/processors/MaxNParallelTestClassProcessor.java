@@ -18,25 +18,48 @@ package org.gradle.api.internal.tasks.testing.processors;
 
 import org.gradle.api.internal.tasks.testing.TestClassProcessor;
 import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent;
+import org.gradle.api.internal.tasks.testing.TestDescriptorInternal;
 import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+import org.gradle.api.internal.tasks.testing.TestStartEvent;
+import org.gradle.api.tasks.testing.TestOutputEvent;
 import org.gradle.internal.Factory;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.actor.Actor;
 import org.gradle.internal.actor.ActorFactory;
 import org.gradle.internal.concurrent.CompositeStoppable;
 import org.gradle.internal.dispatch.DispatchException;
+import org.gradle.internal.dispatch.StreamCompletion;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Manages a set of parallel TestClassProcessors. Uses a simple round-robin algorithm to assign test classes to
- * processors.
+ * Manages a set of parallel TestClassProcessors.
+ *
+ * <p>By default, uses a simple round-robin algorithm to assign test classes to processors.</p>
+ *
+ * <p>With work stealing, test classes are kept in a shared queue and handed to the processors as they become idle, so a processor
+ * which received a few slow test classes doesn't keep the others waiting. Each processor is given at most {@value #MAX_TEST_CLASSES_PER_PROCESSOR}
+ * test classes at a time, and is given the next one when it reports that a test class has completed. This requires processors which run each
+ * test class as soon as they receive it, and report the start and completion of each test class using the class name of the test class.
+ * {@link #stop()} waits for all queued test classes to be handed out before stopping the processors.</p>
  */
 public class MaxNParallelTestClassProcessor implements TestClassProcessor {
+    // One test class to run, and one to start as soon as it has finished
+    private static final int MAX_TEST_CLASSES_PER_PROCESSOR = 2;
+
     private final int maxProcessors;
     private final Factory<TestClassProcessor> factory;
     private final ActorFactory actorFactory;
+    private final boolean workStealing;
     private TestResultProcessor resultProcessor;
     private int pos;
     private List<TestClassProcessor> processors = new ArrayList<TestClassProcessor>();
@@ -45,10 +68,22 @@ public class MaxNParallelTestClassProcessor implements TestClassProcessor {
     private Actor resultProcessorActor;
     private volatile boolean stoppedNow;
 
+    private final Lock lock = new ReentrantLock();
+    private final Condition stateChanged = lock.newCondition();
+    // Guarded by lock
+    private final Deque<TestClassRunInfo> queuedTestClasses = new ArrayDeque<TestClassRunInfo>();
+    // Guarded by lock
+    private final List<ProcessorState> processorStates = new ArrayList<ProcessorState>();
+
     public MaxNParallelTestClassProcessor(int maxProcessors, Factory<TestClassProcessor> factory, ActorFactory actorFactory) {
+        this(maxProcessors, factory, actorFactory, false);
+    }
+
+    public MaxNParallelTestClassProcessor(int maxProcessors, Factory<TestClassProcessor> factory, ActorFactory actorFactory, boolean workStealing) {
         this.maxProcessors = maxProcessors;
         this.factory = factory;
         this.actorFactory = actorFactory;
+        this.workStealing = workStealing;
     }
 
     @Override
@@ -64,15 +99,21 @@ public class MaxNParallelTestClassProcessor implements TestClassProcessor {
             return;
         }
 
+        if (workStealing) {
+            lock.lock();
+            try {
+                queuedTestClasses.add(testClass);
+                dispatchQueuedTestClasses();
+            } finally {
+                lock.unlock();
+            }
+            return;
+        }
+
         TestClassProcessor processor;
         if (processors.size() < maxProcessors) {
-            processor = factory.create();
-            rawProcessors.add(processor);
-            Actor actor = actorFactory.createActor(processor);
-            processor = actor.getProxy(TestClassProcessor.class);
-            actors.add(actor);
-            processors.add(processor);
-            processor.startProcessing(resultProcessor);
+            TestClassProcessor rawProcessor = factory.create();
+            processor = startProcessor(rawProcessor, rawProcessor, resultProcessor);
         } else {
             processor = processors.get(pos);
             pos = (pos + 1) % processors.size();
@@ -80,10 +121,85 @@ public class MaxNParallelTestClassProcessor implements TestClassProcessor {
         processor.processTestClass(testClass);
     }
 
+    private TestClassProcessor startProcessor(TestClassProcessor rawProcessor, TestClassProcessor actorProcessor, TestResultProcessor processorResults) {
+        rawProcessors.add(rawProcessor);
+        Actor actor = actorFactory.createActor(actorProcessor);
+        TestClassProcessor processor = actor.getProxy(TestClassProcessor.class);
+        actors.add(actor);
+        processors.add(processor);
+        processor.startProcessing(processorResults);
+        return processor;
+    }
+
+    /**
+     * Hands queued test classes to the processors which have capacity, starting new processors when all existing ones are busy.
+     */
+    private void dispatchQueuedTestClasses() {
+        while (!queuedTestClasses.isEmpty() && !stoppedNow) {
+            ProcessorState target = null;
+            for (ProcessorState state : processorStates) {
+                if (!state.ended && state.getAssignedCount() < MAX_TEST_CLASSES_PER_PROCESSOR && (target == null || state.getAssignedCount() < target.getAssignedCount())) {
+                    target = state;
+                }
+            }
+            if ((target == null || target.getAssignedCount() > 0) && processors.size() < maxProcessors) {
+                target = new ProcessorState();
+                TestClassProcessor rawProcessor = factory.create();
+                target.processor = startProcessor(rawProcessor, new FailureTrackingTestClassProcessor(rawProcessor, target), target);
+                processorStates.add(target);
+            }
+            if (target == null) {
+                return;
+            }
+            target.assign(queuedTestClasses.removeFirst());
+        }
+    }
+
+    private boolean hasRunningProcessor() {
+        for (ProcessorState state : processorStates) {
+            if (!state.ended) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void awaitQueuedTestClassesDispatched() {
+        lock.lock();
+        try {
+            while (!queuedTestClasses.isEmpty() && !stoppedNow && hasRunningProcessor()) {
+                stateChanged.await();
+            }
+            if (!stoppedNow && !processorStates.isEmpty()) {
+                // All processors have stopped early, for example because their worker processes crashed.
+                // Hand the remaining test classes out anyway, so the processors report the failure as usual
+                int next = 0;
+                while (!queuedTestClasses.isEmpty()) {
+                    processorStates.get(next).assign(queuedTestClasses.removeFirst());
+                    next = (next + 1) % processorStates.size();
+                }
+            }
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public void stop() {
+        CompositeStoppable stoppable;
+        if (workStealing) {
+            awaitQueuedTestClassesDispatched();
+        }
+        lock.lock();
+        try {
+            stoppable = CompositeStoppable.stoppable(processors).add(actors).add(resultProcessorActor);
+        } finally {
+            lock.unlock();
+        }
         try {
-            CompositeStoppable.stoppable(processors).add(actors).add(resultProcessorActor).stop();
+            stoppable.stop();
         } catch (DispatchException e) {
             throw UncheckedException.throwAsUncheckedException(e.getCause());
         }
@@ -92,8 +208,129 @@ public class MaxNParallelTestClassProcessor implements TestClassProcessor {
     @Override
     public void stopNow() {
         stoppedNow = true;
-        for (TestClassProcessor processor : rawProcessors) {
+        List<TestClassProcessor> processorsToStop;
+        lock.lock();
+        try {
+            queuedTestClasses.clear();
+            stateChanged.signalAll();
+            processorsToStop = new ArrayList<TestClassProcessor>(rawProcessors);
+        } finally {
+            lock.unlock();
+        }
+        for (TestClassProcessor processor : processorsToStop) {
             processor.stopNow();
         }
     }
+
+    /**
+     * Tracks the test classes handed to a processor, by forwarding the results of the processor.
+     */
+    private class ProcessorState implements TestResultProcessor, StreamCompletion {
+        private TestClassProcessor processor;
+        // The test classes handed to the processor which have not started yet, and the ids of the started ones
+        private final List<String> assignedTestClasses = new ArrayList<String>();
+        private final Map<Object, String> runningTestClasses = new HashMap<Object, String>();
+        private boolean ended;
+
+        int getAssignedCount() {
+            return assignedTestClasses.size() + runningTestClasses.size();
+        }
+
+        void assign(TestClassRunInfo testClass) {
+            assignedTestClasses.add(testClass.getTestClassName());
+            processor.processTestClass(testClass);
+        }
+
+        @Override
+        public void started(TestDescriptorInternal test, TestStartEvent event) {
+            resultProcessor.started(test, event);
+            if (test.isComposite() && test.getClassName() != null) {
+                lock.lock();
+                try {
+                    if (assignedTestClasses.remove(test.getClassName())) {
+                        runningTestClasses.put(test.getId(), test.getClassName());
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        @Override
+        public void completed(Object testId, TestCompleteEvent event) {
+            resultProcessor.completed(testId, event);
+            lock.lock();
+            try {
+                if (runningTestClasses.remove(testId) != null) {
+                    dispatchQueuedTestClasses();
+                    stateChanged.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void output(Object testId, TestOutputEvent event) {
+            resultProcessor.output(testId, event);
+        }
+
+        @Override
+        public void failure(Object testId, Throwable result) {
+            resultProcessor.failure(testId, result);
+        }
+
+        @Override
+        public void endStream() {
+            // The worker process has stopped, so the processor won't report the completion of the remaining test classes
+            lock.lock();
+            try {
+                ended = true;
+                assignedTestClasses.clear();
+                runningTestClasses.clear();
+                dispatchQueuedTestClasses();
+                stateChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Treats a processor which fails to accept a test class, for example because its worker process could not be started, as stopped.
+     */
+    private static class FailureTrackingTestClassProcessor implements TestClassProcessor {
+        private final TestClassProcessor delegate;
+        private final ProcessorState state;
+
+        FailureTrackingTestClassProcessor(TestClassProcessor delegate, ProcessorState state) {
+            this.delegate = delegate;
+            this.state = state;
+        }
+
+        @Override
+        public void startProcessing(TestResultProcessor resultProcessor) {
+            delegate.startProcessing(resultProcessor);
+        }
+
+        @Override
+        public void processTestClass(TestClassRunInfo testClass) {
+            try {
+                delegate.processTestClass(testClass);
+            } catch (RuntimeException e) {
+                state.endStream();
+                throw e;
+            }
+        }
+
+        @Override
+        public void stop() {
+            delegate.stop();
+        }
+
+        @Override
+        public void stopNow() {
+            delegate.stopNow();
+        }
+    }
 }
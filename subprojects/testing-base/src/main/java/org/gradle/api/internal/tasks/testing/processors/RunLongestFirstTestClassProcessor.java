@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.testing.processors;
+
+import org.gradle.api.internal.tasks.testing.TestClassProcessor;
+import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
+import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Passes the test classes to its delegate ordered by their duration in the previous run, longest first, so the longest test classes
+ * don't end up running last on one of the test workers while the others sit idle.
+ *
+ * The test classes are ordered in batches of a bounded size, so the test workers can start on the first batch while the remaining
+ * test classes are still being detected.
+ *
+ * Test classes without a previous duration are assumed to take the average duration of the others.
+ * When there are no previous durations, the test classes are passed to the delegate as they are received.
+ */
+public class RunLongestFirstTestClassProcessor implements TestClassProcessor {
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final Map<String, Long> previousDurations;
+    private final TestClassProcessor delegate;
+    private final int batchSize;
+    private final long defaultDuration;
+    private final List<TestClassRunInfo> testClasses = new ArrayList<TestClassRunInfo>();
+
+    public RunLongestFirstTestClassProcessor(Map<String, Long> previousDurations, TestClassProcessor delegate) {
+        this(previousDurations, delegate, DEFAULT_BATCH_SIZE);
+    }
+
+    public RunLongestFirstTestClassProcessor(Map<String, Long> previousDurations, TestClassProcessor delegate, int batchSize) {
+        this.previousDurations = previousDurations;
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.defaultDuration = averageOf(previousDurations.values());
+    }
+
+    @Override
+    public void startProcessing(TestResultProcessor resultProcessor) {
+        delegate.startProcessing(resultProcessor);
+    }
+
+    @Override
+    public void processTestClass(TestClassRunInfo testClass) {
+        if (previousDurations.isEmpty()) {
+            delegate.processTestClass(testClass);
+        } else {
+            testClasses.add(testClass);
+            if (testClasses.size() >= batchSize) {
+                processBatch();
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        processBatch();
+        delegate.stop();
+    }
+
+    private void processBatch() {
+        // Stable, so test classes with the same duration keep the order in which they were received
+        Collections.sort(testClasses, new Comparator<TestClassRunInfo>() {
+            @Override
+            public int compare(TestClassRunInfo o1, TestClassRunInfo o2) {
+                long duration1 = durationOf(o1);
+                long duration2 = durationOf(o2);
+                return duration1 > duration2 ? -1 : duration1 == duration2 ? 0 : 1;
+            }
+        });
+        for (TestClassRunInfo testClass : testClasses) {
+            delegate.processTestClass(testClass);
+        }
+        testClasses.clear();
+    }
+
+    @Override
+    public void stopNow() {
+        delegate.stopNow();
+    }
+
+    private long durationOf(TestClassRunInfo testClass) {
+        Long duration = previousDurations.get(testClass.getTestClassName());
+        return duration != null ? duration : defaultDuration;
+    }
+
+    private static long averageOf(Iterable<Long> durations) {
+        long total = 0;
+        int count = 0;
+        for (Long duration : durations) {
+            total += duration;
+            count++;
+        }
+        return count == 0 ? 0 : total / count;
+    }
+}
@@ -26,6 +26,9 @@ import java.util.Set;
 /**
  * In order to speed up the development feedback cycle, this class guarantee previous failed test classes
  * to be passed to its delegate first.
+ *
+ * Previous failed test classes are passed to the delegate as they are received, the other test classes once all test classes have been received.
+ * When there are no previous failed test classes, all test classes are passed to the delegate as they are received.
  */
 public class RunPreviousFailedFirstTestClassProcessor implements TestClassProcessor {
     private final Set<String> previousFailedTestClasses;
@@ -46,7 +49,13 @@ public class RunPreviousFailedFirstTestClassProcessor implements TestClassProces
     @Override
     public void processTestClass(TestClassRunInfo testClass) {
         if (previousFailedTestClasses.contains(testClass.getTestClassName())) {
-            prioritizedTestClasses.add(testClass);
+            if (prioritizedTestClasses.add(testClass)) {
+                delegate.processTestClass(testClass);
+            }
+        } else if (previousFailedTestClasses.isEmpty()) {
+            if (otherTestClasses.add(testClass)) {
+                delegate.processTestClass(testClass);
+            }
         } else {
             otherTestClasses.add(testClass);
         }
@@ -54,11 +63,10 @@ public class RunPreviousFailedFirstTestClassProcessor implements TestClassProces
 
     @Override
     public void stop() {
-        for (TestClassRunInfo test : prioritizedTestClasses) {
-            delegate.processTestClass(test);
-        }
-        for (TestClassRunInfo test : otherTestClasses) {
-            delegate.processTestClass(test);
+        if (!previousFailedTestClasses.isEmpty()) {
+            for (TestClassRunInfo test : otherTestClasses) {
+                delegate.processTestClass(test);
+            }
         }
         delegate.stop();
     }
@@ -35,13 +35,25 @@ import org.gradle.reporting.HtmlReportRenderer;
 import org.gradle.reporting.ReportRenderer;
 import org.gradle.util.GFileUtils;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
+import java.util.concurrent.Semaphore;
 
 import static org.gradle.api.tasks.testing.TestResult.ResultType.SKIPPED;
 
+/**
+ * Generates the HTML test report.
+ *
+ * The class pages are rendered in parallel while the results are read from the results provider, and the results of the individual tests of a class are discarded once its page has been rendered.
+ * Only the summary of each class and the failed and ignored tests are kept for the package pages and the overview page, which are rendered afterwards.
+ */
 public class DefaultTestReport implements TestReporter {
+    /**
+     * The maximum number of class pages which may wait to be rendered, and so the maximum number of classes whose test results are kept at the same time.
+     */
+    private static final int MAX_QUEUED_CLASS_PAGES = 32;
+
     private final BuildOperationExecutor buildOperationExecutor;
     private final static Logger LOG = Logging.getLogger(DefaultTestReport.class);
 
@@ -54,32 +66,23 @@ public class DefaultTestReport implements TestReporter {
         LOG.info("Generating HTML test report...");
 
         Timer clock = Time.startTimer();
-        AllTestResults model = loadModelFromProvider(resultsProvider);
-        generateFiles(model, resultsProvider, reportDir);
+        generateFiles(new AllTestResults(), resultsProvider, reportDir);
         LOG.info("Finished generating test html results ({}) into: {}", clock.getElapsed(), reportDir);
     }
 
-    private AllTestResults loadModelFromProvider(TestResultsProvider resultsProvider) {
-        final AllTestResults model = new AllTestResults();
-        resultsProvider.visitClasses(new Action<TestClassResult>() {
-            @Override
-            public void execute(TestClassResult classResult) {
-                model.addTestClass(classResult.getId(), classResult.getClassName(), classResult.getClassDisplayName());
-                List<TestMethodResult> collectedResults = classResult.getResults();
-                for (TestMethodResult collectedResult : collectedResults) {
-                    final TestResult testResult = model.addTest(classResult.getId(), classResult.getClassName(), classResult.getClassDisplayName(), collectedResult.getName(), collectedResult.getDisplayName(), collectedResult.getDuration());
-                    if (collectedResult.getResultType() == SKIPPED) {
-                        testResult.setIgnored();
-                    } else {
-                        List<TestFailure> failures = collectedResult.getFailures();
-                        for (TestFailure failure : failures) {
-                            testResult.addFailure(failure);
-                        }
-                    }
+    private static ClassTestResults addClassResults(AllTestResults model, TestClassResult classResult) {
+        ClassTestResults classResults = model.addTestClass(classResult.getId(), classResult.getClassName(), classResult.getClassDisplayName());
+        for (TestMethodResult collectedResult : classResult.getResults()) {
+            final TestResult testResult = model.addTest(classResult.getId(), classResult.getClassName(), classResult.getClassDisplayName(), collectedResult.getName(), collectedResult.getDisplayName(), collectedResult.getDuration());
+            if (collectedResult.getResultType() == SKIPPED) {
+                testResult.setIgnored();
+            } else {
+                for (TestFailure failure : collectedResult.getFailures()) {
+                    testResult.addFailure(failure);
                 }
             }
-        });
-        return model;
+        }
+        return classResults;
     }
 
     private void generateFiles(AllTestResults model, final TestResultsProvider resultsProvider, final File reportDir) {
@@ -102,15 +105,30 @@ public class DefaultTestReport implements TestReporter {
             htmlRenderer.render(model, new ReportRenderer<AllTestResults, HtmlReportBuilder>() {
                 @Override
                 public void render(final AllTestResults model, final HtmlReportBuilder output) throws IOException {
+                    buildOperationExecutor.runAll(new Action<BuildOperationQueue<ClassPageGenerator>>() {
+                        @Override
+                        public void execute(final BuildOperationQueue<ClassPageGenerator> queue) {
+                            final Semaphore queuedClassPages = new Semaphore(MAX_QUEUED_CLASS_PAGES);
+                            resultsProvider.visitClasses(new Action<TestClassResult>() {
+                                @Override
+                                public void execute(TestClassResult classResult) {
+                                    ClassTestResults classResults = addClassResults(model, classResult);
+                                    if (queuedClassPages.tryAcquire()) {
+                                        queue.add(new ClassPageGenerator(classResults, resultsProvider, output, queuedClassPages));
+                                    } else {
+                                        // Enough class pages are waiting, so render this one on the current thread instead of holding on to more results
+                                        buildOperationExecutor.run(new ClassPageGenerator(classResults, resultsProvider, output, null));
+                                    }
+                                }
+                            });
+                        }
+                    });
                     buildOperationExecutor.runAll(new Action<BuildOperationQueue<HtmlReportFileGenerator<? extends CompositeTestResults>>>() {
                         @Override
                         public void execute(BuildOperationQueue<HtmlReportFileGenerator<? extends CompositeTestResults>> queue) {
                             queue.add(generator("index.html", model, new OverviewPageRenderer(), output));
                             for (PackageTestResults packageResults : model.getPackages()) {
                                 queue.add(generator(packageResults.getBaseUrl(), packageResults, new PackagePageRenderer(), output));
-                                for (ClassTestResults classResults : packageResults.getClasses()) {
-                                    queue.add(generator(classResults.getBaseUrl(), classResults, new ClassPageRenderer(resultsProvider), output));
-                                }
                             }
                         }
                     });
@@ -148,4 +166,27 @@ public class DefaultTestReport implements TestReporter {
             output.renderHtmlPage(fileUrl, results, renderer);
         }
     }
+
+    private static class ClassPageGenerator extends HtmlReportFileGenerator<ClassTestResults> {
+        private final ClassTestResults classResults;
+        private final Semaphore queuedClassPages;
+
+        ClassPageGenerator(ClassTestResults classResults, TestResultsProvider resultsProvider, HtmlReportBuilder output, @Nullable Semaphore queuedClassPages) {
+            super(classResults.getBaseUrl(), classResults, new ClassPageRenderer(resultsProvider), output);
+            this.classResults = classResults;
+            this.queuedClassPages = queuedClassPages;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            try {
+                super.run(context);
+            } finally {
+                classResults.discardTestResults();
+                if (queuedClassPages != null) {
+                    queuedClassPages.release();
+                }
+            }
+        }
+    }
 }
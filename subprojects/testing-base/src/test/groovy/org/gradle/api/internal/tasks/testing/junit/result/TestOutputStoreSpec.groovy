@@ -145,6 +145,34 @@ class TestOutputStoreSpec extends WorkspaceTest {
         reader.close()
     }
 
+    def "readers share the index and see the output of a later writer"() {
+        when:
+        def writer = output.writer()
+        writer.onOutput(1, output(StdOut, "[out-1]"))
+        writer.close()
+        def reader1 = output.reader()
+        def reader2 = output.reader()
+
+        then:
+        collectAllOutput(reader1, 1, StdOut) == "[out-1]"
+        collectAllOutput(reader2, 1, StdOut) == "[out-1]"
+
+        when:
+        writer = output.writer()
+        writer.onOutput(2, output(StdOut, "[out-2]"))
+        writer.close()
+        def reader3 = output.reader()
+
+        then:
+        collectAllOutput(reader3, 1, StdOut) == ""
+        collectAllOutput(reader3, 2, StdOut) == "[out-2]"
+
+        cleanup:
+        reader1?.close()
+        reader2?.close()
+        reader3?.close()
+    }
+
     def "can open empty reader"() {
         // neither file
         expect:
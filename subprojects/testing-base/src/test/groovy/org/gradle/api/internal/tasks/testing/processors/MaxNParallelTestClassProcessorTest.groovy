@@ -16,9 +16,13 @@
 
 package org.gradle.api.internal.tasks.testing.processors
 
+import org.gradle.api.internal.tasks.testing.DefaultTestClassDescriptor
+import org.gradle.api.internal.tasks.testing.DefaultTestClassRunInfo
 import org.gradle.api.internal.tasks.testing.TestClassProcessor
 import org.gradle.api.internal.tasks.testing.TestClassRunInfo
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent
 import org.gradle.api.internal.tasks.testing.TestResultProcessor
+import org.gradle.api.internal.tasks.testing.TestStartEvent
 import org.gradle.internal.actor.Actor
 import org.gradle.internal.actor.ActorFactory
 import spock.lang.Specification
@@ -202,4 +206,157 @@ class MaxNParallelTestClassProcessorTest extends Specification {
         1 * processor1.stopNow()
         1 * processor2.stopNow()
     }
+
+    def "hands queued test classes to the processors which complete their test classes"() {
+        def processor = new MaxNParallelTestClassProcessor(2, factory, actorFactory, true)
+        TestClassProcessor asyncProcessor1 = Mock()
+        TestClassProcessor asyncProcessor2 = Mock()
+        TestResultProcessor results1 = null
+        TestResultProcessor results2 = null
+        def tests = (1..6).collect { new DefaultTestClassRunInfo("Class$it") }
+
+        given:
+        actorFactory.createActor(resultProcessor) >> resultProcessorActor
+        resultProcessorActor.getProxy(TestResultProcessor) >> asyncResultProcessor
+        factory.create() >> Stub(TestClassProcessor)
+        actorFactory.createActor(_ as TestClassProcessor) >>> [actor(asyncProcessor1), actor(asyncProcessor2)]
+        asyncProcessor1.startProcessing(_) >> { TestResultProcessor results -> results1 = results }
+        asyncProcessor2.startProcessing(_) >> { TestResultProcessor results -> results2 = results }
+        processor.startProcessing(resultProcessor)
+
+        when:
+        tests.each { processor.processTestClass(it) }
+
+        then:
+        1 * asyncProcessor1.processTestClass(tests[0])
+        1 * asyncProcessor2.processTestClass(tests[1])
+        1 * asyncProcessor1.processTestClass(tests[2])
+        1 * asyncProcessor2.processTestClass(tests[3])
+        0 * asyncProcessor1.processTestClass(_)
+        0 * asyncProcessor2.processTestClass(_)
+
+        when:
+        results2.started(new DefaultTestClassDescriptor(2, "Class2"), new TestStartEvent(0))
+        results2.completed(2, new TestCompleteEvent(10))
+
+        then:
+        1 * asyncResultProcessor.started({ it.id == 2 }, _)
+        1 * asyncResultProcessor.completed(2, _)
+        1 * asyncProcessor2.processTestClass(tests[4])
+        0 * asyncProcessor1.processTestClass(_)
+
+        when:
+        results1.started(new DefaultTestClassDescriptor(1, "Class1"), new TestStartEvent(0))
+        results1.completed(1, new TestCompleteEvent(10))
+
+        then:
+        1 * asyncProcessor1.processTestClass(tests[5])
+
+        when:
+        processor.stop()
+
+        then:
+        1 * asyncProcessor1.stop()
+        1 * asyncProcessor2.stop()
+        1 * resultProcessorActor.stop()
+        0 * asyncProcessor1.processTestClass(_)
+        0 * asyncProcessor2.processTestClass(_)
+    }
+
+    def "hands queued test classes to the remaining processors when a worker process stops"() {
+        def processor = new MaxNParallelTestClassProcessor(2, factory, actorFactory, true)
+        TestClassProcessor asyncProcessor1 = Mock()
+        TestClassProcessor asyncProcessor2 = Mock()
+        TestResultProcessor results1 = null
+        TestResultProcessor results2 = null
+        def tests = (1..5).collect { new DefaultTestClassRunInfo("Class$it") }
+
+        given:
+        actorFactory.createActor(resultProcessor) >> resultProcessorActor
+        resultProcessorActor.getProxy(TestResultProcessor) >> asyncResultProcessor
+        factory.create() >> Stub(TestClassProcessor)
+        actorFactory.createActor(_ as TestClassProcessor) >>> [actor(asyncProcessor1), actor(asyncProcessor2)]
+        asyncProcessor1.startProcessing(_) >> { TestResultProcessor results -> results1 = results }
+        asyncProcessor2.startProcessing(_) >> { TestResultProcessor results -> results2 = results }
+        processor.startProcessing(resultProcessor)
+        tests.each { processor.processTestClass(it) }
+
+        when:
+        results1.endStream()
+        results2.started(new DefaultTestClassDescriptor(2, "Class2"), new TestStartEvent(0))
+        results2.completed(2, new TestCompleteEvent(10))
+
+        then:
+        1 * asyncProcessor2.processTestClass(tests[4])
+        0 * asyncProcessor1.processTestClass(_)
+    }
+
+    def "stops waiting for idle processors when all worker processes have stopped"() {
+        def processor = new MaxNParallelTestClassProcessor(1, factory, actorFactory, true)
+        TestClassProcessor asyncProcessor1 = Mock()
+        TestResultProcessor results1 = null
+        def tests = (1..3).collect { new DefaultTestClassRunInfo("Class$it") }
+
+        given:
+        actorFactory.createActor(resultProcessor) >> resultProcessorActor
+        resultProcessorActor.getProxy(TestResultProcessor) >> asyncResultProcessor
+        factory.create() >> Stub(TestClassProcessor)
+        actorFactory.createActor(_ as TestClassProcessor) >> actor(asyncProcessor1)
+        asyncProcessor1.startProcessing(_) >> { TestResultProcessor results -> results1 = results }
+        processor.startProcessing(resultProcessor)
+        tests.each { processor.processTestClass(it) }
+
+        when:
+        results1.endStream()
+        processor.stop()
+
+        then:
+        1 * asyncProcessor1.processTestClass(tests[2])
+
+        then:
+        1 * asyncProcessor1.stop()
+    }
+
+    def "treats processor which fails to accept a test class as stopped"() {
+        def processor = new MaxNParallelTestClassProcessor(1, factory, actorFactory, true)
+        def failure = new RuntimeException("could not start worker")
+        TestClassProcessor rawProcessor = Mock()
+        TestClassProcessor actorTarget = null
+        TestClassProcessor asyncProcessor1 = Mock()
+        def tests = (1..3).collect { new DefaultTestClassRunInfo("Class$it") }
+
+        given:
+        actorFactory.createActor(resultProcessor) >> resultProcessorActor
+        resultProcessorActor.getProxy(TestResultProcessor) >> asyncResultProcessor
+        factory.create() >> rawProcessor
+        actorFactory.createActor(_ as TestClassProcessor) >> { TestClassProcessor target ->
+            actorTarget = target
+            actor(asyncProcessor1)
+        }
+        rawProcessor.processTestClass(_) >> { throw failure }
+        processor.startProcessing(resultProcessor)
+        tests.each { processor.processTestClass(it) }
+
+        when:
+        actorTarget.processTestClass(tests[0])
+
+        then:
+        def e = thrown(RuntimeException)
+        e == failure
+
+        when:
+        processor.stop()
+
+        then:
+        1 * asyncProcessor1.processTestClass(tests[2])
+
+        then:
+        1 * asyncProcessor1.stop()
+    }
+
+    private Actor actor(TestClassProcessor asyncProcessor) {
+        return Stub(Actor) {
+            getProxy(TestClassProcessor) >> asyncProcessor
+        }
+    }
 }
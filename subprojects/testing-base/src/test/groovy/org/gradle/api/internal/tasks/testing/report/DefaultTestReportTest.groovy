@@ -466,6 +466,43 @@ class DefaultTestReportTest extends Specification {
         numThreads << [ 1, 4 ]
     }
 
+    @Unroll
+    def "generates complete class pages when there are more classes than can be queued - #numThreads parallel thread(s)"() {
+        given:
+        def classCount = DefaultTestReport.MAX_QUEUED_CLASS_PAGES * 3 + 1
+        def testTestResults = manyClassesBuildResults(classCount)
+        def sequentialReportDir = tmpDir.file('sequential-report')
+        reportWithMaxThreads(1).generateReport(testTestResults, sequentialReportDir)
+        report = reportWithMaxThreads(numThreads)
+
+        when:
+        report.generateReport(testTestResults, reportDir)
+
+        then:
+        def index = results(indexFile)
+        index.assertHasTests(classCount * 2)
+        index.assertHasFailures(classCount)
+
+        (0..<classCount).each { i ->
+            def className = "org.gradle.package${i % 5}.Test${i}"
+            def classFile = results(reportDir.file("classes/${className}.html"))
+            classFile.assertHasTests(2)
+            classFile.assertHasFailures(1)
+            classFile.assertHasStandardOutput("output of ${className}")
+            classFile.testDetails('passed').assertPassed()
+            classFile.testDetails('failed').assertFailed()
+        }
+
+        and:
+        def classPages = reportDir.file('classes').list().sort()
+        classPages.size() == classCount
+        classPages == sequentialReportDir.file('classes').list().sort()
+        classPages.every { withoutTimestamp(reportDir.file("classes/${it}").text) == withoutTimestamp(sequentialReportDir.file("classes/${it}").text) }
+
+        where:
+        numThreads << [ 1, 4 ]
+    }
+
     def reportsOnClassesInDefaultPackage() {
         given:
         report = reportWithMaxThreads(1)
@@ -629,6 +666,29 @@ class DefaultTestReportTest extends Specification {
         }
     }
 
+    TestResultsProvider manyClassesBuildResults(int classCount) {
+        buildResults {
+            (0..<classCount).each { i ->
+                def className = "org.gradle.package${i % 5}.Test${i}"
+                testClassResult(className) {
+                    testcase("passed") {
+                        duration = 1000;
+                        stdout "output of ${className}"
+                    }
+                    testcase("failed") {
+                        duration = 1000;
+                        failure("${className} failed", "at ${className}")
+                    }
+                }
+            }
+        }
+    }
+
+    private static String withoutTimestamp(String page) {
+        // The page footer contains the time the page was generated
+        return page.replaceAll(/<\/a> at [^<]*/, '</a>')
+    }
+
     def results(TestFile file) {
         return new HtmlTestResultsFixture(file)
     }
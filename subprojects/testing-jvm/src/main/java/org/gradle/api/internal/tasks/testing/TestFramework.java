@@ -44,4 +44,11 @@ public interface TestFramework {
      * executed before starting each worker process.
      */
     Action<WorkerProcessBuilder> getWorkerConfigurationAction();
+
+    /**
+     * Returns true when the test class processors in the worker processes run each test class as soon as they receive it, and report the start
+     * and completion of the test class. Test classes can then be handed out to the worker processes as they become idle.
+     * Otherwise, the test class processors may run the test classes only when they are stopped.
+     */
+    boolean isRunsTestClassesOnReceipt();
 }
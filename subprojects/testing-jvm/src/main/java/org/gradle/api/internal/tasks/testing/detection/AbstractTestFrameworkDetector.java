@@ -16,23 +16,19 @@
 
 package org.gradle.api.internal.tasks.testing.detection;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.gradle.api.internal.file.RelativeFile;
 import org.gradle.api.internal.tasks.testing.DefaultTestClassRunInfo;
 import org.gradle.api.internal.tasks.testing.TestClassProcessor;
+import org.gradle.cache.internal.FileContentCache;
+import org.gradle.cache.internal.FileContentCacheFactory;
 import org.gradle.internal.Factories;
 import org.gradle.internal.Factory;
-import org.gradle.internal.IoActions;
-import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Type;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -41,26 +37,36 @@ import java.util.Set;
 
 import static org.gradle.internal.FileUtils.hasExtension;
 
+/**
+ * Detects test classes using the {@link TestClassDetails} of their class files and of the class files of their super classes.
+ *
+ * The details are kept in a cache which is keyed by the content hash of the class file and reused across builds, so only class files which have changed are read again.
+ */
 public abstract class AbstractTestFrameworkDetector<T extends TestClassVisitor> implements TestFrameworkDetector {
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractTestFrameworkDetector.class);
     private static final String JAVA_LANG_OBJECT = "java/lang/Object";
+    private static final int CLASS_DETAILS_CACHE_SIZE = 200000;
 
     private List<File> testClassDirectories;
     private final ClassFileExtractionManager classFileExtractionManager;
+    private final FileContentCache<TestClassDetails> classDetailsCache;
     private final Map<File, Boolean> superClasses;
     private TestClassProcessor testClassProcessor;
 
     private Set<File> testClassesDirectories;
     private Set<File> testClasspath;
 
-    protected AbstractTestFrameworkDetector(ClassFileExtractionManager classFileExtractionManager) {
+    /**
+     * @param classDetailsCacheName The name of the class details cache, which must be unique to the test framework.
+     * @param classVisitorFactory Creates the class visitors which read the class details. It is retained by the class details cache across builds.
+     */
+    protected AbstractTestFrameworkDetector(ClassFileExtractionManager classFileExtractionManager, FileContentCacheFactory cacheFactory, String classDetailsCacheName, Factory<T> classVisitorFactory) {
         assert classFileExtractionManager != null;
         this.classFileExtractionManager = classFileExtractionManager;
+        this.classDetailsCache = cacheFactory.newCache(classDetailsCacheName, CLASS_DETAILS_CACHE_SIZE, new TestClassDetailsReader(classVisitorFactory), new TestClassDetails.Serializer());
         this.superClasses = new HashMap<File, Boolean>();
     }
 
-    protected abstract T createClassVisitor();
-
     private File getSuperTestClassFile(String superClassName) {
         prepareClasspath();
         if (StringUtils.isEmpty(superClassName)) {
@@ -118,20 +124,11 @@ public abstract class AbstractTestFrameworkDetector<T extends TestClassVisitor>
     }
 
     private TestClass readClassFile(File testClassFile, Factory<String> fallbackClassNameProvider) {
-        final TestClassVisitor classVisitor = createClassVisitor();
-
-        InputStream classStream = null;
-        try {
-            classStream = new BufferedInputStream(new FileInputStream(testClassFile));
-            final ClassReader classReader = new ClassReader(IOUtils.toByteArray(classStream));
-            classReader.accept(classVisitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
-            return TestClass.forParseableFile(classVisitor);
-        } catch (Throwable e) {
-            LOGGER.debug("Failed to read class file " + testClassFile.getAbsolutePath() + "; assuming it's a test class and continuing", e);
-            return TestClass.forUnparseableFile(fallbackClassNameProvider.create());
-        } finally {
-            IoActions.closeQuietly(classStream);
+        TestClassDetails details = classDetailsCache.get(testClassFile);
+        if (details.isParseable()) {
+            return TestClass.forDetails(details);
         }
+        return TestClass.forUnparseableFile(fallbackClassNameProvider.create());
     }
 
     @Override
@@ -216,8 +213,8 @@ public abstract class AbstractTestFrameworkDetector<T extends TestClassVisitor>
         private final String className;
         private final String superClassName;
 
-        static TestClass forParseableFile(TestClassVisitor testClassVisitor) {
-            return new TestClass(testClassVisitor.isTest(), testClassVisitor.isAbstract(), testClassVisitor.getClassName(), testClassVisitor.getSuperClassName());
+        static TestClass forDetails(TestClassDetails details) {
+            return new TestClass(details.isTest(), details.isAbstract(), details.getClassName(), details.getSuperClassName());
         }
 
         static TestClass forUnparseableFile(String className) {
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.detection;
+
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+
+import javax.annotation.Nullable;
+
+/**
+ * The details of a class file which are used to detect test classes. These only depend on the content of the class file, so they can be cached by its hash.
+ */
+public class TestClassDetails {
+    private static final TestClassDetails UNPARSEABLE = new TestClassDetails(true, false, null, null);
+
+    private final boolean test;
+    private final boolean isAbstract;
+    private final String className;
+    private final String superClassName;
+
+    static TestClassDetails forParseableFile(TestClassVisitor testClassVisitor) {
+        return new TestClassDetails(testClassVisitor.isTest(), testClassVisitor.isAbstract(), testClassVisitor.getClassName(), testClassVisitor.getSuperClassName());
+    }
+
+    /**
+     * Returns the details of a class file which could not be read. Such a class file is assumed to contain a test class.
+     */
+    static TestClassDetails forUnparseableFile() {
+        return UNPARSEABLE;
+    }
+
+    private TestClassDetails(boolean test, boolean isAbstract, @Nullable String className, @Nullable String superClassName) {
+        this.test = test;
+        this.isAbstract = isAbstract;
+        this.className = className;
+        this.superClassName = superClassName;
+    }
+
+    /**
+     * Whether the class itself is marked as a test class, without looking at its super classes.
+     */
+    public boolean isTest() {
+        return test;
+    }
+
+    public boolean isAbstract() {
+        return isAbstract;
+    }
+
+    public boolean isParseable() {
+        return className != null;
+    }
+
+    /**
+     * The internal name of the class, or {@code null} when the class file could not be read.
+     */
+    @Nullable
+    public String getClassName() {
+        return className;
+    }
+
+    @Nullable
+    public String getSuperClassName() {
+        return superClassName;
+    }
+
+    public static class Serializer extends AbstractSerializer<TestClassDetails> {
+        @Override
+        public TestClassDetails read(Decoder decoder) throws Exception {
+            String className = decoder.readNullableString();
+            if (className == null) {
+                return UNPARSEABLE;
+            }
+            String superClassName = decoder.readNullableString();
+            boolean test = decoder.readBoolean();
+            boolean isAbstract = decoder.readBoolean();
+            return new TestClassDetails(test, isAbstract, className, superClassName);
+        }
+
+        @Override
+        public void write(Encoder encoder, TestClassDetails value) throws Exception {
+            encoder.writeNullableString(value.className);
+            if (value.className != null) {
+                encoder.writeNullableString(value.superClassName);
+                encoder.writeBoolean(value.test);
+                encoder.writeBoolean(value.isAbstract);
+            }
+        }
+    }
+}
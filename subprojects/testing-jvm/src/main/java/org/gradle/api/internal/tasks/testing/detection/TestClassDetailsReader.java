@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.detection;
+
+import org.apache.commons.io.IOUtils;
+import org.gradle.cache.internal.FileContentCacheFactory;
+import org.gradle.internal.Factory;
+import org.gradle.internal.IoActions;
+import org.objectweb.asm.ClassReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+/**
+ * Reads the {@link TestClassDetails} of a class file using the class visitor of a test framework.
+ *
+ * Instances are retained by the cross-build class details cache, so they must not reference any state of a particular build or test task.
+ */
+public class TestClassDetailsReader implements FileContentCacheFactory.Calculator<TestClassDetails> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TestClassDetailsReader.class);
+
+    private final Factory<? extends TestClassVisitor> classVisitorFactory;
+
+    public TestClassDetailsReader(Factory<? extends TestClassVisitor> classVisitorFactory) {
+        this.classVisitorFactory = classVisitorFactory;
+    }
+
+    @Override
+    public TestClassDetails calculate(File classFile, boolean isRegularFile) {
+        if (!isRegularFile) {
+            LOGGER.debug("Class file " + classFile.getAbsolutePath() + " does not exist; assuming it's a test class and continuing");
+            return TestClassDetails.forUnparseableFile();
+        }
+        TestClassVisitor classVisitor = classVisitorFactory.create();
+        InputStream classStream = null;
+        try {
+            classStream = new BufferedInputStream(new FileInputStream(classFile));
+            ClassReader classReader = new ClassReader(IOUtils.toByteArray(classStream));
+            classReader.accept(classVisitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+            return TestClassDetails.forParseableFile(classVisitor);
+        } catch (Throwable e) {
+            LOGGER.debug("Failed to read class file " + classFile.getAbsolutePath() + "; assuming it's a test class and continuing", e);
+            return TestClassDetails.forUnparseableFile();
+        } finally {
+            IoActions.closeQuietly(classStream);
+        }
+    }
+}
@@ -17,15 +17,10 @@ package org.gradle.api.internal.tasks.testing.junit;
 
 import org.gradle.internal.classanalysis.AsmConstants;
 import org.gradle.api.internal.tasks.testing.detection.TestClassVisitor;
-import org.gradle.api.internal.tasks.testing.detection.TestFrameworkDetector;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.MethodVisitor;
 
 class JUnitTestClassDetector extends TestClassVisitor {
-    JUnitTestClassDetector(final TestFrameworkDetector detector) {
-        super(detector);
-    }
-
     @Override
     protected boolean ignoreNonStaticInnerClass(){
         return true;
@@ -55,6 +55,11 @@ public class JUnitPlatformTestFramework implements TestFramework {
             filter.getCommandLineIncludePatterns()));
     }
 
+    @Override
+    public boolean isRunsTestClassesOnReceipt() {
+        return false;
+    }
+
     @Override
     public Action<WorkerProcessBuilder> getWorkerConfigurationAction() {
         return new Action<WorkerProcessBuilder>() {
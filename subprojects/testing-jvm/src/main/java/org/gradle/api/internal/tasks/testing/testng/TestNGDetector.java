@@ -17,15 +17,19 @@ package org.gradle.api.internal.tasks.testing.testng;
 
 import org.gradle.api.internal.tasks.testing.detection.AbstractTestFrameworkDetector;
 import org.gradle.api.internal.tasks.testing.detection.ClassFileExtractionManager;
+import org.gradle.cache.internal.FileContentCacheFactory;
+import org.gradle.internal.Factory;
 
 class TestNGDetector extends AbstractTestFrameworkDetector<TestNGTestClassDetector> {
-    TestNGDetector(ClassFileExtractionManager classFileExtractionManager) {
-        super(classFileExtractionManager);
-    }
+    private static final Factory<TestNGTestClassDetector> CLASS_VISITOR_FACTORY = new Factory<TestNGTestClassDetector>() {
+        @Override
+        public TestNGTestClassDetector create() {
+            return new TestNGTestClassDetector();
+        }
+    };
 
-    @Override
-    protected TestNGTestClassDetector createClassVisitor() {
-        return new TestNGTestClassDetector(this);
+    TestNGDetector(ClassFileExtractionManager classFileExtractionManager, FileContentCacheFactory cacheFactory) {
+        super(classFileExtractionManager, cacheFactory, "testNGTestClassDetails", CLASS_VISITOR_FACTORY);
     }
 
     @Override
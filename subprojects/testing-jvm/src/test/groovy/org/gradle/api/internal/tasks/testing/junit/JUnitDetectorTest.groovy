@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.junit
+
+import org.gradle.api.file.RelativePath
+import org.gradle.api.internal.file.RelativeFile
+import org.gradle.api.internal.tasks.testing.TestClassProcessor
+import org.gradle.api.internal.tasks.testing.detection.ClassFileExtractionManager
+import org.gradle.cache.internal.FileContentCache
+import org.gradle.cache.internal.FileContentCacheFactory
+import org.gradle.internal.Factory
+import org.gradle.internal.serialize.Serializer
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import spock.lang.Specification
+
+class JUnitDetectorTest extends Specification {
+    @Rule TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def classesDir = tmpDir.createDir("classes")
+    def readClassFiles = []
+    def cacheFactory = new InMemoryFileContentCacheFactory(readClassFiles)
+    def processor = Mock(TestClassProcessor)
+
+    def "publishes concrete classes which are tests or extend a test class"() {
+        classFile("org/gradle/Base", "java/lang/Object", true, true)
+        def sub = classFile("org/gradle/Sub", "org/gradle/Base")
+        def junit3 = classFile("org/gradle/Junit3", "junit/framework/TestCase")
+        def other = classFile("org/gradle/Other", "java/lang/Object")
+
+        when:
+        detect(sub, junit3, other)
+
+        then:
+        1 * processor.processTestClass({ it.testClassName == "org.gradle.Sub" })
+        1 * processor.processTestClass({ it.testClassName == "org.gradle.Junit3" })
+        0 * processor._
+    }
+
+    def "reads class files again only when their content has changed"() {
+        classFile("org/gradle/Base", "java/lang/Object", true, true)
+        def sub = classFile("org/gradle/Sub", "org/gradle/Base")
+        def other = classFile("org/gradle/Other", "java/lang/Object")
+        detect(sub, other)
+
+        when:
+        readClassFiles.clear()
+        detect(sub, other)
+
+        then:
+        readClassFiles.empty
+        1 * processor.processTestClass({ it.testClassName == "org.gradle.Sub" })
+        0 * processor._
+
+        when:
+        classFile("org/gradle/Other", "java/lang/Object", false, true)
+        detect(sub, other)
+
+        then:
+        readClassFiles == ["Other.class"]
+        1 * processor.processTestClass({ it.testClassName == "org.gradle.Sub" })
+        1 * processor.processTestClass({ it.testClassName == "org.gradle.Other" })
+        0 * processor._
+    }
+
+    def "assumes that class files which cannot be read contain test classes"() {
+        def broken = classesDir.createFile("org/gradle/Broken.class")
+        broken.text = "broken"
+
+        when:
+        detect(broken)
+
+        then:
+        1 * processor.processTestClass({ it.testClassName == "org.gradle.Broken" })
+        0 * processor._
+    }
+
+    private void detect(TestFile... classFiles) {
+        def detector = new JUnitDetector(new ClassFileExtractionManager({ tmpDir.createDir("tmp") } as Factory<File>), cacheFactory)
+        detector.setTestClasses([classesDir] as Set)
+        detector.startDetection(processor)
+        classFiles.each {
+            detector.processTestClass(new RelativeFile(it, RelativePath.parse(true, it.relativizeFrom(classesDir).path)))
+        }
+    }
+
+    private TestFile classFile(String name, String superName, boolean isAbstract = false, boolean hasTestMethod = false) {
+        def writer = new ClassWriter(0)
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | (isAbstract ? Opcodes.ACC_ABSTRACT : 0), name, null, superName, null)
+        if (hasTestMethod) {
+            def method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "test", "()V", null, null)
+            method.visitAnnotation("Lorg/junit/Test;", true).visitEnd()
+            method.visitEnd()
+        }
+        writer.visitEnd()
+        def file = classesDir.file(name + ".class")
+        file.parentFile.mkdirs()
+        file.bytes = writer.toByteArray()
+        return file
+    }
+
+    /**
+     * Keeps the values calculated for class files by their content, like the persistent file content cache.
+     */
+    private static class InMemoryFileContentCacheFactory implements FileContentCacheFactory {
+        private final Map<String, Map<String, Object>> caches = [:]
+        private final List<String> readFiles
+
+        InMemoryFileContentCacheFactory(List<String> readFiles) {
+            this.readFiles = readFiles
+        }
+
+        @Override
+        <V> FileContentCache<V> newCache(String name, int normalizedCacheSize, FileContentCacheFactory.Calculator<? extends V> calculator, Serializer<V> serializer) {
+            def values = caches.get(name)
+            if (values == null) {
+                values = [:]
+                caches.put(name, values)
+            }
+            return { File file ->
+                def content = file.bytes.encodeHex().toString()
+                if (!values.containsKey(content)) {
+                    readFiles << file.name
+                    values.put(content, calculator.calculate(file, true))
+                }
+                return values.get(content)
+            } as FileContentCache<V>
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.workers.internal;
+
+import org.gradle.internal.io.ClassLoaderObjectInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares the cost of sending trivial work items to a worker daemon with parameters serialized with Java serialization
+ * and with {@link WorkerParametersSerializer}.
+ *
+ * Each operation does what happens to a work item on its way to a worker daemon: the parameters are serialized when the work is submitted,
+ * the spec is written to and read from the daemon connection using Java serialization, and the parameters are deserialized in the daemon.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class WorkerParametersSerializationBenchmark {
+
+    @Param({"files", "collections"})
+    String parameters;
+
+    private Object[] params;
+    private ClassLoader classLoader;
+
+    @Setup
+    public void setup() {
+        classLoader = getClass().getClassLoader();
+        if (parameters.equals("files")) {
+            params = new Object[]{new File("src/main/java/org/gradle/sample/Foo.java"), new File("build/classes/java/main/org/gradle/sample/Foo.class"), "UTF-8", 8};
+        } else {
+            params = new Object[]{
+                new File("src/main/java/org/gradle/sample/Foo.java"),
+                new ArrayList<String>(Arrays.asList("-g", "-parameters", "-Xlint:all", "-Werror")),
+                new ArrayList<File>(Arrays.asList(new File("lib/a.jar"), new File("lib/b.jar"), new File("lib/c.jar"))),
+                KeepAliveMode.DAEMON,
+                true
+            };
+        }
+    }
+
+    @Benchmark
+    public Object[] javaSerialization() throws Exception {
+        JavaSerializedSpec spec = new JavaSerializedSpec(javaSerialize(params));
+        JavaSerializedSpec received = (JavaSerializedSpec) javaDeserialize(javaSerialize(spec));
+        return (Object[]) javaDeserialize(received.params);
+    }
+
+    @Benchmark
+    public Object[] parametersSerializer() throws Exception {
+        SerializingActionExecutionSpec spec = new SerializingActionExecutionSpec(Runnable.class, "work", params);
+        SerializingActionExecutionSpec received = (SerializingActionExecutionSpec) javaDeserialize(javaSerialize(spec));
+        return received.getParams(classLoader);
+    }
+
+    private static byte[] javaSerialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(bytes);
+        objectOutputStream.writeObject(value);
+        objectOutputStream.close();
+        return bytes.toByteArray();
+    }
+
+    private Object javaDeserialize(byte[] bytes) throws Exception {
+        ObjectInputStream objectInputStream = new ClassLoaderObjectInputStream(new ByteArrayInputStream(bytes), classLoader);
+        return objectInputStream.readObject();
+    }
+
+    private static class JavaSerializedSpec implements Serializable {
+        private final Class<? extends Runnable> implementationClass = Runnable.class;
+        private final String displayName = "work";
+        private final byte[] params;
+
+        JavaSerializedSpec(byte[] params) {
+            this.params = params;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.workers.internal;
+
+import com.google.common.base.Objects;
+import org.gradle.api.internal.classloading.GroovySystemLoader;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.internal.classloader.ClassLoaderSpec;
+import org.gradle.internal.classloader.ClasspathHasher;
+import org.gradle.internal.classloader.VisitableURLClassLoader;
+import org.gradle.internal.classpath.DefaultClassPath;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.process.internal.health.memory.MemoryHolder;
+import org.gradle.process.internal.health.memory.MemoryManager;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Keeps the classloaders of finished classloader isolated work items, so that later work items with the same classpath,
+ * in this or a later build, can reuse the classes already loaded and JIT compiled.
+ *
+ * A classloader is only used by one work item at a time, the same way that a worker daemon is.
+ * Idle classloaders are discarded, least recently used first, when the memory manager asks for memory to be released,
+ * or when there are more than {@value #MAX_IDLE_CLASSLOADERS} of them.
+ *
+ * Pooling is enabled with {@code -Dorg.gradle.unsafe.isolated-classloader-pool=true}.
+ */
+public class IsolatedClassloaderPool implements MemoryHolder, Stoppable {
+
+    public static final String POOL_PROPERTY = "org.gradle.unsafe.isolated-classloader-pool";
+
+    private static final Logger LOGGER = Logging.getLogger(IsolatedClassloaderPool.class);
+    private static final int MAX_IDLE_CLASSLOADERS = 16;
+
+    private final Object lock = new Object();
+    private final List<PooledClassloader> idleClassloaders = new ArrayList<PooledClassloader>();
+    private final ClasspathHasher classpathHasher;
+    private final MemoryManager memoryManager;
+
+    public IsolatedClassloaderPool(ClasspathHasher classpathHasher, MemoryManager memoryManager) {
+        this.classpathHasher = classpathHasher;
+        this.memoryManager = memoryManager;
+        memoryManager.addMemoryHolder(this);
+    }
+
+    public boolean isEnabled() {
+        return Boolean.getBoolean(POOL_PROPERTY);
+    }
+
+    /**
+     * Calculates the key for classloaders with the given structure, or null if such classloaders cannot be pooled.
+     */
+    @Nullable
+    public Key keyFor(ClassLoader workerInfrastructureClassloader, ClassLoaderStructure classLoaderStructure) {
+        Hasher hasher = Hashing.newHasher();
+        long classpathSize = 0;
+        for (ClassLoaderStructure current = classLoaderStructure; current != null; current = current.getParent()) {
+            ClassLoaderSpec spec = current.getSpec();
+            if (spec instanceof VisitableURLClassLoader.Spec) {
+                List<File> files = new ArrayList<File>();
+                for (URL url : ((VisitableURLClassLoader.Spec) spec).getClasspath()) {
+                    if (!"file".equals(url.getProtocol())) {
+                        return null;
+                    }
+                    try {
+                        File file = new File(url.toURI());
+                        files.add(file);
+                        classpathSize += file.length();
+                    } catch (URISyntaxException e) {
+                        return null;
+                    }
+                }
+                hasher.putHash(classpathHasher.hash(DefaultClassPath.of(files)));
+            }
+        }
+        return new Key(workerInfrastructureClassloader, classLoaderStructure, hasher.hash(), classpathSize);
+    }
+
+    /**
+     * Takes the most recently used idle classloader with the given key out of the pool, if any.
+     */
+    @Nullable
+    public PooledClassloader reserveIdle(Key key) {
+        synchronized (lock) {
+            for (int i = idleClassloaders.size() - 1; i >= 0; i--) {
+                if (idleClassloaders.get(i).key.equals(key)) {
+                    return idleClassloaders.remove(i);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns a classloader to the pool once the work item using it has finished.
+     */
+    public void release(PooledClassloader classloader) {
+        List<PooledClassloader> toStop = new ArrayList<PooledClassloader>();
+        synchronized (lock) {
+            idleClassloaders.add(classloader);
+            while (idleClassloaders.size() > MAX_IDLE_CLASSLOADERS) {
+                toStop.add(idleClassloaders.remove(0));
+            }
+        }
+        stopClassloaders(toStop);
+    }
+
+    @Override
+    public long attemptToRelease(long memoryAmountBytes) throws IllegalArgumentException {
+        if (memoryAmountBytes < 0) {
+            throw new IllegalArgumentException("Negative memory amount");
+        }
+        long releasedBytes = 0;
+        List<PooledClassloader> toStop = new ArrayList<PooledClassloader>();
+        synchronized (lock) {
+            Iterator<PooledClassloader> iterator = idleClassloaders.iterator();
+            while (iterator.hasNext() && releasedBytes < memoryAmountBytes) {
+                PooledClassloader classloader = iterator.next();
+                iterator.remove();
+                toStop.add(classloader);
+                // The classes loaded from a classpath take roughly the space of the classpath itself
+                releasedBytes += classloader.key.classpathSize;
+            }
+        }
+        if (!toStop.isEmpty()) {
+            LOGGER.debug("Discarded {} idle isolated worker classloader(s) to free some system memory", toStop.size());
+        }
+        stopClassloaders(toStop);
+        return releasedBytes;
+    }
+
+    @Override
+    public void stop() {
+        memoryManager.removeMemoryHolder(this);
+        stopClassloaders(removeAllIdle());
+    }
+
+    private List<PooledClassloader> removeAllIdle() {
+        synchronized (lock) {
+            List<PooledClassloader> idle = new ArrayList<PooledClassloader>(idleClassloaders);
+            idleClassloaders.clear();
+            return idle;
+        }
+    }
+
+    private static void stopClassloaders(List<PooledClassloader> classloaders) {
+        CompositeStoppable.stoppable(classloaders).stop();
+    }
+
+    public static class Key {
+        private final ClassLoader workerInfrastructureClassloader;
+        private final ClassLoaderStructure classLoaderStructure;
+        private final HashCode classpathHash;
+        private final long classpathSize;
+
+        private Key(ClassLoader workerInfrastructureClassloader, ClassLoaderStructure classLoaderStructure, HashCode classpathHash, long classpathSize) {
+            this.workerInfrastructureClassloader = workerInfrastructureClassloader;
+            this.classLoaderStructure = classLoaderStructure;
+            this.classpathHash = classpathHash;
+            this.classpathSize = classpathSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key that = (Key) o;
+            return workerInfrastructureClassloader == that.workerInfrastructureClassloader
+                && classpathHash.equals(that.classpathHash)
+                && classLoaderStructure.equals(that.classLoaderStructure);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(classpathHash, classLoaderStructure);
+        }
+    }
+
+    /**
+     * A worker classloader, along with the Groovy runtime state that has to be discarded with it.
+     */
+    public static class PooledClassloader implements Stoppable {
+        private final Key key;
+        private final ClassLoader classLoader;
+        private final GroovySystemLoader groovySystemLoader;
+
+        public PooledClassloader(@Nullable Key key, ClassLoader classLoader, GroovySystemLoader groovySystemLoader) {
+            this.key = key;
+            this.classLoader = classLoader;
+            this.groovySystemLoader = groovySystemLoader;
+        }
+
+        @Nullable
+        public Key getKey() {
+            return key;
+        }
+
+        public ClassLoader getClassLoader() {
+            return classLoader;
+        }
+
+        @Override
+        public void stop() {
+            groovySystemLoader.shutdown();
+            CompositeStoppable.stoppable(classLoader).stop();
+        }
+    }
+}
@@ -16,7 +16,6 @@
 
 package org.gradle.workers.internal;
 
-import org.gradle.api.internal.classloading.GroovySystemLoader;
 import org.gradle.api.internal.classloading.GroovySystemLoaderFactory;
 import org.gradle.initialization.GradleApiUtil;
 import org.gradle.internal.UncheckedException;
@@ -24,7 +23,6 @@ import org.gradle.internal.classloader.ClassLoaderSpec;
 import org.gradle.internal.classloader.FilteringClassLoader;
 import org.gradle.internal.classloader.VisitableURLClassLoader;
 import org.gradle.internal.classpath.DefaultClassPath;
-import org.gradle.internal.concurrent.CompositeStoppable;
 import org.gradle.internal.io.ClassLoaderObjectInputStream;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.operations.BuildOperationRef;
@@ -50,10 +48,12 @@ public class IsolatedClassloaderWorkerFactory implements WorkerFactory {
     private final BuildOperationExecutor buildOperationExecutor;
     private final GroovySystemLoaderFactory groovySystemLoaderFactory = new GroovySystemLoaderFactory();
     private final ServiceRegistry serviceRegistry;
+    private final IsolatedClassloaderPool classloaderPool;
 
-    public IsolatedClassloaderWorkerFactory(BuildOperationExecutor buildOperationExecutor, ServiceRegistry parent) {
+    public IsolatedClassloaderWorkerFactory(BuildOperationExecutor buildOperationExecutor, ServiceRegistry parent, IsolatedClassloaderPool classloaderPool) {
         this.buildOperationExecutor = buildOperationExecutor;
         this.serviceRegistry = new IsolatedClassloaderServices(parent);
+        this.classloaderPool = classloaderPool;
     }
 
     @Override
@@ -88,9 +88,8 @@ public class IsolatedClassloaderWorkerFactory implements WorkerFactory {
             classLoaderStructure = getDefaultClassLoaderStructure(workerInfrastructureClassloader, forkOptions.getClasspath());
         }
 
-        ClassLoader workerClassLoader = createWorkerClassLoaderWithStructure(workerInfrastructureClassloader, classLoaderStructure);
-
-        GroovySystemLoader workerClasspathGroovy = groovySystemLoaderFactory.forClassLoader(workerClassLoader);
+        IsolatedClassloaderPool.PooledClassloader pooledClassloader = reserveWorkerClassLoader(workerInfrastructureClassloader, classLoaderStructure);
+        ClassLoader workerClassLoader = pooledClassloader.getClassLoader();
 
         ClassLoader previousContextLoader = Thread.currentThread().getContextClassLoader();
         try {
@@ -102,10 +101,28 @@ public class IsolatedClassloaderWorkerFactory implements WorkerFactory {
         } catch (Exception e) {
             throw UncheckedException.throwAsUncheckedException(e);
         } finally {
-            workerClasspathGroovy.shutdown();
-            CompositeStoppable.stoppable(workerClassLoader).stop();
             Thread.currentThread().setContextClassLoader(previousContextLoader);
+            if (pooledClassloader.getKey() != null) {
+                classloaderPool.release(pooledClassloader);
+            } else {
+                pooledClassloader.stop();
+            }
+        }
+    }
+
+    private IsolatedClassloaderPool.PooledClassloader reserveWorkerClassLoader(ClassLoader workerInfrastructureClassloader, ClassLoaderStructure classLoaderStructure) {
+        IsolatedClassloaderPool.Key key = null;
+        if (classloaderPool.isEnabled()) {
+            key = classloaderPool.keyFor(workerInfrastructureClassloader, classLoaderStructure);
+            if (key != null) {
+                IsolatedClassloaderPool.PooledClassloader idleClassloader = classloaderPool.reserveIdle(key);
+                if (idleClassloader != null) {
+                    return idleClassloader;
+                }
+            }
         }
+        ClassLoader workerClassLoader = createWorkerClassLoaderWithStructure(workerInfrastructureClassloader, classLoaderStructure);
+        return new IsolatedClassloaderPool.PooledClassloader(key, workerClassLoader, groovySystemLoaderFactory.forClassLoader(workerClassLoader));
     }
 
     private void injectServiceRegistry(Object worker) {
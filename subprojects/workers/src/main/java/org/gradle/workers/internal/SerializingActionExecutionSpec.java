@@ -17,16 +17,15 @@
 package org.gradle.workers.internal;
 
 import org.gradle.internal.exceptions.Contextual;
-import org.gradle.internal.io.ClassLoaderObjectInputStream;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 /**
  * Represents an {@link ActionExecutionSpec} that contains constructor parameters.
+ * The parameters are serialized with {@link WorkerParametersSerializer}.
  */
 public class SerializingActionExecutionSpec implements ActionExecutionSpec {
     private final String displayName;
@@ -56,23 +55,21 @@ public class SerializingActionExecutionSpec implements ActionExecutionSpec {
 
     private byte[] serialize(Object[] params) {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        KryoBackedEncoder encoder = new KryoBackedEncoder(bos, 1024);
         try {
-            ObjectOutputStream oos = new ObjectOutputStream(bos);
-            oos.writeObject(params);
-        } catch (IOException e) {
+            new WorkerParametersSerializer(getClass().getClassLoader()).write(encoder, params);
+            encoder.flush();
+        } catch (Exception e) {
             throw new ParameterSerializationException("Could not serialize parameters", e);
         }
         return bos.toByteArray();
     }
 
     private Object[] deserialize(ClassLoader classLoader) {
-        ByteArrayInputStream bis = new ByteArrayInputStream(params);
+        KryoBackedDecoder decoder = new KryoBackedDecoder(new ByteArrayInputStream(params), params.length);
         try {
-            ObjectInputStream ois = new ClassLoaderObjectInputStream(bis, classLoader);
-            return (Object[])ois.readObject();
-        } catch (IOException e) {
-            throw new ParameterSerializationException("Could not deserialize parameters", e);
-        } catch (ClassNotFoundException e) {
+            return new WorkerParametersSerializer(classLoader).read(decoder);
+        } catch (Exception e) {
             throw new ParameterSerializationException("Could not deserialize parameters", e);
         }
     }
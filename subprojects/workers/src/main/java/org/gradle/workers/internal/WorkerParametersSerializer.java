@@ -0,0 +1,323 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.workers.internal;
+
+import org.gradle.internal.io.ClassLoaderObjectInputStream;
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes the parameters of a work item, with compact encodings for the values that work items usually receive:
+ * strings, files, boxed primitives, enums, and arrays, lists, sets and maps of these.
+ * Any other value is written using Java serialization, through a single object stream shared by all such values of the parameters.
+ *
+ * Collections are only encoded directly when their implementation class is one that the decoder recreates exactly,
+ * so the parameters received by the work action have the same types as the ones it was submitted with.
+ * Each class referenced by the parameters is written once, on first use, and by index afterwards.
+ * Arrays, collections, maps and Java serialized values are also written once, and by reference afterwards,
+ * so that shared and cyclic references are preserved as they are by Java serialization.
+ *
+ * An instance keeps the class and object tables of the parameters it has written or read, so it must only be used for a single value.
+ */
+class WorkerParametersSerializer extends AbstractSerializer<Object[]> {
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int TRUE = 2;
+    private static final int FALSE = 3;
+    private static final int INTEGER = 4;
+    private static final int LONG = 5;
+    private static final int SHORT = 6;
+    private static final int BYTE = 7;
+    private static final int DOUBLE = 8;
+    private static final int FLOAT = 9;
+    private static final int CHARACTER = 10;
+    private static final int FILE = 11;
+    private static final int ENUM = 12;
+    private static final int ARRAY = 13;
+    private static final int ARRAY_LIST = 14;
+    private static final int HASH_SET = 15;
+    private static final int LINKED_HASH_SET = 16;
+    private static final int HASH_MAP = 17;
+    private static final int LINKED_HASH_MAP = 18;
+    private static final int JAVA_SERIALIZED = 19;
+    private static final int REFERENCE = 20;
+
+    private final ClassLoader classLoader;
+    private final Map<Class<?>, Integer> writtenClasses = new IdentityHashMap<Class<?>, Integer>();
+    private final List<Class<?>> readClasses = new ArrayList<Class<?>>();
+    private final Map<Object, Integer> writtenObjects = new IdentityHashMap<Object, Integer>();
+    private final List<Object> readObjects = new ArrayList<Object>();
+    private ObjectOutputStream objectOutputStream;
+    private ObjectInputStream objectInputStream;
+
+    /**
+     * @param classLoader The ClassLoader to load the classes of the parameters from, when reading.
+     */
+    WorkerParametersSerializer(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public void write(Encoder encoder, Object[] params) throws Exception {
+        encoder.writeSmallInt(params.length);
+        for (Object param : params) {
+            writeValue(encoder, param);
+        }
+    }
+
+    @Override
+    public Object[] read(Decoder decoder) throws Exception {
+        Object[] params = new Object[decoder.readSmallInt()];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = readValue(decoder);
+        }
+        return params;
+    }
+
+    private void writeValue(Encoder encoder, Object value) throws Exception {
+        if (value == null) {
+            encoder.writeSmallInt(NULL);
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            encoder.writeSmallInt(STRING);
+            encoder.writeString((String) value);
+        } else if (type == Boolean.class) {
+            encoder.writeSmallInt((Boolean) value ? TRUE : FALSE);
+        } else if (type == Integer.class) {
+            encoder.writeSmallInt(INTEGER);
+            encoder.writeInt((Integer) value);
+        } else if (type == Long.class) {
+            encoder.writeSmallInt(LONG);
+            encoder.writeLong((Long) value);
+        } else if (type == Short.class) {
+            encoder.writeSmallInt(SHORT);
+            encoder.writeInt((Short) value);
+        } else if (type == Byte.class) {
+            encoder.writeSmallInt(BYTE);
+            encoder.writeByte((Byte) value);
+        } else if (type == Double.class) {
+            encoder.writeSmallInt(DOUBLE);
+            encoder.writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (type == Float.class) {
+            encoder.writeSmallInt(FLOAT);
+            encoder.writeInt(Float.floatToRawIntBits((Float) value));
+        } else if (type == Character.class) {
+            encoder.writeSmallInt(CHARACTER);
+            encoder.writeInt((Character) value);
+        } else if (type == File.class) {
+            encoder.writeSmallInt(FILE);
+            encoder.writeString(((File) value).getPath());
+        } else if (value instanceof Enum) {
+            encoder.writeSmallInt(ENUM);
+            writeClass(encoder, ((Enum<?>) value).getDeclaringClass());
+            encoder.writeString(((Enum<?>) value).name());
+        } else {
+            writeObject(encoder, value, type);
+        }
+    }
+
+    private void writeObject(Encoder encoder, Object value, Class<?> type) throws Exception {
+        Integer index = writtenObjects.get(value);
+        if (index != null) {
+            encoder.writeSmallInt(REFERENCE);
+            encoder.writeSmallInt(index);
+            return;
+        }
+        // Added before the content is written, so that references to the object from its content are written as references
+        writtenObjects.put(value, writtenObjects.size());
+        if (type.isArray() && !type.getComponentType().isPrimitive()) {
+            Object[] array = (Object[]) value;
+            encoder.writeSmallInt(ARRAY);
+            writeClass(encoder, type.getComponentType());
+            encoder.writeSmallInt(array.length);
+            for (Object element : array) {
+                writeValue(encoder, element);
+            }
+        } else if (type == ArrayList.class) {
+            encoder.writeSmallInt(ARRAY_LIST);
+            writeElements(encoder, (Collection<?>) value);
+        } else if (type == HashSet.class) {
+            encoder.writeSmallInt(HASH_SET);
+            writeElements(encoder, (Collection<?>) value);
+        } else if (type == LinkedHashSet.class) {
+            encoder.writeSmallInt(LINKED_HASH_SET);
+            writeElements(encoder, (Collection<?>) value);
+        } else if (type == HashMap.class) {
+            encoder.writeSmallInt(HASH_MAP);
+            writeEntries(encoder, (Map<?, ?>) value);
+        } else if (type == LinkedHashMap.class) {
+            encoder.writeSmallInt(LINKED_HASH_MAP);
+            writeEntries(encoder, (Map<?, ?>) value);
+        } else {
+            encoder.writeSmallInt(JAVA_SERIALIZED);
+            if (objectOutputStream == null) {
+                objectOutputStream = new ObjectOutputStream(encoder.getOutputStream());
+            }
+            objectOutputStream.writeObject(value);
+            // Write the object to the encoder before the values that follow it
+            objectOutputStream.flush();
+        }
+    }
+
+    private Object readValue(Decoder decoder) throws Exception {
+        int tag = decoder.readSmallInt();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return decoder.readString();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INTEGER:
+                return decoder.readInt();
+            case LONG:
+                return decoder.readLong();
+            case SHORT:
+                return (short) decoder.readInt();
+            case BYTE:
+                return decoder.readByte();
+            case DOUBLE:
+                return Double.longBitsToDouble(decoder.readLong());
+            case FLOAT:
+                return Float.intBitsToFloat(decoder.readInt());
+            case CHARACTER:
+                return (char) decoder.readInt();
+            case FILE:
+                return new File(decoder.readString());
+            case ENUM:
+                return readEnum(readClass(decoder), decoder.readString());
+            case REFERENCE:
+                return readObjects.get(decoder.readSmallInt());
+            case ARRAY:
+                Class<?> componentType = readClass(decoder);
+                Object[] array = register((Object[]) Array.newInstance(componentType, decoder.readSmallInt()));
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readValue(decoder);
+                }
+                return array;
+            case ARRAY_LIST:
+                int listSize = decoder.readSmallInt();
+                return readElements(decoder, listSize, register(new ArrayList<Object>(listSize)));
+            case HASH_SET:
+                int hashSetSize = decoder.readSmallInt();
+                return readElements(decoder, hashSetSize, register(new HashSet<Object>(capacityFor(hashSetSize))));
+            case LINKED_HASH_SET:
+                int linkedHashSetSize = decoder.readSmallInt();
+                return readElements(decoder, linkedHashSetSize, register(new LinkedHashSet<Object>(capacityFor(linkedHashSetSize))));
+            case HASH_MAP:
+                int hashMapSize = decoder.readSmallInt();
+                return readEntries(decoder, hashMapSize, register(new HashMap<Object, Object>(capacityFor(hashMapSize))));
+            case LINKED_HASH_MAP:
+                int linkedHashMapSize = decoder.readSmallInt();
+                return readEntries(decoder, linkedHashMapSize, register(new LinkedHashMap<Object, Object>(capacityFor(linkedHashMapSize))));
+            case JAVA_SERIALIZED:
+                if (objectInputStream == null) {
+                    objectInputStream = new ClassLoaderObjectInputStream(decoder.getInputStream(), classLoader);
+                }
+                return register(objectInputStream.readObject());
+            default:
+                throw new IllegalArgumentException("Don't know how to deserialize a parameter with type tag " + tag);
+        }
+    }
+
+    /**
+     * Adds an object to the table of objects read, before its content is read, so that references to it from its content can be resolved.
+     */
+    private <T> T register(T value) {
+        readObjects.add(value);
+        return value;
+    }
+
+    private void writeElements(Encoder encoder, Collection<?> elements) throws Exception {
+        encoder.writeSmallInt(elements.size());
+        for (Object element : elements) {
+            writeValue(encoder, element);
+        }
+    }
+
+    private Collection<Object> readElements(Decoder decoder, int size, Collection<Object> elements) throws Exception {
+        for (int i = 0; i < size; i++) {
+            elements.add(readValue(decoder));
+        }
+        return elements;
+    }
+
+    private void writeEntries(Encoder encoder, Map<?, ?> entries) throws Exception {
+        encoder.writeSmallInt(entries.size());
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            writeValue(encoder, entry.getKey());
+            writeValue(encoder, entry.getValue());
+        }
+    }
+
+    private Map<Object, Object> readEntries(Decoder decoder, int size, Map<Object, Object> entries) throws Exception {
+        for (int i = 0; i < size; i++) {
+            entries.put(readValue(decoder), readValue(decoder));
+        }
+        return entries;
+    }
+
+    private void writeClass(Encoder encoder, Class<?> type) throws Exception {
+        Integer index = writtenClasses.get(type);
+        if (index != null) {
+            encoder.writeSmallInt(index);
+        } else {
+            index = writtenClasses.size();
+            writtenClasses.put(type, index);
+            encoder.writeSmallInt(index);
+            encoder.writeString(type.getName());
+        }
+    }
+
+    private Class<?> readClass(Decoder decoder) throws Exception {
+        int index = decoder.readSmallInt();
+        if (index < readClasses.size()) {
+            return readClasses.get(index);
+        }
+        Class<?> type = Class.forName(decoder.readString(), false, classLoader);
+        readClasses.add(type);
+        return type;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object readEnum(Class<?> type, String name) {
+        return Enum.valueOf((Class) type, name);
+    }
+
+    private static int capacityFor(int size) {
+        return size < 3 ? size + 1 : (int) (size / 0.75F) + 1;
+    }
+}
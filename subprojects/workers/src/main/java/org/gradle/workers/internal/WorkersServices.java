@@ -18,6 +18,7 @@ package org.gradle.workers.internal;
 
 import org.gradle.concurrent.ParallelismConfiguration;
 import org.gradle.initialization.GradleUserHomeDirProvider;
+import org.gradle.internal.classloader.ClasspathHasher;
 import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.instantiation.InstantiatorFactory;
@@ -61,8 +62,8 @@ public class WorkersServices extends AbstractPluginServiceRegistry {
             return new WorkerDaemonFactory(workerDaemonClientsManager, buildOperationExecutor);
         }
 
-        IsolatedClassloaderWorkerFactory createIsolatedClassloaderWorkerFactory(BuildOperationExecutor buildOperationExecutor, ServiceRegistry serviceRegistry) {
-            return new IsolatedClassloaderWorkerFactory(buildOperationExecutor, serviceRegistry);
+        IsolatedClassloaderWorkerFactory createIsolatedClassloaderWorkerFactory(BuildOperationExecutor buildOperationExecutor, ServiceRegistry serviceRegistry, IsolatedClassloaderPool isolatedClassloaderPool) {
+            return new IsolatedClassloaderWorkerFactory(buildOperationExecutor, serviceRegistry, isolatedClassloaderPool);
         }
 
         WorkerDirectoryProvider createWorkerDirectoryProvider(GradleUserHomeDirProvider gradleUserHomeDirProvider) {
@@ -86,6 +87,10 @@ public class WorkersServices extends AbstractPluginServiceRegistry {
                                                                     OsMemoryInfo memoryInfo) {
             return new WorkerDaemonClientsManager(new WorkerDaemonStarter(workerFactory, loggingManager), listenerManager, loggingManager, memoryManager, memoryInfo);
         }
+
+        IsolatedClassloaderPool createIsolatedClassloaderPool(ClasspathHasher classpathHasher, MemoryManager memoryManager) {
+            return new IsolatedClassloaderPool(classpathHasher, memoryManager);
+        }
     }
 
     private static class ProjectScopeServices {
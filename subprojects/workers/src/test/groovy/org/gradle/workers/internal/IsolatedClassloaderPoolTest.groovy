@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.workers.internal
+
+import org.gradle.api.internal.classloading.GroovySystemLoader
+import org.gradle.internal.classloader.ClasspathHasher
+import org.gradle.internal.classloader.VisitableURLClassLoader
+import org.gradle.internal.hash.HashCode
+import org.gradle.process.internal.health.memory.MemoryManager
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class IsolatedClassloaderPoolTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def classpathHasher = Mock(ClasspathHasher)
+    def memoryManager = Mock(MemoryManager)
+    def infrastructureClassloader = getClass().classLoader
+    def pool = new IsolatedClassloaderPool(classpathHasher, memoryManager)
+
+    def "registers with and unregisters from the memory manager"() {
+        def pool
+
+        when:
+        pool = new IsolatedClassloaderPool(classpathHasher, memoryManager)
+
+        then:
+        1 * memoryManager.addMemoryHolder(_)
+        0 * memoryManager._
+
+        when:
+        pool.stop()
+
+        then:
+        1 * memoryManager.removeMemoryHolder(pool)
+        0 * memoryManager._
+    }
+
+    def "reuses idle classloader with the same classpath contents"() {
+        classpathHasher.hash(_) >> HashCode.fromInt(1)
+        def classloader = pooled(key("a.jar"))
+        pool.release(classloader)
+
+        expect:
+        pool.reserveIdle(key("a.jar")) == classloader
+        pool.reserveIdle(key("a.jar")) == null
+    }
+
+    def "does not reuse classloader when classpath contents have changed"() {
+        def hash = 1
+        classpathHasher.hash(_) >> { HashCode.fromInt(hash) }
+        pool.release(pooled(key("a.jar")))
+
+        when:
+        hash = 2
+
+        then:
+        pool.reserveIdle(key("a.jar")) == null
+    }
+
+    def "does not reuse classloader for a different classpath"() {
+        classpathHasher.hash(_) >> HashCode.fromInt(1)
+        pool.release(pooled(key("a.jar")))
+
+        expect:
+        pool.reserveIdle(key("b.jar")) == null
+    }
+
+    def "cannot pool classloaders for classpaths that are not files"() {
+        def structure = new ClassLoaderStructure(new VisitableURLClassLoader.Spec("test", [new URL("http://example.com/a.jar")]))
+
+        expect:
+        pool.keyFor(infrastructureClassloader, structure) == null
+    }
+
+    def "discards least recently used idle classloaders when asked to release memory"() {
+        classpathHasher.hash(_) >> HashCode.fromInt(1)
+        tmpDir.file("a.jar") << "a"
+        tmpDir.file("b.jar") << "b"
+        def groovy1 = Mock(GroovySystemLoader)
+        def groovy2 = Mock(GroovySystemLoader)
+        def classloader1 = pooled(key("a.jar"), groovy1)
+        def classloader2 = pooled(key("b.jar"), groovy2)
+        pool.release(classloader1)
+        pool.release(classloader2)
+
+        when:
+        pool.attemptToRelease(1)
+
+        then:
+        1 * groovy1.shutdown()
+        0 * groovy2.shutdown()
+
+        and:
+        pool.reserveIdle(key("a.jar")) == null
+        pool.reserveIdle(key("b.jar")) == classloader2
+    }
+
+    def "discards all idle classloaders when stopped"() {
+        classpathHasher.hash(_) >> HashCode.fromInt(1)
+        def groovy = Mock(GroovySystemLoader)
+        pool.release(pooled(key("a.jar"), groovy))
+
+        when:
+        pool.stop()
+
+        then:
+        1 * groovy.shutdown()
+    }
+
+    private IsolatedClassloaderPool.Key key(String jar) {
+        def structure = new ClassLoaderStructure(new VisitableURLClassLoader.Spec("test", [tmpDir.file(jar).toURI().toURL()]))
+        return pool.keyFor(infrastructureClassloader, structure)
+    }
+
+    private IsolatedClassloaderPool.PooledClassloader pooled(IsolatedClassloaderPool.Key key, GroovySystemLoader groovySystemLoader = Stub(GroovySystemLoader)) {
+        return new IsolatedClassloaderPool.PooledClassloader(key, new URLClassLoader(new URL[0]), groovySystemLoader)
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.workers.internal
+
+import org.gradle.api.logging.LogLevel
+import org.gradle.internal.serialize.SerializerSpec
+import spock.lang.Unroll
+
+class WorkerParametersSerializerTest extends SerializerSpec {
+
+    @Unroll
+    def "can serialize parameter of type #type.simpleName"() {
+        when:
+        def result = serialize([value] as Object[], serializer())
+
+        then:
+        result.length == 1
+        result[0] == value
+        result[0].getClass() == type
+
+        where:
+        value                                | type
+        "value"                              | String
+        true                                 | Boolean
+        12                                   | Integer
+        12L                                  | Long
+        (short) 12                           | Short
+        (byte) 12                            | Byte
+        1.5d                                 | Double
+        1.5f                                 | Float
+        'c' as char                          | Character
+        new File("some/file")                | File
+        LogLevel.INFO                        | LogLevel
+        new ArrayList(["a", "b"])            | ArrayList
+        new HashSet(["a", "b"])              | HashSet
+        new LinkedHashSet(["b", "a"])        | LinkedHashSet
+        new HashMap([a: 1, b: 2])            | HashMap
+        new LinkedHashMap([b: 1, a: 2])      | LinkedHashMap
+        new LinkedList(["a", "b"])           | LinkedList
+        new BigDecimal("1.5")                | BigDecimal
+    }
+
+    def "can serialize null parameters"() {
+        expect:
+        serialize([null, "a", null] as Object[], serializer()) == [null, "a", null] as Object[]
+    }
+
+    def "can serialize arrays"() {
+        when:
+        def result = serialize([["a", "b"] as String[], [LogLevel.INFO, LogLevel.DEBUG] as LogLevel[], [1, 2] as int[]] as Object[], serializer())
+
+        then:
+        result[0] instanceof String[]
+        result[0] == ["a", "b"] as String[]
+        result[1] instanceof LogLevel[]
+        result[1] == [LogLevel.INFO, LogLevel.DEBUG] as LogLevel[]
+        result[2] instanceof int[]
+        result[2] == [1, 2] as int[]
+    }
+
+    def "preserves order of linked collections"() {
+        when:
+        def result = serialize([new LinkedHashSet(["c", "a", "b"]), new LinkedHashMap([c: 1, a: 2, b: 3])] as Object[], serializer())
+
+        then:
+        result[0] as List == ["c", "a", "b"]
+        result[1].keySet() as List == ["c", "a", "b"]
+    }
+
+    def "preserves shared references"() {
+        def list = new ArrayList(["a", "b"])
+        def custom = new CustomValue("a")
+        def params = [list, [list, list] as Object[], new HashMap([a: list, b: custom]), custom] as Object[]
+
+        when:
+        def result = serialize(params, serializer())
+
+        then:
+        result[0] == ["a", "b"]
+        result[1][0].is(result[0])
+        result[1][1].is(result[0])
+        result[2].a.is(result[0])
+        result[2].b.is(result[3])
+        result[3].name == "a"
+    }
+
+    def "can serialize self referencing collections"() {
+        def list = new ArrayList()
+        list.add("a")
+        list.add(list)
+        def map = new HashMap()
+        map.put("self", map)
+
+        when:
+        def result = serialize([list, map] as Object[], serializer())
+
+        then:
+        result[0].size() == 2
+        result[0][0] == "a"
+        result[0][1].is(result[0])
+        result[1].self.is(result[1])
+    }
+
+    def "can serialize collections of custom serializable values"() {
+        def shared = new CustomValue("shared")
+        def params = [new ArrayList([new CustomValue("a"), shared, new CustomValue("b", shared)]), new LinkedHashMap([c: new CustomValue("c", shared)])] as Object[]
+
+        when:
+        def result = serialize(params, serializer())
+
+        then:
+        result[0]*.name == ["a", "shared", "b"]
+        result[0][2].next.is(result[0][1])
+        result[1].c.name == "c"
+        result[1].c.next.is(result[0][1])
+    }
+
+    def "uses more compact encoding than Java serialization for typical parameters"() {
+        def params = [new File("src/main/java/org/gradle/Foo.java"), new File("build/classes/org/gradle/Foo.class"), "UTF-8", 8, LogLevel.INFO, new ArrayList(["-g", "-parameters"])] as Object[]
+
+        expect:
+        usesEfficientSerialization(params, serializer()) == params
+    }
+
+    private static WorkerParametersSerializer serializer() {
+        return new WorkerParametersSerializer(WorkerParametersSerializerTest.classLoader)
+    }
+
+    static class CustomValue implements Serializable {
+        final String name
+        final CustomValue next
+
+        CustomValue(String name, CustomValue next = null) {
+            this.name = name
+            this.next = next
+        }
+    }
+}
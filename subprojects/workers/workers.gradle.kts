@@ -36,5 +36,6 @@ gradlebuildJava {
 
 testFixtures {
     from(":core")
+    from(":messaging")
     from(":logging")
 }